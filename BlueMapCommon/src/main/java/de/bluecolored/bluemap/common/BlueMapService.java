@@ -35,15 +35,21 @@
 import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.resourcepack.ParseResourceException;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.storage.ArchiveStorage;
 import de.bluecolored.bluemap.core.storage.FileStorage;
+import de.bluecolored.bluemap.core.storage.SQLStorage;
 import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.WriteBehindStorage;
+import de.bluecolored.bluemap.core.util.AtomicFileHelper;
 import de.bluecolored.bluemap.core.world.World;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is the attempt to generalize as many actions as possible to have CLI and Plugins run on the same general setup-code.
@@ -65,6 +71,7 @@ public class BlueMapService {
 
     private Map<UUID, World> worlds;
     private Map<String, BmMap> maps;
+    private final Map<String, Storage> mapStorages = new ConcurrentHashMap<>();
 
     public BlueMapService(MinecraftVersion minecraftVersion, File configFolder) {
         this.minecraftVersion = minecraftVersion;
@@ -131,6 +138,78 @@ public synchronized Map<String, BmMap> getMaps() throws IOException, Interrupted
         return maps;
     }
 
+    /**
+     * Returns the {@link Storage} of the configured map with the given id, or <code>null</code> if there is no such map.<br>
+     * This does not need to load the world of the map, so it can be used before the maps are loaded.
+     * The same {@link Storage} will be used by the map once it is loaded.
+     */
+    public Storage getMapStorage(String mapId) throws IOException {
+        Storage storage = mapStorages.get(mapId);
+        if (storage != null) return storage;
+
+        for (MapConfig mapConfig : getRenderConfig().getMapConfigs()) {
+            if (mapConfig.getId().equals(mapId)) return getMapStorage(mapConfig);
+        }
+
+        return null;
+    }
+
+    private synchronized Storage getMapStorage(MapConfig mapConfig) throws IOException {
+        Storage storage = mapStorages.get(mapConfig.getId());
+        if (storage != null) return storage;
+
+        Path dataRoot = getRenderConfig().getWebRoot().toPath().resolve("data");
+        switch (mapConfig.getStorageType()) {
+            case ARCHIVE:
+                storage = new ArchiveStorage(
+                        dataRoot,
+                        mapConfig.getCompression(),
+                        getCoreConfig().isWriteSync()
+                );
+                break;
+            case SQL:
+                File databaseFile = new File(getCoreConfig().getDataFolder(), "maps");
+                storage = new SQLStorage(
+                        SQLStorage.loadH2Driver(new File(getCoreConfig().getDataFolder(), "h2-" + SQLStorage.H2_VERSION + ".jar")),
+                        "jdbc:h2:file:" + databaseFile.getAbsolutePath(),
+                        mapConfig.getCompression()
+                );
+                break;
+            default:
+                storage = new FileStorage(
+                        dataRoot,
+                        mapConfig.getCompression(),
+                        mapConfig.getHiresTileFormat(),
+                        getCoreConfig().isWriteSync()
+                );
+        }
+
+        if (getCoreConfig().getWriteThreadCount() > 0) {
+            storage = new WriteBehindStorage(
+                    storage,
+                    getCoreConfig().getWriteThreadCount(),
+                    getCoreConfig().getWriteQueueSize()
+            );
+        }
+
+        mapStorages.put(mapConfig.getId(), storage);
+        return storage;
+    }
+
+    /**
+     * Closes the storages of all maps, this should be called when the maps are no longer used
+     */
+    public synchronized void closeMapStorages() {
+        for (Map.Entry<String, Storage> entry : mapStorages.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException ex) {
+                Logger.global.logError("Failed to close the storage of map '" + entry.getKey() + "'!", ex);
+            }
+        }
+        mapStorages.clear();
+    }
+
     private synchronized void loadWorldsAndMaps() throws IOException, InterruptedException {
         maps = new HashMap<>();
         worlds = new HashMap<>();
@@ -156,7 +235,7 @@ private synchronized void loadWorldsAndMaps() throws IOException, InterruptedExc
             World world = worlds.get(worldUUID);
             if (world == null) {
                 try {
-                    world = MCAWorld.load(worldFolder.toPath(), worldUUID, worldNameProvider.apply(worldUUID), mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData());
+                    world = MCAWorld.load(worldFolder.toPath(), worldUUID, worldNameProvider.apply(worldUUID), mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData(), getCoreConfig());
                     worlds.put(worldUUID, world);
                 } catch (MissingResourcesException e) {
                     throw e; // rethrow this to stop loading and display resource-missing message
@@ -166,10 +245,7 @@ private synchronized void loadWorldsAndMaps() throws IOException, InterruptedExc
                 }
             }
 
-            Storage storage = new FileStorage(
-                    getRenderConfig().getWebRoot().toPath().resolve("data"),
-                    mapConfig.getCompression()
-            );
+            Storage storage = getMapStorage(mapConfig);
 
             BmMap map = new BmMap(
                     id,
@@ -191,6 +267,7 @@ public synchronized ResourcePack getResourcePack() throws IOException, Interrupt
         if (resourcePack == null) {
             File defaultResourceFile = new File(getCoreConfig().getDataFolder(), "minecraft-client-" + minecraftVersion.getResource().getVersion().getVersionString() + ".jar");
             File resourceExtensionsFile = new File(getCoreConfig().getDataFolder(), "resourceExtensions.zip");
+            File resourceCacheFile = new File(getCoreConfig().getDataFolder(), "resourcepack.cache");
 
             File textureExportFile = new File(getRenderConfig().getWebRoot(), "data" + File.separator + "textures.json");
 
@@ -216,12 +293,26 @@ public synchronized ResourcePack getResourcePack() throws IOException, Interrupt
 
             Logger.global.logInfo("Loading resources...");
 
-            if (resourceExtensionsFile.exists()) FileUtils.forceDelete(resourceExtensionsFile);
-            FileUtils.forceMkdirParent(resourceExtensionsFile);
             URL resourceExtensionsUrl = Objects.requireNonNull(
                     Plugin.class.getResource("/de/bluecolored/bluemap/" + minecraftVersion.getResource().getResourcePrefix() + "/resourceExtensions.zip")
             );
-            FileUtils.copyURLToFile(resourceExtensionsUrl, resourceExtensionsFile, 10000, 10000);
+
+            //only replace the extensions if they changed, so they don't invalidate the resource-cache
+            boolean resourceExtensionsChanged = true;
+            if (resourceExtensionsFile.exists()) {
+                try (
+                        InputStream newExtensions = resourceExtensionsUrl.openStream();
+                        InputStream oldExtensions = new FileInputStream(resourceExtensionsFile)
+                ) {
+                    resourceExtensionsChanged = !IOUtils.contentEquals(newExtensions, oldExtensions);
+                }
+            }
+
+            if (resourceExtensionsChanged) {
+                if (resourceExtensionsFile.exists()) FileUtils.forceDelete(resourceExtensionsFile);
+                FileUtils.forceMkdirParent(resourceExtensionsFile);
+                FileUtils.copyURLToFile(resourceExtensionsUrl, resourceExtensionsFile, 10000, 10000);
+            }
 
             //find more resource packs
             File[] resourcePacks = resourcePackFolder.listFiles();
@@ -234,10 +325,26 @@ public synchronized ResourcePack getResourcePack() throws IOException, Interrupt
             resources.add(resourceExtensionsFile);
 
             try {
-                resourcePack = new ResourcePack();
-                if (textureExportFile.exists()) resourcePack.loadTextureFile(textureExportFile);
-                resourcePack.load(resources);
-                resourcePack.saveTextureFile(textureExportFile);
+                String sourcesHash = ResourcePack.hashSources(resources);
+
+                //the cache does not contain the texture-images, so the textures need to be exported already
+                if (textureExportFile.exists() && resourceCacheFile.exists()) {
+                    resourcePack = loadResourceCache(resourceCacheFile, sourcesHash);
+                }
+
+                if (resourcePack == null) {
+                    resourcePack = new ResourcePack(getCoreConfig().isTextureAtlas());
+                    if (textureExportFile.exists()) resourcePack.loadTextureFile(textureExportFile);
+                    resourcePack.load(resources);
+                    resourcePack.setSourcesHash(sourcesHash);
+                    resourcePack.saveTextureFile(textureExportFile);
+
+                    try (OutputStream out = AtomicFileHelper.createFilepartOutputStream(resourceCacheFile)) {
+                        resourcePack.saveCache(out, sourcesHash);
+                    } catch (IOException ex) {
+                        Logger.global.logWarning("Failed to save the resource-cache: " + ex);
+                    }
+                }
             } catch (ParseResourceException e) {
                 throw new IOException("Failed to parse resources!", e);
             }
@@ -247,6 +354,20 @@ public synchronized ResourcePack getResourcePack() throws IOException, Interrupt
         return resourcePack;
     }
 
+    private ResourcePack loadResourceCache(File resourceCacheFile, String sourcesHash) {
+        ResourcePack resourcePack = new ResourcePack(getCoreConfig().isTextureAtlas());
+        try (InputStream in = new FileInputStream(resourceCacheFile)) {
+            if (resourcePack.loadCache(in, sourcesHash)) {
+                Logger.global.logInfo("Loaded resources from cache.");
+                return resourcePack;
+            }
+        } catch (IOException ex) {
+            Logger.global.logWarning("Failed to load the resource-cache, reloading all resources: " + ex);
+        }
+
+        return null;
+    }
+
     public synchronized ConfigManager getConfigManager() {
         return configManager;
     }
@@ -35,6 +35,7 @@
 import de.bluecolored.bluemap.common.rendermanager.MapUpdateTask;
 import de.bluecolored.bluemap.common.rendermanager.RenderManager;
 import de.bluecolored.bluemap.common.web.FileRequestHandler;
+import de.bluecolored.bluemap.common.web.MapStorageRequestHandler;
 import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.MinecraftVersion;
 import de.bluecolored.bluemap.core.config.CoreConfig;
@@ -48,6 +49,8 @@
 import de.bluecolored.bluemap.core.resourcepack.ParseResourceException;
 import de.bluecolored.bluemap.core.util.FileUtils;
 import de.bluecolored.bluemap.core.webserver.HttpRequestHandler;
+import de.bluecolored.bluemap.core.webserver.HttpServer;
+import de.bluecolored.bluemap.core.webserver.NioWebServer;
 import de.bluecolored.bluemap.core.webserver.WebServer;
 import de.bluecolored.bluemap.core.world.World;
 import org.spongepowered.configurate.gson.GsonConfigurationLoader;
@@ -84,7 +87,7 @@ public class Plugin implements ServerEventListener {
     private Map<String, BmMap> maps;
 
     private RenderManager renderManager;
-    private WebServer webServer;
+    private HttpServer webServer;
 
     private Timer daemonTimer;
 
@@ -141,19 +144,30 @@ public void load() throws IOException, ParseResourceException {
                 if (webServerConfig.isWebserverEnabled()) {
                     FileUtils.mkDirs(webServerConfig.getWebRoot());
                     HttpRequestHandler requestHandler = new FileRequestHandler(webServerConfig.getWebRoot().toPath(), "BlueMap v" + BlueMap.VERSION);
+                    requestHandler = new MapStorageRequestHandler(blueMap::getMapStorage, requestHandler);
 
                     //inject live api if enabled
                     if (pluginConfig.isLiveUpdatesEnabled()) {
                         requestHandler = new LiveAPIRequestHandler(serverInterface, pluginConfig, requestHandler);
                     }
 
-                    webServer = new WebServer(
-                            webServerConfig.getWebserverBindAddress(),
-                            webServerConfig.getWebserverPort(),
-                            webServerConfig.getWebserverMaxConnections(),
-                            requestHandler,
-                            false
-                    );
+                    if (webServerConfig.isWebserverNonBlocking()) {
+                        webServer = new NioWebServer(
+                                webServerConfig.getWebserverBindAddress(),
+                                webServerConfig.getWebserverPort(),
+                                webServerConfig.getWebserverMaxConnections(),
+                                requestHandler,
+                                false
+                        );
+                    } else {
+                        webServer = new WebServer(
+                                webServerConfig.getWebserverBindAddress(),
+                                webServerConfig.getWebserverPort(),
+                                webServerConfig.getWebserverMaxConnections(),
+                                requestHandler,
+                                false
+                        );
+                    }
                     webServer.start();
                 }
 
@@ -310,12 +324,25 @@ public void unload() {
                 regionFileWatchServices = null;
 
                 //stop services
-                if (renderManager != null) renderManager.stop();
+                if (renderManager != null) {
+                    renderManager.stop();
+
+                    //the render-threads might still be writing tiles to the map-storages
+                    try {
+                        renderManager.awaitShutdown();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        Logger.global.logWarning("Interrupted while waiting for the render-threads to stop!");
+                    }
+                }
                 renderManager = null;
 
                 if (webServer != null) webServer.close();
                 webServer = null;
 
+                //close map-storages
+                if (blueMap != null) blueMap.closeMapStorages();
+
                 //clear resources and configs
                 blueMap = null;
                 worlds = null;
@@ -447,7 +474,7 @@ public RenderManager getRenderManager() {
         return renderManager;
     }
 
-    public WebServer getWebServer() {
+    public HttpServer getWebServer() {
         return webServer;
     }
 
@@ -40,6 +40,8 @@
 
 public class RegionFileWatchService extends Thread {
 
+    private static final long UPDATE_DELAY_MILLIS = 3000;
+
     private final BmMap map;
     private final RenderManager renderManager;
     private final WatchService watchService;
@@ -113,7 +115,8 @@ private synchronized void updateRegion(String regionFileName) {
             int rZ = Integer.parseInt(filenameParts[2]);
             Vector2i regionPos = new Vector2i(rX, rZ);
 
-            // we only want to start the render when there were no changes on a file for 10 seconds
+            // we only want to start the render when there were no changes on a file for a few seconds,
+            // tiles that already got rendered are skipped if the file changes again afterwards, so this does not need to be long
             TimerTask task = scheduledUpdates.remove(regionPos);
             if (task != null) task.cancel();
 
@@ -130,7 +133,7 @@ public void run() {
                 }
             };
             scheduledUpdates.put(regionPos, task);
-            delayTimer.schedule(task, 10000);
+            delayTimer.schedule(task, UPDATE_DELAY_MILLIS);
         } catch (NumberFormatException ignore) {}
     }
 
@@ -82,6 +82,15 @@ public void cancel() {
         for (T task : tasks) task.cancel();
     }
 
+    @Override
+    public boolean isExclusive() {
+        for (T task : tasks) {
+            if (task.isExclusive()) return true;
+        }
+
+        return false;
+    }
+
     @Override
     public boolean contains(RenderTask task) {
         if (this.equals(task)) return true;
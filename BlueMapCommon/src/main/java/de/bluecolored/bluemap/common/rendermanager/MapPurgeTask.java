@@ -52,6 +52,12 @@ public static MapPurgeTask create(Path mapDirectory) throws IOException {
         return new MapFilePurgeTask(mapDirectory);
     }
 
+    @Override
+    public boolean isExclusive() {
+        // never delete tiles that are still being rendered, or render tiles that are about to be deleted
+        return true;
+    }
+
     @DebugDump
     private static class MapFilePurgeTask extends MapPurgeTask {
 
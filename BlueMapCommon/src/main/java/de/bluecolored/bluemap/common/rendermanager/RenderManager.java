@@ -29,23 +29,38 @@
 
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Predicate;
 
+/**
+ * Schedules {@link RenderTask}s and works on them using a configurable amount of render-threads.<br>
+ * <br>
+ * Render-threads never wait on the scheduled task-list, they are only reading an immutable snapshot of it.
+ * Each call to {@link RenderTask#doWork()} is one unit of work, and as soon as a task is not handing out any more work,
+ * idle render-threads continue with the next scheduled task while the remaining threads finish the previous one.
+ * Only {@link RenderTask#isExclusive() exclusive} tasks are waiting for all previous tasks to be completely finished,
+ * and are completely finished themselves before the next task is started.
+ */
 public class RenderManager {
     private static final AtomicInteger nextRenderManagerIndex = new AtomicInteger(0);
+    private static final TaskEntry[] NO_TASKS = new TaskEntry[0];
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(10);
 
     @DebugDump private final int id;
     @DebugDump private volatile boolean running;
 
     private final AtomicInteger nextWorkerThreadIndex;
     @DebugDump private final Collection<WorkerThread> workerThreads;
-    private final AtomicInteger busyCount;
 
     private ProgressTracker progressTracker;
-    private volatile boolean newTask;
+    private RenderTask trackedTask;
 
-    @DebugDump private final LinkedList<RenderTask> renderTasks;
+    // all modifications are made while holding the lock of this list,
+    // the render-threads are only reading the published taskQueue-snapshot
+    private final LinkedList<TaskEntry> renderTasks;
+    private volatile TaskEntry[] taskQueue;
 
     public RenderManager() {
         this.id = nextRenderManagerIndex.getAndIncrement();
@@ -53,12 +68,12 @@ public RenderManager() {
 
         this.running = false;
         this.workerThreads = new ConcurrentLinkedDeque<>();
-        this.busyCount = new AtomicInteger(0);
 
         this.progressTracker = null;
-        this.newTask = true;
+        this.trackedTask = null;
 
         this.renderTasks = new LinkedList<>();
+        this.taskQueue = NO_TASKS;
     }
 
     public void start(int threadCount) throws IllegalStateException {
@@ -67,11 +82,13 @@ public void start(int threadCount) throws IllegalStateException {
         synchronized (this.workerThreads) {
             if (isRunning()) throw new IllegalStateException("RenderManager is already running!");
             this.workerThreads.clear();
-            this.busyCount.set(0);
 
-            if (progressTracker != null) progressTracker.cancel();
-            progressTracker = new ProgressTracker(5000, 12); // 5-sec steps over one minute
-            this.newTask = true;
+            synchronized (this.renderTasks) {
+                if (progressTracker != null) progressTracker.cancel();
+                progressTracker = new ProgressTracker(5000, 12); // 5-sec steps over one minute
+                this.trackedTask = null;
+                updateProgressTracker();
+            }
 
             this.running = true;
 
@@ -120,8 +137,8 @@ public boolean scheduleRenderTask(RenderTask task) {
             if (containsRenderTask(task)) return false;
 
             removeTasksThatAreContainedIn(task);
-            renderTasks.addLast(task);
-            renderTasks.notifyAll();
+            renderTasks.addLast(new TaskEntry(task));
+            publishTasks();
             return true;
         }
     }
@@ -142,39 +159,49 @@ public int scheduleRenderTasks(Collection<RenderTask> tasks) {
 
     public boolean scheduleRenderTaskNext(RenderTask task) {
         synchronized (this.renderTasks) {
-            if (renderTasks.size() <= 1) return scheduleRenderTask(task);
+            if (renderTasks.size() <= getActiveTaskCount()) return scheduleRenderTask(task);
             if (containsRenderTask(task)) return false;
 
             removeTasksThatAreContainedIn(task);
-            renderTasks.add(1, task);
-            renderTasks.notifyAll();
+            renderTasks.add(Math.min(getActiveTaskCount(), renderTasks.size()), new TaskEntry(task));
+            publishTasks();
             return true;
         }
     }
 
     public void reorderRenderTasks(Comparator<RenderTask> taskComparator) {
         synchronized (this.renderTasks) {
-            if (renderTasks.size() <= 2) return;
+            int activeCount = getActiveTaskCount();
+            if (renderTasks.size() - activeCount <= 1) return;
 
-            RenderTask currentTask = renderTasks.removeFirst();
-            renderTasks.sort(taskComparator);
-            renderTasks.addFirst(currentTask);
+            renderTasks.subList(activeCount, renderTasks.size())
+                    .sort((entry1, entry2) -> taskComparator.compare(entry1.task, entry2.task));
+            publishTasks();
         }
     }
 
     public boolean removeRenderTask(RenderTask task) {
         synchronized (this.renderTasks) {
-            if (this.renderTasks.isEmpty()) return false;
+            int activeCount = getActiveTaskCount();
+            Iterator<TaskEntry> iterator = renderTasks.iterator();
+            for (int i = 0; iterator.hasNext(); i++) {
+                TaskEntry entry = iterator.next();
+                if (!entry.task.equals(task)) continue;
+
+                if (i < activeCount) {
+                    // cancel the task if it is currently processed
+                    entry.task.cancel();
+                } else {
+                    // else remove it
+                    iterator.remove();
+                    entry.removed = true;
+                }
 
-            // cancel the task if it is currently processed
-            RenderTask first = renderTasks.getFirst();
-            if (first.equals(task)) {
-                first.cancel();
+                publishTasks();
                 return true;
             }
 
-            // else remove it
-            return renderTasks.remove(task);
+            return false;
         }
     }
 
@@ -182,10 +209,8 @@ public void removeRenderTasksIf(Predicate<RenderTask> removeCondition) {
         synchronized (this.renderTasks) {
             if (this.renderTasks.isEmpty()) return;
 
-            RenderTask first = renderTasks.removeFirst();
-            if (removeCondition.test(first)) first.cancel();
-            renderTasks.removeIf(removeCondition);
-            renderTasks.addFirst(first);
+            removeEntriesIf(removeCondition);
+            publishTasks();
         }
     }
 
@@ -193,10 +218,8 @@ public void removeAllRenderTasks() {
         synchronized (this.renderTasks) {
             if (this.renderTasks.isEmpty()) return;
 
-            RenderTask first = renderTasks.removeFirst();
-            first.cancel();
-            renderTasks.clear();
-            renderTasks.addFirst(first);
+            removeEntriesIf(task -> true);
+            publishTasks();
         }
     }
 
@@ -214,31 +237,31 @@ public long estimateCurrentRenderTaskTimeRemaining() {
     }
 
     public RenderTask getCurrentRenderTask() {
-        synchronized (this.renderTasks) {
-            if (this.renderTasks.isEmpty()) return null;
-            return this.renderTasks.getFirst();
-        }
+        TaskEntry[] tasks = this.taskQueue;
+        if (tasks.length == 0) return null;
+        return tasks[0].task;
     }
 
+    @DebugDump
     public List<RenderTask> getScheduledRenderTasks() {
-        synchronized (this.renderTasks) {
-            return new ArrayList<>(this.renderTasks);
-        }
+        TaskEntry[] tasks = this.taskQueue;
+        List<RenderTask> taskList = new ArrayList<>(tasks.length);
+        for (TaskEntry entry : tasks) taskList.add(entry.task);
+        return taskList;
     }
 
     public int getScheduledRenderTaskCount() {
-        return this.renderTasks.size();
+        return this.taskQueue.length;
     }
 
     public boolean containsRenderTask(RenderTask task) {
         synchronized (this.renderTasks) {
-            // checking all scheduled renderTasks except the first one, since that is already being processed
-            Iterator<RenderTask> iterator = renderTasks.iterator();
-            if (!iterator.hasNext()) return false;
-            iterator.next(); // skip first
+            // checking all scheduled renderTasks except the active ones, since they are already being processed
+            Iterator<TaskEntry> iterator = renderTasks.iterator();
+            for (int i = getActiveTaskCount(); i > 0 && iterator.hasNext(); i--) iterator.next(); // skip active
 
             while(iterator.hasNext()) {
-                if (iterator.next().contains(task)) return true;
+                if (iterator.next().task.contains(task)) return true;
             }
 
             return false;
@@ -252,54 +275,151 @@ public int getWorkerThreadCount() {
     private void removeTasksThatAreContainedIn(RenderTask containingTask) {
         synchronized (this.renderTasks) {
             if (renderTasks.size() < 2) return;
-            RenderTask first = renderTasks.removeFirst();
-            if (containingTask.contains(first)) first.cancel();
-            renderTasks.removeIf(containingTask::contains);
-            renderTasks.addFirst(first);
+            removeEntriesIf(containingTask::contains);
         }
     }
 
-    private void doWork() throws Exception {
-        RenderTask task;
+    /**
+     * Cancels all active tasks and removes all other tasks that are matching the condition.<br>
+     * The caller has to hold the lock of {@link #renderTasks} and publish the changes afterwards.
+     */
+    private void removeEntriesIf(Predicate<RenderTask> removeCondition) {
+        int activeCount = getActiveTaskCount();
+        Iterator<TaskEntry> iterator = renderTasks.iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            TaskEntry entry = iterator.next();
+            if (!removeCondition.test(entry.task)) continue;
+
+            if (i < activeCount) {
+                entry.task.cancel();
+            } else {
+                iterator.remove();
+                entry.removed = true;
+            }
+        }
+    }
 
-        synchronized (this.renderTasks) {
-            while (this.renderTasks.isEmpty())
-                this.renderTasks.wait(10000);
+    /**
+     * The amount of tasks at the start of the list that are already being processed.
+     * The first task is always considered active (if there is one).<br>
+     * The caller has to hold the lock of {@link #renderTasks}.
+     */
+    private int getActiveTaskCount() {
+        int count = 0;
+        for (TaskEntry entry : renderTasks) {
+            if (!entry.started) break;
+            count++;
+        }
 
-            task = this.renderTasks.getFirst();
-            if (this.newTask) {
-                this.newTask = false;
-                this.progressTracker.resetAndStart(task::estimateProgress);
-            }
+        return Math.min(Math.max(count, 1), renderTasks.size());
+    }
 
-            // the following is making sure every render-thread is done working on this task (no thread is "busy")
-            // before continuing working on the next RenderTask
-            if (!task.hasMoreWork()) {
-                if (busyCount.get() <= 0) {
-                    this.renderTasks.removeFirst();
-                    this.renderTasks.notifyAll();
+    /**
+     * Publishes the current state of the task-list to the render-threads and wakes them up.<br>
+     * The caller has to hold the lock of {@link #renderTasks}.
+     */
+    private void publishTasks() {
+        this.taskQueue = renderTasks.toArray(NO_TASKS);
+        updateProgressTracker();
+        this.renderTasks.notifyAll();
 
-                    this.newTask = true;
+        for (WorkerThread worker : workerThreads) LockSupport.unpark(worker);
+    }
 
-                    busyCount.set(0);
-                } else {
-                    this.renderTasks.wait(10000);
-                }
+    /**
+     * The caller has to hold the lock of {@link #renderTasks}.
+     */
+    private void updateProgressTracker() {
+        TaskEntry first = renderTasks.peekFirst();
+        RenderTask task = first != null && first.started ? first.task : null;
+        if (task == trackedTask) return;
+
+        this.trackedTask = task;
+        if (task != null && progressTracker != null)
+            progressTracker.resetAndStart(task::estimateProgress);
+    }
 
-                return;
-            }
+    private void doWork() throws Exception {
+        TaskEntry entry = nextTask();
 
-            this.busyCount.incrementAndGet();
+        if (entry == null) {
+            // nothing to do, wait until new tasks get published
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            return;
         }
 
         try {
-            task.doWork();
+            entry.task.doWork();
         } finally {
-            synchronized (renderTasks) {
-                this.busyCount.decrementAndGet();
-                this.renderTasks.notifyAll();
+            if (entry.busyCount.decrementAndGet() <= 0 && !entry.task.hasMoreWork())
+                completeTask(entry);
+        }
+    }
+
+    /**
+     * Finds the first task that is handing out more work and marks this thread as busy on it.
+     * Returns null if there is currently nothing to do.
+     */
+    private TaskEntry nextTask() {
+        for (TaskEntry entry : this.taskQueue) {
+            if (entry.task.hasMoreWork()) {
+                if (!entry.started && !startTask(entry)) return null;
+
+                entry.busyCount.incrementAndGet();
+                return entry;
             }
+
+            if (entry.busyCount.get() <= 0) {
+                completeTask(entry);
+                continue;
+            }
+
+            // other threads are still finishing this task,
+            // only continue with the next task if this one is not exclusive
+            if (entry.task.isExclusive()) return null;
         }
+
+        return null;
+    }
+
+    private boolean startTask(TaskEntry entry) {
+        synchronized (this.renderTasks) {
+            if (entry.started) return true;
+            if (entry.removed) return false;
+
+            // exclusive tasks wait for all previous tasks to be completely finished
+            if (entry.task.isExclusive() && renderTasks.peekFirst() != entry) return false;
+
+            entry.started = true;
+            updateProgressTracker();
+            return true;
+        }
+    }
+
+    private void completeTask(TaskEntry entry) {
+        synchronized (this.renderTasks) {
+            if (entry.removed || entry.busyCount.get() > 0 || entry.task.hasMoreWork()) return;
+
+            renderTasks.remove(entry);
+            entry.removed = true;
+            publishTasks();
+        }
+    }
+
+    private static class TaskEntry {
+
+        private final RenderTask task;
+        private final AtomicInteger busyCount;
+        private volatile boolean started;
+        private volatile boolean removed;
+
+        private TaskEntry(RenderTask task) {
+            this.task = task;
+            this.busyCount = new AtomicInteger(0);
+            this.started = false;
+            this.removed = false;
+        }
+
     }
 
     public class WorkerThread extends Thread {
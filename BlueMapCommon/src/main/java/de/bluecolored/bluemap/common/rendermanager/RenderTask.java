@@ -53,6 +53,16 @@ default boolean contains(RenderTask task) {
         return equals(task);
     }
 
+    /**
+     * Whether this task has to run on its own.<br>
+     * An exclusive task is only started after all previously scheduled tasks are completely finished,
+     * and all following tasks are only started after the exclusive task is completely finished.<br>
+     * Non-exclusive tasks might already start while other render-threads are still finishing the work of previous tasks.
+     */
+    default boolean isExclusive() {
+        return false;
+    }
+
     String getDescription();
 
 }
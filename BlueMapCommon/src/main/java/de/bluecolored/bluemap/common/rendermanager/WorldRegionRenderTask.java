@@ -28,6 +28,7 @@
 import com.flowpowered.math.vector.Vector2l;
 import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.MapRenderState;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.Region;
 
@@ -66,31 +67,42 @@ public WorldRegionRenderTask(BmMap map, Vector2i worldRegion, boolean force) {
     }
 
     private synchronized void init() {
-        Set<Vector2l> tileSet = new HashSet<>();
+        Map<Vector2l, Long> tileChangeTimes = new HashMap<>();
         startTime = System.currentTimeMillis();
 
         //Logger.global.logInfo("Starting: " + worldRegion);
 
+        MapRenderState renderState = map.getRenderState();
+
         long changesSince = 0;
-        if (!force) changesSince = map.getRenderState().getRenderTime(worldRegion);
+        if (!force) changesSince = renderState.getRenderTime(worldRegion);
 
         Region region = map.getWorld().getRegion(worldRegion.getX(), worldRegion.getY());
-        Collection<Vector2i> chunks = region.listChunks(changesSince);
+        Map<Vector2i, Long> chunks = region.getChunkModificationTimes(changesSince);
 
         Grid tileGrid = map.getHiresModelManager().getTileGrid();
         Grid chunkGrid = map.getWorld().getChunkGrid();
 
-        for (Vector2i chunk : chunks) {
-            Vector2i tileMin = chunkGrid.getCellMin(chunk, tileGrid);
-            Vector2i tileMax = chunkGrid.getCellMax(chunk, tileGrid);
+        // a chunk also changes the tiles that read its blocks in their render-border
+        for (Map.Entry<Vector2i, Long> chunk : chunks.entrySet()) {
+            Vector2i tileMin = tileGrid.getCell(chunkGrid.getCellMin(chunk.getKey()).sub(BmMap.TILE_RENDER_BORDER, BmMap.TILE_RENDER_BORDER));
+            Vector2i tileMax = tileGrid.getCell(chunkGrid.getCellMax(chunk.getKey()).add(BmMap.TILE_RENDER_BORDER, BmMap.TILE_RENDER_BORDER));
 
             for (int x = tileMin.getX(); x <= tileMax.getX(); x++) {
                 for (int z = tileMin.getY(); z <= tileMax.getY(); z++) {
-                    tileSet.add(new Vector2l(x, z));
+                    tileChangeTimes.merge(new Vector2l(x, z), chunk.getValue(), Math::max);
                 }
             }
         }
 
+        // only render tiles that have not been rendered since their last change, e.g. by an interrupted or a neighbouring render
+        Set<Vector2l> tileSet = new HashSet<>();
+        for (Map.Entry<Vector2l, Long> tile : tileChangeTimes.entrySet()) {
+            if (force || tile.getValue() >= renderState.getTileRenderTime(tile.getKey().toInt())) {
+                tileSet.add(tile.getKey());
+            }
+        }
+
         this.tileCount = tileSet.size();
         this.tiles = tileSet.stream()
                 .sorted(WorldRegionRenderTask::compareVec2L) //sort with longs to avoid overflow (comparison uses distanceSquared)
@@ -116,8 +128,18 @@ public void doWork() {
         }
 
         //Logger.global.logInfo("Working on " + worldRegion + " - Tile " + tile);
-        if (isAllChunksInTileGenerated(tile)) {
-            map.renderTile(tile); // <- actual work
+        long tileStartTime = System.currentTimeMillis();
+        long tileDigest = map.getTileContentDigest(tile);
+        if (tileDigest != BmMap.TILE_NOT_GENERATED) {
+            MapRenderState renderState = map.getRenderState();
+
+            // skip tiles whose chunks (and settings) have been saved but did not change their content since the tile was rendered
+            if (force || tileDigest == 0 || tileDigest != renderState.getTileDigest(tile)) {
+                map.renderTile(tile); // <- actual work
+            }
+
+            renderState.setTileRenderTime(tile, tileStartTime);
+            renderState.setTileDigest(tile, tileDigest);
         }
 
         synchronized (this) {
@@ -129,22 +151,6 @@ public void doWork() {
         }
     }
 
-    private boolean isAllChunksInTileGenerated(Vector2i tile) {
-        Grid tileGrid = map.getHiresModelManager().getTileGrid();
-        Grid chunkGrid = map.getWorld().getChunkGrid();
-
-        Vector2i minChunk = tileGrid.getCellMin(tile, chunkGrid);
-        Vector2i maxChunk = tileGrid.getCellMax(tile, chunkGrid);
-
-        for (int x = minChunk.getX(); x <= maxChunk.getX(); x++) {
-            for (int z = minChunk.getY(); z <= maxChunk.getY(); z++) {
-                if (!map.getWorld().getChunk(x, z).isGenerated()) return false;
-            }
-        }
-
-        return true;
-    }
-
     private void complete() {
         map.getRenderState().setRenderTime(worldRegion, startTime);
 
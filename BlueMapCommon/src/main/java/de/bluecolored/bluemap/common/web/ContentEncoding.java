@@ -0,0 +1,134 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.webserver.HttpRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The content-encodings that files can be sent with.<br>
+ * The order of the constants is the order of preference if a client accepts multiple encodings.
+ */
+enum ContentEncoding {
+
+    /**
+     * Brotli, only sent if the file has been compressed beforehand (e.g. by a build-step)
+     */
+    BROTLI ("br", ".br", null),
+
+    /**
+     * Zstandard, only sent if the file has been compressed beforehand (e.g. by a build-step)
+     */
+    ZSTD ("zstd", ".zst", null),
+
+    GZIP ("gzip", Compression.GZIP),
+    DEFLATE ("deflate", Compression.DEFLATE);
+
+    private final String id;
+    private final String fileSuffix;
+    private final Compression compression;
+
+    ContentEncoding(String id, Compression compression) {
+        this(id, compression.getFileSuffix(), compression);
+    }
+
+    ContentEncoding(String id, String fileSuffix, Compression compression) {
+        this.id = id;
+        this.fileSuffix = fileSuffix;
+        this.compression = compression;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileSuffix() {
+        return fileSuffix;
+    }
+
+    /**
+     * Whether the server is able to decode data with this encoding itself
+     */
+    public boolean isDecodable() {
+        return compression != null;
+    }
+
+    public InputStream decode(InputStream in) throws IOException {
+        if (compression == null) throw new IOException("Content-Encoding '" + id + "' can not be decoded!");
+        return compression.decompress(in);
+    }
+
+    public boolean isAccepted(int acceptedEncodings) {
+        return (acceptedEncodings & (1 << ordinal())) != 0;
+    }
+
+    /**
+     * Returns the content-encoding of the data of a {@link Compression}, or null if the compressed data can not be sent as it is
+     */
+    public static ContentEncoding forCompression(Compression compression) {
+        String contentEncoding = compression.getContentEncoding();
+        if (contentEncoding == null) return null;
+
+        for (ContentEncoding encoding : values()) {
+            if (encoding.id.equals(contentEncoding)) return encoding;
+        }
+
+        return null;
+    }
+
+    /**
+     * Parses the Accept-Encoding header of the request into a bit-mask of the accepted {@link ContentEncoding}s
+     */
+    public static int getAcceptedEncodings(HttpRequest request) {
+        int accepted = 0;
+        for (String value : request.getLowercaseHeader("Accept-Encoding")) {
+            String[] parts = value.split(";");
+            String id = parts[0].trim();
+
+            // q=0 means the encoding is explicitly not accepted
+            boolean isAccepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (!param.startsWith("q=")) continue;
+                try {
+                    isAccepted = Double.parseDouble(param.substring(2)) > 0;
+                } catch (NumberFormatException ignore) {}
+            }
+
+            for (ContentEncoding encoding : values()) {
+                if (!encoding.id.equals(id) && !id.equals("*")) continue;
+
+                if (isAccepted) accepted |= 1 << encoding.ordinal();
+                else if (encoding.id.equals(id)) accepted &= ~(1 << encoding.ordinal());
+            }
+        }
+
+        return accepted;
+    }
+
+}
@@ -24,6 +24,10 @@
  */
 package de.bluecolored.bluemap.common.web;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.bluecolored.bluemap.core.storage.FileStorage;
+import de.bluecolored.bluemap.core.storage.TileFormat;
 import de.bluecolored.bluemap.core.webserver.HttpRequest;
 import de.bluecolored.bluemap.core.webserver.HttpRequestHandler;
 import de.bluecolored.bluemap.core.webserver.HttpResponse;
@@ -32,6 +36,7 @@
 import org.apache.commons.lang3.time.DateFormatUtils;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.util.GregorianCalendar;
@@ -39,7 +44,6 @@
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 public class FileRequestHandler implements HttpRequestHandler {
@@ -48,16 +52,38 @@ public class FileRequestHandler implements HttpRequestHandler {
     private static final long DEFLATE_MAX_SIZE = 10L * 1024L * 1024L;
     private static final long INFLATE_MAX_SIZE = 10L * 1024L * 1024L;
 
+    private static final String BINARY_TILE_SUFFIX = TileFormat.BINARY.getFileSuffix();
+
+    private static final long DEFAULT_CACHE_SIZE = 32L * 1024L * 1024L;
+    private static final long CACHE_MAX_FILE_SIZE = 1024L * 1024L;
+    private static final long CACHE_REVALIDATE_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private static final long[] UNSATISFIABLE_RANGE = new long[0];
+
     private final Path webRoot;
     private final String serverName;
 
     private final File emptyTileFile;
 
+    private final Cache<CacheKey, CachedFile> fileCache;
+
     public FileRequestHandler(Path webRoot, String serverName) {
+        this(webRoot, serverName, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize the maximum amount of bytes of (encoded) file-data that are kept in memory for frequently requested files, 0 disables the cache
+     */
+    public FileRequestHandler(Path webRoot, String serverName, long cacheSize) {
         this.webRoot = webRoot.normalize();
         this.serverName = serverName;
 
         this.emptyTileFile = webRoot.resolve("assets").resolve("emptyTile.json").toFile();
+
+        this.fileCache = cacheSize > 0 ? Caffeine.newBuilder()
+                .maximumWeight(cacheSize)
+                .weigher((CacheKey key, CachedFile file) -> file.getWeight())
+                .build() : null;
     }
 
     @Override
@@ -93,9 +119,18 @@ private HttpResponse generateResponse(HttpRequest request) {
             return new HttpResponse(HttpStatusCode.NOT_FOUND);
         }
 
-        // can we use deflation?
-        boolean isDeflationPossible = request.getLowercaseHeader("Accept-Encoding").contains("gzip");
-        boolean isDeflated = false;
+        // which encodings does the client accept?
+        int acceptedEncodings = ContentEncoding.getAcceptedEncodings(request);
+
+        // is the file already cached?
+        CacheKey cacheKey = new CacheKey(request.getPath(), acceptedEncodings);
+        if (fileCache != null) {
+            CachedFile cachedFile = fileCache.getIfPresent(cacheKey);
+            if (cachedFile != null) {
+                if (cachedFile.isValid()) return cachedFile.createResponse(request);
+                fileCache.invalidate(cacheKey);
+            }
+        }
 
         // check if file is in web-root
         if (!filePath.normalize().startsWith(webRoot)){
@@ -111,73 +146,269 @@ private HttpResponse generateResponse(HttpRequest request) {
             return response;
         }
 
-        if (!file.exists() || file.isDirectory()){
-            file = new File(filePath.toString() + ".gz");
-            isDeflated = true;
+        // find the file or an encoded version of it
+        File baseFile = file;
+        if (!hasVariant(baseFile)) {
+            baseFile = new File(file, "index.html");
         }
 
-        if (!file.exists() || file.isDirectory()){
-            file = new File(filePath.toString() + "/index.html");
-            isDeflated = false;
-        }
+        boolean isFallback = false;
+        if (!hasVariant(baseFile) && file.toPath().startsWith(webRoot.resolve("data"))){
+            // binary tiles can not fall back to the (json) empty-tile
+            if (path.endsWith(BINARY_TILE_SUFFIX)) return new HttpResponse(HttpStatusCode.NO_CONTENT);
 
-        if (!file.exists() || file.isDirectory()){
-            file = new File(filePath.toString() + "/index.html.gz");
-            isDeflated = true;
+            baseFile = emptyTileFile;
+            isFallback = true;
         }
 
-        if (!file.exists() && file.toPath().startsWith(webRoot.resolve("data"))){
-            file = emptyTileFile;
-            isDeflated = false;
+        // pick the stored variant that can be sent with the least work
+        ContentEncoding storedEncoding = null;
+        file = null;
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            File encodedFile = new File(baseFile.getPath() + encoding.getFileSuffix());
+            if (encoding.isAccepted(acceptedEncodings) && isFile(encodedFile)) {
+                file = encodedFile;
+                storedEncoding = encoding;
+                break;
+            }
         }
 
-        if (!file.exists() || file.isDirectory()) {
-            return new HttpResponse(HttpStatusCode.NOT_FOUND);
+        if (file == null && isFile(baseFile)) {
+            file = baseFile;
         }
 
-        if (isDeflationPossible && (!file.getName().endsWith(".gz"))){
-            File deflatedFile = new File(file.getAbsolutePath() + ".gz");
-            if (deflatedFile.exists()){
-                file = deflatedFile;
-                isDeflated = true;
+        if (file == null) {
+            for (ContentEncoding encoding : ContentEncoding.values()) {
+                File encodedFile = new File(baseFile.getPath() + encoding.getFileSuffix());
+                if (isFile(encodedFile)) {
+                    file = encodedFile;
+                    storedEncoding = encoding;
+                    break;
+                }
             }
         }
 
+        if (file == null) {
+            return new HttpResponse(HttpStatusCode.NOT_FOUND);
+        }
+
         // check if file is still in web-root and is not a directory
         if (!file.toPath().normalize().startsWith(webRoot) || file.isDirectory()){
             return new HttpResponse(HttpStatusCode.FORBIDDEN);
         }
 
-        // check modified
+        // decide how the file is going to be sent, files are only (de)compressed on the fly if it is worth it
         long lastModified = file.lastModified();
+        long length = file.length();
+        ContentEncoding sentEncoding = storedEncoding;
+        if (storedEncoding == null) {
+            if (ContentEncoding.GZIP.isAccepted(acceptedEncodings) && length > DEFLATE_MIN_SIZE && length < DEFLATE_MAX_SIZE)
+                sentEncoding = ContentEncoding.GZIP;
+        } else if (!storedEncoding.isAccepted(acceptedEncodings)) {
+            if (!storedEncoding.isDecodable()) return new HttpResponse(HttpStatusCode.NOT_ACCEPTABLE);
+            if (length <= INFLATE_MAX_SIZE) sentEncoding = null;
+        }
+
+        // cache the encoded file, the empty-tile fallback is not cached because the tile might get rendered any time
+        if (fileCache != null && !isFallback && length <= CACHE_MAX_FILE_SIZE) {
+            try {
+                CachedFile cachedFile = new CachedFile(baseFile.getName(), file, lastModified, length, storedEncoding, sentEncoding);
+                fileCache.put(cacheKey, cachedFile);
+                return cachedFile.createResponse(request);
+            } catch (FileNotFoundException e) {
+                return new HttpResponse(HttpStatusCode.NOT_FOUND);
+            } catch (IOException e) {
+                return new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
+            }
+        }
+
+        // files that are sent as they are stored support ranges, other files are (de)compressed on the fly
+        boolean isRaw = sentEncoding == storedEncoding;
+
+        String contentHash = readContentHash(file);
+        String eTag = createETag(contentHash, lastModified, length, getEncodingSuffix(isRaw, sentEncoding));
+
+        // check modified
+        if (isNotModified(request, lastModified, eTag)) {
+            return createNotModifiedResponse(eTag);
+        }
+
+        try {
+            if (isRaw) {
+                long[] range = getRange(request, eTag, length);
+                if (range == UNSATISFIABLE_RANGE) return createRangeNotSatisfiableResponse(length);
+
+                HttpResponse response = createResponse(request, baseFile.getName(), lastModified, eTag, contentHash, sentEncoding, length, range);
+                FileInputStream in = new FileInputStream(file);
+                if (range != null) {
+                    in.getChannel().position(range[0]);
+                    response.setData(in, range[1] - range[0]);
+                } else {
+                    response.setData(in);
+                }
+                return response;
+            }
+
+            HttpResponse response = createResponse(request, baseFile.getName(), lastModified, eTag, contentHash, sentEncoding, -1, null);
+            if (storedEncoding != null){
+                response.setData(storedEncoding.decode(new FileInputStream(file)));
+            } else {
+                response.setData(new ByteArrayInputStream(deflate(Files.readAllBytes(file.toPath()))));
+            }
+            return response;
+
+        } catch (FileNotFoundException e) {
+            return new HttpResponse(HttpStatusCode.NOT_FOUND);
+        } catch (IOException e) {
+            return new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Whether the file or any encoded version of it exists
+     */
+    private static boolean hasVariant(File file) {
+        if (isFile(file)) return true;
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            if (isFile(new File(file.getPath() + encoding.getFileSuffix()))) return true;
+        }
+        return false;
+    }
+
+    private static boolean isFile(File file) {
+        return file.exists() && !file.isDirectory();
+    }
+
+    static boolean isNotModified(HttpRequest request, long lastModified, String eTag) {
+        //check ETag, if the client sends one the modification-time is ignored
+        Set<String> etagStringSet = request.getHeader("If-None-Match");
+        if (!etagStringSet.isEmpty()){
+            return etagStringSet.contains(eTag) || etagStringSet.contains("*");
+        }
+
         Set<String> modStringSet = request.getHeader("If-Modified-Since");
-        if (!modStringSet.isEmpty()){
+        if (lastModified > 0 && !modStringSet.isEmpty()){
             try {
                 long since = stringToTimestamp(modStringSet.iterator().next());
                 if (since + 1000 >= lastModified){
-                    return new HttpResponse(HttpStatusCode.NOT_MODIFIED);
+                    return true;
                 }
             } catch (IllegalArgumentException ignored){}
         }
 
-        //check ETag
-        String eTag = Long.toHexString(file.length()) + Integer.toHexString(file.hashCode()) + Long.toHexString(lastModified);
-        Set<String> etagStringSet = request.getHeader("If-None-Match");
-        if (!etagStringSet.isEmpty()){
-            if(etagStringSet.iterator().next().equals(eTag)) {
-                return new HttpResponse(HttpStatusCode.NOT_MODIFIED);
+        return false;
+    }
+
+    /**
+     * Returns the requested byte-range [start, end) of a content with the given length,
+     * null if the whole content should be sent or {@link #UNSATISFIABLE_RANGE} if the range can not be satisfied.<br>
+     * Only single ranges are supported, requests for multiple ranges are answered with the whole content.
+     */
+    private static long[] getRange(HttpRequest request, String eTag, long length) {
+        Set<String> rangeSet = request.getHeader("Range");
+        if (rangeSet.size() != 1) return null;
+
+        // only send a range if the client still has the same content (weak ETags never match)
+        Set<String> ifRangeSet = request.getHeader("If-Range");
+        if (!ifRangeSet.isEmpty() && (eTag.startsWith("W/") || !ifRangeSet.contains(eTag))) return null;
+
+        String range = rangeSet.iterator().next();
+        if (!range.startsWith("bytes=")) return null;
+        range = range.substring(6).trim();
+
+        int separator = range.indexOf('-');
+        if (separator < 0) return null;
+
+        try {
+            long start, end;
+            if (separator == 0) {
+                long suffixLength = Long.parseLong(range.substring(1));
+                if (suffixLength <= 0) return UNSATISFIABLE_RANGE;
+                start = Math.max(length - suffixLength, 0);
+                end = length;
+            } else {
+                start = Long.parseLong(range.substring(0, separator));
+                end = separator == range.length() - 1 ? length : Long.parseLong(range.substring(separator + 1)) + 1;
+                end = Math.min(end, length);
             }
+
+            if (start >= length || start >= end) return UNSATISFIABLE_RANGE;
+            return new long[]{ start, end };
+        } catch (NumberFormatException ex) {
+            return null;
         }
+    }
 
-        //create response
-        HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+    /**
+     * The ETag of content that is (de)compressed on the fly has to be different from the ETag of the stored content
+     */
+    static String getEncodingSuffix(boolean isRaw, ContentEncoding sentEncoding) {
+        if (isRaw) return "";
+        return sentEncoding == null ? "-identity" : "-" + sentEncoding.getId();
+    }
+
+    /**
+     * The content-hash both the cached and the uncached responses derive their ETag from.<br>
+     * Only gzip-compressed map-tiles have their content-hash stored in their header, for other files this is null and
+     * {@link #createETag(String, long, long, String)} creates a weak ETag.
+     */
+    static String readContentHash(File file) {
+        return FileStorage.readContentHash(file.toPath());
+    }
+
+    static String createETag(String contentHash, long lastModified, long length, String encodingSuffix) {
+        if (contentHash != null) return "\"" + contentHash + encodingSuffix + "\"";
+        return "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + encodingSuffix + "\"";
+    }
+
+    /**
+     * A request is content-addressed if it contains the hash of the content, so the response will never change
+     */
+    private static boolean isContentAddressed(HttpRequest request, String contentHash) {
+        return contentHash != null && contentHash.equals(request.getGETParams().get("hash"));
+    }
+
+    /**
+     * Creates the response for a file, the data has to be set by the caller.
+     * If the length of the content is known (&gt;= 0), ranges of the content are accepted.
+     */
+    static HttpResponse createResponse(HttpRequest request, String fileName, long lastModified, String eTag, String contentHash, ContentEncoding contentEncoding, long length, long[] range) {
+        HttpResponse response = new HttpResponse(range != null ? HttpStatusCode.PARTIAL_CONTENT : HttpStatusCode.OK);
         response.addHeader("ETag", eTag);
         if (lastModified > 0) response.addHeader("Last-Modified", timestampToString(lastModified));
         response.addHeader("Cache-Control", "public");
-        response.addHeader("Cache-Control", "max-age=" + TimeUnit.HOURS.toSeconds(1));
+        if (isContentAddressed(request, contentHash)) {
+            response.addHeader("Cache-Control", "max-age=" + TimeUnit.DAYS.toSeconds(365));
+            response.addHeader("Cache-Control", "immutable");
+        } else {
+            response.addHeader("Cache-Control", "max-age=" + TimeUnit.HOURS.toSeconds(1));
+        }
+        response.addHeader("Content-Type", getContentType(fileName));
+        if (contentEncoding != null) response.addHeader("Content-Encoding", contentEncoding.getId());
+        response.addHeader("Vary", "Accept-Encoding");
+
+        if (length >= 0) {
+            response.addHeader("Accept-Ranges", "bytes");
+            if (range != null) response.addHeader("Content-Range", "bytes " + range[0] + "-" + (range[1] - 1) + "/" + length);
+        }
+
+        return response;
+    }
+
+    static HttpResponse createNotModifiedResponse(String eTag) {
+        HttpResponse response = new HttpResponse(HttpStatusCode.NOT_MODIFIED);
+        response.addHeader("ETag", eTag);
+        return response;
+    }
 
-        //add content type header
-        String filetype = file.getName();
+    private static HttpResponse createRangeNotSatisfiableResponse(long length) {
+        HttpResponse response = new HttpResponse(HttpStatusCode.RANGE_NOT_SATISFIABLE);
+        response.addHeader("Content-Range", "bytes */" + length);
+        return response;
+    }
+
+    private static String getContentType(String fileName) {
+        String filetype = fileName;
         if (filetype.endsWith(".gz")) filetype = filetype.substring(0, filetype.length() - 3);
         int pointIndex = filetype.lastIndexOf('.');
         if (pointIndex >= 0) filetype = filetype.substring(pointIndex + 1);
@@ -187,6 +418,9 @@ private HttpResponse generateResponse(HttpRequest request) {
         case "json" :
             contentType = "application/json";
             break;
+        case "prbm" :
+            contentType = "application/octet-stream";
+            break;
         case "png" :
             contentType = "image/png";
             break;
@@ -213,42 +447,16 @@ private HttpResponse generateResponse(HttpRequest request) {
             contentType = "text/xml";
             break;
         }
-        response.addHeader("Content-Type", contentType);
 
+        return contentType;
+    }
 
-        try {
-            if (isDeflated){
-                if (isDeflationPossible || file.length() > INFLATE_MAX_SIZE){
-                    response.addHeader("Content-Encoding", "gzip");
-                    response.setData(new FileInputStream(file));
-                    return response;
-                } else {
-                    response.setData(new GZIPInputStream(new FileInputStream(file)));
-                    return response;
-                }
-            } else {
-                if (isDeflationPossible && file.length() > DEFLATE_MIN_SIZE && file.length() < DEFLATE_MAX_SIZE){
-                    FileInputStream fis = new FileInputStream(file);
-                    ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-                    GZIPOutputStream zos = new GZIPOutputStream(byteOut);
-                    IOUtils.copyLarge(fis, zos);
-                    zos.close();
-                    fis.close();
-                    byte[] compressedData = byteOut.toByteArray();
-                    response.setData(new ByteArrayInputStream(compressedData));
-                    response.addHeader("Content-Encoding", "gzip");
-                    return response;
-                } else {
-                    response.setData(new FileInputStream(file));
-                    return response;
-                }
-            }
-
-        } catch (FileNotFoundException e) {
-            return new HttpResponse(HttpStatusCode.NOT_FOUND);
-        } catch (IOException e) {
-            return new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        try (GZIPOutputStream zos = new GZIPOutputStream(byteOut)) {
+            zos.write(data);
         }
+        return byteOut.toByteArray();
     }
 
     private static String timestampToString(long time){
@@ -285,4 +493,104 @@ private static long stringToTimestamp(String timeString) throws IllegalArgumentE
         }
     }
 
+    private static class CacheKey {
+
+        private final String path;
+        private final int acceptedEncodings;
+
+        public CacheKey(String path, int acceptedEncodings) {
+            this.path = path;
+            this.acceptedEncodings = acceptedEncodings;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CacheKey cacheKey = (CacheKey) o;
+            return acceptedEncodings == cacheKey.acceptedEncodings && path.equals(cacheKey.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + acceptedEncodings;
+        }
+
+    }
+
+    /**
+     * A file with its response-data already encoded the way it will be sent.<br>
+     * The file is checked for modifications (e.g. a tile that got rendered again) at most once per {@link #CACHE_REVALIDATE_INTERVAL}.
+     */
+    private static class CachedFile {
+
+        private final File file;
+        private final long lastModified, length;
+        private final String contentHash;
+        private final String eTag;
+        private final String fileName;
+
+        private final byte[] data;
+        private final ContentEncoding contentEncoding;
+
+        private volatile long validatedTime;
+
+        public CachedFile(String fileName, File file, long lastModified, long length, ContentEncoding storedEncoding, ContentEncoding sentEncoding) throws IOException {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.fileName = fileName;
+            this.contentEncoding = sentEncoding;
+
+            byte[] fileData = Files.readAllBytes(file.toPath());
+            this.contentHash = readContentHash(file);
+
+            boolean isRaw = storedEncoding == sentEncoding;
+            if (isRaw) {
+                this.data = fileData;
+            } else if (storedEncoding != null) {
+                try (InputStream in = storedEncoding.decode(new ByteArrayInputStream(fileData))) {
+                    this.data = IOUtils.toByteArray(in);
+                }
+            } else {
+                this.data = deflate(fileData);
+            }
+
+            this.eTag = createETag(contentHash, lastModified, length, getEncodingSuffix(isRaw, sentEncoding));
+            this.validatedTime = System.currentTimeMillis();
+        }
+
+        public boolean isValid() {
+            long now = System.currentTimeMillis();
+            if (now - validatedTime < CACHE_REVALIDATE_INTERVAL) return true;
+
+            if (file.lastModified() != lastModified || file.length() != length) return false;
+
+            validatedTime = now;
+            return true;
+        }
+
+        public HttpResponse createResponse(HttpRequest request) {
+            if (isNotModified(request, lastModified, eTag)) {
+                return createNotModifiedResponse(eTag);
+            }
+
+            long[] range = getRange(request, eTag, data.length);
+            if (range == UNSATISFIABLE_RANGE) return createRangeNotSatisfiableResponse(data.length);
+
+            HttpResponse response = FileRequestHandler.createResponse(request, fileName, lastModified, eTag, contentHash, contentEncoding, data.length, range);
+            if (range != null) {
+                response.setData(new ByteArrayInputStream(data, (int) range[0], (int) (range[1] - range[0])));
+            } else {
+                response.setData(new ByteArrayInputStream(data));
+            }
+            return response;
+        }
+
+        public int getWeight() {
+            return data.length + fileName.length() * 2 + 128;
+        }
+
+    }
+
 }
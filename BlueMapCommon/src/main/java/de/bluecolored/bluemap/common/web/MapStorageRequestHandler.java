@@ -0,0 +1,174 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.common.ThrowingFunction;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.storage.FileStorage;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.TileType;
+import de.bluecolored.bluemap.core.storage.WriteBehindStorage;
+import de.bluecolored.bluemap.core.util.ContentHash;
+import de.bluecolored.bluemap.core.webserver.HttpRequest;
+import de.bluecolored.bluemap.core.webserver.HttpRequestHandler;
+import de.bluecolored.bluemap.core.webserver.HttpResponse;
+import de.bluecolored.bluemap.core.webserver.HttpStatusCode;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the map-tiles of maps that are not stored as plain files (see {@link FileStorage}) directly from their {@link Storage}.<br>
+ * All other requests, and requests for tiles that don't exist, are passed on to the fallback-handler.
+ */
+public class MapStorageRequestHandler implements HttpRequestHandler {
+
+    private static final Pattern TILE_PATTERN = Pattern.compile("^x(-?\\d+)z(-?\\d+)\\.(json|prbm)(\\.gz)?$");
+
+    private final ThrowingFunction<String, Storage, IOException> mapStorageProvider;
+    private final HttpRequestHandler fallback;
+
+    /**
+     * @param mapStorageProvider returns the {@link Storage} for a map-id, or <code>null</code> if there is no such map
+     */
+    public MapStorageRequestHandler(ThrowingFunction<String, Storage, IOException> mapStorageProvider, HttpRequestHandler fallback) {
+        this.mapStorageProvider = mapStorageProvider;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        HttpResponse response = null;
+        if (
+            request.getMethod().equalsIgnoreCase("GET") ||
+            request.getMethod().equalsIgnoreCase("POST")
+        ) response = generateResponse(request);
+
+        if (response == null) return fallback.handle(request);
+        return response;
+    }
+
+    /**
+     * Returns the response for a request of a map-tile, or null if the request should be handled by the fallback
+     */
+    private HttpResponse generateResponse(HttpRequest request) {
+        String path = request.getPath();
+
+        // normalize path
+        if (path.startsWith("/")) path = path.substring(1);
+        if (path.endsWith("/")) path = path.substring(0, path.length() - 1);
+
+        // data/<map-id>/hires/<tile-path> or data/<map-id>/lowres[/<lod>]/<tile-path>
+        String[] parts = path.split("/");
+        if (parts.length < 4 || !parts[0].equals("data")) return null;
+
+        String mapId = parts[1];
+        int tilePathStart = 3;
+        TileType tileType;
+        int lod = 0;
+        if (parts[2].equals(TileType.HIRES.getTypeId())) {
+            tileType = TileType.HIRES;
+        } else if (parts[2].equals(TileType.LOWRES.getTypeId())) {
+            tileType = TileType.LOWRES;
+            if (parts[3].matches("\\d+")) {
+                lod = Integer.parseInt(parts[3]);
+                if (lod < 1) return null;
+                tilePathStart = 4;
+            }
+        } else {
+            return null;
+        }
+
+        StringBuilder tilePath = new StringBuilder();
+        for (int i = tilePathStart; i < parts.length; i++) tilePath.append(parts[i]);
+
+        Matcher matcher = TILE_PATTERN.matcher(tilePath);
+        if (!matcher.matches()) return null;
+
+        try {
+            Storage storage = mapStorageProvider.apply(mapId);
+            if (storage == null || isFileStorage(storage)) return null;
+
+            int x = Integer.parseInt(matcher.group(1));
+            int z = Integer.parseInt(matcher.group(2));
+
+            byte[] data;
+            Optional<InputStream> in = storage.readMapTileCompressed(mapId, tileType, lod, new Vector2i(x, z));
+            if (!in.isPresent()) return null;
+            try (InputStream is = in.get()) {
+                data = IOUtils.toByteArray(is);
+            }
+
+            // send the tile the way it is stored if the client accepts it
+            Compression compression = storage.getTileCompression();
+            ContentEncoding storedEncoding = ContentEncoding.forCompression(compression);
+            boolean isRaw = compression.equals(Compression.NONE) ||
+                    (storedEncoding != null && storedEncoding.isAccepted(ContentEncoding.getAcceptedEncodings(request)));
+            ContentEncoding sentEncoding = isRaw ? storedEncoding : null;
+
+            String contentHash = ContentHash.hash(data);
+            String eTag = FileRequestHandler.createETag(contentHash, 0, data.length, FileRequestHandler.getEncodingSuffix(isRaw, sentEncoding));
+
+            if (FileRequestHandler.isNotModified(request, 0, eTag)) {
+                return FileRequestHandler.createNotModifiedResponse(eTag);
+            }
+
+            if (!isRaw) {
+                try (InputStream is = compression.decompress(new ByteArrayInputStream(data))) {
+                    data = IOUtils.toByteArray(is);
+                }
+            }
+
+            HttpResponse response = FileRequestHandler.createResponse(request, tilePath.toString(), 0, eTag, contentHash, sentEncoding, -1, null);
+            response.setData(new ByteArrayInputStream(data));
+            return response;
+
+        } catch (NumberFormatException e) {
+            return null;
+        } catch (IOException e) {
+            Logger.global.logError("Failed to read map-tile for request: " + request.getPath(), e);
+            return new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Tiles of a {@link FileStorage} are served as files by the fallback-handler
+     */
+    private static boolean isFileStorage(Storage storage) {
+        while (storage instanceof WriteBehindStorage) {
+            storage = ((WriteBehindStorage) storage).getStorage();
+        }
+
+        return storage instanceof FileStorage;
+    }
+
+}
@@ -117,6 +117,8 @@ public void setFrom(BmMap map) throws SerializationException {
         set(1, "maps", map.getId(), "hires", "scale", "z");
         set(gridOrigin.getX(), "maps", map.getId(), "hires", "translate", "x");
         set(gridOrigin.getY(), "maps", map.getId(), "hires", "translate", "z");
+        set(map.getHiresModelManager().getTileFormat().getId(), "maps", map.getId(), "hires", "format");
+        set(map.getHiresModelManager().getTileFormat().getFileSuffix(), "maps", map.getId(), "hires", "fileSuffix");
 
         Vector2i pointSize = hiresTileSize.div(lowresPointsPerHiresTile);
         Vector2i tileSize = pointSize.mul(lowresTileSize);
@@ -127,6 +129,8 @@ public void setFrom(BmMap map) throws SerializationException {
         set(pointSize.getY(), "maps", map.getId(), "lowres", "scale", "z");
         set(pointSize.getX() / 2, "maps", map.getId(), "lowres", "translate", "x");
         set(pointSize.getY() / 2, "maps", map.getId(), "lowres", "translate", "z");
+        set(map.getLowresModelManager().getLodCount(), "maps", map.getId(), "lowres", "lodCount");
+        set(map.getLowresModelManager().getLodFactor(), "maps", map.getId(), "lowres", "lodFactor");
 
         set(map.getWorld().getSpawnPoint().getX(), "maps", map.getId(), "startPos", "x");
         set(map.getWorld().getSpawnPoint().getZ(), "maps", map.getId(), "startPos", "z");
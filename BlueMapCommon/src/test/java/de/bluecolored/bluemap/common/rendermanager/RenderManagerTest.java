@@ -0,0 +1,216 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.rendermanager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RenderManagerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private RenderManager renderManager;
+    private List<String> log;
+
+    @BeforeEach
+    public void setup() {
+        renderManager = new RenderManager();
+        log = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @AfterEach
+    public void shutdown() throws InterruptedException {
+        renderManager.stop();
+        renderManager.awaitShutdown();
+    }
+
+    @Test
+    public void testOrdering() {
+        renderManager.scheduleRenderTasks(
+                new TestTask("a", 3, 0, false),
+                new TestTask("b", 3, 0, false),
+                new TestTask("c", 3, 0, false)
+        );
+        renderManager.start(1);
+
+        assertTimeoutPreemptively(TIMEOUT, renderManager::awaitIdle);
+        assertEquals(
+                "a+ a- a+ a- a+ a- b+ b- b+ b- b+ b- c+ c- c+ c- c+ c-",
+                String.join(" ", log)
+        );
+    }
+
+    @Test
+    public void testScheduleNext() {
+        TestTask first = new TestTask("a", 3, 0, false);
+        renderManager.scheduleRenderTasks(first, new TestTask("b", 1, 0, false));
+        renderManager.scheduleRenderTaskNext(new TestTask("c", 1, 0, false));
+        renderManager.start(1);
+
+        assertTimeoutPreemptively(TIMEOUT, renderManager::awaitIdle);
+        assertEquals("a+ a- a+ a- a+ a- c+ c- b+ b-", String.join(" ", log));
+    }
+
+    @Test
+    public void testNonExclusiveTasksOverlap() {
+        renderManager.scheduleRenderTasks(
+                new TestTask("a", 1, 200, false),
+                new TestTask("b", 1, 0, false)
+        );
+        renderManager.start(2);
+
+        assertTimeoutPreemptively(TIMEOUT, renderManager::awaitIdle);
+
+        // the idle thread started with b while the other thread was still working on a
+        assertTrue(log.indexOf("b-") < log.indexOf("a-"), String.join(" ", log));
+    }
+
+    @Test
+    public void testExclusive() {
+        renderManager.scheduleRenderTasks(
+                new TestTask("a", 8, 20, false),
+                new TestTask("e", 4, 20, true),
+                new TestTask("b", 8, 20, false)
+        );
+        renderManager.start(4);
+
+        assertTimeoutPreemptively(TIMEOUT, renderManager::awaitIdle);
+
+        // the exclusive task only started after all work of the previous task was done,
+        // and the following task only started after the exclusive task was done
+        assertTrue(log.lastIndexOf("a-") < log.indexOf("e+"), String.join(" ", log));
+        assertTrue(log.lastIndexOf("e-") < log.indexOf("b+"), String.join(" ", log));
+        assertEquals(40, log.size());
+    }
+
+    @Test
+    public void testCancellation() throws InterruptedException {
+        TestTask active = new TestTask("a", 1000, 5, false);
+        TestTask removed = new TestTask("r", 10, 0, false);
+        TestTask remaining = new TestTask("b", 2, 0, false);
+        renderManager.scheduleRenderTasks(active, removed, remaining);
+        renderManager.start(2);
+
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            while (active.getDone() == 0) Thread.sleep(1);
+        });
+
+        // the active task is cancelled, the scheduled one is removed without being started
+        assertTrue(renderManager.removeRenderTask(active));
+        assertTrue(renderManager.removeRenderTask(removed));
+
+        assertTimeoutPreemptively(TIMEOUT, renderManager::awaitIdle);
+
+        assertTrue(active.isCancelled());
+        assertTrue(active.getDone() < 1000);
+        assertFalse(removed.isCancelled());
+        assertEquals(0, removed.getDone());
+        assertEquals(2, remaining.getDone());
+        assertEquals(0, renderManager.getScheduledRenderTaskCount());
+    }
+
+    @Test
+    public void testRemoveAll() {
+        TestTask task = new TestTask("a", 1000, 5, false);
+        renderManager.scheduleRenderTasks(task, new TestTask("b", 10, 0, false));
+        renderManager.start(2);
+
+        renderManager.removeAllRenderTasks();
+
+        assertTimeoutPreemptively(TIMEOUT, renderManager::awaitIdle);
+        assertTrue(task.getDone() < 1000);
+        assertFalse(log.contains("b+"), String.join(" ", log));
+    }
+
+    private class TestTask implements RenderTask {
+
+        private final String name;
+        private final long workMillis;
+        private final boolean exclusive;
+
+        private final AtomicInteger remaining, done;
+        private volatile boolean cancelled;
+
+        private TestTask(String name, int workUnits, long workMillis, boolean exclusive) {
+            this.name = name;
+            this.workMillis = workMillis;
+            this.exclusive = exclusive;
+
+            this.remaining = new AtomicInteger(workUnits);
+            this.done = new AtomicInteger(0);
+            this.cancelled = false;
+        }
+
+        @Override
+        public void doWork() throws Exception {
+            if (cancelled || remaining.getAndDecrement() <= 0) return;
+
+            log.add(name + "+");
+            if (workMillis > 0) Thread.sleep(workMillis);
+            log.add(name + "-");
+
+            done.incrementAndGet();
+        }
+
+        @Override
+        public boolean hasMoreWork() {
+            return !cancelled && remaining.get() > 0;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isExclusive() {
+            return exclusive;
+        }
+
+        @Override
+        public String getDescription() {
+            return name;
+        }
+
+        public int getDone() {
+            return done.get();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import de.bluecolored.bluemap.core.util.GzipContentHash;
+import de.bluecolored.bluemap.core.webserver.HttpRequest;
+import de.bluecolored.bluemap.core.webserver.HttpResponse;
+import de.bluecolored.bluemap.core.webserver.HttpStatusCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileRequestHandlerTest {
+
+    private static final String SERVER_NAME = "test";
+
+    @TempDir
+    Path webRoot;
+
+    private FileRequestHandler cachedHandler, uncachedHandler;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        Files.write(webRoot.resolve("index.html"), "<html></html>".getBytes(StandardCharsets.UTF_8));
+
+        Path tile = webRoot.resolve("data").resolve("world").resolve("tile.json.gz");
+        Files.createDirectories(tile.getParent());
+        try (OutputStream out = GzipContentHash.createOutputStream(Files.newOutputStream(tile), 6)) {
+            out.write("{\"tile\": true}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        cachedHandler = new FileRequestHandler(webRoot, SERVER_NAME);
+        uncachedHandler = new FileRequestHandler(webRoot, SERVER_NAME, 0);
+    }
+
+    @Test
+    public void testETagOfStoredContentHash() throws IOException {
+        String eTag = assertSameETag("/data/world/tile.json", true);
+        assertFalse(eTag.startsWith("W/"));
+
+        // decompressed on the fly
+        assertNotEquals(eTag, assertSameETag("/data/world/tile.json", false));
+    }
+
+    @Test
+    public void testWeakETag() throws IOException {
+        assertTrue(assertSameETag("/index.html", true).startsWith("W/"));
+        assertTrue(assertSameETag("/index.html", false).startsWith("W/"));
+    }
+
+    /**
+     * Requests the file from the handler with and without a file-cache (twice from the cached one, to get the response
+     * that is created from the cache-entry) and checks that the ETags are the same and accepted by both handlers.
+     */
+    private String assertSameETag(String path, boolean acceptGzip) throws IOException {
+        String eTag = getETag(uncachedHandler.handle(request(path, acceptGzip, null)));
+        assertEquals(eTag, getETag(cachedHandler.handle(request(path, acceptGzip, null))));
+        assertEquals(eTag, getETag(cachedHandler.handle(request(path, acceptGzip, null))));
+
+        for (FileRequestHandler handler : Arrays.asList(cachedHandler, uncachedHandler)) {
+            try (HttpResponse response = handler.handle(request(path, acceptGzip, eTag))) {
+                assertEquals(HttpStatusCode.NOT_MODIFIED, response.getStatusCode());
+            }
+        }
+
+        return eTag;
+    }
+
+    private static String getETag(HttpResponse response) throws IOException {
+        try {
+            assertEquals(HttpStatusCode.OK, response.getStatusCode());
+            Set<String> eTags = response.getHeader("ETag");
+            assertEquals(1, eTags.size());
+            return eTags.iterator().next();
+        } finally {
+            response.close();
+        }
+    }
+
+    private static HttpRequest request(String path, boolean acceptGzip, String ifNoneMatch) {
+        Map<String, Set<String>> header = new HashMap<>();
+        if (acceptGzip) header.put("Accept-Encoding", Collections.singleton("gzip"));
+        if (ifNoneMatch != null) header.put("If-None-Match", Collections.singleton(ifNoneMatch));
+        return new HttpRequest("GET", path, "HTTP/1.1", header);
+    }
+
+}
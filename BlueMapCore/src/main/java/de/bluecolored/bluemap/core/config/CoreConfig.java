@@ -25,19 +25,31 @@
 package de.bluecolored.bluemap.core.config;
 
 import de.bluecolored.bluemap.core.debug.DebugDump;
+import de.bluecolored.bluemap.core.world.WorldCacheSettings;
 import org.spongepowered.configurate.ConfigurationNode;
 
 import java.io.File;
 import java.io.IOException;
 
 @DebugDump
-public class CoreConfig {
+public class CoreConfig implements WorldCacheSettings {
 
     private boolean downloadAccepted = false;
     private int renderThreadCount = 0;
     private boolean metricsEnabled = false;
     private File dataFolder = new File("data");
 
+    private int chunkCacheSize = WorldCacheSettings.super.getChunkCacheSize();
+    private int regionCacheSize = WorldCacheSettings.super.getRegionCacheSize();
+    private long cacheExpireMillis = WorldCacheSettings.super.getCacheExpireMillis();
+    private boolean flattenChunkSections = WorldCacheSettings.super.isFlattenChunkSections();
+
+    private int writeThreadCount = 0;
+    private int writeQueueSize = 64;
+    private boolean writeSync = false;
+
+    private boolean textureAtlas = false;
+
     public CoreConfig(ConfigurationNode node) throws IOException {
 
         //accept-download
@@ -55,6 +67,24 @@ public CoreConfig(ConfigurationNode node) throws IOException {
         //data
         dataFolder = ConfigManager.toFolder(node.node("data").getString("data"));
 
+        //world-caches
+        chunkCacheSize = node.node("chunkCacheSize").getInt(chunkCacheSize);
+        if (chunkCacheSize < 1) throw new IOException("Invalid configuration: Node chunkCacheSize has to be at least 1");
+        regionCacheSize = node.node("regionCacheSize").getInt(regionCacheSize);
+        if (regionCacheSize < 1) throw new IOException("Invalid configuration: Node regionCacheSize has to be at least 1");
+        cacheExpireMillis = node.node("cacheExpireSeconds").getLong(cacheExpireMillis / 1000) * 1000;
+        flattenChunkSections = node.node("flattenChunkSections").getBoolean(flattenChunkSections);
+
+        //tile-writing
+        writeThreadCount = node.node("writeThreadCount").getInt(writeThreadCount);
+        if (writeThreadCount < 0) throw new IOException("Invalid configuration: Node writeThreadCount can not be negative");
+        writeQueueSize = node.node("writeQueueSize").getInt(writeQueueSize);
+        if (writeQueueSize < 1) throw new IOException("Invalid configuration: Node writeQueueSize has to be at least 1");
+        writeSync = node.node("writeSync").getBoolean(writeSync);
+
+        //textures
+        textureAtlas = node.node("textureAtlas").getBoolean(textureAtlas);
+
     }
 
     public File getDataFolder() {
@@ -73,4 +103,53 @@ public int getRenderThreadCount() {
         return renderThreadCount;
     }
 
+    /**
+     * The amount of threads writing map-tiles in the background, 0 if tiles are written by the render-threads directly
+     */
+    public int getWriteThreadCount() {
+        return writeThreadCount;
+    }
+
+    /**
+     * The maximum amount of map-tiles waiting to be written in the background
+     */
+    public int getWriteQueueSize() {
+        return writeQueueSize;
+    }
+
+    /**
+     * Whether written map-tiles are forced to the storage-device (in batches) before the render-state of a map is saved
+     */
+    public boolean isWriteSync() {
+        return writeSync;
+    }
+
+    /**
+     * Whether the textures are packed into a texture-atlas instead of being exported one by one as base64-images.<br>
+     * Disabled by default because the web-app needs to support the atlas-format of the textures.json
+     */
+    public boolean isTextureAtlas() {
+        return textureAtlas;
+    }
+
+    @Override
+    public int getChunkCacheSize() {
+        return chunkCacheSize;
+    }
+
+    @Override
+    public int getRegionCacheSize() {
+        return regionCacheSize;
+    }
+
+    @Override
+    public long getCacheExpireMillis() {
+        return cacheExpireMillis;
+    }
+
+    @Override
+    public boolean isFlattenChunkSections() {
+        return flattenChunkSections;
+    }
+
 }
@@ -29,6 +29,8 @@
 import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.map.MapSettings;
 import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.storage.StorageType;
+import de.bluecolored.bluemap.core.storage.TileFormat;
 import de.bluecolored.bluemap.core.util.ConfigUtils;
 import org.spongepowered.configurate.ConfigurationNode;
 
@@ -55,12 +57,18 @@ public class MapConfig implements MapSettings {
     private boolean renderEdges;
 
     private Compression compression;
+    private StorageType storageType;
     private boolean ignoreMissingLightData;
 
     private int hiresTileSize;
+    private TileFormat hiresTileFormat;
+    private int hiresParallelSlabs;
 
     private int lowresPointsPerHiresTile;
     private int lowresPointsPerLowresTile;
+    private int lowresLodCount;
+    private int lowresLodFactor;
+    private int lowresCacheSize;
 
     public MapConfig(ConfigurationNode node) throws IOException {
 
@@ -106,16 +114,49 @@ public MapConfig(ConfigurationNode node) throws IOException {
         //renderEdges
         this.renderEdges = node.node("renderEdges").getBoolean(true);
 
-        //useCompression
-        this.compression = node.node("useCompression").getBoolean(true) ? Compression.GZIP : Compression.NONE;
+        //compression
+        boolean useCompression = node.node("useCompression").getBoolean(true);
+        if (useCompression) {
+            try {
+                this.compression = Compression.forId(
+                        node.node("compression").getString(Compression.GZIP.getId()),
+                        node.node("compressionLevel").getInt(Compression.DEFAULT_LEVEL)
+                );
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid configuration: Node maps[?].compression of map " + id + " is not a valid compression: " + ex.getMessage());
+            }
+        } else {
+            this.compression = Compression.NONE;
+        }
+
+        //storage
+        try {
+            this.storageType = StorageType.forId(node.node("storage").getString(StorageType.FILE.getId()));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid configuration: Node maps[?].storage of map " + id + " is not a valid storage-type: " + ex.getMessage());
+        }
 
         //ignoreMissingLightData
         this.ignoreMissingLightData = node.node("ignoreMissingLightData").getBoolean(false);
 
         //tile-settings
         this.hiresTileSize = node.node("hires", "tileSize").getInt(32);
+        try {
+            this.hiresTileFormat = TileFormat.forId(node.node("hires", "format").getString(TileFormat.JSON.getId()));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid configuration: Node maps[?].hires.format of map " + id + " is not a valid tile-format: " + ex.getMessage());
+        }
+        this.hiresParallelSlabs = node.node("hires", "parallelSlabs").getInt(1);
+        if (hiresParallelSlabs < 1) throw new IOException("Invalid configuration: Node maps[?].hires.parallelSlabs of map " + id + " has to be at least 1");
         this.lowresPointsPerHiresTile = node.node("lowres", "pointsPerHiresTile").getInt(4);
         this.lowresPointsPerLowresTile = node.node("lowres", "pointsPerLowresTile").getInt(50);
+        this.lowresLodCount = node.node("lowres", "lodCount").getInt(MapSettings.super.getLowresLodCount());
+        if (lowresLodCount < 1) throw new IOException("Invalid configuration: Node maps[?].lowres.lodCount of map " + id + " has to be at least 1");
+        this.lowresLodFactor = node.node("lowres", "lodFactor").getInt(MapSettings.super.getLowresLodFactor());
+        if (lowresLodCount > 1 && (lowresLodFactor < 2 || lowresPointsPerLowresTile % lowresLodFactor != 0))
+            throw new IOException("Invalid configuration: Node maps[?].lowres.lodFactor of map " + id + " has to be at least 2 and a divisor of lowres.pointsPerLowresTile");
+        this.lowresCacheSize = node.node("lowres", "cacheSize").getInt(MapSettings.super.getLowresCacheSize());
+        if (lowresCacheSize < 1) throw new IOException("Invalid configuration: Node maps[?].lowres.cacheSize of map " + id + " has to be at least 1");
 
         //check valid tile configuration values
         double blocksPerPoint = (double) this.hiresTileSize / (double) this.lowresPointsPerHiresTile;
@@ -147,6 +188,10 @@ public Compression getCompression() {
         return compression;
     }
 
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
     @Override
     public float getAmbientLight() {
         return ambientLight;
@@ -176,6 +221,16 @@ public int getHiresTileSize() {
         return hiresTileSize;
     }
 
+    @Override
+    public TileFormat getHiresTileFormat() {
+        return hiresTileFormat;
+    }
+
+    @Override
+    public int getHiresParallelSlabs() {
+        return hiresParallelSlabs;
+    }
+
     @Override
     public int getLowresPointsPerHiresTile() {
         return lowresPointsPerHiresTile;
@@ -186,6 +241,21 @@ public int getLowresPointsPerLowresTile() {
         return lowresPointsPerLowresTile;
     }
 
+    @Override
+    public int getLowresLodCount() {
+        return lowresLodCount;
+    }
+
+    @Override
+    public int getLowresLodFactor() {
+        return lowresLodFactor;
+    }
+
+    @Override
+    public int getLowresCacheSize() {
+        return lowresCacheSize;
+    }
+
     @Override
     public Vector3i getMin() {
         return min;
@@ -41,6 +41,7 @@ public class WebServerConfig {
     private InetAddress bindAddress = null;
     private int port = 8100;
     private int maxConnections = 100;
+    private boolean nonBlocking = false;
 
     public WebServerConfig(ConfigurationNode node) throws IOException {
 
@@ -68,6 +69,9 @@ public WebServerConfig(ConfigurationNode node) throws IOException {
 
             //maxConnectionCount
             maxConnections = node.node("maxConnectionCount").getInt(100);
+
+            //nonBlocking
+            nonBlocking = node.node("nonBlocking").getBoolean(false);
         }
 
     }
@@ -92,4 +96,8 @@ public int getWebserverMaxConnections() {
         return maxConnections;
     }
 
+    public boolean isWebserverNonBlocking() {
+        return nonBlocking;
+    }
+
 }
@@ -25,6 +25,8 @@
 package de.bluecolored.bluemap.core.map;
 
 import com.flowpowered.math.vector.Vector2i;
+import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.hires.HiresModelManager;
@@ -32,13 +34,17 @@
 import de.bluecolored.bluemap.core.map.lowres.LowresModelManager;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.storage.*;
+import de.bluecolored.bluemap.core.util.ContentHash;
+import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.World;
+import org.apache.commons.io.output.NullOutputStream;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Predicate;
@@ -46,6 +52,19 @@
 @DebugDump
 public class BmMap {
 
+    private static final int TILE_LOCK_COUNT = 64;
+
+    /**
+     * The amount of blocks around a hires-tile that are read to render it,
+     * for the culling, the ambient-occlusion and the biome-blending of the blocks at the border of the tile
+     */
+    public static final int TILE_RENDER_BORDER = 2;
+
+    /**
+     * The content-digest of a tile whose chunks are not all generated, see {@link #getTileContentDigest(Vector2i)}
+     */
+    public static final long TILE_NOT_GENERATED = -1;
+
     private final String id;
     private final String name;
     private final World world;
@@ -56,6 +75,10 @@ public class BmMap {
     private final HiresModelManager hiresModelManager;
     private final LowresModelManager lowresModelManager;
 
+    private final long renderFingerprint;
+
+    private final Object[] tileLocks;
+
     private Predicate<Vector2i> tileFilter;
 
     private long renderTimeSumNanos;
@@ -81,19 +104,38 @@ public BmMap(String id, String name, World world, Storage storage, ResourcePack
             }
         }
 
+        // the materials of tiles rendered with and without the texture-atlas are not compatible, so all tiles need to be rendered again
+        boolean textureAtlas = resourcePack.getTextures().isAtlasEnabled();
+        if (this.renderState.isTextureAtlas() != textureAtlas) {
+            if (rstateData.isPresent()) Logger.global.logInfo("The texture-atlas has been " + (textureAtlas ? "enabled" : "disabled") + ", all tiles of map '" + getId() + "' will be rendered again.");
+            this.renderState.reset();
+            this.renderState.setTextureAtlas(textureAtlas);
+        }
+
         this.hiresModelManager = new HiresModelManager(
                 storage.tileStorage(id, TileType.HIRES),
                 resourcePack,
                 settings,
-                new Grid(settings.getHiresTileSize(), 2)
+                new Grid(settings.getHiresTileSize(), 2),
+                settings.getHiresTileFormat(),
+                settings.getHiresParallelSlabs()
         );
 
         this.lowresModelManager = new LowresModelManager(
-                storage.tileStorage(id, TileType.LOWRES),
+                storage,
+                id,
                 new Vector2i(settings.getLowresPointsPerLowresTile(), settings.getLowresPointsPerLowresTile()),
-                new Vector2i(settings.getLowresPointsPerHiresTile(), settings.getLowresPointsPerHiresTile())
+                new Vector2i(settings.getLowresPointsPerHiresTile(), settings.getLowresPointsPerHiresTile()),
+                settings.getLowresLodCount(),
+                settings.getLowresLodFactor(),
+                settings.getLowresCacheSize()
         );
 
+        this.renderFingerprint = createRenderFingerprint(resourcePack, settings);
+
+        this.tileLocks = new Object[TILE_LOCK_COUNT];
+        for (int i = 0; i < TILE_LOCK_COUNT; i++) tileLocks[i] = new Object();
+
         this.tileFilter = t -> true;
 
         this.renderTimeSumNanos = 0;
@@ -105,8 +147,12 @@ public void renderTile(Vector2i tile) {
 
         long start = System.nanoTime();
 
-        HiresTileMeta tileMeta = hiresModelManager.render(world, tile);
-        lowresModelManager.render(tileMeta);
+        // render-tasks of neighbouring regions share their border-tiles,
+        // so the same tile is never rendered and written by two threads at the same time
+        synchronized (tileLocks[Math.floorMod(tile.hashCode(), TILE_LOCK_COUNT)]) {
+            HiresTileMeta tileMeta = hiresModelManager.render(world, tile);
+            lowresModelManager.render(tileMeta);
+        }
 
         long end = System.nanoTime();
         long delta = end - start;
@@ -115,9 +161,93 @@ public void renderTile(Vector2i tile) {
         tilesRendered ++;
     }
 
+    /**
+     * Combines the content-digests of all chunks that are read to render the tile into one digest.
+     * This includes the chunks around the tile that contain the blocks of the {@link #TILE_RENDER_BORDER},
+     * and the {@link #createRenderFingerprint(ResourcePack, MapSettings) render-fingerprint} of this map.<br>
+     * Returns {@link #TILE_NOT_GENERATED} if not all chunks of the tile itself are generated,
+     * or 0 if the digest of any chunk or the render-fingerprint is unknown.
+     */
+    public long getTileContentDigest(Vector2i tile) {
+        Grid tileGrid = hiresModelManager.getTileGrid();
+        Grid chunkGrid = world.getChunkGrid();
+
+        Vector2i minTileChunk = tileGrid.getCellMin(tile, chunkGrid);
+        Vector2i maxTileChunk = tileGrid.getCellMax(tile, chunkGrid);
+        Vector2i minChunk = chunkGrid.getCell(tileGrid.getCellMin(tile).sub(TILE_RENDER_BORDER, TILE_RENDER_BORDER));
+        Vector2i maxChunk = chunkGrid.getCell(tileGrid.getCellMax(tile).add(TILE_RENDER_BORDER, TILE_RENDER_BORDER));
+
+        long digest = renderFingerprint;
+        for (int x = minChunk.getX(); x <= maxChunk.getX(); x++) {
+            for (int z = minChunk.getY(); z <= maxChunk.getY(); z++) {
+                Chunk chunk = world.getChunk(x, z);
+
+                long chunkDigest;
+                if (chunk.isGenerated()) {
+                    chunkDigest = chunk.getContentDigest();
+                } else {
+                    boolean insideTile =
+                            x >= minTileChunk.getX() && x <= maxTileChunk.getX() &&
+                            z >= minTileChunk.getY() && z <= maxTileChunk.getY();
+                    if (insideTile) return TILE_NOT_GENERATED;
+
+                    // a not generated chunk around the tile is rendered as air, but if it is generated later the tile changes
+                    chunkDigest = TILE_NOT_GENERATED;
+                }
+
+                if (chunkDigest == 0 || digest == 0) digest = 0;
+                else digest = digest * 0x9E3779B97F4A7C15L + chunkDigest;
+            }
+        }
+
+        return digest == TILE_NOT_GENERATED ? 0 : digest;
+    }
+
+    /**
+     * Creates a digest of everything besides the world that changes how the tiles of a map are rendered:
+     * the resources, the render-settings and the tile-settings.<br>
+     * Returns 0 if the sources of the resources are unknown.
+     */
+    static long createRenderFingerprint(ResourcePack resourcePack, MapSettings settings) {
+        if (resourcePack.getSourcesHash().isEmpty()) return 0;
+
+        MessageDigest digest = ContentHash.createDigest();
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, digest))) {
+            out.writeUTF(BlueMap.VERSION);
+            out.writeUTF(resourcePack.getSourcesHash());
+            out.writeBoolean(resourcePack.getTextures().isAtlasEnabled());
+
+            out.writeInt(settings.getHiresTileSize());
+            out.writeUTF(settings.getHiresTileFormat().getId());
+            out.writeInt(settings.getLowresPointsPerHiresTile());
+            out.writeInt(settings.getLowresPointsPerLowresTile());
+
+            Vector3i min = settings.getMin(), max = settings.getMax();
+            out.writeInt(min.getX()); out.writeInt(min.getY()); out.writeInt(min.getZ());
+            out.writeInt(max.getX()); out.writeInt(max.getY()); out.writeInt(max.getZ());
+            out.writeInt(settings.getRemoveCavesBelowY());
+            out.writeBoolean(settings.isCaveDetectionUsesBlockLight());
+            out.writeFloat(settings.getAmbientLight());
+            out.writeInt(settings.getWorldSkyLight());
+            out.writeBoolean(settings.isRenderEdges());
+        } catch (IOException ex) {
+            return 0;
+        }
+
+        long fingerprint = ByteBuffer.wrap(digest.digest()).getLong();
+        return fingerprint != 0 ? fingerprint : 1; // 0 is reserved for "unknown"
+    }
+
     public synchronized void save() {
         lowresModelManager.save();
 
+        // make sure all tiles are written before the render-state is saved
+        try {
+            storage.flush();
+        } catch (IOException ex){
+            Logger.global.logError("Failed to flush storage for map: '" + this.id + "'!", ex);
+        }
+
         try (OutputStream out = storage.writeMeta(id, MetaType.RENDER_STATE)) {
             this.renderState.save(out);
         } catch (IOException ex){
@@ -145,6 +275,13 @@ public MapRenderState getRenderState() {
         return renderState;
     }
 
+    /**
+     * A digest of the resources and settings this map is rendered with, see {@link #createRenderFingerprint(ResourcePack, MapSettings)}
+     */
+    public long getRenderFingerprint() {
+        return renderFingerprint;
+    }
+
     public HiresModelManager getHiresModelManager() {
         return hiresModelManager;
     }
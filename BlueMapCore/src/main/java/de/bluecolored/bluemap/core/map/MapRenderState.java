@@ -33,13 +33,33 @@
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+/**
+ * Keeps track of which parts of a map have been rendered when.<br>
+ * The render-time of each hires-tile is stored (in seconds, as unsigned int so it won't overflow before 2106) in one <code>int[{@link #TILE_REGION_SIZE}²]</code>-array per
+ * {@link #TILE_REGION_SIZE} x {@link #TILE_REGION_SIZE} tiles, so tiles only need to be rendered again if one of their chunks changed since then.
+ * The same way, a digest of the content of all chunks of a tile is stored with the tile when it has been rendered,
+ * so a tile does not need to be rendered again if its chunks have been saved without changing their content.<br>
+ * Additionally, the time when all tiles of a world-region have been checked the last time is stored per world-region,
+ * and whether the hires-tiles have been rendered with materials on the texture-atlas.
+ */
 @DebugDump
 public class MapRenderState {
 
+    public static final int TILE_REGION_SIZE = 32;
+
+    private static final int MAGIC = 0x424D5253; // "BMRS"
+    private static final int VERSION = 4;
+
     private final Map<Vector2i, Long> regionRenderTimes;
+    private final Map<Vector2i, int[]> tileRenderTimes;
+    private final Map<Vector2i, long[]> tileDigests;
+    private boolean textureAtlas;
 
     public MapRenderState() {
         regionRenderTimes = new HashMap<>();
+        tileRenderTimes = new HashMap<>();
+        tileDigests = new HashMap<>();
+        textureAtlas = false;
     }
 
     public synchronized void setRenderTime(Vector2i regionPos, long renderTime) {
@@ -52,16 +72,96 @@ public synchronized long getRenderTime(Vector2i regionPos) {
         else return renderTime;
     }
 
+    /**
+     * Sets the time (in milliseconds) when the rendering of the tile has been started.
+     * The time is stored with a precision of seconds (rounded down).
+     */
+    public synchronized void setTileRenderTime(Vector2i tile, long renderTime) {
+        Vector2i tileRegion = new Vector2i(
+                Math.floorDiv(tile.getX(), TILE_REGION_SIZE),
+                Math.floorDiv(tile.getY(), TILE_REGION_SIZE)
+        );
+
+        int[] times = tileRenderTimes.computeIfAbsent(tileRegion, r -> new int[TILE_REGION_SIZE * TILE_REGION_SIZE]);
+        times[tileIndex(tile)] = (int) (renderTime / 1000); // stored unsigned
+    }
+
+    /**
+     * Returns the time (in milliseconds, with a precision of seconds) when the rendering of the tile has been started the last time,
+     * or -1 if the tile has not been rendered yet.
+     */
+    public synchronized long getTileRenderTime(Vector2i tile) {
+        int[] times = tileRenderTimes.get(new Vector2i(
+                Math.floorDiv(tile.getX(), TILE_REGION_SIZE),
+                Math.floorDiv(tile.getY(), TILE_REGION_SIZE)
+        ));
+        if (times == null) return -1;
+
+        int time = times[tileIndex(tile)];
+        if (time == 0) return -1;
+        return Integer.toUnsignedLong(time) * 1000L;
+    }
+
+    /**
+     * Sets the digest of the content of all chunks that the tile has been rendered from.
+     * 0 means that the digest is unknown.
+     */
+    public synchronized void setTileDigest(Vector2i tile, long digest) {
+        Vector2i tileRegion = new Vector2i(
+                Math.floorDiv(tile.getX(), TILE_REGION_SIZE),
+                Math.floorDiv(tile.getY(), TILE_REGION_SIZE)
+        );
+
+        long[] digests = tileDigests.get(tileRegion);
+        if (digests == null) {
+            if (digest == 0) return;
+            digests = new long[TILE_REGION_SIZE * TILE_REGION_SIZE];
+            tileDigests.put(tileRegion, digests);
+        }
+
+        digests[tileIndex(tile)] = digest;
+    }
+
+    /**
+     * Returns the digest of the content of all chunks that the tile has been rendered from the last time,
+     * or 0 if the digest is unknown.
+     */
+    public synchronized long getTileDigest(Vector2i tile) {
+        long[] digests = tileDigests.get(new Vector2i(
+                Math.floorDiv(tile.getX(), TILE_REGION_SIZE),
+                Math.floorDiv(tile.getY(), TILE_REGION_SIZE)
+        ));
+        if (digests == null) return 0;
+
+        return digests[tileIndex(tile)];
+    }
+
+    /**
+     * Whether the tiles of this map have been rendered using the texture-atlas
+     */
+    public synchronized boolean isTextureAtlas() {
+        return textureAtlas;
+    }
+
+    public synchronized void setTextureAtlas(boolean textureAtlas) {
+        this.textureAtlas = textureAtlas;
+    }
+
     public synchronized void reset() {
         regionRenderTimes.clear();
+        tileRenderTimes.clear();
+        tileDigests.clear();
     }
 
     public synchronized void save(OutputStream out) throws IOException {
         try (
-                DataOutputStream dOut = new DataOutputStream(new GZIPOutputStream(out))
+                DataOutputStream dOut = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)))
         ) {
-            dOut.writeInt(regionRenderTimes.size());
+            dOut.writeInt(MAGIC);
+            dOut.writeInt(VERSION);
+            dOut.writeBoolean(textureAtlas);
 
+            dOut.writeInt(regionRenderTimes.size());
             for (Map.Entry<Vector2i, Long> entry : regionRenderTimes.entrySet()) {
                 Vector2i regionPos = entry.getKey();
                 long renderTime = entry.getValue();
@@ -71,18 +171,53 @@ public synchronized void save(OutputStream out) throws IOException {
                 dOut.writeLong(renderTime);
             }
 
+            dOut.writeInt(tileRenderTimes.size());
+            for (Map.Entry<Vector2i, int[]> entry : tileRenderTimes.entrySet()) {
+                Vector2i tileRegion = entry.getKey();
+
+                dOut.writeInt(tileRegion.getX());
+                dOut.writeInt(tileRegion.getY());
+                for (int time : entry.getValue()) {
+                    dOut.writeInt(time);
+                }
+            }
+
+            dOut.writeInt(tileDigests.size());
+            for (Map.Entry<Vector2i, long[]> entry : tileDigests.entrySet()) {
+                Vector2i tileRegion = entry.getKey();
+
+                dOut.writeInt(tileRegion.getX());
+                dOut.writeInt(tileRegion.getY());
+                for (long digest : entry.getValue()) {
+                    dOut.writeLong(digest);
+                }
+            }
+
             dOut.flush();
         }
     }
 
     public synchronized void load(InputStream in) throws IOException {
         regionRenderTimes.clear();
+        tileRenderTimes.clear();
+        tileDigests.clear();
+        textureAtlas = false;
 
         try (
-                DataInputStream dIn = new DataInputStream(new GZIPInputStream(in))
+                DataInputStream dIn = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)))
         ) {
             int size = dIn.readInt();
 
+            // the old format only contains the region-render-times, starting with their count
+            boolean legacy = size != MAGIC;
+            int version = 1;
+            if (!legacy) {
+                version = dIn.readInt();
+                if (version < 2 || version > VERSION) throw new IOException("Unsupported render-state version: " + version);
+                if (version >= 4) textureAtlas = dIn.readBoolean();
+                size = dIn.readInt();
+            }
+
             for (int i = 0; i < size; i++) {
                 Vector2i regionPos = new Vector2i(
                         dIn.readInt(),
@@ -92,7 +227,51 @@ public synchronized void load(InputStream in) throws IOException {
 
                 regionRenderTimes.put(regionPos, renderTime);
             }
+
+            if (legacy) return;
+
+            size = dIn.readInt();
+            for (int i = 0; i < size; i++) {
+                Vector2i tileRegion = new Vector2i(
+                        dIn.readInt(),
+                        dIn.readInt()
+                );
+
+                int[] times = new int[TILE_REGION_SIZE * TILE_REGION_SIZE];
+                for (int t = 0; t < times.length; t++) {
+                    times[t] = dIn.readInt();
+                }
+
+                tileRenderTimes.put(tileRegion, times);
+            }
+
+            // version 2 does not contain any tile-digests yet
+            if (version < 3) return;
+
+            size = dIn.readInt();
+            for (int i = 0; i < size; i++) {
+                Vector2i tileRegion = new Vector2i(
+                        dIn.readInt(),
+                        dIn.readInt()
+                );
+
+                long[] digests = new long[TILE_REGION_SIZE * TILE_REGION_SIZE];
+                for (int d = 0; d < digests.length; d++) {
+                    digests[d] = dIn.readLong();
+                }
+
+                tileDigests.put(tileRegion, digests);
+            }
         } catch (EOFException ignore){} // ignoring a sudden end of stream, since it is save to only read as many as we can
     }
 
+    @DebugDump
+    public synchronized int getTileRegionCount() {
+        return tileRenderTimes.size();
+    }
+
+    private static int tileIndex(Vector2i tile) {
+        return Math.floorMod(tile.getY(), TILE_REGION_SIZE) * TILE_REGION_SIZE + Math.floorMod(tile.getX(), TILE_REGION_SIZE);
+    }
+
 }
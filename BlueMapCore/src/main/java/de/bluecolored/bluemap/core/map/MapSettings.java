@@ -25,13 +25,44 @@
 package de.bluecolored.bluemap.core.map;
 
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.storage.TileFormat;
 
 public interface MapSettings extends RenderSettings {
 
     int getHiresTileSize();
 
+    TileFormat getHiresTileFormat();
+
+    /**
+     * The amount of column-slabs each hires-tile is split into to be rendered in parallel, 1 renders each tile on a single thread
+     */
+    default int getHiresParallelSlabs() {
+        return 1;
+    }
+
     int getLowresPointsPerLowresTile();
 
     int getLowresPointsPerHiresTile();
 
+    /**
+     * The amount of lowres-layers with different levels-of-detail, 1 only generates the lowres-layer with the highest detail
+     */
+    default int getLowresLodCount() {
+        return 1;
+    }
+
+    /**
+     * The amount of points (on each axis) of one lowres-layer that are combined into one point of the next layer
+     */
+    default int getLowresLodFactor() {
+        return 5;
+    }
+
+    /**
+     * The maximum amount of lowres-tiles that are kept in memory (per layer)
+     */
+    default int getLowresCacheSize() {
+        return 100;
+    }
+
 }
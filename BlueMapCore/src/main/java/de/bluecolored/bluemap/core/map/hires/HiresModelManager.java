@@ -26,29 +26,44 @@
 
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.TileFormat;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.World;
 
 import java.io.*;
+import java.util.concurrent.ForkJoinTask;
 
 public class HiresModelManager {
 
     private final Storage.TileStorage storage;
     private final HiresModelRenderer renderer;
     private final Grid tileGrid;
+    private final TileFormat tileFormat;
+    private final int parallelSlabs;
 
-    public HiresModelManager(Storage.TileStorage storage, ResourcePack resourcePack, RenderSettings renderSettings, Grid tileGrid) {
-        this(storage, new HiresModelRenderer(resourcePack, renderSettings), tileGrid);
+    public HiresModelManager(Storage.TileStorage storage, ResourcePack resourcePack, RenderSettings renderSettings, Grid tileGrid, TileFormat tileFormat) {
+        this(storage, resourcePack, renderSettings, tileGrid, tileFormat, 1);
     }
 
-    public HiresModelManager(Storage.TileStorage storage, HiresModelRenderer renderer, Grid tileGrid) {
+    public HiresModelManager(Storage.TileStorage storage, ResourcePack resourcePack, RenderSettings renderSettings, Grid tileGrid, TileFormat tileFormat, int parallelSlabs) {
+        this(storage, new HiresModelRenderer(resourcePack, renderSettings), tileGrid, tileFormat, parallelSlabs);
+    }
+
+    public HiresModelManager(Storage.TileStorage storage, HiresModelRenderer renderer, Grid tileGrid, TileFormat tileFormat) {
+        this(storage, renderer, tileGrid, tileFormat, 1);
+    }
+
+    public HiresModelManager(Storage.TileStorage storage, HiresModelRenderer renderer, Grid tileGrid, TileFormat tileFormat, int parallelSlabs) {
         this.storage = storage;
         this.renderer = renderer;
 
         this.tileGrid = tileGrid;
+        this.tileFormat = tileFormat;
+        this.parallelSlabs = Math.max(parallelSlabs, 1);
     }
 
     /**
@@ -63,7 +78,14 @@ public HiresTileMeta render(World world, Vector2i tile) {
 
         HiresTileModel model = HiresTileModel.claimInstance();
 
-        HiresTileMeta tileMeta = renderer.render(world, modelMin, modelMax, model);
+        HiresTileMeta tileMeta;
+        int slabCount = Math.min(parallelSlabs, tileMax.getX() - tileMin.getX() + 1);
+        if (slabCount > 1) {
+            tileMeta = renderSlabs(world, modelMin, modelMax, slabCount, model);
+        } else {
+            tileMeta = renderer.render(world, modelMin, modelMax, model);
+        }
+
         save(model, tile);
 
         HiresTileModel.recycleInstance(model);
@@ -71,9 +93,65 @@ public HiresTileMeta render(World world, Vector2i tile) {
         return tileMeta;
     }
 
+    /**
+     * Splits the tile into column-slabs along the x-axis and renders them in parallel on the {@link BlueMap#THREAD_POOL}.
+     * Each slab is rendered into its own model, the models are then appended in slab-order into the target model.
+     * The calling thread renders the first slab itself.
+     */
+    private HiresTileMeta renderSlabs(World world, Vector3i modelMin, Vector3i modelMax, int slabCount, HiresTileModel model) {
+        HiresTileMeta tileMeta = new HiresTileMeta(modelMin.getX(), modelMin.getZ(), modelMax.getX(), modelMax.getZ());
+
+        int width = modelMax.getX() - modelMin.getX() + 1;
+        HiresTileModel[] slabModels = new HiresTileModel[slabCount];
+        ForkJoinTask<?>[] slabTasks = new ForkJoinTask<?>[slabCount];
+
+        try {
+            for (int i = 0; i < slabCount; i++) {
+                int slabMinX = modelMin.getX() + width * i / slabCount;
+                int slabMaxX = modelMin.getX() + width * (i + 1) / slabCount - 1;
+                HiresTileModel slabModel = HiresTileModel.claimInstance();
+                slabModels[i] = slabModel;
+
+                Runnable slabRender = () -> renderer.render(world, modelMin, modelMax, slabMinX, slabMaxX, slabModel, tileMeta);
+                if (i == 0) {
+                    slabTasks[i] = ForkJoinTask.adapt(slabRender);
+                } else {
+                    slabTasks[i] = BlueMap.THREAD_POOL.submit(slabRender);
+                }
+            }
+
+            slabTasks[0].invoke();
+            for (int i = 1; i < slabCount; i++) {
+                slabTasks[i].join();
+            }
+
+            for (HiresTileModel slabModel : slabModels) {
+                model.append(slabModel);
+            }
+        } finally {
+            for (int i = 0; i < slabCount; i++) {
+                if (slabModels[i] == null) continue;
+
+                // a failed slab might leave other slabs still rendering into their models
+                if (slabTasks[i] != null && !slabTasks[i].isDone()) continue;
+                HiresTileModel.recycleInstance(slabModels[i]);
+            }
+        }
+
+        return tileMeta;
+    }
+
     private void save(final HiresTileModel model, Vector2i tile) {
         try (OutputStream os = storage.write(tile)) {
-            model.writeBufferGeometryJson(os);
+            switch (tileFormat) {
+                case BINARY:
+                    model.writeBufferGeometryBinary(os);
+                    break;
+                case JSON:
+                default:
+                    model.writeBufferGeometryJson(os);
+                    break;
+            }
         } catch (IOException e){
             Logger.global.logError("Failed to save hires model: " + tile, e);
         }
@@ -86,4 +164,18 @@ public Grid getTileGrid() {
         return tileGrid;
     }
 
+    /**
+     * Returns the amount of column-slabs each tile is split into to be rendered in parallel
+     */
+    public int getParallelSlabs() {
+        return parallelSlabs;
+    }
+
+    /**
+     * Returns the format that the hires-tiles are saved in
+     */
+    public TileFormat getTileFormat() {
+        return tileFormat;
+    }
+
 }
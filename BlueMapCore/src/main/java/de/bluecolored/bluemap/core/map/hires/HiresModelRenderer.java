@@ -25,38 +25,57 @@
 package de.bluecolored.bluemap.core.map.hires;
 
 import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.map.hires.blockmodel.BlockModelCache;
 import de.bluecolored.bluemap.core.map.hires.blockmodel.BlockStateModelFactory;
 import de.bluecolored.bluemap.core.resourcepack.NoSuchResourceException;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.resourcepack.texture.TextureAtlas;
 import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.world.BlockNeighborhood;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.OcclusionMap;
 import de.bluecolored.bluemap.core.world.World;
 
 public class HiresModelRenderer {
 
     private final ResourcePack resourcePack;
     private final RenderSettings renderSettings;
+    private final BlockModelCache modelCache;
 
     public HiresModelRenderer(ResourcePack resourcePack, RenderSettings renderSettings) {
         this.renderSettings = renderSettings;
         this.resourcePack = resourcePack;
+        this.modelCache = new BlockModelCache(resourcePack);
     }
 
     public HiresTileMeta render(World world, Vector3i modelMin, Vector3i modelMax, HiresTileModel model) {
+        HiresTileMeta tileMeta = new HiresTileMeta(modelMin.getX(), modelMin.getZ(), modelMax.getX(), modelMax.getZ()); //TODO: recycle tilemeta instances?
+        render(world, modelMin, modelMax, modelMin.getX(), modelMax.getX(), model, tileMeta);
+        return tileMeta;
+    }
+
+    /**
+     * Renders only the block-columns from renderMinX to renderMaxX (inclusive) of the model-area into the given model and tile-meta.
+     * The model-positions are relative to modelMin, the same as when rendering the whole area at once.<br>
+     * Multiple threads can render distinct column-ranges of the same tile-meta at the same time.
+     */
+    public void render(World world, Vector3i modelMin, Vector3i modelMax, int renderMinX, int renderMaxX, HiresTileModel model, HiresTileMeta tileMeta) {
         Vector3i min = modelMin.max(renderSettings.getMin());
         Vector3i max = modelMax.min(renderSettings.getMax());
         Vector3i modelAnchor = new Vector3i(modelMin.getX(), 0, modelMin.getZ());
 
-        HiresTileMeta tileMeta = new HiresTileMeta(modelMin.getX(), modelMin.getZ(), modelMax.getX(), modelMax.getZ()); //TODO: recycle tilemeta instances?
+        min = new Vector3i(Math.max(min.getX(), renderMinX), min.getY(), min.getZ());
+        max = new Vector3i(Math.min(max.getX(), renderMaxX), max.getY(), max.getZ());
 
         // create new for each tile-render since the factory is not threadsafe
-        BlockStateModelFactory modelFactory = new BlockStateModelFactory(resourcePack, renderSettings);
+        BlockStateModelFactory modelFactory = new BlockStateModelFactory(resourcePack, renderSettings, modelCache);
 
         int maxHeight, minY, maxY;
         Color columnColor = new Color(), blockColor = new Color();
         BlockNeighborhood<?> block = new BlockNeighborhood<>(resourcePack, renderSettings, world, 0, 0, 0);
+        block.setOcclusionMap(buildOcclusionMap(world, min, max));
         BlockModelView blockModel = new BlockModelView(model);
+        int modelStart = model.size();
 
         int x, y, z;
         for (x = min.getX(); x <= max.getX(); x++){
@@ -107,6 +126,29 @@ public HiresTileMeta render(World world, Vector3i modelMin, Vector3i modelMax, H
             }
         }
 
-        return tileMeta;
+        // the block-models use texture-ids and -uvs, map them onto the texture-atlas (if enabled)
+        TextureAtlas atlas = resourcePack.getTextures().getAtlas();
+        if (atlas != null) model.applyTextureAtlas(modelStart, model.size() - modelStart, atlas);
     }
+
+    /**
+     * Builds an {@link OcclusionMap} for the rendered area including a one-block border
+     */
+    private OcclusionMap buildOcclusionMap(World world, Vector3i min, Vector3i max) {
+        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (int x = min.getX(); x <= max.getX(); x++){
+            for (int z = min.getZ(); z <= max.getZ(); z++){
+                minY = Math.min(minY, Math.max(min.getY(), world.getMinY(x, z)));
+                maxY = Math.max(maxY, Math.min(max.getY(), world.getMaxY(x, z)));
+            }
+        }
+
+        if (minY > maxY) return null;
+
+        return new OcclusionMap().build(resourcePack, renderSettings, world,
+                min.getX() - 1, minY - 1, min.getZ() - 1,
+                max.getX() + 1, maxY + 1, max.getZ() + 1
+        );
+    }
+
 }
@@ -28,6 +28,8 @@
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.stream.JsonWriter;
+import de.bluecolored.bluemap.core.resourcepack.texture.TextureAtlas;
+import de.bluecolored.bluemap.core.util.LittleEndianOutputStream;
 import de.bluecolored.bluemap.core.util.math.MatrixM3f;
 import de.bluecolored.bluemap.core.util.math.MatrixM4f;
 import de.bluecolored.bluemap.core.util.math.VectorM3f;
@@ -53,6 +55,13 @@ public class HiresTileModel {
             FI_BLOCKLIGHT =     1       ,
             FI_MATERIAL_INDEX = 1       ;
 
+    // binary tile-format
+    private static final int BINARY_FORMAT_VERSION = 1;
+    private static final int
+            COMPONENT_FLOAT32 = 0,
+            COMPONENT_INT8 =    1,
+            COMPONENT_UINT8 =   2;
+
     private static final ConcurrentLinkedQueue<HiresTileModel> INSTANCE_POOL = new ConcurrentLinkedQueue<>();
 
     private int capacity;
@@ -80,6 +89,25 @@ public int add(int count) {
         return start;
     }
 
+    /**
+     * Appends all faces of the other model to the end of this model
+     */
+    public HiresTileModel append(HiresTileModel other) {
+        int start = add(other.size);
+        int count = other.size;
+
+        System.arraycopy(other.position,         0, position,        start * FI_POSITION,          count * FI_POSITION);
+        System.arraycopy(other.uv,               0, uv,              start * FI_UV,                count * FI_UV);
+        System.arraycopy(other.ao,               0, ao,              start * FI_AO,                count * FI_AO);
+
+        System.arraycopy(other.color,            0, color,           start * FI_COLOR,             count * FI_COLOR);
+        System.arraycopy(other.sunlight,         0, sunlight,        start * FI_SUNLIGHT,          count * FI_SUNLIGHT);
+        System.arraycopy(other.blocklight,       0, blocklight,      start * FI_BLOCKLIGHT,        count * FI_BLOCKLIGHT);
+        System.arraycopy(other.materialIndex,    0, materialIndex,   start * FI_MATERIAL_INDEX,    count * FI_MATERIAL_INDEX);
+
+        return this;
+    }
+
     public HiresTileModel setPositions(
             int face,
             double x1, double y1, double z1,
@@ -342,6 +370,28 @@ public HiresTileModel transform(
         return this;
     }
 
+    /**
+     * Maps the uvs of the given faces from their texture onto the page of the {@link TextureAtlas} that texture is placed on,
+     * and replaces their material-index (the texture-id) with the index of that page.
+     */
+    public HiresTileModel applyTextureAtlas(int start, int count, TextureAtlas atlas) {
+        int end = start + count, textureId, index;
+        for (int face = start; face < end; face++) {
+            textureId = materialIndex[face * FI_MATERIAL_INDEX];
+            if (!atlas.contains(textureId)) continue;
+
+            index = face * FI_UV;
+            for (int i = 0; i < 6; i += 2) {
+                uv[index + i    ] = atlas.mapU(textureId, uv[index + i    ]);
+                uv[index + i + 1] = atlas.mapV(textureId, uv[index + i + 1]);
+            }
+
+            materialIndex[face * FI_MATERIAL_INDEX] = atlas.getPage(textureId);
+        }
+
+        return this;
+    }
+
     public HiresTileModel reset(int size) {
         this.size = size;
         return this;
@@ -606,6 +656,210 @@ private void writeRounded(JsonWriter json, double value) throws IOException {
         else json.value(d);
     }
 
+    /**
+     * Writes this model in the compact binary tile-format.<br>
+     * <br>
+     * All values are little-endian:
+     * <pre>
+     * uint8    format-version
+     * uint32   vertex-count
+     * uint8    attribute-count
+     * attribute-count times:
+     *   uint8      name-length
+     *   byte[]     name (ascii)
+     *   uint8      component-type (0 = float32, 1 = int8, 2 = uint8)
+     *   uint8      item-size
+     *   uint8      normalized (0 or 1)
+     *   (padding to a multiple of 4 bytes)
+     *   vertex-count * item-size components
+     *   (padding to a multiple of 4 bytes)
+     * uint32   group-count
+     * group-count times:
+     *   int32      material-index
+     *   uint32     start
+     *   uint32     count
+     * </pre>
+     * Every attribute-array starts 4-byte aligned, so it can be directly wrapped into a javascript typed-array.
+     */
+    public void writeBufferGeometryBinary(OutputStream out) throws IOException {
+        sort();
+
+        LittleEndianOutputStream data = new LittleEndianOutputStream(out, 81920);
+
+        data.writeByte(BINARY_FORMAT_VERSION);
+        data.writeInt(size * 3);
+        data.writeByte(7); // attribute-count
+
+        writePositionArray(data);
+        writeNormalArray(data);
+        writeColorArray(data);
+        writeUvArray(data);
+        writeAoArray(data);
+        writeBlocklightArray(data);
+        writeSunlightArray(data);
+
+        writeMaterialGroups(data);
+
+        data.flush();
+    }
+
+    private void writePositionArray(LittleEndianOutputStream data) throws IOException {
+        writeAttributeHeader(data, "position", COMPONENT_FLOAT32, 3, false);
+
+        int posSize = size * FI_POSITION;
+        for (int i = 0; i < posSize; i++) {
+            data.writeFloat((float) position[i]);
+        }
+    }
+
+    private void writeNormalArray(LittleEndianOutputStream data) throws IOException {
+        VectorM3f normal = new VectorM3f(0, 0, 0);
+
+        writeAttributeHeader(data, "normal", COMPONENT_INT8, 3, true);
+
+        int pi, i, j;
+        byte nx, ny, nz;
+        for (i = 0; i < size; i++) {
+            pi = i * FI_POSITION;
+            calculateSurfaceNormal(
+                    position[pi    ], position[pi + 1], position[pi + 2],
+                    position[pi + 3], position[pi + 4], position[pi + 5],
+                    position[pi + 6], position[pi + 7], position[pi + 8],
+                    normal
+            );
+
+            nx = toNormalizedInt8(normal.x);
+            ny = toNormalizedInt8(normal.y);
+            nz = toNormalizedInt8(normal.z);
+
+            for (j = 0; j < 3; j++) { // all 3 points
+                data.writeByte(nx);
+                data.writeByte(ny);
+                data.writeByte(nz);
+            }
+        }
+
+        data.pad(4);
+    }
+
+    private void writeColorArray(LittleEndianOutputStream data) throws IOException {
+        writeAttributeHeader(data, "color", COMPONENT_UINT8, 3, true);
+
+        int colorSize = size * FI_COLOR, i, j;
+        for (i = 0; i < colorSize; i += 3) {
+            for (j = 0; j < 3; j++) {
+                data.writeByte(toNormalizedUint8(color[i]));
+                data.writeByte(toNormalizedUint8(color[i + 1]));
+                data.writeByte(toNormalizedUint8(color[i + 2]));
+            }
+        }
+
+        data.pad(4);
+    }
+
+    private void writeUvArray(LittleEndianOutputStream data) throws IOException {
+        writeAttributeHeader(data, "uv", COMPONENT_FLOAT32, 2, false);
+
+        int uvSize = size * FI_UV;
+        for (int i = 0; i < uvSize; i++) {
+            data.writeFloat(uv[i]);
+        }
+    }
+
+    private void writeAoArray(LittleEndianOutputStream data) throws IOException {
+        writeAttributeHeader(data, "ao", COMPONENT_UINT8, 1, true);
+
+        int aoSize = size * FI_AO;
+        for (int i = 0; i < aoSize; i++) {
+            data.writeByte(toNormalizedUint8(ao[i]));
+        }
+
+        data.pad(4);
+    }
+
+    private void writeBlocklightArray(LittleEndianOutputStream data) throws IOException {
+        writeAttributeHeader(data, "blocklight", COMPONENT_UINT8, 1, false);
+
+        int blSize = size * FI_BLOCKLIGHT;
+        for (int i = 0; i < blSize; i++) {
+            data.writeByte(blocklight[i]);
+            data.writeByte(blocklight[i]);
+            data.writeByte(blocklight[i]);
+        }
+
+        data.pad(4);
+    }
+
+    private void writeSunlightArray(LittleEndianOutputStream data) throws IOException {
+        writeAttributeHeader(data, "sunlight", COMPONENT_UINT8, 1, false);
+
+        int slSize = size * FI_SUNLIGHT;
+        for (int i = 0; i < slSize; i++) {
+            data.writeByte(sunlight[i]);
+            data.writeByte(sunlight[i]);
+            data.writeByte(sunlight[i]);
+        }
+
+        data.pad(4);
+    }
+
+    private void writeMaterialGroups(LittleEndianOutputStream data) throws IOException {
+        int miSize = size * FI_MATERIAL_INDEX, i;
+
+        // count groups
+        int groupCount = 0;
+        if (size > 0) {
+            groupCount = 1;
+            for (i = 1; i < miSize; i++) {
+                if (materialIndex[i] != materialIndex[i - 1]) groupCount++;
+            }
+        }
+
+        data.writeInt(groupCount);
+        if (groupCount == 0) return;
+
+        int lastMaterial = materialIndex[0], material, groupStart = 0;
+        for (i = 1; i < miSize; i++) {
+            material = materialIndex[i];
+
+            if (material != lastMaterial) {
+                data.writeInt(lastMaterial);
+                data.writeInt(groupStart * 3);
+                data.writeInt((i - groupStart) * 3);
+
+                groupStart = i;
+            }
+
+            lastMaterial = material;
+        }
+
+        data.writeInt(lastMaterial);
+        data.writeInt(groupStart * 3);
+        data.writeInt((miSize - groupStart) * 3);
+    }
+
+    private void writeAttributeHeader(LittleEndianOutputStream data, String name, int componentType, int itemSize, boolean normalized) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        data.writeByte(nameBytes.length);
+        data.write(nameBytes);
+        data.writeByte(componentType);
+        data.writeByte(itemSize);
+        data.writeByte(normalized ? 1 : 0);
+        data.pad(4);
+    }
+
+    private static byte toNormalizedInt8(float value) {
+        if (value >= 1f) return 127;
+        if (value <= -1f) return -127;
+        return (byte) Math.round(value * 127f);
+    }
+
+    private static byte toNormalizedUint8(float value) {
+        if (value >= 1f) return (byte) 255;
+        if (value <= 0f) return 0;
+        return (byte) Math.round(value * 255f);
+    }
+
     /**
      * Does an optimized selection sort to sort all faces based on their material-index.
      * A selection sort is chosen, because it requires the least amount of swaps, which seem (untested) to be the most expensive operation here
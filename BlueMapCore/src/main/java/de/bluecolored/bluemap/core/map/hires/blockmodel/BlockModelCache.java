@@ -0,0 +1,116 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires.blockmodel;
+
+import de.bluecolored.bluemap.core.resourcepack.NoSuchResourceException;
+import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.resourcepack.blockmodel.TransformedBlockModelResource;
+import de.bluecolored.bluemap.core.resourcepack.blockstate.BlockStateResource;
+import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockStateCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the models that are used to render a {@link BlockState}, and the compiled {@link ResourceModelTemplate}s of those models.<br>
+ * <br>
+ * <i>The implementation of this class is thread-save, so one instance can be shared by all render-threads of a map.</i><br>
+ */
+public class BlockModelCache {
+
+    private static final BlockStateModels NO_RESOURCE = new BlockStateModels(null, null);
+
+    private final ResourcePack resourcePack;
+
+    private final BlockStateCache<BlockStateModels> blockStateModels;
+    private final Map<TransformedBlockModelResource, ResourceModelTemplate> templates;
+
+    public BlockModelCache(ResourcePack resourcePack) {
+        this.resourcePack = resourcePack;
+
+        this.blockStateModels = new BlockStateCache<>(this::loadBlockStateModels);
+        this.templates = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the {@link BlockStateModels} for this {@link BlockState}
+     * @throws NoSuchResourceException If no resource is loaded for this {@link BlockState}
+     */
+    public BlockStateModels getBlockStateModels(BlockState blockState) throws NoSuchResourceException {
+        BlockStateModels models = blockStateModels.get(blockState);
+        if (models == NO_RESOURCE) throw new NoSuchResourceException("No resource for blockstate: " + blockState.getFullId());
+        return models;
+    }
+
+    public ResourceModelTemplate getTemplate(TransformedBlockModelResource bmr) {
+        ResourceModelTemplate template = templates.get(bmr);
+        if (template != null) return template;
+
+        return templates.computeIfAbsent(bmr, ResourceModelTemplate::compile);
+    }
+
+    private BlockStateModels loadBlockStateModels(BlockState blockState) {
+        BlockStateResource resource;
+        try {
+            resource = resourcePack.getBlockStateResource(blockState);
+        } catch (NoSuchResourceException ex) {
+            return NO_RESOURCE;
+        }
+
+        // models that are chosen based on the block-position can't be cached
+        if (resource.hasRandomModels(blockState)) return new BlockStateModels(resource, null);
+
+        Collection<TransformedBlockModelResource> models = resource.getModels(blockState, new ArrayList<>());
+        return new BlockStateModels(resource, models.toArray(new TransformedBlockModelResource[0]));
+    }
+
+    public static class BlockStateModels {
+
+        private final BlockStateResource resource;
+        private final TransformedBlockModelResource[] models;
+
+        private BlockStateModels(BlockStateResource resource, TransformedBlockModelResource[] models) {
+            this.resource = resource;
+            this.models = models;
+        }
+
+        public BlockStateResource getResource() {
+            return resource;
+        }
+
+        /**
+         * The models of the {@link BlockState}, or <code>null</code> if the models depend on the block-position
+         * and need to be retrieved from the {@link BlockStateResource} for each block.
+         */
+        public TransformedBlockModelResource[] getModels() {
+            return models;
+        }
+
+    }
+
+}
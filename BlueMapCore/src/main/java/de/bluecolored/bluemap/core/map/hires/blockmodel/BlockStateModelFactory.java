@@ -26,7 +26,6 @@
 
 import de.bluecolored.bluemap.core.map.hires.BlockModelView;
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
-import de.bluecolored.bluemap.core.resourcepack.blockstate.BlockStateResource;
 import de.bluecolored.bluemap.core.resourcepack.NoSuchResourceException;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.resourcepack.blockmodel.TransformedBlockModelResource;
@@ -39,16 +38,20 @@
 
 public class BlockStateModelFactory {
 
-    private final ResourcePack resourcePack;
+    private final BlockModelCache modelCache;
     private final ResourceModelBuilder resourceModelBuilder;
     private final LiquidModelBuilder liquidModelBuilder;
 
     private final Collection<TransformedBlockModelResource> bmrs;
 
     public BlockStateModelFactory(ResourcePack resourcePack, RenderSettings renderSettings) {
-        this.resourcePack = resourcePack;
+        this(resourcePack, renderSettings, new BlockModelCache(resourcePack));
+    }
+
+    public BlockStateModelFactory(ResourcePack resourcePack, RenderSettings renderSettings, BlockModelCache modelCache) {
+        this.modelCache = modelCache;
 
-        this.resourceModelBuilder = new ResourceModelBuilder(resourcePack, renderSettings);
+        this.resourceModelBuilder = new ResourceModelBuilder(resourcePack, renderSettings, modelCache);
         this.liquidModelBuilder = new LiquidModelBuilder(resourcePack, renderSettings);
 
         this.bmrs = new ArrayList<>();
@@ -79,21 +82,32 @@ public void render(BlockNeighborhood<?> block, BlockState blockState, BlockModel
     private void renderModel(BlockNeighborhood<?> block, BlockState blockState, BlockModelView blockModel, Color blockColor) throws NoSuchResourceException {
         int modelStart = blockModel.getStart();
 
-        BlockStateResource resource = resourcePack.getBlockStateResource(blockState);
-        for (TransformedBlockModelResource bmr : resource.getModels(blockState, block.getX(), block.getY(), block.getZ(), bmrs)){
-            switch (bmr.getModel().getType()){
-            case LIQUID:
-                liquidModelBuilder.build(block, blockState, bmr, blockModel.initialize(), blockColor);
-                break;
-            default:
-                resourceModelBuilder.build(block, bmr, blockModel.initialize(), blockColor);
-                break;
+        BlockModelCache.BlockStateModels blockStateModels = modelCache.getBlockStateModels(blockState);
+        TransformedBlockModelResource[] models = blockStateModels.getModels();
+        if (models != null) {
+            for (TransformedBlockModelResource bmr : models) {
+                renderModel(block, blockState, bmr, blockModel, blockColor);
+            }
+        } else {
+            for (TransformedBlockModelResource bmr : blockStateModels.getResource().getModels(blockState, block.getX(), block.getY(), block.getZ(), bmrs)) {
+                renderModel(block, blockState, bmr, blockModel, blockColor);
             }
         }
 
         blockModel.initialize(modelStart);
     }
 
-    private final static BlockState WATERLOGGED_BLOCKSTATE = new BlockState("minecraft:water");
+    private void renderModel(BlockNeighborhood<?> block, BlockState blockState, TransformedBlockModelResource bmr, BlockModelView blockModel, Color blockColor) {
+        switch (bmr.getModel().getType()){
+        case LIQUID:
+            liquidModelBuilder.build(block, blockState, bmr, blockModel.initialize(), blockColor);
+            break;
+        default:
+            resourceModelBuilder.build(block, bmr, blockModel.initialize(), blockColor);
+            break;
+        }
+    }
+
+    private final static BlockState WATERLOGGED_BLOCKSTATE = new BlockState("minecraft:water").intern();
 
 }
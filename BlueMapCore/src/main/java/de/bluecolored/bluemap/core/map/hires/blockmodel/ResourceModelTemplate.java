@@ -0,0 +1,382 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires.blockmodel;
+
+import com.flowpowered.math.TrigMath;
+import com.flowpowered.math.vector.Vector2f;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+import com.flowpowered.math.vector.Vector4f;
+import de.bluecolored.bluemap.core.resourcepack.blockmodel.BlockModelResource;
+import de.bluecolored.bluemap.core.resourcepack.blockmodel.TransformedBlockModelResource;
+import de.bluecolored.bluemap.core.resourcepack.texture.Texture;
+import de.bluecolored.bluemap.core.util.Direction;
+import de.bluecolored.bluemap.core.util.math.MatrixM4f;
+import de.bluecolored.bluemap.core.util.math.VectorM2f;
+import de.bluecolored.bluemap.core.util.math.VectorM3f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The faces of a {@link TransformedBlockModelResource}, with everything that does not depend on the rendered block precomputed:
+ * Positions (with element- and model-rotation applied), uvs (with face-rotation and uv-lock applied), textures and
+ * the rotation-relative offsets of the neighbor-blocks that are checked for culling, light and ambient-occlusion.<br>
+ * <br>
+ * Instances are immutable and can be shared between threads.
+ */
+public class ResourceModelTemplate {
+    private static final float BLOCK_SCALE = 1f / 16f;
+
+    private final Face[] faces;
+
+    private ResourceModelTemplate(Face[] faces) {
+        this.faces = faces;
+    }
+
+    public Face[] getFaces() {
+        return faces;
+    }
+
+    public static ResourceModelTemplate compile(TransformedBlockModelResource bmr) {
+        MatrixM4f modelTransform = null;
+        if (bmr.hasRotation()) {
+            modelTransform = new MatrixM4f()
+                    .translate(-0.5f, -0.5f, -0.5f)
+                    .multiplyTo(bmr.getRotationMatrix())
+                    .translate(0.5f, 0.5f, 0.5f);
+        }
+
+        List<Face> faces = new ArrayList<>();
+        VectorM3f[] c = new VectorM3f[8];
+        for (int i = 0; i < c.length; i++) c[i] = new VectorM3f(0, 0, 0);
+
+        for (BlockModelResource.Element element : bmr.getModel().getElements()) {
+            Vector3f from = element.getFrom();
+            Vector3f to = element.getTo();
+
+            float
+                    minX = Math.min(from.getX(), to.getX()),
+                    minY = Math.min(from.getY(), to.getY()),
+                    minZ = Math.min(from.getZ(), to.getZ()),
+                    maxX = Math.max(from.getX(), to.getX()),
+                    maxY = Math.max(from.getY(), to.getY()),
+                    maxZ = Math.max(from.getZ(), to.getZ());
+
+            c[0].set(minX, minY, minZ);
+            c[1].set(minX, minY, maxZ);
+            c[2].set(maxX, minY, minZ);
+            c[3].set(maxX, minY, maxZ);
+            c[4].set(minX, maxY, minZ);
+            c[5].set(minX, maxY, maxZ);
+            c[6].set(maxX, maxY, minZ);
+            c[7].set(maxX, maxY, maxZ);
+
+            MatrixM4f elementTransform = new MatrixM4f()
+                    .copy(element.getRotationMatrix())
+                    .scale(BLOCK_SCALE, BLOCK_SCALE, BLOCK_SCALE);
+
+            addFace(faces, bmr, element, Direction.DOWN, elementTransform, modelTransform, c[0], c[2], c[3], c[1]);
+            addFace(faces, bmr, element, Direction.UP, elementTransform, modelTransform, c[5], c[7], c[6], c[4]);
+            addFace(faces, bmr, element, Direction.NORTH, elementTransform, modelTransform, c[2], c[0], c[4], c[6]);
+            addFace(faces, bmr, element, Direction.SOUTH, elementTransform, modelTransform, c[1], c[3], c[7], c[5]);
+            addFace(faces, bmr, element, Direction.WEST, elementTransform, modelTransform, c[0], c[1], c[5], c[4]);
+            addFace(faces, bmr, element, Direction.EAST, elementTransform, modelTransform, c[3], c[2], c[6], c[7]);
+        }
+
+        return new ResourceModelTemplate(faces.toArray(new Face[0]));
+    }
+
+    private static void addFace(
+            List<Face> faces,
+            TransformedBlockModelResource bmr,
+            BlockModelResource.Element element,
+            Direction faceDir,
+            MatrixM4f elementTransform,
+            MatrixM4f modelTransform,
+            VectorM3f c0, VectorM3f c1, VectorM3f c2, VectorM3f c3
+    ) {
+        BlockModelResource.Element.Face face = element.getFaces().get(faceDir);
+        if (face == null) return;
+
+        faces.add(new Face(bmr, face, faceDir, elementTransform, modelTransform, c0, c1, c2, c3));
+    }
+
+    public static class Face {
+
+        private final double[] positions;
+        private final float[] uvs;
+
+        private final Texture texture;
+        private final int textureId;
+        private final boolean tinted;
+        private final boolean upFacing;
+
+        private final int[] cullOffset;
+        private final int[] lightOffset;
+        private final int[][] aoOffsets;
+
+        private Face(
+                TransformedBlockModelResource bmr,
+                BlockModelResource.Element.Face face,
+                Direction faceDir,
+                MatrixM4f elementTransform,
+                MatrixM4f modelTransform,
+                VectorM3f c0, VectorM3f c1, VectorM3f c2, VectorM3f c3
+        ) {
+            Vector3i faceDirVector = faceDir.toVector();
+
+            // ####### neighbors
+            this.cullOffset = face.getCullface() != null ? rotationRelative(bmr, face.getCullface().toVector()) : null;
+            this.lightOffset = rotationRelative(bmr, faceDirVector);
+
+            if (bmr.getModel().isAmbientOcclusion()) {
+                this.aoOffsets = new int[][] {
+                        aoOffsets(bmr, c0, faceDirVector),
+                        aoOffsets(bmr, c1, faceDirVector),
+                        aoOffsets(bmr, c2, faceDirVector),
+                        aoOffsets(bmr, c3, faceDirVector)
+                };
+            } else {
+                this.aoOffsets = null;
+            }
+
+            // ####### positions
+            this.positions = new double[] {
+                    c0.x, c0.y, c0.z,
+                    c1.x, c1.y, c1.z,
+                    c2.x, c2.y, c2.z,
+                    c3.x, c3.y, c3.z
+            };
+            transform(positions, elementTransform);
+            if (modelTransform != null) transform(positions, modelTransform);
+
+            // ####### texture
+            this.texture = face.getTexture();
+            this.textureId = texture.getId();
+            this.tinted = face.isTinted();
+
+            // ####### UV
+            Vector4f uvRaw = face.getUv();
+            float
+                    uvx = uvRaw.getX() / 16f,
+                    uvy = uvRaw.getY() / 16f,
+                    uvz = uvRaw.getZ() / 16f,
+                    uvw = uvRaw.getW() / 16f;
+
+            VectorM2f[] rawUvs = new VectorM2f[] {
+                    new VectorM2f(uvx, uvw),
+                    new VectorM2f(uvz, uvw),
+                    new VectorM2f(uvz, uvy),
+                    new VectorM2f(uvx, uvy)
+            };
+
+            // face-rotation
+            VectorM2f[] uvs = new VectorM2f[4];
+            int rotationSteps = Math.floorDiv(face.getRotation(), 90) % 4;
+            if (rotationSteps < 0) rotationSteps += 4;
+            for (int i = 0; i < 4; i++)
+                uvs[i] = rawUvs[(rotationSteps + i) % 4];
+
+            // UV-Lock counter-rotation
+            float uvRotation = 0f;
+            if (bmr.isUVLock() && bmr.hasRotation()) {
+                Vector2f rotation = bmr.getRotation();
+
+                float xRotSin = TrigMath.sin(rotation.getX() * TrigMath.DEG_TO_RAD);
+                float xRotCos = TrigMath.cos(rotation.getX() * TrigMath.DEG_TO_RAD);
+
+                uvRotation =
+                        rotation.getY() * (faceDirVector.getY() * xRotCos + faceDirVector.getZ() * xRotSin) +
+                        rotation.getX() * (1 - faceDirVector.getY());
+            }
+
+            // rotate uv's
+            if (uvRotation != 0){
+                uvRotation *= TrigMath.DEG_TO_RAD;
+                float cx = TrigMath.cos(uvRotation), cy = TrigMath.sin(uvRotation);
+                for (VectorM2f uv : uvs) {
+                    uv.translate(-0.5f, -0.5f);
+                    uv.rotate(cx, cy);
+                    uv.translate(0.5f, 0.5f);
+                }
+            }
+
+            this.uvs = new float[] {
+                    uvs[0].x, uvs[0].y,
+                    uvs[1].x, uvs[1].y,
+                    uvs[2].x, uvs[2].y,
+                    uvs[3].x, uvs[3].y
+            };
+
+            // ####### up-facing (contributes to the map-color)
+            VectorM3f faceRotationVector = new VectorM3f(
+                    faceDirVector.getX(),
+                    faceDirVector.getY(),
+                    faceDirVector.getZ()
+            );
+            faceRotationVector.transform(bmr.getRotationMatrix());
+            faceRotationVector.rotateAndScale(face.getElement().getRotationMatrix());
+            this.upFacing = faceRotationVector.y > 0;
+        }
+
+        /**
+         * The 4 corner-positions of this face <code>(x0, y0, z0, x1, ... z3)</code>,
+         * the two triangles of the face are (0, 1, 2) and (0, 2, 3)
+         */
+        public double[] getPositions() {
+            return positions;
+        }
+
+        /**
+         * The uvs of the 4 corners of this face <code>(u0, v0, u1, ... v3)</code>
+         */
+        public float[] getUvs() {
+            return uvs;
+        }
+
+        public Texture getTexture() {
+            return texture;
+        }
+
+        public int getTextureId() {
+            return textureId;
+        }
+
+        public boolean isTinted() {
+            return tinted;
+        }
+
+        public boolean isUpFacing() {
+            return upFacing;
+        }
+
+        /**
+         * The offset <code>(dx, dy, dz)</code> of the neighbor-block that culls this face,
+         * or <code>null</code> if this face is never culled
+         */
+        public int[] getCullOffset() {
+            return cullOffset;
+        }
+
+        /**
+         * The offset <code>(dx, dy, dz)</code> of the neighbor-block this face is facing
+         */
+        public int[] getLightOffset() {
+            return lightOffset;
+        }
+
+        /**
+         * For each of the 4 corners the offsets <code>(dx, dy, dz, dx, ...)</code> of the neighbor-blocks
+         * that are tested for ambient-occlusion, or <code>null</code> if the model has no ambient-occlusion
+         */
+        public int[][] getAoOffsets() {
+            return aoOffsets;
+        }
+
+        private static void transform(double[] positions, MatrixM4f t) {
+            double x, y, z;
+            for (int i = 0; i < positions.length; i += 3) {
+                x = positions[i    ];
+                y = positions[i + 1];
+                z = positions[i + 2];
+
+                positions[i    ] = t.m00 * x + t.m01 * y + t.m02 * z + t.m03;
+                positions[i + 1] = t.m10 * x + t.m11 * y + t.m12 * z + t.m13;
+                positions[i + 2] = t.m20 * x + t.m21 * y + t.m22 * z + t.m23;
+            }
+        }
+
+        private static int[] rotationRelative(TransformedBlockModelResource bmr, Vector3i direction) {
+            return rotationRelative(bmr, direction.getX(), direction.getY(), direction.getZ());
+        }
+
+        private static int[] rotationRelative(TransformedBlockModelResource bmr, int dx, int dy, int dz) {
+            VectorM3f direction = new VectorM3f(dx, dy, dz);
+            direction.transform(bmr.getRotationMatrix());
+
+            return new int[] {
+                    Math.round(direction.x),
+                    Math.round(direction.y),
+                    Math.round(direction.z)
+            };
+        }
+
+        private static int[] aoOffsets(TransformedBlockModelResource bmr, VectorM3f vertex, Vector3i dirVec) {
+            int x = 0;
+            if (vertex.x == 16){
+                x = 1;
+            } else if (vertex.x == 0){
+                x = -1;
+            }
+
+            int y = 0;
+            if (vertex.y == 16){
+                y = 1;
+            } else if (vertex.y == 0){
+                y = -1;
+            }
+
+            int z = 0;
+            if (vertex.z == 16){
+                z = 1;
+            } else if (vertex.z == 0){
+                z = -1;
+            }
+
+            int[] offsets = new int[12];
+            int count = 0;
+
+            if (x * dirVec.getX() + y * dirVec.getY() > 0){
+                count = append(offsets, count, rotationRelative(bmr, x, y, 0));
+            }
+
+            if (x * dirVec.getX() + z * dirVec.getZ() > 0){
+                count = append(offsets, count, rotationRelative(bmr, x, 0, z));
+            }
+
+            if (y * dirVec.getY() + z * dirVec.getZ() > 0){
+                count = append(offsets, count, rotationRelative(bmr, 0, y, z));
+            }
+
+            if (x * dirVec.getX() + y * dirVec.getY() + z * dirVec.getZ() > 0){
+                count = append(offsets, count, rotationRelative(bmr, x, y, z));
+            }
+
+            int[] result = new int[count];
+            System.arraycopy(offsets, 0, result, 0, count);
+            return result;
+        }
+
+        private static int append(int[] offsets, int count, int[] offset) {
+            offsets[count++] = offset[0];
+            offsets[count++] = offset[1];
+            offsets[count++] = offset[2];
+            return count;
+        }
+
+    }
+
+}
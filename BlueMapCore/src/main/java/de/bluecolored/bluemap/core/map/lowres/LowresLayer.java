@@ -0,0 +1,360 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.lowres;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.threejs.BufferGeometry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One level-of-detail of the lowres-models of a map, with its own model-cache.<br>
+ * Whenever a changed model of this layer is saved, the area of that model is downsampled onto the parent-layer (if there is one).<br>
+ * <br>
+ * Point x of the parent-layer lies on the same position as point x * parentFactor of this layer, so all layers share the
+ * same origin. Each parent-point is the average of the parentFactor x parentFactor points of this layer that are centered on it.
+ */
+class LowresLayer {
+
+    private static final long SAVE_INTERVAL = TimeUnit.MINUTES.toMillis(2);
+    private static final long SAVE_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    private final Storage.TileStorage storage;
+    private final Vector2i pointsPerTile;
+    private final int cacheSize;
+
+    private final LowresLayer parent;
+    private final int parentFactor;
+
+    private final Cache<Vector2i, CachedModel> models;
+    private final Map<Vector2i, CachedModel> evictedModels;
+    private final AtomicLong nextSaveCheck;
+
+    /**
+     * @param parent the next layer with a lower level-of-detail, or null if this is the last layer
+     * @param parentFactor the amount of points (on each axis) of this layer that are combined into one point of the parent-layer
+     */
+    LowresLayer(Storage.TileStorage storage, Vector2i pointsPerTile, int cacheSize, LowresLayer parent, int parentFactor) {
+        this.storage = storage;
+        this.pointsPerTile = pointsPerTile;
+        this.cacheSize = Math.max(cacheSize, 1);
+
+        this.parent = parent;
+        this.parentFactor = parentFactor;
+
+        this.models = Caffeine.newBuilder()
+                .executor(BlueMap.THREAD_POOL)
+                .maximumSize(this.cacheSize)
+                .writer(new CacheWriter<Vector2i, CachedModel>() {
+                    @Override
+                    public void write(Vector2i tile, CachedModel model) {}
+
+                    @Override
+                    public void delete(Vector2i tile, CachedModel model, RemovalCause cause) {
+                        if (cause.wasEvicted()) evictModel(model);
+                    }
+                })
+                .build();
+        this.evictedModels = new ConcurrentHashMap<>();
+        this.nextSaveCheck = new AtomicLong(System.currentTimeMillis() + SAVE_CHECK_INTERVAL);
+    }
+
+    /**
+     * Updates a point on the grid of this layer
+     */
+    void update(int px, int pz, float height, float r, float g, float b) {
+        int tileX = Math.floorDiv(px, pointsPerTile.getX());
+        int tileZ = Math.floorDiv(pz, pointsPerTile.getY());
+        int relX = px - tileX * pointsPerTile.getX();
+        int relZ = pz - tileZ * pointsPerTile.getY();
+
+        updateModel(new Vector2i(tileX, tileZ), relX, relZ, height, r, g, b);
+
+        // points on the tile-border are also part of the neighbouring tiles
+        if (relX == 0){
+            updateModel(new Vector2i(tileX - 1, tileZ), pointsPerTile.getX(), relZ, height, r, g, b);
+        }
+
+        if (relZ == 0){
+            updateModel(new Vector2i(tileX, tileZ - 1), relX, pointsPerTile.getY(), height, r, g, b);
+        }
+
+        if (relX == 0 && relZ == 0){
+            updateModel(new Vector2i(tileX - 1, tileZ - 1), pointsPerTile.getX(), pointsPerTile.getY(), height, r, g, b);
+        }
+    }
+
+    /**
+     * Saves all unsaved changes to the models of this layer
+     */
+    synchronized void save() {
+        for (CachedModel model : models.asMap().values()){
+            saveModel(model);
+        }
+
+        // also make sure evicted models are saved before returning
+        for (CachedModel model : evictedModels.values()){
+            saveModel(model);
+        }
+    }
+
+    private void updateModel(Vector2i tile, int x, int z, float height, float r, float g, float b) {
+        while (true) {
+            CachedModel model = getCachedModel(tile);
+
+            // models are only evicted while holding their lock, so an update can never get lost on an evicted model
+            synchronized (model) {
+                if (model.evicted) continue; // got evicted in the meantime, retry on the live model
+
+                model.getModel().update(x, z, height, r, g, b);
+                return;
+            }
+        }
+    }
+
+    private CachedModel getCachedModel(Vector2i tile) {
+        CachedModel model = models.get(tile, CachedModel::new);
+
+        long now = System.currentTimeMillis();
+        long nextCheck = nextSaveCheck.get();
+        if (now >= nextCheck && nextSaveCheck.compareAndSet(nextCheck, now + SAVE_CHECK_INTERVAL)) {
+            saveOutdatedModels(now);
+        }
+
+        return model;
+    }
+
+    private LowresModel loadModel(Vector2i tile) {
+        // an evicted model that is still being saved is more recent than the stored one
+        CachedModel evictedModel = evictedModels.get(tile);
+        if (evictedModel != null && evictedModel.model != null) return evictedModel.model;
+
+        LowresModel model = readModel(tile);
+        return model != null ? model : new LowresModel(pointsPerTile);
+    }
+
+    /**
+     * Returns the current model of the tile without adding it to the cache, or null if there is no such model
+     */
+    private LowresModel peekModel(Vector2i tile) {
+        CachedModel cachedModel = models.getIfPresent(tile);
+        if (cachedModel == null) cachedModel = evictedModels.get(tile);
+        if (cachedModel != null && cachedModel.model != null) return cachedModel.model;
+
+        return readModel(tile);
+    }
+
+    private LowresModel readModel(Vector2i tile) {
+        try {
+            Optional<InputStream> optIs = storage.read(tile);
+            if (optIs.isPresent()){
+                try (Reader reader = new InputStreamReader(optIs.get(), StandardCharsets.UTF_8)) {
+                    return new LowresModel(pointsPerTile, BufferGeometry.readJson(reader));
+                }
+            }
+        } catch (IllegalArgumentException | IOException ex){
+            Logger.global.logWarning("Failed to load lowres model '" + tile + "': " + ex);
+
+            try {
+                storage.delete(tile);
+            } catch (IOException ex2) {
+                Logger.global.logError("Failed to delete lowres-file: " + tile, ex2);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Saves all modified models that have not been saved for 2 minutes and performs any pending evictions of the cache.<br>
+     * This also happens automatically (at most every {@link #SAVE_CHECK_INTERVAL}) when models are added to the cache.
+     */
+    void tidyUpModelCache() {
+        long now = System.currentTimeMillis();
+        nextSaveCheck.set(now + SAVE_CHECK_INTERVAL);
+        saveOutdatedModels(now);
+
+        models.cleanUp();
+    }
+
+    private void saveOutdatedModels(long now) {
+        for (CachedModel model : models.asMap().values()) {
+            if (now - model.lastSaveTime > SAVE_INTERVAL && model.model != null) {
+                model.lastSaveTime = now;
+                BlueMap.THREAD_POOL.execute(() -> saveModel(model));
+            }
+        }
+    }
+
+    /**
+     * Called by the cache, atomically with the removal of the evicted model.<br>
+     * Evicted models are saved asynchronously.
+     */
+    private void evictModel(CachedModel model) {
+        synchronized (model) {
+            model.evicted = true;
+
+            // keep the model reachable for loading until it is saved
+            evictedModels.put(model.tile, model);
+        }
+
+        BlueMap.THREAD_POOL.execute(() -> {
+            saveModel(model);
+            evictedModels.remove(model.tile, model);
+        });
+    }
+
+    private void saveModel(CachedModel model) {
+        LowresModel lowresModel = model.model;
+        if (lowresModel == null) return;
+
+        boolean saved = false;
+        try {
+            saved = lowresModel.save(storage, model.tile, false);
+            //logger.logDebug("Saved lowres tile: " + model.getTile());
+        } catch (IOException ex) {
+            Logger.global.logError("Failed to save lowres-model: " + model.tile, ex);
+        }
+
+        model.lastSaveTime = System.currentTimeMillis();
+
+        // only the parents of changed models need to be updated
+        if (saved && parent != null) updateParent(model.tile, lowresModel);
+    }
+
+    /**
+     * Downsamples the area of the given model onto the parent-layer.<br>
+     * This updates all parent-points whose averaged points are (partly) on this model, the points that are beyond its border
+     * are taken from the neighbouring models. Points of models that don't exist (yet) are left out of the average,
+     * the parent-point will be updated again with them when that model is saved.
+     */
+    private void updateParent(Vector2i tile, LowresModel model) {
+        int pointsX = pointsPerTile.getX(), pointsZ = pointsPerTile.getY();
+        int parentPointsX = pointsX / parentFactor;
+        int parentPointsZ = pointsZ / parentFactor;
+
+        // an even factor has no center-point, so the outermost points are half-weighted to keep the window centered
+        int radius = parentFactor / 2;
+        float edgeWeight = parentFactor % 2 == 0 ? 0.5f : 1f;
+
+        LowresModel[] neighbours = new LowresModel[9];
+        boolean[] neighboursLoaded = new boolean[9];
+        neighbours[4] = model;
+        neighboursLoaded[4] = true;
+
+        for (int x = 0; x <= parentPointsX; x++){
+            for (int z = 0; z <= parentPointsZ; z++){
+
+                float weightSum = 0, height = 0, r = 0, g = 0, b = 0;
+                for (int i = -radius; i <= radius; i++){
+                    int px = x * parentFactor + i;
+                    int dx = px < 0 ? -1 : px > pointsX ? 1 : 0;
+
+                    for (int j = -radius; j <= radius; j++){
+                        int pz = z * parentFactor + j;
+                        int dz = pz < 0 ? -1 : pz > pointsZ ? 1 : 0;
+
+                        int n = (dx + 1) * 3 + dz + 1;
+                        if (!neighboursLoaded[n]) {
+                            neighbours[n] = peekModel(tile.add(dx, dz));
+                            neighboursLoaded[n] = true;
+                        }
+
+                        LowresModel source = neighbours[n];
+                        if (source == null) continue;
+
+                        int sx = px - dx * pointsX;
+                        int sz = pz - dz * pointsZ;
+
+                        float weight = (i == -radius || i == radius ? edgeWeight : 1f) * (j == -radius || j == radius ? edgeWeight : 1f);
+                        weightSum += weight;
+                        height += source.getHeight(sx, sz) * weight;
+                        r += source.getColor(sx, sz, 0) * weight;
+                        g += source.getColor(sx, sz, 1) * weight;
+                        b += source.getColor(sx, sz, 2) * weight;
+                    }
+                }
+
+                parent.update(
+                        tile.getX() * parentPointsX + x,
+                        tile.getY() * parentPointsZ + z,
+                        height / weightSum, r / weightSum, g / weightSum, b / weightSum
+                );
+            }
+        }
+    }
+
+    private class CachedModel {
+
+        private final Vector2i tile;
+        private volatile LowresModel model;
+        private volatile long lastSaveTime;
+        private volatile boolean evicted;
+
+        private CachedModel(Vector2i tile) {
+            this.tile = tile;
+            this.model = null;
+            this.evicted = false;
+
+            this.lastSaveTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Returns the model, only threads requesting the same tile wait for it to be loaded
+         */
+        private LowresModel getModel() {
+            LowresModel model = this.model;
+            if (model == null){
+                synchronized (this) {
+                    model = this.model;
+                    if (model == null){
+                        model = loadModel(tile);
+                        this.model = model;
+                    }
+                }
+            }
+
+            return model;
+        }
+
+    }
+
+}
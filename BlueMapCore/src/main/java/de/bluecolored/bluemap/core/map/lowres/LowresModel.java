@@ -28,141 +28,209 @@
 import com.flowpowered.math.vector.Vector3f;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.threejs.BufferGeometry;
+import de.bluecolored.bluemap.core.threejs.MaterialGroup;
 import de.bluecolored.bluemap.core.util.MathUtils;
 import de.bluecolored.bluemap.core.util.ModelUtils;
 
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * A lowres-model that stores the height and color of each point on its grid in dense arrays.<br>
+ * Updates are applied to these arrays directly, the actual grid-mesh is only generated when the model is saved.
+ */
 public class LowresModel {
 
-    private final BufferGeometry model;
-    private Map<Vector2i, LowresPoint> changes;
+    private static final Map<Vector2i, GridTemplate> GRID_TEMPLATES = new ConcurrentHashMap<>();
+
+    private final GridTemplate grid;
+    private final float[] heights;
+    private final float[] colors;
 
-    private boolean hasUnsavedChanges;
+    private volatile boolean hasUnsavedChanges;
 
     private final Object
         fileLock = new Object(),
         modelLock = new Object();
 
     public LowresModel(Vector2i gridSize) {
-        this(
-            ModelUtils.makeGrid(gridSize).toBufferGeometry()
-        );
-    }
+        this.grid = GRID_TEMPLATES.computeIfAbsent(gridSize, GridTemplate::new);
 
-    public LowresModel(BufferGeometry model) {
-        this.model = model;
-
-        this.changes = new ConcurrentHashMap<>();
+        this.heights = new float[grid.pointCount];
+        this.colors = new float[grid.pointCount * 3];
 
         this.hasUnsavedChanges = true;
     }
 
     /**
-     * Searches for all vertices at that point on the grid-model and change the height and color.<br>
-     * <br>
-     * <i>
-     * Implementation note:<br>
-     * The vertex x, z -coords are rounded, so we can compare them using == without worrying about floating point rounding differences.<br>
-     * </i>
+     * Creates a lowres-model with the given grid-size, and reads the heights and colors of all points from the given model.
      */
-    public void update(Vector2i point, float height, Vector3f color){
-        changes.put(point, new LowresPoint(height, color));
-        this.hasUnsavedChanges = true;
+    public LowresModel(Vector2i gridSize, BufferGeometry model) {
+        this(gridSize);
+
+        float[] position = model.attributes.get("position").values();
+        float[] color = model.attributes.get("color").values();
+
+        int vertexCount = Math.min(position.length, color.length) / 3;
+        for (int i = 0; i < vertexCount; i++){
+            int j = i * 3;
+            int px = Math.round(position[j    ]);
+            int pz = Math.round(position[j + 2]);
+            if (px < 0 || px >= grid.pointsX || pz < 0 || pz >= grid.pointsZ) continue;
+
+            int p = grid.pointIndex(px, pz);
+            heights[p] = position[j + 1];
+            colors[p * 3    ] = color[j    ];
+            colors[p * 3 + 1] = color[j + 1];
+            colors[p * 3 + 2] = color[j + 2];
+        }
     }
 
     /**
-     * Saves this model to its file
-     * @param force if this is false, the model is only saved if it has any changes
+     * Changes the height and color of that point on the grid-model.
      */
-    public void save(Storage.TileStorage storage, Vector2i tile, boolean force) throws IOException {
-        if (!force && !hasUnsavedChanges) return;
-        this.hasUnsavedChanges = false;
+    public void update(Vector2i point, float height, Vector3f color){
+        update(point.getX(), point.getY(), height, color.getX(), color.getY(), color.getZ());
+    }
 
-        flush();
+    /**
+     * Changes the height and color of that point on the grid-model.
+     */
+    public void update(int px, int pz, float height, float r, float g, float b){
+        if (px < 0 || px >= grid.pointsX || pz < 0 || pz >= grid.pointsZ) return;
+        int p = grid.pointIndex(px, pz);
 
-        String json;
         synchronized (modelLock) {
-            json = model.toJson();
+            heights[p] = height;
+            colors[p * 3    ] = r;
+            colors[p * 3 + 1] = g;
+            colors[p * 3 + 2] = b;
         }
 
+        this.hasUnsavedChanges = true;
+    }
+
+    /**
+     * Saves this model to its file
+     * @param force if this is false, the model is only saved if it has any changes
+     * @return true if the model has been saved
+     */
+    public boolean save(Storage.TileStorage storage, Vector2i tile, boolean force) throws IOException {
+        if (!force && !hasUnsavedChanges) return false;
+
         synchronized (fileLock) {
-            try (
-                PrintWriter pw = new PrintWriter(
-                        new OutputStreamWriter(storage.write(tile), StandardCharsets.UTF_8))
-            ){
-                pw.print(json);
+            this.hasUnsavedChanges = false;
+            BufferGeometry geometry = getBufferGeometry();
+
+            try (Writer writer = new OutputStreamWriter(storage.write(tile), StandardCharsets.UTF_8)) {
+                geometry.writeJson(writer);
             }
         }
+
+        return true;
     }
 
-    public void flush(){
-        if (changes.isEmpty()) return;
+    /**
+     * Whether this model has been changed since it has been saved the last time
+     */
+    public boolean hasUnsavedChanges() {
+        return hasUnsavedChanges;
+    }
 
-        synchronized (modelLock) {
-            if (changes.isEmpty()) return;
+    float getHeight(int px, int pz) {
+        return heights[grid.pointIndex(px, pz)];
+    }
 
-            Map<Vector2i, LowresPoint> points = changes;
-            changes = new ConcurrentHashMap<>();
+    float getColor(int px, int pz, int channel) {
+        return colors[grid.pointIndex(px, pz) * 3 + channel];
+    }
 
-            float[] position = model.attributes.get("position").values();
-            float[] color = model.attributes.get("color").values();
-            float[] normal = model.attributes.get("normal").values();
+    /**
+     * Generates the grid-mesh of this model with the current heights and colors
+     */
+    public BufferGeometry getBufferGeometry(){
+        int[] vertexPoints = grid.vertexPoints;
+        int vertexCount = vertexPoints.length;
 
-            int vertexCount = Math.floorDiv(position.length, 3);
+        float[] position = new float[vertexCount * 3];
+        float[] normal = new float[vertexCount * 3];
+        float[] color = new float[vertexCount * 3];
 
-            for (int i = 0; i < vertexCount; i++){
+        synchronized (modelLock) {
+            for (int i = 0; i < vertexCount; i++) {
                 int j = i * 3;
-                int px = Math.round(position[j    ]);
-                int pz = Math.round(position[j + 2]);
+                int p = vertexPoints[i];
 
-                Vector2i p = new Vector2i(px, pz);
+                position[j    ] = grid.positions[j    ];
+                position[j + 1] = heights[p];
+                position[j + 2] = grid.positions[j + 2];
 
-                LowresPoint lrp = points.get(p);
-                if (lrp == null) continue;
-
-                position[j + 1] = lrp.height;
+                color[j    ] = colors[p * 3    ];
+                color[j + 1] = colors[p * 3 + 1];
+                color[j + 2] = colors[p * 3 + 2];
+            }
+        }
 
-                color[j    ] = lrp.color.getX();
-                color[j + 1] = lrp.color.getY();
-                color[j + 2] = lrp.color.getZ();
+        for (int f = 0; f < position.length; f += 9) {
+            calculateSurfaceNormal(position, f, normal);
+        }
 
-                //recalculate normals
-                int f = Math.floorDiv(i, 3) * 3 * 3;
-                Vector3f p1 = new Vector3f(position[f    ], position[f + 1], position[f + 2]);
-                Vector3f p2 = new Vector3f(position[f + 3], position[f + 4], position[f + 5]);
-                Vector3f p3 = new Vector3f(position[f + 6], position[f + 7], position[f + 8]);
+        return new BufferGeometry(position, normal, color, grid.uvs.clone(), grid.groups);
+    }
 
-                Vector3f n = MathUtils.getSurfaceNormal(p1, p2, p3);
+    /**
+     * Writes the surface-normal of the face starting at the given index into the normal-array for all three vertices of the face.
+     */
+    private static void calculateSurfaceNormal(float[] position, int f, float[] normal) {
+        Vector3f n = MathUtils.getSurfaceNormal(
+                new Vector3f(position[f    ], position[f + 1], position[f + 2]),
+                new Vector3f(position[f + 3], position[f + 4], position[f + 5]),
+                new Vector3f(position[f + 6], position[f + 7], position[f + 8])
+        );
 
-                normal[f    ] = n.getX();  normal[f + 1] = n.getY();  normal[f + 2] = n.getZ();
-                normal[f + 3] = n.getX();  normal[f + 4] = n.getY();  normal[f + 5] = n.getZ();
-                normal[f + 6] = n.getX();  normal[f + 7] = n.getY();  normal[f + 8] = n.getZ();
-            }
+        for (int i = f; i < f + 9; i += 3) {
+            normal[i    ] = n.getX();
+            normal[i + 1] = n.getY();
+            normal[i + 2] = n.getZ();
         }
     }
 
-    public BufferGeometry getBufferGeometry(){
-        flush();
-        return model;
-    }
-
     /**
-     * a point on this lowres-model-grid
+     * The static parts of a grid-mesh with a specific size, and a table that maps each vertex to its grid-point
      */
-    public static class LowresPoint {
-        private final float height;
-        private final Vector3f color;
+    private static class GridTemplate {
+
+        private final int pointsX, pointsZ, pointCount;
+        private final float[] positions;
+        private final float[] uvs;
+        private final MaterialGroup[] groups;
+        private final int[] vertexPoints;
+
+        private GridTemplate(Vector2i gridSize) {
+            this.pointsX = gridSize.getX() + 1;
+            this.pointsZ = gridSize.getY() + 1;
+            this.pointCount = pointsX * pointsZ;
+
+            BufferGeometry model = ModelUtils.makeGrid(gridSize).toBufferGeometry();
+            this.positions = model.attributes.get("position").values();
+            this.uvs = model.attributes.get("uv").values();
+            this.groups = model.groups;
+
+            int vertexCount = positions.length / 3;
+            this.vertexPoints = new int[vertexCount];
+            for (int i = 0; i < vertexCount; i++) {
+                vertexPoints[i] = pointIndex(Math.round(positions[i * 3]), Math.round(positions[i * 3 + 2]));
+            }
+        }
 
-        public LowresPoint(float height, Vector3f color) {
-            this.height = height;
-            this.color = color;
+        private int pointIndex(int px, int pz) {
+            return px * pointsZ + pz;
         }
+
     }
 
 }
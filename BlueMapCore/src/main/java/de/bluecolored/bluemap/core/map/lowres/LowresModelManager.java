@@ -25,39 +25,47 @@
 package de.bluecolored.bluemap.core.map.lowres;
 
 import com.flowpowered.math.vector.Vector2i;
-import com.flowpowered.math.vector.Vector3f;
-import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.hires.HiresTileMeta;
 import de.bluecolored.bluemap.core.storage.Storage;
-import de.bluecolored.bluemap.core.threejs.BufferGeometry;
+import de.bluecolored.bluemap.core.storage.TileType;
 import de.bluecolored.bluemap.core.util.math.Color;
-import org.apache.commons.io.IOUtils;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class LowresModelManager {
 
-    private final Storage.TileStorage storage;
     private final Vector2i pointsPerLowresTile;
     private final Vector2i pointsPerHiresTile;
+    private final int lodCount;
+    private final int lodFactor;
+    private final int cacheSize;
+
+    private final LowresLayer[] layers;
 
-    private final Map<Vector2i, CachedModel> models;
+    public LowresModelManager(Storage storage, String mapId, Vector2i pointsPerLowresTile, Vector2i pointsPerHiresTile) {
+        this(storage, mapId, pointsPerLowresTile, pointsPerHiresTile, 1, 5, 100);
+    }
 
-    public LowresModelManager(Storage.TileStorage storage, Vector2i pointsPerLowresTile, Vector2i pointsPerHiresTile) {
-        this.storage = storage;
+    /**
+     * @param lodCount the amount of lowres-layers, each layer is stored with its own level-of-detail starting with 0
+     * @param lodFactor the amount of points (on each axis) of one layer that are combined into one point of the next layer
+     * @param cacheSize the maximum amount of lowres-models that are kept in memory (per layer)
+     */
+    public LowresModelManager(Storage storage, String mapId, Vector2i pointsPerLowresTile, Vector2i pointsPerHiresTile, int lodCount, int lodFactor, int cacheSize) {
+        if (lodCount < 1) throw new IllegalArgumentException("lodCount has to be 1 or more!");
+        if (lodCount > 1 && (lodFactor < 2 || pointsPerLowresTile.getX() % lodFactor != 0 || pointsPerLowresTile.getY() % lodFactor != 0))
+            throw new IllegalArgumentException("lodFactor has to be 2 or more and a divisor of the lowres-tile-size!");
 
         this.pointsPerLowresTile = pointsPerLowresTile;
         this.pointsPerHiresTile = pointsPerHiresTile;
-
-        models = new ConcurrentHashMap<>();
+        this.lodCount = lodCount;
+        this.lodFactor = lodFactor;
+        this.cacheSize = Math.max(cacheSize, 1);
+
+        this.layers = new LowresLayer[lodCount];
+        LowresLayer parent = null;
+        for (int i = lodCount - 1; i >= 0; i--) {
+            layers[i] = new LowresLayer(storage.tileStorage(mapId, TileType.LOWRES, i), pointsPerLowresTile, this.cacheSize, parent, lodFactor);
+            parent = layers[i];
+        }
     }
 
     /**
@@ -107,14 +115,13 @@ public void render(HiresTileMeta tileMeta) {
     }
 
     /**
-     * Saves all unsaved changes to the models to disk
+     * Saves all unsaved changes to the models to disk.<br>
+     * The layers are saved in order, so the changes of one layer are already downsampled onto the next layer when it is saved.
      */
     public synchronized void save(){
-        for (Entry<Vector2i, CachedModel> entry : models.entrySet()){
-            saveModel(entry.getKey(), entry.getValue());
+        for (LowresLayer layer : layers) {
+            layer.save();
         }
-
-        tidyUpModelCache();
     }
 
     /**
@@ -122,139 +129,23 @@ public synchronized void save(){
      */
     public void update(int px, int pz, float height, Color color) {
         if (color.premultiplied) throw new IllegalArgumentException("Color can not be premultiplied!");
-
-        Vector2i point = new Vector2i(px, pz);
-        Vector3f colorV = new Vector3f(color.r, color.g, color.b);
-
-        Vector2i tile = pointToTile(point);
-        Vector2i relPoint = getPointRelativeToTile(tile, point);
-        LowresModel model = getModel(tile);
-        model.update(relPoint, height, colorV);
-
-        if (relPoint.getX() == 0){
-            Vector2i tile2 = tile.add(-1, 0);
-            Vector2i relPoint2 = getPointRelativeToTile(tile2, point);
-            LowresModel model2 = getModel(tile2);
-            model2.update(relPoint2, height, colorV);
-        }
-
-        if (relPoint.getY() == 0){
-            Vector2i tile2 = tile.add(0, -1);
-            Vector2i relPoint2 = getPointRelativeToTile(tile2, point);
-            LowresModel model2 = getModel(tile2);
-            model2.update(relPoint2, height, colorV);
-        }
-
-        if (relPoint.getX() == 0 && relPoint.getY() == 0){
-            Vector2i tile2 = tile.add(-1, -1);
-            Vector2i relPoint2 = getPointRelativeToTile(tile2, point);
-            LowresModel model2 = getModel(tile2);
-            model2.update(relPoint2, height, colorV);
-        }
-    }
-
-    private LowresModel getModel(Vector2i tile) {
-
-        CachedModel model = models.get(tile);
-
-        if (model == null){
-            synchronized (this) {
-                model = models.get(tile);
-                if (model == null){
-
-                    try {
-                        Optional<InputStream> optIs = storage.read(tile);
-                        if (optIs.isPresent()){
-                            try (InputStream is = optIs.get()) {
-                                String json = IOUtils.toString(is, StandardCharsets.UTF_8);
-
-                                model = new CachedModel(BufferGeometry.fromJson(json));
-                            }
-                        }
-                    } catch (IllegalArgumentException | IOException ex){
-                        Logger.global.logWarning("Failed to load lowres model '" + tile + "': " + ex);
-
-                        try {
-                            storage.delete(tile);
-                        } catch (IOException ex2) {
-                            Logger.global.logError("Failed to delete lowres-file: " + tile, ex2);
-                        }
-                    }
-
-                    if (model == null){
-                        model = new CachedModel(pointsPerLowresTile);
-                    }
-
-                    models.put(tile, model);
-
-                    tidyUpModelCache();
-                }
-            }
-        }
-
-        return model;
+        layers[0].update(px, pz, height, color.r, color.g, color.b);
     }
 
     /**
      * This Method tidies up the model cache:<br>
      * it saves all modified models that have not been saved for 2 minutes and<br>
-     * saves and removes the oldest models from the cache until the cache size is 10 or less.<br>
+     * performs any pending evictions of the (size-bounded) cache.<br>
+     * Evicted models are saved asynchronously.<br>
      * <br>
-     * This method gets automatically called if the cache grows, but if you want to ensure model will be saved after 2 minutes, you could e.g call this method every second.<br>
+     * The outdated models are also saved automatically when new models are added to the cache, but if you want to ensure model will be saved after 2 minutes, you could e.g call this method every second.<br>
      */
-    public synchronized void tidyUpModelCache() {
-        List<Entry<Vector2i, CachedModel>> entries = new ArrayList<>(models.size());
-        entries.addAll(models.entrySet());
-        entries.sort((e1, e2) -> (int) Math.signum(e1.getValue().cacheTime - e2.getValue().cacheTime));
-
-        int size = entries.size();
-        for (Entry<Vector2i, CachedModel> e : entries) {
-            if (size > 10) {
-                saveAndRemoveModel(e.getKey(), e.getValue());
-                continue;
-            }
-
-            if (e.getValue().getCacheTime() > 120000) {
-                saveModel(e.getKey(), e.getValue());
-            }
-        }
-    }
-
-    private synchronized void saveAndRemoveModel(Vector2i tile, CachedModel model) {
-        models.remove(tile);
-        try {
-            model.save(storage, tile,false);
-            //logger.logDebug("Saved and unloaded lowres tile: " + model.getTile());
-        } catch (IOException ex) {
-            Logger.global.logError("Failed to save and unload lowres-model: " + tile, ex);
+    public void tidyUpModelCache() {
+        for (LowresLayer layer : layers) {
+            layer.tidyUpModelCache();
         }
     }
 
-    private void saveModel(Vector2i tile, CachedModel model) {
-        try {
-            model.save(storage, tile, false);
-            //logger.logDebug("Saved lowres tile: " + model.getTile());
-        } catch (IOException ex) {
-            Logger.global.logError("Failed to save lowres-model: " + tile, ex);
-        }
-
-        model.resetCacheTime();
-    }
-
-    private Vector2i pointToTile(Vector2i point){
-        return new Vector2i(
-                Math.floorDiv(point.getX(), pointsPerLowresTile.getX()),
-                Math.floorDiv(point.getY(), pointsPerLowresTile.getY())
-        );
-    }
-
-    private Vector2i getPointRelativeToTile(Vector2i tile, Vector2i point){
-        return new Vector2i(
-                point.getX() - tile.getX() * pointsPerLowresTile.getX(),
-                point.getY() - tile.getY() * pointsPerLowresTile.getY()
-        );
-    }
-
     public Vector2i getTileSize() {
         return pointsPerLowresTile;
     }
@@ -263,30 +154,25 @@ public Vector2i getPointsPerHiresTile() {
         return pointsPerHiresTile;
     }
 
-    private static class CachedModel extends LowresModel {
-
-        private long cacheTime;
-
-        public CachedModel(BufferGeometry model) {
-            super(model);
-
-            cacheTime = System.currentTimeMillis();
-        }
-
-        public CachedModel(Vector2i gridSize) {
-            super(gridSize);
-
-            cacheTime = System.currentTimeMillis();
-        }
-
-        public long getCacheTime() {
-            return System.currentTimeMillis() - cacheTime;
-        }
+    /**
+     * Returns the amount of lowres-layers with different levels-of-detail
+     */
+    public int getLodCount() {
+        return lodCount;
+    }
 
-        public void resetCacheTime() {
-            cacheTime = System.currentTimeMillis();
-        }
+    /**
+     * Returns the amount of points (on each axis) of one layer that are combined into one point of the next layer
+     */
+    public int getLodFactor() {
+        return lodFactor;
+    }
 
+    /**
+     * Returns the maximum amount of lowres-models that are kept in memory (per layer)
+     */
+    public int getCacheSize() {
+        return cacheSize;
     }
 
 }
@@ -31,11 +31,10 @@
 import net.querz.nbt.*;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 public class ChunkAnvil113 extends MCAChunk {
+    private static final long[] EMPTY_LONG_ARRAY = new long[0];
+
     private boolean isGenerated;
     private boolean hasLight;
     private Section[] sections;
@@ -55,10 +54,12 @@ public ChunkAnvil113(MCAWorld world, CompoundTag chunkTag) {
             isGenerated = !status.equals("empty");
         }
 
+        boolean flattenSections = getWorld().isFlattenChunkSections();
+
         sections = new Section[32]; //32 supports a max world-height of 512 which is the max that the hightmaps of Minecraft V1.13+ can store with 9 bits, i believe?
         if (levelData.containsKey("Sections")) {
             for (CompoundTag sectionTag : ((ListTag<CompoundTag>) levelData.getListTag("Sections"))) {
-                Section section = new Section(sectionTag);
+                Section section = new Section(sectionTag, flattenSections);
                 if (section.getSectionY() >= 0 && section.getSectionY() < sections.length) sections[section.getSectionY()] = section;
             }
         } else {
@@ -129,18 +130,17 @@ public String getBiome(int x, int y, int z) {
     }
 
     private class Section {
-        private static final String AIR_ID = "minecraft:air";
-
         private int sectionY;
         private byte[] blockLight;
         private byte[] skyLight;
         private long[] blocks;
         private BlockState[] palette;
+        private FlatBlockData flatBlocks;
 
         private int bitsPerBlock;
 
         @SuppressWarnings("unchecked")
-        public Section(CompoundTag sectionData) {
+        public Section(CompoundTag sectionData, boolean flatten) {
             this.sectionY = sectionData.get("Y", NumberTag.class).asInt();
             this.blockLight = sectionData.getByteArray("BlockLight");
             this.skyLight = sectionData.getByteArray("SkyLight");
@@ -155,30 +155,18 @@ public Section(CompoundTag sectionData) {
             if (paletteTag != null) {
                 this.palette = new BlockState[paletteTag.size()];
                 for (int i = 0; i < this.palette.length; i++) {
-                    CompoundTag stateTag = paletteTag.get(i);
-
-                    String id = stateTag.getString("Name"); //shortcut to save time and memory
-                    if (id.equals(AIR_ID)) {
-                        palette[i] = BlockState.AIR;
-                        continue;
-                    }
-
-                    Map<String, String> properties = new HashMap<>();
-
-                    if (stateTag.containsKey("Properties")) {
-                        CompoundTag propertiesTag = stateTag.getCompoundTag("Properties");
-                        for (Entry<String, Tag<?>> property : propertiesTag) {
-                            properties.put(property.getKey().toLowerCase(), ((StringTag) property.getValue()).getValue().toLowerCase());
-                        }
-                    }
-
-                    palette[i] = new BlockState(id, properties);
+                    palette[i] = readBlockStatePaletteEntry(paletteTag.get(i));
                 }
             } else {
                 this.palette = new BlockState[0];
             }
 
             this.bitsPerBlock = this.blocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
+
+            if (flatten) {
+                this.flatBlocks = FlatBlockData.unpack(blocks, bitsPerBlock, true, palette);
+                this.blocks = EMPTY_LONG_ARRAY;
+            }
         }
 
         public int getSectionY() {
@@ -186,11 +174,12 @@ public int getSectionY() {
         }
 
         public BlockState getBlockState(int x, int y, int z) {
-            if (blocks.length == 0) return BlockState.AIR;
-
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
             int blockIndex = y * 256 + z * 16 + x;
+            if (flatBlocks != null) return flatBlocks.get(blockIndex);
+
+            if (blocks.length == 0) return BlockState.AIR;
 
             long value = MCAMath.getValueFromLongStream(blocks, blockIndex, bitsPerBlock);
             if (value >= palette.length) {
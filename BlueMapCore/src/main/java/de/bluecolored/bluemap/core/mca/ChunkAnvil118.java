@@ -32,9 +32,6 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 @SuppressWarnings("FieldMayBeFinal")
 public class ChunkAnvil118 extends MCAChunk {
@@ -58,6 +55,8 @@ public ChunkAnvil118(MCAWorld world, CompoundTag chunkTag) {
             isGenerated = !status.equals("empty");
         }
 
+        boolean flattenSections = getWorld().isFlattenChunkSections();
+
         if (chunkTag.containsKey("sections")) {
             this.sectionMin = Integer.MAX_VALUE;
             this.sectionMax = Integer.MIN_VALUE;
@@ -75,7 +74,7 @@ public ChunkAnvil118(MCAWorld world, CompoundTag chunkTag) {
                 if (paletteTag.size() == 0) continue;
                 if (paletteTag.size() == 1 && AIR_ID.equals(paletteTag.get(0).getString("Name"))) continue;
 
-                Section section = new Section(sectionTag);
+                Section section = new Section(sectionTag, flattenSections);
                 int y = section.getSectionY();
 
                 if (sectionMin > y) sectionMin = y;
@@ -158,11 +157,12 @@ private static class Section {
         private long[] biomes = EMPTY_LONG_ARRAY;
         private BlockState[] blockPalette = EMPTY_BLOCK_STATE_ARRAY;
         private String[] biomePalette = EMPTY_STRING_ARRAY;
+        private FlatBlockData flatBlocks;
 
         private int bitsPerBlock, bitsPerBiome;
 
         @SuppressWarnings("unchecked")
-        public Section(CompoundTag sectionData) {
+        public Section(CompoundTag sectionData, boolean flatten) {
             this.sectionY = sectionData.get("Y", NumberTag.class).asInt();
             this.blockLight = sectionData.getByteArray("BlockLight");
             this.skyLight = sectionData.getByteArray("SkyLight");
@@ -205,22 +205,11 @@ public Section(CompoundTag sectionData) {
 
             this.bitsPerBlock = this.blocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
             this.bitsPerBiome = Integer.SIZE - Integer.numberOfLeadingZeros(this.biomePalette.length - 1);
-        }
-
-        private BlockState readBlockStatePaletteEntry(CompoundTag paletteEntry) {
-            String id = paletteEntry.getString("Name"); //shortcut to save time and memory
-            if (AIR_ID.equals(id)) return BlockState.AIR;
-
-            Map<String, String> properties = new HashMap<>();
 
-            if (paletteEntry.containsKey("Properties")) {
-                CompoundTag propertiesTag = paletteEntry.getCompoundTag("Properties");
-                for (Entry<String, Tag<?>> property : propertiesTag) {
-                    properties.put(property.getKey().toLowerCase(), ((StringTag) property.getValue()).getValue().toLowerCase());
-                }
+            if (flatten) {
+                this.flatBlocks = FlatBlockData.unpack(blocks, bitsPerBlock, false, blockPalette);
+                this.blocks = EMPTY_LONG_ARRAY;
             }
-
-            return new BlockState(id, properties);
         }
 
         public int getSectionY() {
@@ -228,11 +217,12 @@ public int getSectionY() {
         }
 
         public BlockState getBlockState(int x, int y, int z) {
-            if (blocks.length == 0) return BlockState.AIR;
-
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
             int blockIndex = y * 256 + z * 16 + x;
+            if (flatBlocks != null) return flatBlocks.get(blockIndex);
+
+            if (blocks.length == 0) return blockPalette.length > 0 ? blockPalette[0] : BlockState.AIR; // sections with a single-state palette have no data
 
             long value = MCAMath.getValueFromLongArray(blocks, blockIndex, bitsPerBlock);
             if (value >= blockPalette.length) {
@@ -0,0 +1,138 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.world.BlockState;
+
+/**
+ * The block-states of a chunk-section, unpacked once into a palette-index per block.<br>
+ * Depending on the size of the palette the indices are stored in a <code>byte[4096]</code> or a <code>short[4096]</code>,
+ * sections that only contain a single block-state are stored as that single value.
+ */
+final class FlatBlockData {
+
+    private static final int SECTION_SIZE = 4096;
+    private static final ThreadLocal<int[]> UNPACK_BUFFER = ThreadLocal.withInitial(() -> new int[SECTION_SIZE]);
+
+    private final BlockState single;
+    private final BlockState[] palette;
+    private final byte[] byteIndices;
+    private final short[] shortIndices;
+
+    private FlatBlockData(BlockState single) {
+        this.single = single;
+        this.palette = null;
+        this.byteIndices = null;
+        this.shortIndices = null;
+    }
+
+    private FlatBlockData(BlockState[] palette, byte[] byteIndices, short[] shortIndices) {
+        this.single = null;
+        this.palette = palette;
+        this.byteIndices = byteIndices;
+        this.shortIndices = shortIndices;
+    }
+
+    /**
+     * Returns the block-state at the given index (<code>y * 256 + z * 16 + x</code>) of the section
+     */
+    public BlockState get(int blockIndex) {
+        if (single != null) return single;
+        if (byteIndices != null) return palette[byteIndices[blockIndex] & 0xFF];
+        return palette[shortIndices[blockIndex] & 0xFFFF];
+    }
+
+    /**
+     * Unpacks the block-data of a section.
+     *
+     * @param blocks The packed palette-indices, or an empty array if the section has no block-data
+     * @param bitsPerBlock The amount of bits each palette-index uses
+     * @param stream <code>true</code> if the indices are packed as a continuous stream of bits (Minecraft 1.13 - 1.15),
+     *               <code>false</code> if they are not spanning over multiple longs (Minecraft 1.16+)
+     * @param palette The block-state palette of the section
+     */
+    public static FlatBlockData unpack(long[] blocks, int bitsPerBlock, boolean stream, BlockState[] palette) {
+        if (palette.length == 0) return new FlatBlockData(BlockState.AIR);
+        if (blocks.length == 0 || bitsPerBlock == 0) return new FlatBlockData(palette.length == 1 ? palette[0] : BlockState.AIR);
+
+        // invalid palette-values are mapped to an additional MISSING entry at the end of the palette
+        int missingIndex = palette.length;
+        BlockState[] resolvedPalette = new BlockState[palette.length + 1];
+        System.arraycopy(palette, 0, resolvedPalette, 0, palette.length);
+        resolvedPalette[missingIndex] = BlockState.MISSING;
+
+        int[] indices = UNPACK_BUFFER.get();
+        int first = -1;
+        boolean isSingle = true;
+        boolean hasInvalid = false;
+
+        if (stream) {
+            for (int i = 0; i < SECTION_SIZE; i++) {
+                indices[i] = (int) MCAMath.getValueFromLongStream(blocks, i, bitsPerBlock);
+            }
+        } else {
+            int valuesPerLong = 64 / bitsPerBlock;
+            long mask = 0xFFFFFFFFFFFFFFFFL >>> -bitsPerBlock;
+            int i = 0;
+            for (int l = 0; l < blocks.length && i < SECTION_SIZE; l++) {
+                long value = blocks[l];
+                for (int v = 0; v < valuesPerLong && i < SECTION_SIZE; v++) {
+                    indices[i++] = (int) (value & mask);
+                    value >>>= bitsPerBlock;
+                }
+            }
+            while (i < SECTION_SIZE) indices[i++] = 0;
+        }
+
+        for (int i = 0; i < SECTION_SIZE; i++) {
+            int index = indices[i];
+            if (index >= palette.length) {
+                indices[i] = index = missingIndex;
+                hasInvalid = true;
+            }
+
+            if (first == -1) first = index;
+            else if (index != first) isSingle = false;
+        }
+
+        if (hasInvalid) {
+            Logger.global.noFloodWarning("palettewarning", "Got block-palette values that are out of the palettes range of " + palette.length + "! (Future occasions of this error will not be logged)");
+        }
+
+        if (isSingle) return new FlatBlockData(resolvedPalette[first]);
+
+        if (resolvedPalette.length <= 256) {
+            byte[] byteIndices = new byte[SECTION_SIZE];
+            for (int i = 0; i < SECTION_SIZE; i++) byteIndices[i] = (byte) indices[i];
+            return new FlatBlockData(resolvedPalette, byteIndices, null);
+        }
+
+        short[] shortIndices = new short[SECTION_SIZE];
+        for (int i = 0; i < SECTION_SIZE; i++) shortIndices[i] = (short) indices[i];
+        return new FlatBlockData(resolvedPalette, null, shortIndices);
+    }
+
+}
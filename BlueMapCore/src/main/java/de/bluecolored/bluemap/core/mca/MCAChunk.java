@@ -24,31 +24,60 @@
  */
 package de.bluecolored.bluemap.core.mca;
 
+import de.bluecolored.bluemap.core.util.ContentHash;
 import de.bluecolored.bluemap.core.world.BlockState;
 import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.LightData;
-import net.querz.nbt.CompoundTag;
+import net.querz.nbt.*;
+import org.apache.commons.io.output.NullOutputStream;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
 
 public abstract class MCAChunk implements Chunk {
 
+    private static final String AIR_ID = "minecraft:air";
+
+    /**
+     * The (level-)data of a chunk that changes how it is rendered:
+     * the generation-status, the biomes and the sections with their block-palettes, block-states and light.
+     */
+    private static final String[] RENDER_RELEVANT_KEYS = { "Status", "Biomes", "Sections", "sections" };
+
     private final MCAWorld world;
     private final int dataVersion;
 
+    // the digest is only created when it is needed, the tags are kept until then
+    private Tag<?>[] renderRelevantTags;
+    private long contentDigest;
+
     protected MCAChunk() {
         this.world = null;
         this.dataVersion = -1;
+        this.renderRelevantTags = null;
+        this.contentDigest = 0;
     }
 
     protected MCAChunk(MCAWorld world) {
         this.world = world;
         this.dataVersion = -1;
+        this.renderRelevantTags = null;
+        this.contentDigest = 0;
     }
 
     protected MCAChunk(MCAWorld world, CompoundTag chunkTag) {
         this.world = world;
         dataVersion = chunkTag.getInt("DataVersion");
+        renderRelevantTags = getRenderRelevantTags(chunkTag);
+        contentDigest = 0;
     }
 
     @Override
@@ -59,6 +88,16 @@ public int getDataVersion() {
         return dataVersion;
     }
 
+    @Override
+    public synchronized long getContentDigest() {
+        if (renderRelevantTags != null) {
+            contentDigest = createContentDigest(dataVersion, renderRelevantTags);
+            renderRelevantTags = null;
+        }
+
+        return contentDigest;
+    }
+
     @Override
     public abstract BlockState getBlockState(int x, int y, int z);
 
@@ -82,6 +121,114 @@ protected MCAWorld getWorld() {
         return world;
     }
 
+    /**
+     * Reads a block-state palette-entry and returns the interned {@link BlockState} for it.
+     */
+    protected static BlockState readBlockStatePaletteEntry(CompoundTag paletteEntry) {
+        String id = paletteEntry.getString("Name"); //shortcut to save time and memory
+        if (AIR_ID.equals(id)) return BlockState.AIR;
+
+        Map<String, String> properties = new HashMap<>();
+
+        if (paletteEntry.containsKey("Properties")) {
+            CompoundTag propertiesTag = paletteEntry.getCompoundTag("Properties");
+            for (Entry<String, Tag<?>> property : propertiesTag) {
+                properties.put(property.getKey().toLowerCase(), ((StringTag) property.getValue()).getValue().toLowerCase());
+            }
+        }
+
+        return new BlockState(id, properties).intern();
+    }
+
+    /**
+     * Creates a digest of the render-relevant data of the chunk, ignoring data like entities or tick-data
+     * that changes with every save of the chunk.
+     */
+    static long createContentDigest(CompoundTag chunkTag) {
+        return createContentDigest(chunkTag.getInt("DataVersion"), getRenderRelevantTags(chunkTag));
+    }
+
+    /**
+     * Returns the tags with the {@link #RENDER_RELEVANT_KEYS} of the chunk (in that order), with null for each missing tag.
+     */
+    private static Tag<?>[] getRenderRelevantTags(CompoundTag chunkTag) {
+        CompoundTag levelData = chunkTag.containsKey("Level") ? chunkTag.getCompoundTag("Level") : chunkTag;
+
+        Tag<?>[] tags = new Tag<?>[RENDER_RELEVANT_KEYS.length];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = levelData.get(RENDER_RELEVANT_KEYS[i]);
+        }
+        return tags;
+    }
+
+    private static long createContentDigest(int dataVersion, Tag<?>[] renderRelevantTags) {
+        MessageDigest digest = ContentHash.createDigest();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, digest)))) {
+            out.writeInt(dataVersion);
+
+            for (int i = 0; i < RENDER_RELEVANT_KEYS.length; i++) {
+                Tag<?> tag = renderRelevantTags[i];
+                if (tag == null) continue;
+
+                out.writeUTF(RENDER_RELEVANT_KEYS[i]);
+                writeDigest(tag, out, 0);
+            }
+        } catch (IOException | RuntimeException ex) {
+            return 0;
+        }
+
+        long contentDigest = ByteBuffer.wrap(digest.digest()).getLong();
+        return contentDigest != 0 ? contentDigest : 1; // 0 is reserved for "unknown"
+    }
+
+    private static void writeDigest(Tag<?> tag, DataOutputStream out, int depth) throws IOException {
+        if (depth > Tag.DEFAULT_MAX_DEPTH) throw new IOException("Max depth reached!");
+
+        if (tag instanceof CompoundTag) {
+            // the entries are sorted, since the same data might be stored in a different order
+            TreeMap<String, Tag<?>> entries = new TreeMap<>();
+            for (Entry<String, Tag<?>> entry : (CompoundTag) tag) entries.put(entry.getKey(), entry.getValue());
+
+            out.writeByte('C');
+            out.writeInt(entries.size());
+            for (Entry<String, Tag<?>> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeDigest(entry.getValue(), out, depth + 1);
+            }
+        } else if (tag instanceof ListTag) {
+            ListTag<?> list = (ListTag<?>) tag;
+            out.writeByte('L');
+            out.writeInt(list.size());
+            for (Tag<?> element : list) writeDigest(element, out, depth + 1);
+        } else if (tag instanceof LongArrayTag) {
+            long[] values = ((LongArrayTag) tag).getValue();
+            out.writeByte('l');
+            out.writeInt(values.length);
+            for (long value : values) out.writeLong(value);
+        } else if (tag instanceof IntArrayTag) {
+            int[] values = ((IntArrayTag) tag).getValue();
+            out.writeByte('i');
+            out.writeInt(values.length);
+            for (int value : values) out.writeInt(value);
+        } else if (tag instanceof ByteArrayTag) {
+            byte[] values = ((ByteArrayTag) tag).getValue();
+            out.writeByte('b');
+            out.writeInt(values.length);
+            out.write(values);
+        } else if (tag instanceof StringTag) {
+            out.writeByte('S');
+            out.writeUTF(((StringTag) tag).getValue());
+        } else if (tag instanceof FloatTag || tag instanceof DoubleTag) {
+            out.writeByte('D');
+            out.writeDouble(((NumberTag<?>) tag).asDouble());
+        } else if (tag instanceof NumberTag) {
+            out.writeByte('N');
+            out.writeLong(((NumberTag<?>) tag).asLong());
+        } else {
+            throw new IOException("Unknown tag-type: " + tag.getClass().getName());
+        }
+    }
+
     public static MCAChunk create(MCAWorld world, CompoundTag chunkTag) throws IOException {
         int version = chunkTag.getInt("DataVersion");
 
@@ -32,17 +32,31 @@
 import net.querz.nbt.mca.CompressionType;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class MCARegion implements Region {
+public class MCARegion implements Region, Closeable {
+
+    private static final int SECTOR_SIZE = 4096;
+    private static final int HEADER_SIZE = 2 * SECTOR_SIZE;
 
     private final MCAWorld world;
     private final File regionFile;
     private final Vector2i regionPos;
 
+    private final Object channelLock = new Object();
+    private FileChannel channel;
+    private boolean closed;
+
+    private volatile Header header;
+
     public MCARegion(MCAWorld world, File regionFile) throws IllegalArgumentException {
         this.world = world;
         this.regionFile = regionFile;
@@ -52,36 +66,49 @@ public MCARegion(MCAWorld world, File regionFile) throws IllegalArgumentExceptio
         int rZ = Integer.parseInt(filenameParts[2]);
 
         this.regionPos = new Vector2i(rX, rZ);
+
+        this.channel = null;
+        this.closed = false;
+
+        this.header = null;
     }
 
     @Override
     public MCAChunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) throws IOException {
-        if (!regionFile.exists() || regionFile.length() == 0) return MCAChunk.empty();
-
-        try (RandomAccessFile raf = new RandomAccessFile(regionFile, "r")) {
+        try {
+            Header header = getHeader();
+            if (header == null) return MCAChunk.empty();
 
             int xzChunk = Math.floorMod(chunkZ, 32) * 32 + Math.floorMod(chunkX, 32);
 
-            raf.seek(xzChunk * 4);
-            int offset = raf.read() << 16;
-            offset |= (raf.read() & 0xFF) << 8;
-            offset |= raf.read() & 0xFF;
-            offset *= 4096;
-
-            int size = raf.readByte() * 4096;
+            int location = header.locations[xzChunk];
+            long offset = (long) (location >>> 8) * SECTOR_SIZE;
+            int size = (location & 0xFF) * SECTOR_SIZE;
             if (size == 0) {
                 return MCAChunk.empty();
             }
 
-            raf.seek(offset + 4); // +4 skip chunk size
+            ByteBuffer chunkData = read(offset, size);
+            if (chunkData.remaining() < 5) {
+                // the header might be outdated, make sure it gets reloaded before the next try
+                this.header = null;
+                throw new IOException("Unexpected end of region-file while reading chunk (x:" + chunkX + ", z:" + chunkZ + ")");
+            }
 
-            byte compressionTypeByte = raf.readByte();
+            int length = chunkData.getInt() - 1; // -1 compression-type byte
+            byte compressionTypeByte = chunkData.get();
             CompressionType compressionType = CompressionType.getFromID(compressionTypeByte);
             if (compressionType == null) {
                 throw new IOException("Invalid compression type " + compressionTypeByte);
             }
 
-            DataInputStream dis = new DataInputStream(new BufferedInputStream(compressionType.decompress(new FileInputStream(raf.getFD()))));
+            if (length <= 0 || length > chunkData.remaining()) {
+                this.header = null;
+                throw new IOException("Invalid chunk-data length " + length + " for chunk (x:" + chunkX + ", z:" + chunkZ + ")");
+            }
+
+            InputStream in = new ByteArrayInputStream(chunkData.array(), chunkData.arrayOffset() + chunkData.position(), length);
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(compressionType.decompress(in)));
             Tag<?> tag = Tag.deserialize(dis, Tag.DEFAULT_MAX_DEPTH);
             if (tag instanceof CompoundTag) {
                 MCAChunk chunk = MCAChunk.create(world, (CompoundTag) tag);
@@ -97,30 +124,24 @@ public MCAChunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData
     }
 
     @Override
-    public Collection<Vector2i> listChunks(long modifiedSince) {
-        if (!regionFile.exists() || regionFile.length() == 0) return Collections.emptyList();
+    public Map<Vector2i, Long> getChunkModificationTimes(long modifiedSince) {
+        Map<Vector2i, Long> chunks = new LinkedHashMap<>(2048); //1024 = 32 x 32 chunks per region-file
 
-        List<Vector2i> chunks = new ArrayList<>(1024); //1024 = 32 x 32 chunks per region-file
+        try {
+            Header header = getHeader();
+            if (header == null) return Collections.emptyMap();
 
-        try (RandomAccessFile raf = new RandomAccessFile(regionFile, "r")) {
             for (int x = 0; x < 32; x++) {
                 for (int z = 0; z < 32; z++) {
-                    Vector2i chunk = new Vector2i(regionPos.getX() * 32 + x, regionPos.getY() * 32 + z);
                     int xzChunk = z * 32 + x;
 
-                    raf.seek(xzChunk * 4 + 3);
-                    int size = raf.readByte() * 4096;
-
+                    int size = header.locations[xzChunk] & 0xFF;
                     if (size == 0) continue;
 
-                    raf.seek(xzChunk * 4 + 4096);
-                    int timestamp = raf.read() << 24;
-                    timestamp |= (raf.read() & 0xFF) << 16;
-                    timestamp |= (raf.read() & 0xFF) << 8;
-                    timestamp |= raf.read() & 0xFF;
-
+                    // the timestamps are unsigned seconds
+                    long timestamp = Integer.toUnsignedLong(header.timestamps[xzChunk]);
                     if (timestamp >= (modifiedSince / 1000)) {
-                        chunks.add(chunk);
+                        chunks.put(new Vector2i(regionPos.getX() * 32 + x, regionPos.getY() * 32 + z), timestamp * 1000L);
                     }
                 }
             }
@@ -136,4 +157,118 @@ public File getRegionFile() {
         return regionFile;
     }
 
+    /**
+     * Closes the file-handle that this region keeps open to read its chunks.<br>
+     * The region stays usable, but following reads will no longer share a file-handle.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (channelLock) {
+            closed = true;
+
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the parsed location- and timestamp-tables of this region-file.<br>
+     * The tables are cached and only re-read if the region-file has been modified since they were read.<br>
+     * Returns <code>null</code> if the region-file does not exist or has no complete header.
+     */
+    private Header getHeader() throws IOException {
+        Header header = this.header;
+
+        long lastModified = regionFile.lastModified();
+        long length = regionFile.length();
+
+        if (header != null && header.lastModified == lastModified && header.length == length) {
+            return header;
+        }
+
+        if (length < HEADER_SIZE) {
+            this.header = null;
+            return null;
+        }
+
+        ByteBuffer headerData = read(0, HEADER_SIZE);
+        if (headerData.remaining() < HEADER_SIZE) {
+            this.header = null;
+            return null;
+        }
+
+        IntBuffer headerInts = headerData.asIntBuffer();
+        int[] locations = new int[1024];
+        int[] timestamps = new int[1024];
+        headerInts.get(locations);
+        headerInts.get(timestamps);
+
+        header = new Header(lastModified, length, locations, timestamps);
+        this.header = header;
+        return header;
+    }
+
+    /**
+     * Reads up to <code>length</code> bytes from the region-file starting at the given offset.<br>
+     * The returned buffer is flipped and ready to be read, it might contain less bytes if the end of the file has been reached.
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        FileChannel channel = getChannel();
+        if (channel != null) {
+            try {
+                readFully(channel, buffer, offset);
+                buffer.flip();
+                return buffer;
+            } catch (ClosedByInterruptException ex) {
+                throw ex;
+            } catch (ClosedChannelException ex) {
+                // the shared channel got closed while we were reading, fall back to a private channel
+                buffer.clear();
+            }
+        }
+
+        try (FileChannel privateChannel = FileChannel.open(regionFile.toPath(), StandardOpenOption.READ)) {
+            readFully(privateChannel, buffer, offset);
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        synchronized (channelLock) {
+            if (closed) return null;
+
+            // (re-)open the channel if it has not been opened yet or got closed e.g. by an interrupted read
+            if (channel == null || !channel.isOpen()) {
+                channel = FileChannel.open(regionFile.toPath(), StandardOpenOption.READ);
+            }
+
+            return channel;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + buffer.position());
+            if (read < 0) break;
+        }
+    }
+
+    private static class Header {
+        private final long lastModified, length;
+        private final int[] locations, timestamps;
+
+        private Header(long lastModified, long length, int[] locations, int[] timestamps) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.locations = locations;
+            this.timestamps = timestamps;
+        }
+    }
+
 }
@@ -26,23 +26,23 @@
 
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector3i;
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
-import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.util.LongKeyCache;
 import de.bluecolored.bluemap.core.world.BlockState;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.World;
+import de.bluecolored.bluemap.core.world.WorldCacheSettings;
 import net.querz.nbt.CompoundTag;
 import net.querz.nbt.NBTUtil;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 
 public class MCAWorld implements World {
 
@@ -57,8 +57,16 @@ public class MCAWorld implements World {
     @DebugDump private final int skyLight;
     @DebugDump private final boolean ignoreMissingLightData;
 
-    private final LoadingCache<Vector2i, MCARegion> regionCache;
-    private final LoadingCache<Vector2i, MCAChunk> chunkCache;
+    @DebugDump private final int chunkCacheSize;
+    @DebugDump private final int regionCacheSize;
+    @DebugDump private final long cacheExpireMillis;
+    @DebugDump private final boolean flattenChunkSections;
+
+    private final LongKeyCache<MCARegion> regionCache;
+    private final LongKeyCache<MCAChunk> chunkCache;
+
+    private final ThreadLocal<CachedChunk> lastChunk;
+    private volatile int chunkCacheGeneration;
 
     private MCAWorld(
             Path worldFolder,
@@ -66,7 +74,8 @@ private MCAWorld(
             String name,
             Vector3i spawnPoint,
             int skyLight,
-            boolean ignoreMissingLightData
+            boolean ignoreMissingLightData,
+            WorldCacheSettings cacheSettings
             ) {
         this.uuid = uuid;
         this.worldFolder = worldFolder;
@@ -76,17 +85,16 @@ private MCAWorld(
         this.skyLight = skyLight;
         this.ignoreMissingLightData = ignoreMissingLightData;
 
-        this.regionCache = Caffeine.newBuilder()
-                .executor(BlueMap.THREAD_POOL)
-                .maximumSize(100)
-                .expireAfterWrite(1, TimeUnit.MINUTES)
-                .build(this::loadRegion);
+        this.chunkCacheSize = cacheSettings.getChunkCacheSize();
+        this.regionCacheSize = cacheSettings.getRegionCacheSize();
+        this.cacheExpireMillis = cacheSettings.getCacheExpireMillis();
+        this.flattenChunkSections = cacheSettings.isFlattenChunkSections();
+
+        this.regionCache = new LongKeyCache<>(regionCacheSize, cacheExpireMillis, this::onRegionRemoval);
+        this.chunkCache = new LongKeyCache<>(chunkCacheSize, cacheExpireMillis);
 
-        this.chunkCache = Caffeine.newBuilder()
-                .executor(BlueMap.THREAD_POOL)
-                .maximumSize(500)
-                .expireAfterWrite(1, TimeUnit.MINUTES)
-                .build(this::loadChunk);
+        this.lastChunk = ThreadLocal.withInitial(CachedChunk::new);
+        this.chunkCacheGeneration = 0;
     }
 
     public BlockState getBlockState(Vector3i pos) {
@@ -100,20 +108,33 @@ public MCAChunk getChunkAtBlock(int x, int y, int z) {
 
     @Override
     public MCAChunk getChunk(int x, int z) {
-        return getChunk(vec2i(x, z));
-    }
+        // fast-path: render-threads mostly request the same chunk over and over again
+        CachedChunk last = lastChunk.get();
+        int generation = chunkCacheGeneration;
+        if (last.x == x && last.z == z && last.generation == generation && !last.isExpired()) {
+            MCAChunk chunk = last.chunk.get();
+            if (chunk != null) return chunk;
+        }
+
+        long key = LongKeyCache.key(x, z);
 
-    private MCAChunk getChunk(Vector2i pos) {
-        return chunkCache.get(pos);
+        // read the expiration before the chunk, so it is never later than the one of the returned chunk
+        long expires = chunkCache.getExpiration(key);
+        MCAChunk chunk = chunkCache.get(key, this::loadChunk);
+
+        last.x = x;
+        last.z = z;
+        last.chunk = new WeakReference<>(chunk);
+        last.generation = generation;
+        last.expires = expires;
+        last.clockCountdown = CachedChunk.CLOCK_CHECK_INTERVAL;
+
+        return chunk;
     }
 
     @Override
     public MCARegion getRegion(int x, int z) {
-        return getRegion(vec2i(x, z));
-    }
-
-    private MCARegion getRegion(Vector2i pos) {
-        return regionCache.get(pos);
+        return regionCache.get(LongKeyCache.key(x, z), this::loadRegion);
     }
 
     @Override
@@ -187,16 +208,19 @@ public Vector3i getSpawnPoint() {
     @Override
     public void invalidateChunkCache() {
         chunkCache.invalidateAll();
+        chunkCacheGeneration++; // after invalidating, so no thread can re-remember an outdated chunk
     }
 
     @Override
     public void invalidateChunkCache(int x, int z) {
-        chunkCache.invalidate(vec2i(x, z));
+        chunkCache.invalidate(LongKeyCache.key(x, z));
+        chunkCacheGeneration++; // after invalidating, so no thread can re-remember an outdated chunk
     }
 
     @Override
     public void cleanUpChunkCache() {
         chunkCache.cleanUp();
+        regionCache.cleanUp();
     }
 
     public Path getWorldFolder() {
@@ -211,12 +235,16 @@ public boolean isIgnoreMissingLightData() {
         return ignoreMissingLightData;
     }
 
+    public boolean isFlattenChunkSections() {
+        return flattenChunkSections;
+    }
+
     private File getMCAFile(int regionX, int regionZ) {
         return getRegionFolder().resolve("r." + regionX + "." + regionZ + ".mca").toFile();
     }
 
-    private MCARegion loadRegion(Vector2i regionPos) {
-        return loadRegion(regionPos.getX(), regionPos.getY());
+    private MCARegion loadRegion(long regionKey) {
+        return loadRegion((int) (regionKey >> 32), (int) regionKey);
     }
 
     private MCARegion loadRegion(int x, int z) {
@@ -224,8 +252,16 @@ private MCARegion loadRegion(int x, int z) {
         return new MCARegion(this, regionPath);
     }
 
-    private MCAChunk loadChunk(Vector2i chunkPos) {
-        return loadChunk(chunkPos.getX(), chunkPos.getY());
+    private void onRegionRemoval(MCARegion region) {
+        try {
+            region.close();
+        } catch (IOException ex) {
+            Logger.global.logDebug("Failed to close region-file '" + region.getRegionFile() + "': " + ex);
+        }
+    }
+
+    private MCAChunk loadChunk(long chunkKey) {
+        return loadChunk((int) (chunkKey >> 32), (int) chunkKey);
     }
 
     private MCAChunk loadChunk(int x, int z) {
@@ -257,6 +293,10 @@ private MCAChunk loadChunk(int x, int z) {
     }
 
     public static MCAWorld load(Path worldFolder, UUID uuid, String name, int skyLight, boolean ignoreMissingLightData) throws IOException {
+        return load(worldFolder, uuid, name, skyLight, ignoreMissingLightData, WorldCacheSettings.DEFAULT);
+    }
+
+    public static MCAWorld load(Path worldFolder, UUID uuid, String name, int skyLight, boolean ignoreMissingLightData, WorldCacheSettings cacheSettings) throws IOException {
         try {
             StringBuilder subDimensionName = new StringBuilder();
 
@@ -296,7 +336,8 @@ public static MCAWorld load(Path worldFolder, UUID uuid, String name, int skyLig
                     name,
                     spawnPoint,
                     skyLight,
-                    ignoreMissingLightData
+                    ignoreMissingLightData,
+                    cacheSettings
             );
         } catch (ClassCastException | NullPointerException ex) {
             throw new IOException("Invaid level.dat format!", ex);
@@ -312,17 +353,32 @@ public String toString() {
                '}';
     }
 
-    private static final int VEC_2I_CACHE_SIZE = 0x4000;
-    private static final int VEC_2I_CACHE_MASK = VEC_2I_CACHE_SIZE - 1;
-    private static final Vector2i[] VEC_2I_CACHE = new Vector2i[VEC_2I_CACHE_SIZE];
-    private static Vector2i vec2i(int x, int y) {
-        int cacheIndex = (x * 1456 ^ y * 948375892) & VEC_2I_CACHE_MASK;
-        Vector2i possibleMatch = VEC_2I_CACHE[cacheIndex];
+    /**
+     * The chunk that a thread requested last
+     */
+    private static class CachedChunk {
 
-        if (possibleMatch != null && possibleMatch.getX() == x && possibleMatch.getY() == y)
-            return possibleMatch;
+        /**
+         * The amount of fast-path hits after which the clock is checked again for the expiration of the chunk
+         */
+        private static final int CLOCK_CHECK_INTERVAL = 256;
+
+        private int x, z;
+
+        // weak, so the chunk is released once it is removed from the chunk-cache, even if the thread does not request any more chunks
+        private Reference<MCAChunk> chunk = new WeakReference<>(null);
+        private int generation;
+        private long expires = Long.MIN_VALUE;
+        private int clockCountdown;
+
+        private boolean isExpired() {
+            if (expires == Long.MAX_VALUE) return false;
+            if (--clockCountdown > 0) return false;
+
+            clockCountdown = CLOCK_CHECK_INTERVAL;
+            return System.currentTimeMillis() >= expires;
+        }
 
-        return VEC_2I_CACHE[cacheIndex] = new Vector2i(x, y);
     }
 
 }
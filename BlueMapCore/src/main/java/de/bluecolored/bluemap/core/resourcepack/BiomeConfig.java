@@ -25,9 +25,13 @@
 package de.bluecolored.bluemap.core.resourcepack;
 
 import de.bluecolored.bluemap.core.debug.DebugDump;
+import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.world.Biome;
 import org.spongepowered.configurate.ConfigurationNode;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -49,6 +53,47 @@ public void load(ConfigurationNode node) {
         }
     }
 
+    /**
+     * Writes all loaded biomes in a compact binary form, so they can be read again using {@link #read(DataInputStream)}.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(biomes.size());
+        for (Entry<String, Biome> entry : biomes.entrySet()) {
+            Biome biome = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeUTF(biome.getFullId());
+            out.writeFloat(biome.getHumidity());
+            out.writeFloat(biome.getTemp());
+            writeColor(out, biome.getWaterColor());
+            writeColor(out, biome.getOverlayFoliageColor());
+            writeColor(out, biome.getOverlayGrassColor());
+        }
+    }
+
+    /**
+     * Loads all biomes that have been written using {@link #write(DataOutputStream)}.
+     */
+    public void read(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            Biome biome = new Biome(in.readUTF(), in.readFloat(), in.readFloat(), readColor(in), readColor(in), readColor(in));
+            biomes.put(key, biome);
+        }
+    }
+
+    private void writeColor(DataOutputStream out, Color color) throws IOException {
+        out.writeFloat(color.r);
+        out.writeFloat(color.g);
+        out.writeFloat(color.b);
+        out.writeFloat(color.a);
+        out.writeBoolean(color.premultiplied);
+    }
+
+    private Color readColor(DataInputStream in) throws IOException {
+        return new Color().set(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), in.readBoolean());
+    }
+
     public Biome getBiome(String id) {
         return biomes.getOrDefault(id, Biome.DEFAULT);
     }
@@ -34,6 +34,9 @@
 import org.spongepowered.configurate.ConfigurationNode;
 
 import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -45,9 +48,11 @@ public class BlockColorCalculatorFactory {
     private final int[] grassMap = new int[65536];
 
     private final Map<String, ColorFunction> blockColorMap;
+    private final Map<String, String> blockColorConfig;
 
     public BlockColorCalculatorFactory() {
         this.blockColorMap = new HashMap<>();
+        this.blockColorConfig = new HashMap<>();
     }
 
     public void load(ConfigurationNode colorConfig) {
@@ -55,29 +60,72 @@ public void load(ConfigurationNode colorConfig) {
             String key = entry.getKey().toString();
             String value = entry.getValue().getString("");
 
-            ColorFunction colorFunction;
             switch (value) {
             case "@foliage":
-                colorFunction = BlockColorCalculator::getFoliageAverageColor;
-                break;
             case "@grass":
-                colorFunction = BlockColorCalculator::getGrassAverageColor;
-                break;
             case "@water":
-                colorFunction = BlockColorCalculator::getWaterAverageColor;
-                break;
             case "@redstone":
-                colorFunction = BlockColorCalculator::getRedstoneColor;
                 break;
             default:
-                final Color color = new Color();
-                color.set(ConfigUtils.readColorInt(entry.getValue())).premultiplied();
-                colorFunction = (calculator, block, target) -> target.set(color);
+                value = String.format("#%08x", ConfigUtils.readColorInt(entry.getValue()));
                 break;
             }
 
-            blockColorMap.put(key, colorFunction);
+            putColorFunction(key, value);
+        }
+    }
+
+    private void putColorFunction(String key, String value) {
+        ColorFunction colorFunction;
+        switch (value) {
+        case "@foliage":
+            colorFunction = BlockColorCalculator::getFoliageAverageColor;
+            break;
+        case "@grass":
+            colorFunction = BlockColorCalculator::getGrassAverageColor;
+            break;
+        case "@water":
+            colorFunction = BlockColorCalculator::getWaterAverageColor;
+            break;
+        case "@redstone":
+            colorFunction = BlockColorCalculator::getRedstoneColor;
+            break;
+        default:
+            final Color color = new Color();
+            color.set(Integer.parseUnsignedInt(value.substring(1), 16)).premultiplied();
+            colorFunction = (calculator, block, target) -> target.set(color);
+            break;
         }
+
+        blockColorMap.put(key, colorFunction);
+        blockColorConfig.put(key, value);
+    }
+
+    /**
+     * Writes the loaded block-colors and color-maps in a compact binary form, so they can be read again using {@link #read(DataInputStream)}.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(blockColorConfig.size());
+        for (Entry<String, String> entry : blockColorConfig.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+
+        for (int color : foliageMap) out.writeInt(color);
+        for (int color : grassMap) out.writeInt(color);
+    }
+
+    /**
+     * Loads the block-colors and color-maps that have been written using {@link #write(DataOutputStream)}.
+     */
+    public void read(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            putColorFunction(in.readUTF(), in.readUTF());
+        }
+
+        for (int i = 0; i < foliageMap.length; i++) foliageMap[i] = in.readInt();
+        for (int i = 0; i < grassMap.length; i++) grassMap[i] = in.readInt();
     }
 
     public void setFoliageMap(BufferedImage foliageMap) {
@@ -26,11 +26,16 @@
 
 import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.util.Tristate;
 import de.bluecolored.bluemap.core.world.BlockProperties;
 import de.bluecolored.bluemap.core.world.BlockState;
 import org.spongepowered.configurate.ConfigurationNode;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +76,66 @@ private void readBool(ConfigurationNode node, Consumer<Boolean> target) {
         if (!node.virtual()) target.accept(node.getBoolean());
     }
 
+    /**
+     * Writes all loaded mappings in a compact binary form, so they can be read again using {@link #read(DataInputStream)}.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(mappings.size());
+        for (Entry<String, List<BlockStateMapping<BlockProperties>>> entry : mappings.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (BlockStateMapping<BlockProperties> mapping : entry.getValue()) {
+                BlockState blockState = mapping.getBlockState();
+                out.writeUTF(blockState.getFullId());
+                out.writeInt(blockState.getProperties().size());
+                for (Entry<String, String> property : blockState.getProperties().entrySet()) {
+                    out.writeUTF(property.getKey());
+                    out.writeUTF(property.getValue());
+                }
+
+                BlockProperties.Builder properties = mapping.getMapping().toBuilder();
+                out.writeByte(properties.isCulling().ordinal());
+                out.writeByte(properties.isOccluding().ordinal());
+                out.writeByte(properties.isAlwaysWaterlogged().ordinal());
+                out.writeByte(properties.isRandomOffset().ordinal());
+            }
+        }
+    }
+
+    /**
+     * Loads all mappings that have been written using {@link #write(DataOutputStream)}.
+     */
+    public void read(DataInputStream in) throws IOException {
+        Tristate[] tristates = Tristate.values();
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            List<BlockStateMapping<BlockProperties>> list = new LinkedList<>();
+
+            int mappingCount = in.readInt();
+            for (int j = 0; j < mappingCount; j++) {
+                String id = in.readUTF();
+                Map<String, String> properties = new HashMap<>();
+                int propertyCount = in.readInt();
+                for (int k = 0; k < propertyCount; k++) {
+                    properties.put(in.readUTF(), in.readUTF());
+                }
+
+                BlockProperties blockProperties = new BlockProperties(
+                        tristates[in.readByte()],
+                        tristates[in.readByte()],
+                        tristates[in.readByte()],
+                        tristates[in.readByte()]
+                );
+
+                list.add(new BlockStateMapping<>(new BlockState(id, properties), blockProperties));
+            }
+
+            mappings.put(key, list);
+        }
+    }
+
     public BlockProperties getBlockProperties(BlockState from){
         for (BlockStateMapping<BlockProperties> bm : mappings.getOrDefault(from.getFullId(), Collections.emptyList())){
             if (bm.fitsTo(from)){
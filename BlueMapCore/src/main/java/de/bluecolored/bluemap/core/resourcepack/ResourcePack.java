@@ -24,8 +24,6 @@
  */
 package de.bluecolored.bluemap.core.resourcepack;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
 import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.logger.Logger;
@@ -43,15 +41,22 @@
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockProperties;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockStateCache;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.spongepowered.configurate.gson.GsonConfigurationLoader;
 
 import javax.imageio.ImageIO;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Represents all resources (BlockStates / BlockModels and Textures) that are loaded and used to generate map-models.
@@ -59,6 +64,8 @@
 @DebugDump
 public class ResourcePack {
 
+    private static final int CACHE_FORMAT_VERSION = 2;
+
     private final Map<String, BlockStateResource> blockStateResources;
     private final Map<String, BlockModelResource> blockModelResources;
     private final TextureGallery textures;
@@ -67,21 +74,29 @@ public class ResourcePack {
     private final BiomeConfig biomeConfig;
     private final BlockColorCalculatorFactory blockColorCalculatorFactory;
 
-    private final LoadingCache<BlockState, BlockProperties> blockPropertiesCache;
+    private final BlockStateCache<BlockProperties> blockPropertiesCache;
+
+    private String sourcesHash;
 
     public ResourcePack() {
+        this(false);
+    }
+
+    /**
+     * @param textureAtlas Whether the textures should be packed into a texture-atlas, see {@link TextureGallery#TextureGallery(boolean)}
+     */
+    public ResourcePack(boolean textureAtlas) {
         blockStateResources = new HashMap<>();
         blockModelResources = new HashMap<>();
-        textures = new TextureGallery();
+        textures = new TextureGallery(textureAtlas);
 
         blockPropertiesConfig = new BlockPropertiesConfig();
         biomeConfig = new BiomeConfig();
         blockColorCalculatorFactory = new BlockColorCalculatorFactory();
 
-        blockPropertiesCache = Caffeine.newBuilder()
-                .executor(BlueMap.THREAD_POOL)
-                .maximumSize(10000)
-                .build(this::getBlockPropertiesNoCache);
+        blockPropertiesCache = new BlockStateCache<>(this::getBlockPropertiesNoCache);
+
+        sourcesHash = "";
     }
 
     /**
@@ -120,67 +135,85 @@ public void load(File... sources) throws InterruptedException {
 
             textures.reloadAllTextures(sourcesAccess);
 
-            Builder builder = BlockStateResource.builder(sourcesAccess, this);
+            ResourcePreloader preloader = new ResourcePreloader(sourcesAccess, textures);
+            try {
+                Builder builder = BlockStateResource.builder(preloader, this);
 
-            Collection<String> namespaces = sourcesAccess.listFolders("assets");
-            int i = 0;
-            for (String namespaceRoot : namespaces) {
-                if (Thread.interrupted()) throw new InterruptedException();
+                Collection<String> namespaces = sourcesAccess.listFolders("assets");
 
-                i++;
+                //start parsing all blockstates (and their models and textures) in parallel
+                Map<String, Collection<String>> namespaceBlockstateFiles = new HashMap<>();
+                for (String namespaceRoot : namespaces) {
+                    String blockstatesRootPath = namespaceRoot + "/blockstates";
+                    Collection<String> blockstateFiles = sourcesAccess.listFiles(blockstatesRootPath, true);
+                    namespaceBlockstateFiles.put(namespaceRoot, blockstateFiles);
 
-                //load blockstates
-                String namespace = namespaceRoot.substring("assets/".length());
-                Logger.global.logInfo("Loading " + namespace + " assets (" + i + "/" + namespaces.size() + ")...");
+                    for (String blockstateFile : blockstateFiles) {
+                        if (blockstateFile.endsWith(".json")) preloader.preloadBlockState(blockstateFile);
+                    }
+                }
 
-                String blockstatesRootPath = namespaceRoot + "/blockstates";
-                Collection<String> blockstateFiles = sourcesAccess.listFiles(blockstatesRootPath, true);
-                for (String blockstateFile : blockstateFiles) {
+                int i = 0;
+                for (String namespaceRoot : namespaces) {
                     if (Thread.interrupted()) throw new InterruptedException();
 
-                    String filename = blockstateFile.substring(blockstatesRootPath.length() + 1);
-                    if (!filename.endsWith(".json")) continue;
+                    i++;
 
-                    String jsonFileName = filename.substring(0, filename.length() - 5);
+                    //load blockstates
+                    String namespace = namespaceRoot.substring("assets/".length());
+                    Logger.global.logInfo("Loading " + namespace + " assets (" + i + "/" + namespaces.size() + ")...");
+
+                    String blockstatesRootPath = namespaceRoot + "/blockstates";
+                    Collection<String> blockstateFiles = namespaceBlockstateFiles.get(namespaceRoot);
+                    for (String blockstateFile : blockstateFiles) {
+                        if (Thread.interrupted()) throw new InterruptedException();
+
+                        String filename = blockstateFile.substring(blockstatesRootPath.length() + 1);
+                        if (!filename.endsWith(".json")) continue;
+
+                        String jsonFileName = filename.substring(0, filename.length() - 5);
+                        try {
+                            blockStateResources.put(namespace + ":" + jsonFileName, builder.build(blockstateFile));
+                        } catch (IOException ex) {
+                            Logger.global.logError("Failed to load blockstate: " + namespace + ":" + jsonFileName, ex);
+                        }
+                    }
+
+                    //load biomes
                     try {
-                        blockStateResources.put(namespace + ":" + jsonFileName, builder.build(blockstateFile));
+                        GsonConfigurationLoader loader = GsonConfigurationLoader.builder()
+                                .source(() -> new BufferedReader(new InputStreamReader(sourcesAccess.readFile(
+                                        "assets/" + namespace + "/biomes.json"))))
+                                .build();
+                        biomeConfig.load(loader.load());
                     } catch (IOException ex) {
-                        Logger.global.logError("Failed to load blockstate: " + namespace + ":" + jsonFileName, ex);
+                        Logger.global.logError("Failed to load biomes.conf from: " + namespace, ex);
                     }
-                }
 
-                //load biomes
-                try {
-                    GsonConfigurationLoader loader = GsonConfigurationLoader.builder()
-                            .source(() -> new BufferedReader(new InputStreamReader(sourcesAccess.readFile(
-                                    "assets/" + namespace + "/biomes.json"))))
-                            .build();
-                    biomeConfig.load(loader.load());
-                } catch (IOException ex) {
-                    Logger.global.logError("Failed to load biomes.conf from: " + namespace, ex);
-                }
-
-                //load block properties
-                try {
-                    GsonConfigurationLoader loader = GsonConfigurationLoader.builder()
-                            .source(() -> new BufferedReader(new InputStreamReader(sourcesAccess.readFile(
-                                    "assets/" + namespace + "/blockProperties.json"))))
-                            .build();
-                    blockPropertiesConfig.load(loader.load());
-                } catch (IOException ex) {
-                    Logger.global.logError("Failed to load biomes.conf from: " + namespace, ex);
-                }
+                    //load block properties
+                    try {
+                        GsonConfigurationLoader loader = GsonConfigurationLoader.builder()
+                                .source(() -> new BufferedReader(new InputStreamReader(sourcesAccess.readFile(
+                                        "assets/" + namespace + "/blockProperties.json"))))
+                                .build();
+                        blockPropertiesConfig.load(loader.load());
+                    } catch (IOException ex) {
+                        Logger.global.logError("Failed to load biomes.conf from: " + namespace, ex);
+                    }
 
-                //load block colors
-                try {
-                    GsonConfigurationLoader loader = GsonConfigurationLoader.builder()
-                            .source(() -> new BufferedReader(new InputStreamReader(sourcesAccess.readFile(
-                                    "assets/" + namespace + "/blockColors.json"))))
-                            .build();
-                    blockColorCalculatorFactory.load(loader.load());
-                } catch (IOException ex) {
-                    Logger.global.logError("Failed to load biomes.conf from: " + namespace, ex);
+                    //load block colors
+                    try {
+                        GsonConfigurationLoader loader = GsonConfigurationLoader.builder()
+                                .source(() -> new BufferedReader(new InputStreamReader(sourcesAccess.readFile(
+                                        "assets/" + namespace + "/blockColors.json"))))
+                                .build();
+                        blockColorCalculatorFactory.load(loader.load());
+                    } catch (IOException ex) {
+                        Logger.global.logError("Failed to load biomes.conf from: " + namespace, ex);
+                    }
                 }
+            } finally {
+                preloader.clear();
             }
 
             try {
@@ -220,6 +253,171 @@ public void saveTextureFile(File file) throws IOException {
         textures.saveTextureFile(file);
     }
 
+    /**
+     * Saves all loaded resources (with all blockstates and models already resolved) into a compact binary cache,
+     * that can be loaded again with {@link #loadCache(InputStream, String)} without having to read and parse all the resource-files again.<br>
+     * The images of the textures are not saved, only their ids, sizes and colors.
+     * @param out The stream to write the cache to, it is closed after writing
+     * @param sourcesHash The hash of the sources these resources have been loaded from, see {@link #hashSources(Collection)}
+     * @throws IOException If an IOException occurs while writing
+     */
+    public synchronized void saveCache(OutputStream out, String sourcesHash) throws IOException {
+        try (
+                DataOutputStream dOut = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)))
+        ) {
+            dOut.writeInt(CACHE_FORMAT_VERSION);
+            dOut.writeUTF(sourcesHash);
+            dOut.writeBoolean(textures.isAtlasEnabled());
+
+            textures.write(dOut);
+
+            // write the blockstates first into a buffer to collect all the models they are using
+            List<BlockModelResource> models = new ArrayList<>(blockModelResources.values());
+            Map<BlockModelResource, Integer> modelIndex = new IdentityHashMap<>();
+            for (int i = 0; i < models.size(); i++) modelIndex.putIfAbsent(models.get(i), i);
+
+            ByteArrayOutputStream blockStateBytes = new ByteArrayOutputStream();
+            DataOutputStream blockStateOut = new DataOutputStream(blockStateBytes);
+            blockStateOut.writeInt(blockStateResources.size());
+            for (Map.Entry<String, BlockStateResource> entry : blockStateResources.entrySet()) {
+                blockStateOut.writeUTF(entry.getKey());
+                entry.getValue().write(blockStateOut, model -> modelIndex.computeIfAbsent(model, m -> {
+                    models.add(m);
+                    return models.size() - 1;
+                }));
+            }
+            blockStateOut.flush();
+
+            dOut.writeInt(models.size());
+            for (BlockModelResource model : models) {
+                model.write(dOut);
+            }
+
+            dOut.writeInt(blockModelResources.size());
+            for (Map.Entry<String, BlockModelResource> entry : blockModelResources.entrySet()) {
+                dOut.writeUTF(entry.getKey());
+                dOut.writeInt(modelIndex.get(entry.getValue()));
+            }
+
+            blockStateBytes.writeTo(dOut);
+
+            biomeConfig.write(dOut);
+            blockPropertiesConfig.write(dOut);
+            blockColorCalculatorFactory.write(dOut);
+        }
+    }
+
+    /**
+     * Loads all resources from a cache that has been saved with {@link #saveCache(OutputStream, String)}.<br>
+     * Nothing is loaded if the cache has been created from different sources (or by a different version, or with the texture-atlas toggled).
+     * @param in The stream to read the cache from, it is closed after reading
+     * @param sourcesHash The hash of the sources the resources should have been loaded from, see {@link #hashSources(Collection)}
+     * @return <code>true</code> if the resources have been loaded, <code>false</code> if the cache is not matching the sources
+     * @throws IOException If an IOException occurs while reading, this {@link ResourcePack} might be partially loaded then
+     */
+    public synchronized boolean loadCache(InputStream in, String sourcesHash) throws IOException {
+        try (
+                DataInputStream dIn = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)))
+        ) {
+            if (dIn.readInt() != CACHE_FORMAT_VERSION) return false;
+            if (!dIn.readUTF().equals(sourcesHash)) return false;
+
+            // the texture-file has to be written again if the atlas has been enabled or disabled
+            if (dIn.readBoolean() != textures.isAtlasEnabled()) return false;
+
+            textures.read(dIn);
+
+            BlockModelResource[] models = new BlockModelResource[dIn.readInt()];
+            for (int i = 0; i < models.length; i++) {
+                models[i] = BlockModelResource.read(dIn, textures);
+            }
+
+            IntFunction<BlockModelResource> modelByIndex = i -> models[i];
+
+            int modelResourceCount = dIn.readInt();
+            for (int i = 0; i < modelResourceCount; i++) {
+                blockModelResources.put(dIn.readUTF(), models[dIn.readInt()]);
+            }
+
+            int blockStateCount = dIn.readInt();
+            for (int i = 0; i < blockStateCount; i++) {
+                blockStateResources.put(dIn.readUTF(), BlockStateResource.read(dIn, modelByIndex));
+            }
+
+            biomeConfig.read(dIn);
+            blockPropertiesConfig.read(dIn);
+            blockColorCalculatorFactory.read(dIn);
+        }
+
+        this.sourcesHash = sourcesHash;
+        return true;
+    }
+
+    /**
+     * Creates a hash of the paths, sizes and last-modification-times of the given resource-sources and all files in them
+     * (if they are folders). The hash changes if any of the sources changed, so it can be used to validate a cache of the loaded resources.
+     * @param sources The list of {@link File} sources. Each can be a folder or any zip-compressed file. (E.g. .zip or .jar)
+     * @return The hash as hex-string
+     * @throws IOException If an IOException occurs while listing the files of a folder
+     */
+    public static String hashSources(Collection<File> sources) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Failed to create hash!", ex);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(CACHE_FORMAT_VERSION);
+            out.writeUTF(BlueMap.VERSION);
+            out.writeUTF(BlueMap.GIT_HASH);
+
+            for (File source : sources) {
+                out.writeUTF(source.getAbsolutePath());
+
+                if (source.isDirectory()) {
+                    List<Path> files;
+                    try (Stream<Path> stream = Files.walk(source.toPath())) {
+                        files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                    }
+
+                    out.writeInt(files.size());
+                    for (Path file : files) {
+                        out.writeUTF(source.toPath().relativize(file).toString());
+                        out.writeLong(Files.size(file));
+                        out.writeLong(Files.getLastModifiedTime(file).toMillis());
+                    }
+                } else {
+                    out.writeInt(-1);
+                    out.writeLong(source.length());
+                    out.writeLong(source.lastModified());
+                }
+            }
+        }
+
+        byte[] hash = digest.digest(bytes.toByteArray());
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    /**
+     * Returns the hash of the sources these resources have been loaded from, see {@link #hashSources(Collection)}.<br>
+     * This is an empty string if the sources are unknown.
+     */
+    public String getSourcesHash() {
+        return sourcesHash;
+    }
+
+    /**
+     * Sets the hash of the sources these resources have been loaded from, see {@link #hashSources(Collection)}
+     */
+    public void setSourcesHash(String sourcesHash) {
+        this.sourcesHash = Objects.requireNonNull(sourcesHash);
+    }
+
     /**
      * Returns a {@link BlockStateResource} for the given {@link BlockState} if found.
      * @param state The {@link BlockState}
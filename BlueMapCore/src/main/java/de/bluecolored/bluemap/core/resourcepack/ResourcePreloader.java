@@ -0,0 +1,182 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resourcepack;
+
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.resourcepack.fileaccess.FileAccess;
+import de.bluecolored.bluemap.core.resourcepack.texture.TextureGallery;
+import org.spongepowered.configurate.ConfigurationNode;
+import org.spongepowered.configurate.gson.GsonConfigurationLoader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Reads and parses the json-files of the blockstates and models, and decodes the textures they reference,
+ * concurrently on the {@link BlueMap#THREAD_POOL}, ahead of the (sequential) building of the resources.<br>
+ * The builders then only pick up the parsed files (and decoded textures), so the resulting resources and texture-ids are exactly
+ * the same as if everything was loaded sequentially.<br>
+ * <br>
+ * A {@link ResourcePreloader} that has nothing preloaded just reads and parses all files when they are requested.
+ */
+public class ResourcePreloader {
+
+    private static final String JSON_COMMENT = "__comment";
+
+    private final FileAccess sourcesAccess;
+    private final TextureGallery textures;
+
+    private final Map<String, ForkJoinTask<ConfigurationNode>> jsonFiles;
+
+    public ResourcePreloader(FileAccess sourcesAccess, TextureGallery textures) {
+        this.sourcesAccess = sourcesAccess;
+        this.textures = textures;
+
+        this.jsonFiles = new ConcurrentHashMap<>();
+    }
+
+    public FileAccess getSourcesAccess() {
+        return sourcesAccess;
+    }
+
+    /**
+     * Starts parsing the blockstate-file, and then all the models and textures it references.
+     * @param blockstateFile The path of the blockstate-file on the {@link FileAccess}
+     */
+    public void preloadBlockState(String blockstateFile) {
+        preloadJson(blockstateFile, this::preloadBlockStateReferences);
+    }
+
+    /**
+     * Starts parsing the model-file, and then all the parent-models and textures it references.
+     * @param modelFile The path of the model-file on the {@link FileAccess}
+     */
+    public void preloadModel(String modelFile) {
+        preloadJson(modelFile, this::preloadModelReferences);
+    }
+
+    /**
+     * Returns the parsed json-file with the given path.<br>
+     * If the file has been preloaded this waits for it to be parsed, otherwise the file is read and parsed right away.
+     * @param path The path of the json-file on the {@link FileAccess}
+     * @return The parsed json-file
+     * @throws IOException If the file could not be read or parsed
+     */
+    public ConfigurationNode loadJson(String path) throws IOException {
+        ForkJoinTask<ConfigurationNode> preloaded = jsonFiles.get(path);
+        if (preloaded != null) {
+            try {
+                return preloaded.join();
+            } catch (RuntimeException ignore) {
+                // failed to preload, load it again below to get the original exception
+            }
+        }
+
+        return readJson(path);
+    }
+
+    /**
+     * Drops all preloaded files and textures that have not been used.
+     */
+    public void clear() {
+        for (ForkJoinTask<ConfigurationNode> task : jsonFiles.values()) {
+            task.cancel(false);
+        }
+        jsonFiles.clear();
+
+        textures.clearPreloadedTextures();
+    }
+
+    private void preloadJson(String path, ReferenceLoader referenceLoader) {
+        jsonFiles.computeIfAbsent(path, p -> BlueMap.THREAD_POOL.submit(() -> {
+            ConfigurationNode node = readJson(p);
+            referenceLoader.preloadReferences(node);
+            return node;
+        }));
+    }
+
+    private ConfigurationNode readJson(String path) throws IOException {
+        InputStream fileIn = sourcesAccess.readFile(path);
+        return GsonConfigurationLoader.builder()
+                .source(() -> new BufferedReader(new InputStreamReader(fileIn, StandardCharsets.UTF_8)))
+                .build()
+                .load();
+    }
+
+    private void preloadBlockStateReferences(ConfigurationNode node) {
+        if (node.isMap()) {
+            for (Entry<Object, ? extends ConfigurationNode> entry : node.childrenMap().entrySet()) {
+                String key = entry.getKey().toString();
+                if (key.equals(JSON_COMMENT)) continue;
+
+                ConfigurationNode child = entry.getValue();
+                if (key.equals("model") && child.getString() != null) {
+                    preloadModel(ResourcePack.namespacedToAbsoluteResourcePath(child.getString(), "models") + ".json");
+                } else if (key.equals("textures")) {
+                    preloadTextures(child);
+                } else {
+                    preloadBlockStateReferences(child);
+                }
+            }
+        } else if (node.isList()) {
+            for (ConfigurationNode child : node.childrenList()) {
+                preloadBlockStateReferences(child);
+            }
+        }
+    }
+
+    private void preloadModelReferences(ConfigurationNode node) {
+        String parentPath = node.node("parent").getString();
+        if (parentPath != null && !parentPath.startsWith("builtin")) {
+            preloadModel(ResourcePack.namespacedToAbsoluteResourcePath(parentPath, "models") + ".json");
+        }
+
+        preloadTextures(node.node("textures"));
+    }
+
+    private void preloadTextures(ConfigurationNode texturesNode) {
+        for (Entry<Object, ? extends ConfigurationNode> entry : texturesNode.childrenMap().entrySet()) {
+            if (entry.getKey().equals(JSON_COMMENT)) continue;
+
+            String value = entry.getValue().getString();
+            if (value == null || value.isEmpty() || value.charAt(0) == '#') continue;
+
+            textures.preloadTexture(sourcesAccess, ResourcePack.namespacedToAbsoluteResourcePath(value, "textures") + ".png");
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReferenceLoader {
+        void preloadReferences(ConfigurationNode node);
+    }
+
+}
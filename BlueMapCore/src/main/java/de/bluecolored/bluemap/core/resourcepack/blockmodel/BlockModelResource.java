@@ -30,17 +30,17 @@
 import com.flowpowered.math.vector.Vector4f;
 import de.bluecolored.bluemap.core.resourcepack.ParseResourceException;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.resourcepack.ResourcePreloader;
 import de.bluecolored.bluemap.core.resourcepack.texture.Texture;
+import de.bluecolored.bluemap.core.resourcepack.texture.TextureGallery;
 import de.bluecolored.bluemap.core.resourcepack.blockmodel.BlockModelResource.Element.Face;
 import de.bluecolored.bluemap.core.resourcepack.fileaccess.FileAccess;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.util.math.Axis;
 import de.bluecolored.bluemap.core.util.math.MatrixM4f;
 import org.spongepowered.configurate.ConfigurationNode;
-import org.spongepowered.configurate.gson.GsonConfigurationLoader;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -225,8 +225,133 @@ public boolean isRescale() {
 
     }
 
+    /**
+     * Writes this model (with all its elements already resolved) in a compact binary form, so it can be read again using
+     * {@link #read(DataInputStream, TextureGallery)}. The textures are referenced by their id.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(modelType.ordinal());
+        out.writeBoolean(culling);
+        out.writeBoolean(occluding);
+
+        out.writeInt(textures.size());
+        for (Entry<String, Texture> entry : textures.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().getId());
+        }
+
+        out.writeInt(elements.size());
+        for (Element element : elements) {
+            writeVector3f(out, element.from);
+            writeVector3f(out, element.to);
+
+            writeVector3f(out, element.rotation.origin);
+            out.writeByte(element.rotation.axis.ordinal());
+            out.writeFloat(element.rotation.angle);
+            out.writeBoolean(element.rotation.rescale);
+
+            MatrixM4f m = element.rotationMatrix;
+            out.writeFloat(m.m00); out.writeFloat(m.m01); out.writeFloat(m.m02); out.writeFloat(m.m03);
+            out.writeFloat(m.m10); out.writeFloat(m.m11); out.writeFloat(m.m12); out.writeFloat(m.m13);
+            out.writeFloat(m.m20); out.writeFloat(m.m21); out.writeFloat(m.m22); out.writeFloat(m.m23);
+            out.writeFloat(m.m30); out.writeFloat(m.m31); out.writeFloat(m.m32); out.writeFloat(m.m33);
+
+            out.writeBoolean(element.shade);
+            out.writeBoolean(element.fullCube);
+
+            out.writeByte(element.faces.size());
+            for (Entry<Direction, Face> entry : element.faces.entrySet()) {
+                Face face = entry.getValue();
+                out.writeByte(entry.getKey().ordinal());
+                out.writeFloat(face.uv.getX());
+                out.writeFloat(face.uv.getY());
+                out.writeFloat(face.uv.getZ());
+                out.writeFloat(face.uv.getW());
+                out.writeInt(face.texture != null ? face.texture.getId() : -1);
+                out.writeByte(face.cullface != null ? face.cullface.ordinal() : -1);
+                out.writeInt(face.rotation);
+                out.writeBoolean(face.tinted);
+            }
+        }
+    }
+
+    /**
+     * Reads a model that has been written using {@link #write(DataOutputStream)}.
+     * @param textures The {@link TextureGallery} to resolve the texture-ids with
+     */
+    public static BlockModelResource read(DataInputStream in, TextureGallery textures) throws IOException {
+        BlockModelResource model = new BlockModelResource();
+        model.modelType = ModelType.values()[in.readByte()];
+        model.culling = in.readBoolean();
+        model.occluding = in.readBoolean();
+
+        int textureCount = in.readInt();
+        for (int i = 0; i < textureCount; i++) {
+            String key = in.readUTF();
+            model.textures.put(key, textures.get(in.readInt()));
+        }
+
+        int elementCount = in.readInt();
+        for (int i = 0; i < elementCount; i++) {
+            Element element = model.new Element();
+            element.from = readVector3f(in);
+            element.to = readVector3f(in);
+
+            element.rotation.origin = readVector3f(in);
+            element.rotation.axis = Axis.values()[in.readByte()];
+            element.rotation.angle = in.readFloat();
+            element.rotation.rescale = in.readBoolean();
+
+            element.rotationMatrix = new MatrixM4f().set(
+                    in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                    in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                    in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                    in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat()
+            );
+
+            element.shade = in.readBoolean();
+            element.fullCube = in.readBoolean();
+
+            int faceCount = in.readByte();
+            for (int j = 0; j < faceCount; j++) {
+                Direction dir = Direction.values()[in.readByte()];
+                Face face = element.new Face(dir);
+                face.uv = new Vector4f(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+
+                int textureId = in.readInt();
+                face.texture = textureId != -1 ? textures.get(textureId) : null;
+
+                int cullface = in.readByte();
+                face.cullface = cullface != -1 ? Direction.values()[cullface] : null;
+
+                face.rotation = in.readInt();
+                face.tinted = in.readBoolean();
+
+                element.faces.put(dir, face);
+            }
+
+            model.elements.add(element);
+        }
+
+        return model;
+    }
+
+    private static void writeVector3f(DataOutputStream out, Vector3f v) throws IOException {
+        out.writeFloat(v.getX());
+        out.writeFloat(v.getY());
+        out.writeFloat(v.getZ());
+    }
+
+    private static Vector3f readVector3f(DataInputStream in) throws IOException {
+        return new Vector3f(in.readFloat(), in.readFloat(), in.readFloat());
+    }
+
     public static Builder builder(FileAccess sourcesAccess, ResourcePack resourcePack) {
-        return new Builder(sourcesAccess, resourcePack);
+        return builder(new ResourcePreloader(sourcesAccess, resourcePack.getTextures()), resourcePack);
+    }
+
+    public static Builder builder(ResourcePreloader preloader, ResourcePack resourcePack) {
+        return new Builder(preloader, resourcePack);
     }
 
     public static class Builder {
@@ -235,13 +360,15 @@ public static class Builder {
         private static final Vector3f FULL_CUBE_FROM = Vector3f.ZERO;
         private static final Vector3f FULL_CUBE_TO = new Vector3f(16f, 16f, 16f);
 
+        private ResourcePreloader preloader;
         private FileAccess sourcesAccess;
         private ResourcePack resourcePack;
 
         private HashMap<String, String> textures;
 
-        private Builder(FileAccess sourcesAccess, ResourcePack resourcePack) {
-            this.sourcesAccess = sourcesAccess;
+        private Builder(ResourcePreloader preloader, ResourcePack resourcePack) {
+            this.preloader = preloader;
+            this.sourcesAccess = preloader.getSourcesAccess();
             this.resourcePack = resourcePack;
 
             this.textures = new HashMap<>();
@@ -260,11 +387,7 @@ public synchronized BlockModelResource build(String modelPath, Map<String, Strin
         private BlockModelResource buildNoReset(String modelPath, boolean renderElements, String topModelPath) throws IOException, ParseResourceException {
             BlockModelResource blockModel = new BlockModelResource();
 
-            InputStream fileIn = sourcesAccess.readFile(modelPath);
-            ConfigurationNode config = GsonConfigurationLoader.builder()
-                    .source(() -> new BufferedReader(new InputStreamReader(fileIn, StandardCharsets.UTF_8)))
-                    .build()
-                    .load();
+            ConfigurationNode config = preloader.loadJson(modelPath);
 
             for (Entry<Object, ? extends ConfigurationNode> entry : config.node("textures").childrenMap().entrySet()) {
                 if (entry.getKey().equals(JSON_COMMENT)) continue;
@@ -28,6 +28,7 @@
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.resourcepack.ParseResourceException;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.resourcepack.ResourcePreloader;
 import de.bluecolored.bluemap.core.resourcepack.blockmodel.BlockModelResource;
 import de.bluecolored.bluemap.core.resourcepack.blockmodel.TransformedBlockModelResource;
 import de.bluecolored.bluemap.core.resourcepack.blockstate.PropertyCondition.All;
@@ -37,13 +38,13 @@
 import org.spongepowered.configurate.ConfigurationNode;
 import org.spongepowered.configurate.gson.GsonConfigurationLoader;
 
-import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 
 public class BlockStateResource {
 
@@ -58,7 +59,23 @@ public Collection<TransformedBlockModelResource> getModels(BlockState blockState
 
     public Collection<TransformedBlockModelResource> getModels(BlockState blockState, int x, int y, int z, Collection<TransformedBlockModelResource> targetCollection) {
         targetCollection.clear();
+        collectModels(blockState, x, y, z, targetCollection);
+        return targetCollection;
+    }
+
+    /**
+     * Returns <code>true</code> if any of the models for this {@link BlockState} is randomly chosen (based on the block-position)
+     * from multiple weighted models.
+     */
+    public boolean hasRandomModels(BlockState blockState) {
+        return collectModels(blockState, 0, 0, 0, new ArrayList<>());
+    }
 
+    /**
+     * Adds all models for the {@link BlockState} at that position to the target-collection and returns if any of the
+     * used variants is randomly chosen
+     */
+    private boolean collectModels(BlockState blockState, int x, int y, int z, Collection<TransformedBlockModelResource> targetCollection) {
         Variant allMatch = null;
         for (Variant variant : variants) {
             if (variant.condition.matches(blockState)) {
@@ -68,52 +85,91 @@ public Collection<TransformedBlockModelResource> getModels(BlockState blockState
                 }
 
                 targetCollection.add(variant.getModel(x, y, z));
-                return targetCollection;
+                return variant.isWeighted();
             }
         }
 
         if (allMatch != null) {
             targetCollection.add(allMatch.getModel(x, y, z));
-            return targetCollection;
+            return allMatch.isWeighted();
         }
 
+        boolean weighted = false;
         for (Variant variant : multipart) {
             if (variant.condition.matches(blockState)) {
                 targetCollection.add(variant.getModel(x, y, z));
+                weighted |= variant.isWeighted();
             }
         }
 
         //fallback to first variant
         if (targetCollection.isEmpty() && !variants.isEmpty()) {
             targetCollection.add(variants.get(0).getModel(x, y, z));
+            weighted = variants.get(0).isWeighted();
         }
 
-        return targetCollection;
+        return weighted;
+    }
+
+    /**
+     * Writes this resource in a compact binary form, so it can be read again using {@link #read(DataInputStream, IntFunction)}.
+     * @param modelIndex A function providing the index for each {@link BlockModelResource} the models are referenced with
+     */
+    public void write(DataOutputStream out, ToIntFunction<BlockModelResource> modelIndex) throws IOException {
+        out.writeInt(variants.size());
+        for (Variant variant : variants) {
+            variant.write(out, modelIndex);
+        }
+
+        out.writeInt(multipart.size());
+        for (Variant variant : multipart) {
+            variant.write(out, modelIndex);
+        }
+    }
+
+    /**
+     * Reads a resource that has been written using {@link #write(DataOutputStream, ToIntFunction)}.
+     * @param models A function providing the {@link BlockModelResource} for each model-index
+     */
+    public static BlockStateResource read(DataInputStream in, IntFunction<BlockModelResource> models) throws IOException {
+        BlockStateResource blockState = new BlockStateResource();
+
+        int variantCount = in.readInt();
+        for (int i = 0; i < variantCount; i++) {
+            blockState.variants.add(Variant.read(in, models));
+        }
+
+        int multipartCount = in.readInt();
+        for (int i = 0; i < multipartCount; i++) {
+            blockState.multipart.add(Variant.read(in, models));
+        }
+
+        return blockState;
     }
 
     public static Builder builder(FileAccess sourcesAccess, ResourcePack resourcePack) {
-        return new Builder(sourcesAccess, resourcePack);
+        return builder(new ResourcePreloader(sourcesAccess, resourcePack.getTextures()), resourcePack);
+    }
+
+    public static Builder builder(ResourcePreloader preloader, ResourcePack resourcePack) {
+        return new Builder(preloader, resourcePack);
     }
 
     public static class Builder {
 
         private static final String JSON_COMMENT = "__comment";
 
-        private final FileAccess sourcesAccess;
+        private final ResourcePreloader preloader;
         private final ResourcePack resourcePack;
 
-        private Builder(FileAccess sourcesAccess, ResourcePack resourcePack) {
-            this.sourcesAccess = sourcesAccess;
+        private Builder(ResourcePreloader preloader, ResourcePack resourcePack) {
+            this.preloader = preloader;
             this.resourcePack = resourcePack;
         }
 
         public BlockStateResource build(String blockstateFile) throws IOException {
 
-            InputStream fileIn = sourcesAccess.readFile(blockstateFile);
-            ConfigurationNode config = GsonConfigurationLoader.builder()
-                    .source(() -> new BufferedReader(new InputStreamReader(fileIn, StandardCharsets.UTF_8)))
-                    .build()
-                    .load();
+            ConfigurationNode config = preloader.loadJson(blockstateFile);
 
             if (!config.node("forge_marker").virtual()) {
                 return buildForge(config, blockstateFile);
@@ -197,7 +253,7 @@ private Weighted<TransformedBlockModelResource> loadModel(ConfigurationNode node
             String modelPath = ResourcePack.namespacedToAbsoluteResourcePath(namespacedModelPath, "models") + ".json";
             BlockModelResource model = resourcePack.getBlockModelResources().get(modelPath);
             if (model == null) {
-                BlockModelResource.Builder builder = BlockModelResource.builder(sourcesAccess, resourcePack);
+                BlockModelResource.Builder builder = BlockModelResource.builder(preloader, resourcePack);
                 try {
                     if (overrideTextures != null) model = builder.build(modelPath, overrideTextures);
                     else model = builder.build(modelPath);
@@ -28,6 +28,9 @@
 import de.bluecolored.bluemap.core.util.Preconditions;
 import de.bluecolored.bluemap.core.world.BlockState;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Map;
 
 @FunctionalInterface
@@ -167,4 +170,57 @@ static PropertyCondition blockState(BlockState state) {
         return and(conditions);
     }
 
+    /**
+     * Writes the given condition in a compact binary form, so it can be read again using {@link #read(DataInputStream)}.
+     * @throws IOException If an IOException occurs while writing, or the condition is not one of the conditions created by this interface
+     */
+    static void write(PropertyCondition condition, DataOutputStream out) throws IOException {
+        if (condition instanceof All) {
+            out.writeByte(0);
+        } else if (condition instanceof None) {
+            out.writeByte(1);
+        } else if (condition instanceof Property) {
+            out.writeByte(2);
+            out.writeUTF(((Property) condition).key);
+            out.writeUTF(((Property) condition).value);
+        } else if (condition instanceof And || condition instanceof Or) {
+            PropertyCondition[] conditions;
+            if (condition instanceof And) {
+                out.writeByte(3);
+                conditions = ((And) condition).conditions;
+            } else {
+                out.writeByte(4);
+                conditions = ((Or) condition).conditions;
+            }
+
+            out.writeInt(conditions.length);
+            for (PropertyCondition c : conditions) {
+                write(c, out);
+            }
+        } else {
+            throw new IOException("Can not write condition of type " + condition.getClass());
+        }
+    }
+
+    /**
+     * Reads a condition that has been written using {@link #write(PropertyCondition, DataOutputStream)}.
+     */
+    static PropertyCondition read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case 0: return all();
+            case 1: return none();
+            case 2: return property(in.readUTF(), in.readUTF());
+            case 3:
+            case 4:
+                PropertyCondition[] conditions = new PropertyCondition[in.readInt()];
+                for (int i = 0; i < conditions.length; i++) {
+                    conditions[i] = read(in);
+                }
+                return type == 3 ? and(conditions) : or(conditions);
+            default:
+                throw new IOException("Unknown condition type: " + type);
+        }
+    }
+
 }
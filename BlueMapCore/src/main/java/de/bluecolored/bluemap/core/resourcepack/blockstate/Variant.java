@@ -24,11 +24,18 @@
  */
 package de.bluecolored.bluemap.core.resourcepack.blockstate;
 
+import com.flowpowered.math.vector.Vector2f;
 import de.bluecolored.bluemap.core.resourcepack.ParseResourceException;
+import de.bluecolored.bluemap.core.resourcepack.blockmodel.BlockModelResource;
 import de.bluecolored.bluemap.core.resourcepack.blockmodel.TransformedBlockModelResource;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 
 public class Variant {
 
@@ -51,6 +58,13 @@ public TransformedBlockModelResource getModel(int x, int y, int z) {
         throw new RuntimeException("This line should never be reached!");
     }
 
+    /**
+     * Returns <code>true</code> if this variant chooses from multiple models based on the block-position
+     */
+    public boolean isWeighted() {
+        return models.size() > 1;
+    }
+
     public void checkValid() throws ParseResourceException {
         if (models.isEmpty()) throw new ParseResourceException("A variant must have at least one model!");
     }
@@ -62,6 +76,38 @@ public void updateTotalWeight() {
         }
     }
 
+    void write(DataOutputStream out, ToIntFunction<BlockModelResource> modelIndex) throws IOException {
+        PropertyCondition.write(condition, out);
+
+        out.writeInt(models.size());
+        for (Weighted<TransformedBlockModelResource> w : models) {
+            TransformedBlockModelResource model = w.getValue();
+            out.writeDouble(w.getWeight());
+            out.writeFloat(model.getRotation().getX());
+            out.writeFloat(model.getRotation().getY());
+            out.writeBoolean(model.isUVLock());
+            out.writeInt(modelIndex.applyAsInt(model.getModel()));
+        }
+    }
+
+    static Variant read(DataInputStream in, IntFunction<BlockModelResource> models) throws IOException {
+        Variant variant = new Variant();
+        variant.condition = PropertyCondition.read(in);
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            double weight = in.readDouble();
+            Vector2f rotation = new Vector2f(in.readFloat(), in.readFloat());
+            boolean uvLock = in.readBoolean();
+            BlockModelResource model = models.apply(in.readInt());
+
+            variant.models.add(new Weighted<>(new TransformedBlockModelResource(rotation, uvLock, model), weight));
+        }
+
+        variant.updateTotalWeight();
+        return variant;
+    }
+
     private static float hashToFloat(int x, int y, int z) {
         final long hash = x * 73438747 ^ y * 9357269 ^ z * 4335792;
         return (hash * (hash + 456149) & 0x00ffffff) / (float) 0x01000000;
@@ -34,15 +34,16 @@ public class Texture {
     private final String path;
     private final Color color, colorPremultiplied;
     private final boolean isHalfTransparent;
-    private final String texture;
+    private final int width, height;
 
-    protected Texture(int id, String path, Color color, boolean halfTransparent, String texture) {
+    protected Texture(int id, String path, Color color, boolean halfTransparent, int width, int height) {
         this.id = id;
         this.path = path;
         this.color = new Color().set(color).straight();
         this.colorPremultiplied = new Color().set(color).premultiplied();
         this.isHalfTransparent = halfTransparent;
-        this.texture = texture;
+        this.width = width;
+        this.height = height;
     }
 
     public int getId() {
@@ -77,8 +78,20 @@ public boolean isHalfTransparent() {
         return isHalfTransparent;
     }
 
-    public String getTexture() {
-        return texture;
+    /**
+     * Returns the width of the {@link Texture}-image in pixels (without animation-frames).
+     * @return The width of the image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the {@link Texture}-image in pixels (without animation-frames).
+     * @return The height of the image
+     */
+    public int getHeight() {
+        return height;
     }
 
     @Override
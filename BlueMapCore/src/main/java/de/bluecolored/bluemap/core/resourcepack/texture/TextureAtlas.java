@@ -0,0 +1,262 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resourcepack.texture;
+
+import de.bluecolored.bluemap.core.debug.DebugDump;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The layout of all {@link Texture}s of a {@link TextureGallery} packed into a few atlas-pages.<br>
+ * Opaque and half-transparent textures are packed onto separate pages, so each page can be rendered with a single material.
+ * The index of the page is the material-index that faces using a texture of this page will have.<br>
+ * <br>
+ * Each texture is surrounded by a one pixel wide border repeating its edge-pixels, so rounded uvs don't sample the neighbouring texture.<br>
+ * The layout only depends on the order and size of the textures, so it stays the same as long as the textures do.
+ */
+@DebugDump
+public class TextureAtlas {
+
+    public static final int MAX_PAGE_SIZE = 2048;
+    private static final int PADDING = 1;
+
+    private final Page[] pages;
+
+    // rectangles indexed by texture-id, without the padding
+    private final int[] page, x, y, width, height;
+
+    private TextureAtlas(Page[] pages, int[] page, int[] x, int[] y, int[] width, int[] height) {
+        this.pages = pages;
+        this.page = page;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * The count of pages in this atlas
+     */
+    public int getPageCount() {
+        return pages.length;
+    }
+
+    public Page getPageInfo(int page) {
+        return pages[page];
+    }
+
+    /**
+     * Returns whether the texture with this id has a place in this atlas
+     */
+    public boolean contains(int textureId) {
+        return textureId >= 0 && textureId < page.length && page[textureId] != -1;
+    }
+
+    /**
+     * Returns the page the texture with this id is placed on (and therefore the material-index to use for it)
+     */
+    public int getPage(int textureId) {
+        return page[textureId];
+    }
+
+    public int getX(int textureId) {
+        return x[textureId];
+    }
+
+    public int getY(int textureId) {
+        return y[textureId];
+    }
+
+    public int getWidth(int textureId) {
+        return width[textureId];
+    }
+
+    public int getHeight(int textureId) {
+        return height[textureId];
+    }
+
+    /**
+     * Maps an u-coordinate (0-1) of the texture with the given id onto its page.<br>
+     * Values outside 0-1 are clamped, since a texture can not be repeated inside an atlas.
+     */
+    public float mapU(int textureId, float u) {
+        if (u < 0f) u = 0f;
+        if (u > 1f) u = 1f;
+        return (x[textureId] + u * width[textureId]) / pages[page[textureId]].width;
+    }
+
+    /**
+     * Maps a v-coordinate (0-1, top to bottom) of the texture with the given id onto its page.<br>
+     * Values outside 0-1 are clamped, since a texture can not be repeated inside an atlas.
+     */
+    public float mapV(int textureId, float v) {
+        if (v < 0f) v = 0f;
+        if (v > 1f) v = 1f;
+        return (y[textureId] + v * height[textureId]) / pages[page[textureId]].height;
+    }
+
+    /**
+     * Draws the image of the given page.
+     * @param page The page to draw
+     * @param images The images of the textures indexed by texture-id, missing images (<code>null</code>) are left transparent
+     */
+    public BufferedImage drawPage(int page, List<BufferedImage> images) {
+        Page info = pages[page];
+        BufferedImage pageImage = new BufferedImage(info.width, info.height, BufferedImage.TYPE_INT_ARGB);
+
+        int[] row = new int[0];
+        for (int id = 0; id < this.page.length; id++) {
+            if (this.page[id] != page) continue;
+            if (id >= images.size()) continue;
+
+            BufferedImage image = images.get(id);
+            if (image == null || image.getWidth() != width[id] || image.getHeight() != height[id]) continue;
+
+            int w = width[id], h = height[id];
+            if (row.length < w) row = new int[w];
+
+            for (int ty = -PADDING; ty < h + PADDING; ty++) {
+                image.getRGB(0, Math.min(Math.max(ty, 0), h - 1), w, 1, row, 0, w);
+                int py = y[id] + ty;
+
+                pageImage.setRGB(x[id], py, w, 1, row, 0, w);
+                for (int p = 1; p <= PADDING; p++) {
+                    pageImage.setRGB(x[id] - p, py, row[0]);
+                    pageImage.setRGB(x[id] + w - 1 + p, py, row[w - 1]);
+                }
+            }
+        }
+
+        return pageImage;
+    }
+
+    /**
+     * Packs the given textures into a new atlas.<br>
+     * The textures are placed in order of their id onto rows of the pages, the opaque textures first, then the half-transparent ones.
+     * @param textures The textures indexed by their id
+     */
+    public static TextureAtlas pack(List<Texture> textures) {
+        int count = textures.size();
+        int[] page = new int[count], x = new int[count], y = new int[count], width = new int[count], height = new int[count];
+        Arrays.fill(page, -1);
+
+        List<Page> pages = new ArrayList<>();
+        packGroup(textures, false, pages, page, x, y, width, height);
+        packGroup(textures, true, pages, page, x, y, width, height);
+
+        return new TextureAtlas(pages.toArray(new Page[0]), page, x, y, width, height);
+    }
+
+    private static void packGroup(List<Texture> textures, boolean transparent, List<Page> pages, int[] page, int[] x, int[] y, int[] width, int[] height) {
+        long area = 0;
+        int maxWidth = 1;
+        for (Texture texture : textures) {
+            if (!isPackable(texture) || texture.isHalfTransparent() != transparent) continue;
+            int w = texture.getWidth() + PADDING * 2, h = texture.getHeight() + PADDING * 2;
+            area += (long) w * h;
+            maxWidth = Math.max(maxWidth, w);
+        }
+        if (area == 0) return;
+
+        // roughly square pages, but never wider than needed
+        int pageWidth = Integer.highestOneBit((int) Math.min(Math.ceil(Math.sqrt(area)), MAX_PAGE_SIZE) * 2 - 1);
+        pageWidth = Math.max(pageWidth, Integer.highestOneBit(maxWidth * 2 - 1));
+
+        int pageIndex = pages.size(), cx = 0, cy = 0, rowHeight = 0, usedHeight = 0;
+        for (Texture texture : textures) {
+            if (!isPackable(texture) || texture.isHalfTransparent() != transparent) continue;
+            int id = texture.getId();
+            int w = texture.getWidth() + PADDING * 2, h = texture.getHeight() + PADDING * 2;
+
+            if (cx + w > pageWidth) {
+                cx = 0;
+                cy += rowHeight;
+                rowHeight = 0;
+            }
+
+            if (cy + h > MAX_PAGE_SIZE) {
+                pages.add(new Page(pageWidth, Integer.highestOneBit(usedHeight * 2 - 1), transparent));
+                pageIndex++;
+                cx = 0;
+                cy = 0;
+                rowHeight = 0;
+                usedHeight = 0;
+            }
+
+            page[id] = pageIndex;
+            x[id] = cx + PADDING;
+            y[id] = cy + PADDING;
+            width[id] = texture.getWidth();
+            height[id] = texture.getHeight();
+
+            cx += w;
+            rowHeight = Math.max(rowHeight, h);
+            usedHeight = Math.max(usedHeight, cy + rowHeight);
+        }
+
+        pages.add(new Page(pageWidth, Integer.highestOneBit(usedHeight * 2 - 1), transparent));
+    }
+
+    private static boolean isPackable(Texture texture) {
+        return
+                texture.getWidth() > 0 &&
+                texture.getHeight() > 0 &&
+                texture.getWidth() + PADDING * 2 <= MAX_PAGE_SIZE &&
+                texture.getHeight() + PADDING * 2 <= MAX_PAGE_SIZE;
+    }
+
+    @DebugDump
+    public static class Page {
+
+        private final int width, height;
+        private final boolean transparent;
+
+        private Page(int width, int height, boolean transparent) {
+            this.width = width;
+            this.height = height;
+            this.transparent = transparent;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Whether the textures on this page are half-transparent
+         */
+        public boolean isTransparent() {
+            return transparent;
+        }
+
+    }
+
+}
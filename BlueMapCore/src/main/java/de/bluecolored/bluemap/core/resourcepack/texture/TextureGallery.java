@@ -25,6 +25,8 @@
 package de.bluecolored.bluemap.core.resourcepack.texture;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
+import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.resourcepack.ParseResourceException;
@@ -35,23 +37,54 @@
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * A {@link TextureGallery} is managing {@link Texture}s and their id's and path's.<br>
- * I can also load and generate the texture.json file, or load new {@link Texture}s from a {@link FileAccess}.
+ * I can also load and generate the texture.json file, or load new {@link Texture}s from a {@link FileAccess}.<br>
+ * <br>
+ * If the atlas is enabled, the textures are packed into a {@link TextureAtlas}, the images of the loaded textures are only kept until the atlas-pages have been saved.<br>
+ * Otherwise the texture.json contains all textures as base64-encoded images, like the web-app expects it.
  */
 @DebugDump
 public class TextureGallery {
 
+    private static final String ATLAS_FOLDER = "textures";
     private static final String EMPTY_BASE64 = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAABAAAAAQCAQAAAC1+jfqAAAAEUlEQVR42mNkIAAYRxWMJAUAE5gAEdz4t9QAAAAASUVORK5CYII=";
 
+    private final boolean atlasEnabled;
+
     private final Map<String, Texture> textureMap;
     private final List<Texture> textureList;
+    private final transient List<BufferedImage> imageList;
+    private final transient List<String> base64List;
+    private final transient Map<String, ForkJoinTask<TextureImage>> preloadedImages;
+
+    private volatile TextureAtlas atlas;
 
     public TextureGallery() {
+        this(false);
+    }
+
+    /**
+     * @param atlasEnabled Whether the textures should be packed into a {@link TextureAtlas}.
+     *                     This changes the format of the texture.json and the materials of the hires-tiles!
+     */
+    public TextureGallery(boolean atlasEnabled) {
+        this.atlasEnabled = atlasEnabled;
         textureMap = new HashMap<>();
         textureList = new ArrayList<>();
+        imageList = new ArrayList<>();
+        base64List = new ArrayList<>();
+        preloadedImages = new ConcurrentHashMap<>();
+        atlas = null;
+    }
+
+    public boolean isAtlasEnabled() {
+        return atlasEnabled;
     }
 
     /**
@@ -83,53 +116,175 @@ public int size() {
     }
 
     /**
-     * Generates a texture.json file with all the {@link Texture}s in this gallery
+     * Returns the {@link TextureAtlas} that all {@link Texture}s of this gallery are packed into.<br>
+     * The atlas is (re-)generated if textures have been loaded since it was last requested.
+     * @return The {@link TextureAtlas}, or <code>null</code> if the atlas is not enabled for this gallery
+     */
+    public TextureAtlas getAtlas() {
+        if (!atlasEnabled) return null;
+
+        TextureAtlas atlas = this.atlas;
+        if (atlas != null) return atlas;
+
+        synchronized (this) {
+            if (this.atlas == null) this.atlas = TextureAtlas.pack(textureList);
+            return this.atlas;
+        }
+    }
+
+    /**
+     * Generates a texture.json file with all the {@link Texture}s in this gallery.<br>
+     * If the atlas is enabled, this also saves the pages of the {@link TextureAtlas} as png-images into a "textures" folder next to it.<br>
+     * The "textures" entries of the texture.json are the atlas-pages (the materials used by the map-tiles), with image-paths relative to the
+     * texture.json. The "atlas" entries are the textures with their page and pixel-rectangle on that page, indexed by their id.<br>
+     * <br>
+     * The pages are only drawn if textures have been loaded since the last save, the images of the textures are released afterwards.
      * @param file The file to save the json in
      * @throws IOException If an IOException occurs while writing
      */
-    public void saveTextureFile(File file) throws IOException {
+    public synchronized void saveTextureFile(File file) throws IOException {
+        if (!atlasEnabled) {
+            saveBase64TextureFile(file);
+            return;
+        }
 
-        JsonArray textures = new JsonArray();
-        for (int i = 0; i < textureList.size(); i++) {
-            Texture texture = textureList.get(i);
+        TextureAtlas atlas = getAtlas();
 
-            JsonObject textureNode = new JsonObject();
-            textureNode.addProperty("id", texture.getPath());
-            textureNode.addProperty("texture", texture.getTexture());
-            textureNode.addProperty("transparent", texture.isHalfTransparent());
+        File atlasFolder = new File(file.getParentFile(), ATLAS_FOLDER);
+        if (imageList.stream().anyMatch(Objects::nonNull)) {
+            FileUtils.mkDirs(atlasFolder);
 
-            Color color = texture.getColorStraight();
-            JsonArray colorNode = new JsonArray();
-            colorNode.add(color.r);
-            colorNode.add(color.g);
-            colorNode.add(color.b);
-            colorNode.add(color.a);
+            File[] oldPages = atlasFolder.listFiles((dir, name) -> name.startsWith("atlas-") && name.endsWith(".png"));
+            if (oldPages != null) {
+                for (File oldPage : oldPages) FileUtils.delete(oldPage);
+            }
 
-            textureNode.add("color", colorNode);
+            for (int i = 0; i < atlas.getPageCount(); i++) {
+                File pageFile = new File(atlasFolder, getPageName(i) + ".png");
+                ImageIO.write(atlas.drawPage(i, imageList), "png", pageFile);
+            }
 
-            textures.add(textureNode);
+            Collections.fill(imageList, null);
         }
 
-        JsonObject root = new JsonObject();
-        root.add("textures", textures);
+        if (file.exists()) FileUtils.delete(file);
+        FileUtils.createFile(file);
+
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            json.beginObject();
+
+            json.name("textures").beginArray();
+            for (int i = 0; i < atlas.getPageCount(); i++) {
+                json.beginObject();
+                json.name("id").value(getPageName(i));
+                json.name("texture").value(ATLAS_FOLDER + "/" + getPageName(i) + ".png");
+                json.name("transparent").value(atlas.getPageInfo(i).isTransparent());
+                writeColor(json, calculatePageColor(atlas, i));
+                json.endObject();
+            }
+            json.endArray();
+
+            json.name("atlas").beginArray();
+            for (Texture texture : textureList) {
+                int id = texture.getId();
+                boolean packed = atlas.contains(id);
+
+                json.beginObject();
+                json.name("id").value(texture.getPath());
+                json.name("page").value(packed ? atlas.getPage(id) : -1);
+                json.name("rect").beginArray()
+                        .value(packed ? atlas.getX(id) : 0)
+                        .value(packed ? atlas.getY(id) : 0)
+                        .value(texture.getWidth())
+                        .value(texture.getHeight())
+                        .endArray();
+                json.name("transparent").value(texture.isHalfTransparent());
+                writeColor(json, texture.getColorStraight());
+                json.endObject();
+            }
+            json.endArray();
 
-        Gson gson = new GsonBuilder()
-                .setPrettyPrinting()
-                .create();
-        String json = gson.toJson(root);
+            json.endObject();
+        }
+
+    }
+
+    /**
+     * Generates a texture.json file that lists the {@link Texture}s in the order of their ids, with their images as base64 data-urls.<br>
+     * Textures that have not been reloaded since the texture.json was loaded keep the image they had in that file.<br>
+     * The images and base64-strings are released afterwards.
+     */
+    private void saveBase64TextureFile(File file) throws IOException {
+        for (int i = 0; i < imageList.size(); i++) {
+            BufferedImage image = imageList.get(i);
+            if (image == null) continue;
+
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", os);
+            setBase64(i, "data:image/png;base64," + Base64.getEncoder().encodeToString(os.toByteArray()));
+        }
+        Collections.fill(imageList, null);
+
+        // the base64-strings are released after each save, so textures that have not been reloaded since take them from the existing file
+        if (file.exists()) {
+            for (Texture texture : textureList) {
+                if (texture.getId() < base64List.size() && base64List.get(texture.getId()) != null) continue;
+                loadBase64(file);
+                break;
+            }
+        }
 
         if (file.exists()) FileUtils.delete(file);
         FileUtils.createFile(file);
 
-        try (FileWriter fileWriter = new FileWriter(file)) {
-            fileWriter.append(json);
-            fileWriter.flush();
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            json.beginObject();
+
+            json.name("textures").beginArray();
+            for (Texture texture : textureList) {
+                String base64 = texture.getId() < base64List.size() ? base64List.get(texture.getId()) : null;
+
+                json.beginObject();
+                json.name("id").value(texture.getPath());
+                json.name("texture").value(base64 != null ? base64 : EMPTY_BASE64);
+                json.name("transparent").value(texture.isHalfTransparent());
+                writeColor(json, texture.getColorStraight());
+                json.endObject();
+            }
+            json.endArray();
+
+            json.endObject();
         }
 
+        base64List.clear();
+    }
+
+    /**
+     * Takes the base64 data-urls of all textures that have none yet from a texture.json file without an atlas
+     */
+    private void loadBase64(File file) throws IOException {
+        try (Reader fileReader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)){
+            JsonObject root = new JsonStreamParser(fileReader).next().getAsJsonObject();
+            if (root.has("atlas")) return;
+
+            for (JsonElement element : root.getAsJsonArray("textures")) {
+                JsonObject texture = element.getAsJsonObject();
+                Texture known = textureMap.get(texture.get("id").getAsString());
+                JsonElement base64 = texture.get("texture");
+                if (known == null || base64 == null) continue;
+                if (known.getId() < base64List.size() && base64List.get(known.getId()) != null) continue;
+
+                setBase64(known.getId(), base64.getAsString());
+            }
+        } catch (RuntimeException ex) {
+            Logger.global.logWarning("Failed to read the existing textures from texture file " + file + ": " + ex);
+        }
     }
 
     /**
-     * Loads all the {@link Texture}s from the provided texture.json file, removes any existing {@link Texture}s from this gallery.
+     * Loads all the {@link Texture}s from the provided texture.json file, removes any existing {@link Texture}s from this gallery.<br>
+     * Only the ids, paths and properties of the textures are loaded, not their images. So they should be reloaded from the resources
+     * before the atlas is saved again.
      * @param file The texture.json file.
      * @throws IOException If an IOException occurs while reading the file.
      * @throws ParseResourceException If the whole file can not be read. Errors with single textures are logged and ignored.
@@ -137,14 +292,21 @@ public void saveTextureFile(File file) throws IOException {
     public synchronized void loadTextureFile(File file) throws IOException, ParseResourceException {
         textureList.clear();
         textureMap.clear();
+        imageList.clear();
+        base64List.clear();
+        atlas = null;
 
-        try (FileReader fileReader = new FileReader(file)){
+        try (Reader fileReader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)){
             JsonStreamParser jsonFile = new JsonStreamParser(fileReader);
-            JsonArray textures = jsonFile.next().getAsJsonObject().getAsJsonArray("textures");
+            JsonObject root = jsonFile.next().getAsJsonObject();
+
+            // texture-files from older versions have no atlas and list the textures directly
+            boolean hasAtlas = root.has("atlas");
+            JsonArray textures = root.getAsJsonArray(hasAtlas ? "atlas" : "textures");
             int size = textures.size();
             for (int i = 0; i < size; i++) {
                 while (i >= textureList.size()) { //prepopulate with placeholder so we don't get an IndexOutOfBounds below
-                    textureList.add(new Texture(textureList.size(), "empty", new Color(), false, EMPTY_BASE64));
+                    textureList.add(new Texture(textureList.size(), "empty", new Color(), false, 0, 0));
                 }
 
                 try {
@@ -152,7 +314,18 @@ public synchronized void loadTextureFile(File file) throws IOException, ParseRes
                     String path = texture.get("id").getAsString();
                     boolean transparent = texture.get("transparent").getAsBoolean();
                     Color color = readColor(texture.get("color").getAsJsonArray());
-                    textureList.set(i, new Texture(i, path, color, transparent, texture.get("texture").getAsString()));
+
+                    int width = 0, height = 0;
+                    if (hasAtlas) {
+                        JsonArray rect = texture.get("rect").getAsJsonArray();
+                        width = rect.get(2).getAsInt();
+                        height = rect.get(3).getAsInt();
+                    }
+
+                    textureList.set(i, new Texture(i, path, color, transparent, width, height));
+
+                    JsonElement base64 = texture.get("texture");
+                    if (!hasAtlas && base64 != null) setBase64(i, base64.getAsString());
                 } catch (ParseResourceException | RuntimeException ex) {
                     Logger.global.logWarning("Failed to load texture with id " + i + " from texture file " + file + "!");
                 }
@@ -164,6 +337,52 @@ public synchronized void loadTextureFile(File file) throws IOException, ParseRes
         }
     }
 
+    /**
+     * Writes all {@link Texture}s of this gallery (without their images) in a compact binary form,
+     * so they can be read again using {@link #read(DataInputStream)}.
+     */
+    public synchronized void write(DataOutputStream out) throws IOException {
+        out.writeInt(textureList.size());
+        for (Texture texture : textureList) {
+            out.writeUTF(texture.getPath());
+
+            Color color = texture.getColorStraight();
+            out.writeFloat(color.r);
+            out.writeFloat(color.g);
+            out.writeFloat(color.b);
+            out.writeFloat(color.a);
+
+            out.writeBoolean(texture.isHalfTransparent());
+            out.writeInt(texture.getWidth());
+            out.writeInt(texture.getHeight());
+        }
+    }
+
+    /**
+     * Loads all the {@link Texture}s that have been written using {@link #write(DataOutputStream)}, removes any existing {@link Texture}s
+     * from this gallery.<br>
+     * Like with {@link #loadTextureFile(File)}, the images of the textures are not loaded.
+     */
+    public synchronized void read(DataInputStream in) throws IOException {
+        textureList.clear();
+        textureMap.clear();
+        imageList.clear();
+        base64List.clear();
+        atlas = null;
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String path = in.readUTF();
+            Color color = new Color().set(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), false);
+            boolean halfTransparent = in.readBoolean();
+            int width = in.readInt(), height = in.readInt();
+
+            textureList.add(new Texture(i, path, color, halfTransparent, width, height));
+        }
+
+        regenerateMap();
+    }
+
     /**
      * Loads a {@link Texture} from the {@link FileAccess} and the given path and returns it.<br>
      * If there is already a {@link Texture} with this path in this Gallery it replaces the {@link Texture} with the new one
@@ -175,57 +394,111 @@ public synchronized void loadTextureFile(File file) throws IOException, ParseRes
      * @throws FileNotFoundException If there is no image in that FileAccess on that path
      * @throws IOException If an IOException occurred while loading the file
      */
-    public synchronized Texture loadTexture(FileAccess fileAccess, String path) throws FileNotFoundException, IOException {
-        try (InputStream input = fileAccess.readFile(path)) {
-            BufferedImage image = ImageIO.read(input);
-            if (image == null) throw new IOException("Failed to read image: " + path);
+    public Texture loadTexture(FileAccess fileAccess, String path) throws FileNotFoundException, IOException {
+        TextureImage image = null;
 
-            //crop off animation frames
-            if (image.getHeight() > image.getWidth()){
-                image = image.getSubimage(0, 0, image.getWidth(), image.getWidth());
+        ForkJoinTask<TextureImage> preloaded = preloadedImages.remove(path);
+        if (preloaded != null) {
+            try {
+                image = preloaded.join();
+            } catch (RuntimeException ignore) {
+                // failed to preload, load it again below to get the original exception
             }
+        }
 
-            //check halfTransparency
-            boolean halfTransparent = checkHalfTransparent(image);
+        if (image == null) image = readImage(fileAccess, path);
 
-            //calculate color
-            Color color = calculateColor(image);
+        return addTexture(path, image);
+    }
 
-            //write to Base64
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            ImageIO.write(image, "png", os);
-            String base64 = "data:image/png;base64," + Base64.getEncoder().encodeToString(os.toByteArray());
-
-            //replace if texture with this path already exists
-            Texture texture = textureMap.get(path);
-            if (texture != null) {
-                texture = new Texture(texture.getId(), path, color, halfTransparent, base64);
-                textureMap.put(path, texture);
-                textureList.set(texture.getId(), texture);
-            } else {
-                texture = new Texture(textureList.size(), path, color, halfTransparent, base64);
-                textureMap.put(path, texture);
-                textureList.add(texture);
-            }
+    /**
+     * Starts reading and decoding the image with the given path from the {@link FileAccess} on the {@link BlueMap#THREAD_POOL}.<br>
+     * This does not add a {@link Texture} to this gallery, a following {@link #loadTexture(FileAccess, String)} with the same path
+     * just uses the already decoded image. This way images can be decoded concurrently while the ids are still given out in the order
+     * the textures are loaded.
+     * @param fileAccess The {@link FileAccess} to load the image from.
+     * @param path The path of the image on the {@link FileAccess}
+     */
+    public void preloadTexture(FileAccess fileAccess, String path) {
+        preloadedImages.computeIfAbsent(path, p -> BlueMap.THREAD_POOL.submit(() -> readImage(fileAccess, p)));
+    }
 
-            return texture;
+    /**
+     * Drops all preloaded images that have not been loaded (yet) with {@link #loadTexture(FileAccess, String)}.
+     */
+    public void clearPreloadedTextures() {
+        for (ForkJoinTask<TextureImage> task : preloadedImages.values()) {
+            task.cancel(false);
         }
+        preloadedImages.clear();
     }
 
     /**
      * Tries to reload all {@link Texture}s from the given {@link FileAccess}<br>
+     * The images are decoded concurrently, but the textures are replaced in the order of their ids.<br>
      * <br>
      * Exceptions are being logged and ignored.
      * @param fileAccess The {@link FileAccess} to load the {@link Texture}s from
      */
-    public synchronized void reloadAllTextures(FileAccess fileAccess) {
-        for (Texture texture : textureList.toArray(new Texture[textureList.size()])) {
+    public void reloadAllTextures(FileAccess fileAccess) {
+        Texture[] textures;
+        synchronized (this) {
+            textures = textureList.toArray(new Texture[0]);
+        }
+
+        for (Texture texture : textures) {
+            preloadTexture(fileAccess, texture.getPath());
+        }
+
+        for (Texture texture : textures) {
             try {
                 loadTexture(fileAccess, texture.getPath());
             } catch (IOException ignored) {}
         }
     }
 
+    private synchronized Texture addTexture(String path, TextureImage image) {
+        //replace if texture with this path already exists
+        Texture texture = textureMap.get(path);
+        if (texture != null) {
+            texture = new Texture(texture.getId(), path, image.color, image.halfTransparent, image.image.getWidth(), image.image.getHeight());
+            textureMap.put(path, texture);
+            textureList.set(texture.getId(), texture);
+        } else {
+            texture = new Texture(textureList.size(), path, image.color, image.halfTransparent, image.image.getWidth(), image.image.getHeight());
+            textureMap.put(path, texture);
+            textureList.add(texture);
+        }
+
+        //keep the image until the atlas is saved
+        while (imageList.size() <= texture.getId()) imageList.add(null);
+        imageList.set(texture.getId(), image.image);
+        setBase64(texture.getId(), null);
+        atlas = null;
+
+        return texture;
+    }
+
+    private static TextureImage readImage(FileAccess fileAccess, String path) throws IOException {
+        try (InputStream input = fileAccess.readFile(path)) {
+            BufferedImage image = ImageIO.read(input);
+            if (image == null) throw new IOException("Failed to read image: " + path);
+
+            //crop off animation frames
+            if (image.getHeight() > image.getWidth()){
+                image = image.getSubimage(0, 0, image.getWidth(), image.getWidth());
+            }
+
+            //check halfTransparency
+            boolean halfTransparent = checkHalfTransparent(image);
+
+            //calculate color
+            Color color = calculateColor(image);
+
+            return new TextureImage(image, color, halfTransparent);
+        }
+    }
+
     private synchronized void regenerateMap() {
         textureMap.clear();
         for (int i = 0; i < textureList.size(); i++) {
@@ -234,6 +507,41 @@ private synchronized void regenerateMap() {
         }
     }
 
+    private void setBase64(int id, String base64) {
+        if (atlasEnabled) return;
+        while (base64List.size() <= id) base64List.add(null);
+        base64List.set(id, base64);
+    }
+
+    private String getPageName(int page) {
+        return "atlas-" + page;
+    }
+
+    private Color calculatePageColor(TextureAtlas atlas, int page) {
+        Color color = new Color().set(0, 0, 0, 0, true);
+        int count = 0;
+
+        for (Texture texture : textureList) {
+            if (!atlas.contains(texture.getId()) || atlas.getPage(texture.getId()) != page) continue;
+            color.add(texture.getColorPremultiplied());
+            count++;
+        }
+
+        if (count == 0 || color.a == 0) return new Color();
+
+        float m = 1f / count;
+        return color.set(color.r * m, color.g * m, color.b * m, color.a * m, true).straight();
+    }
+
+    private void writeColor(JsonWriter json, Color color) throws IOException {
+        json.name("color").beginArray()
+                .value((Number) color.r)
+                .value((Number) color.g)
+                .value((Number) color.b)
+                .value((Number) color.a)
+                .endArray();
+    }
+
     private Color readColor(JsonArray jsonArray) throws ParseResourceException {
         if (jsonArray.size() < 4) throw new ParseResourceException("Failed to load Vector4: Not enough values in list-node!");
 
@@ -245,7 +553,7 @@ private Color readColor(JsonArray jsonArray) throws ParseResourceException {
         return new Color().set(r, g, b, a, false);
     }
 
-    private boolean checkHalfTransparent(BufferedImage image){
+    private static boolean checkHalfTransparent(BufferedImage image){
         for (int x = 0; x < image.getWidth(); x++){
             for (int y = 0; y < image.getHeight(); y++){
                 int pixel = image.getRGB(x, y);
@@ -259,7 +567,7 @@ private boolean checkHalfTransparent(BufferedImage image){
         return false;
     }
 
-    private Color calculateColor(BufferedImage image){
+    private static Color calculateColor(BufferedImage image){
         float alpha = 0f, red = 0f, green = 0f, blue = 0f;
         int count = 0;
 
@@ -289,4 +597,18 @@ private Color calculateColor(BufferedImage image){
         return new Color().set(red, green, blue, alpha, false);
     }
 
+    private static class TextureImage {
+
+        private final BufferedImage image;
+        private final Color color;
+        private final boolean halfTransparent;
+
+        private TextureImage(BufferedImage image, Color color, boolean halfTransparent) {
+            this.image = image;
+            this.color = color;
+            this.halfTransparent = halfTransparent;
+        }
+
+    }
+
 }
@@ -0,0 +1,330 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.debug.DebugDump;
+import de.bluecolored.bluemap.core.util.FileUtils;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A {@link Storage} that packs the map-tiles of each {@link TileArchive#SIZE} x {@link TileArchive#SIZE} tile-region into
+ * a single {@link TileArchive}-file, instead of writing one file per tile.<br>
+ * Meta-data is stored the same way as with the {@link FileStorage}.<br>
+ * <br>
+ * <i>The implementation of this class is thread-save!</i>
+ */
+@DebugDump
+public class ArchiveStorage extends Storage {
+
+    public static final String ARCHIVE_FILE_SUFFIX = ".tiles";
+
+    private static final int MAX_OPEN_ARCHIVES = 64;
+
+    private final Path root;
+    private final Compression compression;
+    private final boolean sync;
+
+    private final FileStorage metaStorage;
+
+    private final LinkedHashMap<Path, OpenArchive> openArchives;
+    private final Set<Path> purgingMaps;
+
+    public ArchiveStorage(Path root, Compression compression) {
+        this(root, compression, false);
+    }
+
+    /**
+     * @param sync whether written map-tiles should be forced to the storage-device before the write is completed
+     */
+    public ArchiveStorage(Path root, Compression compression, boolean sync) {
+        this.root = root;
+        this.compression = compression;
+        this.sync = sync;
+
+        this.metaStorage = new FileStorage(root, compression, TileFormat.JSON, sync);
+
+        this.openArchives = new LinkedHashMap<>(16, 0.75f, true);
+        this.purgingMaps = new HashSet<>();
+    }
+
+    @Override
+    public OutputStream writeMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        OutputStream os = new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+
+                OpenArchive archive = acquire(mapId, tileType, lod, tile);
+                try {
+                    archive.archive.write(localX(tile), localZ(tile), buf, 0, count);
+                } finally {
+                    release(archive);
+                }
+            }
+        };
+
+        return compression.compress(os);
+    }
+
+    @Override
+    public Optional<InputStream> readMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        Optional<InputStream> data = readMapTileCompressed(mapId, tileType, lod, tile);
+        if (!data.isPresent()) return data;
+        return Optional.of(compression.decompress(data.get()));
+    }
+
+    @Override
+    public Optional<InputStream> readMapTileCompressed(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        OpenArchive archive = acquire(mapId, tileType, lod, tile);
+        try {
+            byte[] data = archive.archive.read(localX(tile), localZ(tile));
+            if (data == null) return Optional.empty();
+            return Optional.of(new ByteArrayInputStream(data));
+        } finally {
+            release(archive);
+        }
+    }
+
+    @Override
+    public Compression getTileCompression() {
+        return compression;
+    }
+
+    @Override
+    public void deleteMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        OpenArchive archive = acquire(mapId, tileType, lod, tile);
+        try {
+            archive.archive.delete(localX(tile), localZ(tile));
+        } finally {
+            release(archive);
+        }
+    }
+
+    @Override
+    public OutputStream writeMeta(String mapId, MetaType metaType) throws IOException {
+        return metaStorage.writeMeta(mapId, metaType);
+    }
+
+    @Override
+    public Optional<InputStream> readMeta(String mapId, MetaType metaType) throws IOException {
+        return metaStorage.readMeta(mapId, metaType);
+    }
+
+    /**
+     * Deletes all tiles and meta-data of the map.<br>
+     * Archives of this map that are currently in use are evicted, and the files are only deleted once no thread uses them anymore.
+     * Until the purge is complete, all threads accessing tiles of this map wait for it.
+     */
+    @Override
+    public void purgeMap(String mapId) throws IOException {
+        Path mapFolder = getFilePath(mapId);
+
+        synchronized (openArchives) {
+            while (purgingMaps.contains(mapFolder)) waitForArchives();
+            purgingMaps.add(mapFolder);
+        }
+
+        try {
+            synchronized (openArchives) {
+                List<OpenArchive> purgedArchives = new ArrayList<>();
+                Iterator<Map.Entry<Path, OpenArchive>> iterator = openArchives.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Path, OpenArchive> entry = iterator.next();
+                    if (!entry.getKey().startsWith(mapFolder)) continue;
+
+                    entry.getValue().evict();
+                    purgedArchives.add(entry.getValue());
+                    iterator.remove();
+                }
+
+                for (OpenArchive archive : purgedArchives) {
+                    while (archive.users > 0) waitForArchives();
+                }
+            }
+
+            FileUtils.delete(mapFolder.toFile());
+        } finally {
+            synchronized (openArchives) {
+                purgingMaps.remove(mapFolder);
+                openArchives.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (openArchives) {
+            for (OpenArchive archive : openArchives.values()) {
+                archive.evict();
+            }
+            openArchives.clear();
+        }
+    }
+
+    public Path getArchivePath(String mapId, TileType tileType, int lod, Vector2i tile) {
+        Path p = getFilePath(mapId).resolve(tileType.getTypeId());
+        if (lod > 0) p = p.resolve(String.valueOf(lod));
+
+        int regionX = Math.floorDiv(tile.getX(), TileArchive.SIZE);
+        int regionZ = Math.floorDiv(tile.getY(), TileArchive.SIZE);
+        return p.resolve("r." + regionX + "." + regionZ + ARCHIVE_FILE_SUFFIX);
+    }
+
+    public Path getFilePath(String mapId) {
+        return root.resolve(mapId);
+    }
+
+    private OpenArchive acquire(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        Path file = getArchivePath(mapId, tileType, lod, tile);
+
+        OpenArchive archive;
+        synchronized (openArchives) {
+            while (isPurging(file)) waitForArchives();
+
+            archive = openArchives.get(file);
+            if (archive == null) {
+                archive = new OpenArchive(file);
+                openArchives.put(file, archive);
+            }
+
+            archive.users++;
+            evictUnusedArchives();
+        }
+
+        // the archive is opened (reading its index) outside of the lock, only threads acquiring the same archive wait for it
+        try {
+            archive.open(sync);
+        } catch (IOException | RuntimeException ex) {
+            release(archive);
+            throw ex;
+        }
+
+        return archive;
+    }
+
+    private boolean isPurging(Path file) {
+        for (Path mapFolder : purgingMaps) {
+            if (file.startsWith(mapFolder)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits (releasing the lock on openArchives) until an archive is released or a purge is complete
+     */
+    private void waitForArchives() throws InterruptedIOException {
+        try {
+            openArchives.wait();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a purge of the map");
+        }
+    }
+
+    /**
+     * Closes the least recently used archives until there are no more than {@link #MAX_OPEN_ARCHIVES} open.<br>
+     * Archives that are currently in use are skipped, and the archives of a map that is being purged can not be acquired until
+     * the purge is complete. So there is never more than one {@link TileArchive} open for the same file.
+     */
+    private void evictUnusedArchives() {
+        Iterator<OpenArchive> iterator = openArchives.values().iterator();
+        while (openArchives.size() > MAX_OPEN_ARCHIVES && iterator.hasNext()) {
+            OpenArchive archive = iterator.next();
+            if (archive.users > 0) continue;
+
+            archive.evict();
+            iterator.remove();
+        }
+    }
+
+    private void release(OpenArchive archive) throws IOException {
+        synchronized (openArchives) {
+            archive.users--;
+            if (archive.users > 0) return;
+
+            if (!purgingMaps.isEmpty()) openArchives.notifyAll();
+            if (archive.evicted) archive.close();
+        }
+    }
+
+    private static int localX(Vector2i tile) {
+        return Math.floorMod(tile.getX(), TileArchive.SIZE);
+    }
+
+    private static int localZ(Vector2i tile) {
+        return Math.floorMod(tile.getY(), TileArchive.SIZE);
+    }
+
+    /**
+     * An archive that is currently opened, or being opened by the first thread that acquired it.<br>
+     * It is only evicted by the LRU-cache while it is unused, but on a purge or close it is evicted anyway and then closed
+     * once it is no longer used by any thread.<br>
+     * The users and the evicted-flag are guarded by the lock on openArchives.
+     */
+    private static class OpenArchive {
+
+        private final Path file;
+        private volatile TileArchive archive;
+        private int users;
+        private boolean evicted;
+
+        private OpenArchive(Path file) {
+            this.file = file;
+            this.archive = null;
+            this.users = 0;
+            this.evicted = false;
+        }
+
+        /**
+         * Opens the archive if it is not open yet, this is only called while the calling thread is a user of this archive
+         */
+        private synchronized void open(boolean sync) throws IOException {
+            if (archive == null) archive = new TileArchive(file, sync);
+        }
+
+        private void evict() {
+            evicted = true;
+            if (users <= 0) {
+                try {
+                    close();
+                } catch (IOException ignore) {}
+            }
+        }
+
+        private void close() throws IOException {
+            TileArchive archive = this.archive;
+            if (archive != null) archive.close();
+        }
+
+    }
+
+}
@@ -27,12 +27,22 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.zip.*;
 
-public enum Compression {
+/**
+ * A compression that is applied to the data written to a {@link Storage}.<br>
+ * Compressions with a {@link #getContentEncoding() content-encoding} can be sent to a web-browser without decompressing them.
+ */
+public abstract class Compression {
+
+    /**
+     * The level that lets the compression-algorithm choose its default level
+     */
+    public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
 
-    NONE("") {
+    public static final Compression NONE = new Compression("none", "", null, DEFAULT_LEVEL) {
         @Override
         public OutputStream compress(OutputStream out) {
             return out;
@@ -42,34 +52,141 @@ public OutputStream compress(OutputStream out) {
         public InputStream decompress(InputStream in) {
             return in;
         }
-    },
+    };
 
-    GZIP(".gz"){
+    public static final Compression GZIP = gzip(DEFAULT_LEVEL);
 
-        @Override
-        public OutputStream compress(OutputStream out) throws IOException {
-            return new GZIPOutputStream(out);
-        }
-
-        @Override
-        public InputStream decompress(InputStream in) throws IOException {
-            return new GZIPInputStream(in);
-        }
-
-    };
+    public static final Compression DEFLATE = deflate(DEFAULT_LEVEL);
 
+    private final String id;
     private final String fileSuffix;
+    private final String contentEncoding;
+    private final int level;
 
-    Compression(String fileSuffix) {
+    /**
+     * @param id the id of this compression (as used in the config)
+     * @param fileSuffix the suffix of files that are compressed with this compression
+     * @param contentEncoding the http content-encoding of data compressed with this compression, or null if there is none
+     * @param level the compression-level
+     */
+    protected Compression(String id, String fileSuffix, String contentEncoding, int level) {
+        this.id = id;
         this.fileSuffix = fileSuffix;
+        this.contentEncoding = contentEncoding;
+        this.level = level;
+    }
+
+    public String getId() {
+        return id;
     }
 
     public String getFileSuffix() {
         return fileSuffix;
     }
 
+    /**
+     * The http content-encoding of data compressed with this compression, or null if the data is not compressed
+     * (or can not be sent without decompressing it)
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
     public abstract OutputStream compress(OutputStream out) throws IOException;
 
     public abstract InputStream decompress(InputStream in) throws IOException;
 
+    /**
+     * A gzip-compression with the given level (0 - 9, or {@link #DEFAULT_LEVEL})
+     */
+    public static Compression gzip(int level) {
+        checkLevel(level);
+        return new Compression("gzip", ".gz", "gzip", level) {
+            @Override
+            public OutputStream compress(OutputStream out) throws IOException {
+                return new GZIPOutputStream(out) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            }
+
+            @Override
+            public InputStream decompress(InputStream in) throws IOException {
+                return new GZIPInputStream(in);
+            }
+        };
+    }
+
+    /**
+     * A deflate-compression (zlib-format) with the given level (0 - 9, or {@link #DEFAULT_LEVEL}).<br>
+     * It produces a few bytes less than gzip and skips the crc32-checksum, so it is a bit faster.
+     */
+    public static Compression deflate(int level) {
+        checkLevel(level);
+        return new Compression("deflate", ".zlib", "deflate", level) {
+            @Override
+            public OutputStream compress(OutputStream out) throws IOException {
+                Deflater deflater = new Deflater(level);
+                return new DeflaterOutputStream(out, deflater) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            // a deflater that is not created by the stream itself is not released by it
+                            deflater.end();
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public InputStream decompress(InputStream in) throws IOException {
+                return new InflaterInputStream(in);
+            }
+        };
+    }
+
+    /**
+     * Returns the {@link Compression} with the given id (case-insensitive) and level
+     * @throws IllegalArgumentException if there is no compression with that id, or the level is invalid
+     */
+    public static Compression forId(String id, int level) throws IllegalArgumentException {
+        switch (id.toLowerCase(Locale.ROOT)) {
+            case "none" : return NONE;
+            case "gzip" : return level == DEFAULT_LEVEL ? GZIP : gzip(level);
+            case "deflate" : return level == DEFAULT_LEVEL ? DEFLATE : deflate(level);
+        }
+
+        throw new IllegalArgumentException("There is no compression with id: '" + id + "'");
+    }
+
+    private static void checkLevel(int level) throws IllegalArgumentException {
+        if (level != DEFAULT_LEVEL && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Invalid compression-level: " + level);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Compression)) return false;
+        Compression that = (Compression) o;
+        return level == that.level && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, level);
+    }
+
+    @Override
+    public String toString() {
+        return level == DEFAULT_LEVEL ? id : id + ":" + level;
+    }
+
 }
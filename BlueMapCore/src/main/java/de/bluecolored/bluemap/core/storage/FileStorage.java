@@ -27,7 +27,9 @@
 import com.flowpowered.math.vector.Vector2i;
 import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.util.AtomicFileHelper;
+import de.bluecolored.bluemap.core.util.ContentHash;
 import de.bluecolored.bluemap.core.util.FileUtils;
+import de.bluecolored.bluemap.core.util.GzipContentHash;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -46,28 +48,71 @@ public class FileStorage extends Storage {
         metaTypeFileNames.put(MetaType.RENDER_STATE, ".rstate");
     }
 
+    private static final int MAX_UNSYNCED_TILES = 1024;
+
     private final Path root;
     private final Compression compression;
+    private final TileFormat hiresTileFormat;
+    private final boolean sync;
+
+    private final Set<Path> unsyncedTiles;
 
     public FileStorage(Path root, Compression compression) {
+        this(root, compression, TileFormat.JSON);
+    }
+
+    public FileStorage(Path root, Compression compression, TileFormat hiresTileFormat) {
+        this(root, compression, hiresTileFormat, false);
+    }
+
+    /**
+     * @param sync whether written map-tiles should be forced to the storage-device.
+     *             This is done in batches: on {@link #flush()} or when too many map-tiles have not been synced yet.
+     */
+    public FileStorage(Path root, Compression compression, TileFormat hiresTileFormat, boolean sync) {
         this.root = root;
         this.compression = compression;
+        this.hiresTileFormat = hiresTileFormat;
+        this.sync = sync;
+
+        this.unsyncedTiles = new HashSet<>();
     }
 
     @Override
-    public OutputStream writeMapTile(String mapId, TileType tileType, Vector2i tile) throws IOException {
-        Path file = getFilePath(mapId, tileType, tile);
+    public OutputStream writeMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        Path file = getFilePath(mapId, tileType, lod, tile);
 
         OutputStream os = AtomicFileHelper.createFilepartOutputStream(file);
         os = new BufferedOutputStream(os);
-        os = compression.compress(os);
+
+        if (sync) {
+            os = new FilterOutputStream(os) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    addUnsyncedTile(file);
+                }
+            };
+        }
+
+        // gzip-compressed tiles carry their content-hash in the gzip-header, see readContentHash(Path)
+        if (compression.getId().equals(Compression.GZIP.getId())) {
+            os = GzipContentHash.createOutputStream(os, compression.getLevel());
+        } else {
+            os = compression.compress(os);
+        }
 
         return os;
     }
 
     @Override
-    public Optional<InputStream> readMapTile(String mapId, TileType tileType, Vector2i tile) throws IOException {
-        Path file = getFilePath(mapId, tileType, tile);
+    public Optional<InputStream> readMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        Path file = getFilePath(mapId, tileType, lod, tile);
 
         if (!Files.exists(file)) return Optional.empty();
 
@@ -79,8 +124,22 @@ public Optional<InputStream> readMapTile(String mapId, TileType tileType, Vector
     }
 
     @Override
-    public void deleteMapTile(String mapId, TileType tileType, Vector2i tile) throws IOException {
-        Path file = getFilePath(mapId, tileType, tile);
+    public Optional<InputStream> readMapTileCompressed(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        Path file = getFilePath(mapId, tileType, lod, tile);
+
+        if (!Files.exists(file)) return Optional.empty();
+
+        return Optional.of(new BufferedInputStream(Files.newInputStream(file, StandardOpenOption.READ)));
+    }
+
+    @Override
+    public Compression getTileCompression() {
+        return compression;
+    }
+
+    @Override
+    public void deleteMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        Path file = getFilePath(mapId, tileType, lod, tile);
         FileUtils.delete(file.toFile());
     }
 
@@ -111,7 +170,40 @@ public void purgeMap(String mapId) throws IOException {
         FileUtils.delete(getFilePath(mapId).toFile());
     }
 
+    @Override
+    public void flush() throws IOException {
+        if (sync) syncTiles();
+    }
+
+    private void addUnsyncedTile(Path file) throws IOException {
+        boolean syncNow;
+        synchronized (unsyncedTiles) {
+            unsyncedTiles.add(file);
+            syncNow = unsyncedTiles.size() >= MAX_UNSYNCED_TILES;
+        }
+
+        if (syncNow) syncTiles();
+    }
+
+    /**
+     * Forces all written map-tiles to the storage-device at once, so each directory only needs to be synced once
+     */
+    private void syncTiles() throws IOException {
+        List<Path> files;
+        synchronized (unsyncedTiles) {
+            if (unsyncedTiles.isEmpty()) return;
+            files = new ArrayList<>(unsyncedTiles);
+            unsyncedTiles.clear();
+        }
+
+        AtomicFileHelper.sync(files);
+    }
+
     public Path getFilePath(String mapId, TileType tileType, Vector2i tile){
+        return getFilePath(mapId, tileType, 0, tile);
+    }
+
+    public Path getFilePath(String mapId, TileType tileType, int lod, Vector2i tile){
         String path = "x" + tile.getX() + "z" + tile.getY();
         char[] cs = path.toCharArray();
         List<String> folders = new ArrayList<>();
@@ -126,11 +218,31 @@ public Path getFilePath(String mapId, TileType tileType, Vector2i tile){
         String fileName = folders.remove(folders.size() - 1);
 
         Path p = getFilePath(mapId).resolve(tileType.getTypeId());
+        if (lod > 0) p = p.resolve(String.valueOf(lod));
+
         for (String s : folders){
             p = p.resolve(s);
         }
 
-        return p.resolve(fileName + ".json" + compression.getFileSuffix());
+        return p.resolve(fileName + getTileFormat(tileType).getFileSuffix() + compression.getFileSuffix());
+    }
+
+    /**
+     * Reads the {@link ContentHash} of the uncompressed content that has been stored in the header of the given gzip-compressed
+     * map-tile-file when it was written.<br>
+     * Returns null if the file has no stored hash, e.g. because it is not gzip-compressed.
+     */
+    public static String readContentHash(Path file) {
+        try {
+            return GzipContentHash.read(file.toFile());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private TileFormat getTileFormat(TileType tileType) {
+        if (tileType == TileType.HIRES) return hiresTileFormat;
+        return TileFormat.JSON;
     }
 
     public Path getFilePath(String mapId) {
@@ -0,0 +1,519 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Storage} that stores all map-tiles and meta-data as BLOBs in an embedded H2-database.<br>
+ * Written map-tiles are collected in memory and committed in batches, so a single transaction
+ * (and with that a single sync to the storage-device) is shared by many tiles.
+ * Batches are committed once they reach {@link #BATCH_SIZE} tiles, but at least every {@link #COMMIT_INTERVAL_MILLIS} milliseconds.<br>
+ * Tiles that are not committed yet are also returned when reading them.
+ * If a commit fails, its tiles stay pending and are committed again with the next batch.<br>
+ * Reads are done on a small pool of connections, so tiles can be read in parallel.<br>
+ * <br>
+ * <i>The implementation of this class is thread-save!</i>
+ */
+@DebugDump
+public class SQLStorage extends Storage {
+
+    public static final int BATCH_SIZE = 256;
+    public static final long COMMIT_INTERVAL_MILLIS = 1000;
+    public static final int MAX_READ_CONNECTIONS = 8;
+
+    /**
+     * The version of the H2-driver that BlueMap is built and tested with
+     */
+    public static final String H2_VERSION = "2.1.210";
+    public static final String H2_DRIVER_CLASS = "org.h2.Driver";
+
+    private static final int MAX_PENDING_TILES = BATCH_SIZE * 4;
+
+    private static final String TILE_TABLE = "bluemap_map_tile";
+    private static final String META_TABLE = "bluemap_map_meta";
+
+    private static final byte[] DELETED = new byte[0];
+
+    private static final AtomicInteger nextStorageIndex = new AtomicInteger(0);
+
+    private static Driver h2Driver;
+
+    private final Driver driver;
+    private final String connectionUrl;
+    private final Compression compression;
+
+    private final Connection writeConnection;
+    private final BlockingQueue<Connection> idleReadConnections;
+    private final Collection<Connection> readConnections;
+    private final AtomicInteger readConnectionCount;
+    private volatile boolean closed;
+
+    private final ConcurrentHashMap<TileKey, byte[]> pendingTiles;
+    private final ScheduledExecutorService commitExecutor;
+    private final AtomicBoolean commitScheduled;
+
+    /**
+     * Opens (and initializes if needed) the database
+     * @param driver the (H2-)driver that is used to connect to the database
+     * @param connectionUrl the JDBC-url of the database
+     * @param compression the compression that is used for the stored map-tiles
+     */
+    public SQLStorage(Driver driver, String connectionUrl, Compression compression) throws IOException {
+        this.driver = driver;
+        this.connectionUrl = connectionUrl;
+        this.compression = compression;
+
+        try {
+            this.writeConnection = connect(driver, connectionUrl, false);
+            initialize();
+        } catch (SQLException ex) {
+            throw new IOException("Failed to open the database '" + connectionUrl + "'!", ex);
+        }
+
+        this.idleReadConnections = new LinkedBlockingQueue<>();
+        this.readConnections = new ConcurrentLinkedQueue<>();
+        this.readConnectionCount = new AtomicInteger(0);
+        this.closed = false;
+
+        this.pendingTiles = new ConcurrentHashMap<>();
+        this.commitScheduled = new AtomicBoolean(false);
+
+        int storageIndex = nextStorageIndex.getAndIncrement();
+        this.commitExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BlueMap-SQLStorage-" + storageIndex);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.commitExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                commit();
+            } catch (IOException ex) {
+                Logger.global.logError("Failed to commit map-tiles to the database '" + connectionUrl + "'!", ex);
+            }
+        }, COMMIT_INTERVAL_MILLIS, COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static Connection connect(Driver driver, String connectionUrl, boolean autoCommit) throws SQLException {
+        Connection connection = driver.connect(connectionUrl, new Properties());
+        if (connection == null) throw new SQLException("The driver does not accept the url: '" + connectionUrl + "'");
+        connection.setAutoCommit(autoCommit);
+        return connection;
+    }
+
+    private void initialize() throws SQLException {
+        synchronized (writeConnection) {
+            try (Statement statement = writeConnection.createStatement()) {
+                statement.executeUpdate(
+                        "CREATE TABLE IF NOT EXISTS " + TILE_TABLE + " (" +
+                        "map_id VARCHAR(255) NOT NULL, " +
+                        "tile_type VARCHAR(16) NOT NULL, " +
+                        "lod INT NOT NULL, " +
+                        "x INT NOT NULL, " +
+                        "z INT NOT NULL, " +
+                        "data BLOB NOT NULL, " +
+                        "PRIMARY KEY (map_id, tile_type, lod, x, z))"
+                );
+                statement.executeUpdate(
+                        "CREATE TABLE IF NOT EXISTS " + META_TABLE + " (" +
+                        "map_id VARCHAR(255) NOT NULL, " +
+                        "meta_type VARCHAR(32) NOT NULL, " +
+                        "data BLOB NOT NULL, " +
+                        "PRIMARY KEY (map_id, meta_type))"
+                );
+                writeConnection.commit();
+            } catch (SQLException ex) {
+                writeConnection.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    public OutputStream writeMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        final TileKey key = new TileKey(mapId, tileType, lod, tile);
+
+        OutputStream os = new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+
+                enqueue(key, toByteArray());
+            }
+        };
+
+        return compression.compress(os);
+    }
+
+    @Override
+    public Optional<InputStream> readMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        Optional<InputStream> data = readMapTileCompressed(mapId, tileType, lod, tile);
+        if (!data.isPresent()) return data;
+        return Optional.of(compression.decompress(data.get()));
+    }
+
+    @Override
+    public Optional<InputStream> readMapTileCompressed(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        byte[] data = pendingTiles.get(new TileKey(mapId, tileType, lod, tile));
+        if (data == null) {
+            data = select(
+                    "SELECT data FROM " + TILE_TABLE + " WHERE map_id = ? AND tile_type = ? AND lod = ? AND x = ? AND z = ?",
+                    mapId, tileType.getTypeId(), lod, tile.getX(), tile.getY()
+            );
+        }
+
+        if (data == null || data == DELETED) return Optional.empty();
+        return Optional.of(new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public Compression getTileCompression() {
+        return compression;
+    }
+
+    @Override
+    public void deleteMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        enqueue(new TileKey(mapId, tileType, lod, tile), DELETED);
+    }
+
+    @Override
+    public OutputStream writeMeta(String mapId, MetaType metaType) throws IOException {
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+
+                byte[] data = toByteArray();
+                synchronized (writeConnection) {
+                    try {
+                        try (PreparedStatement merge = writeConnection.prepareStatement(
+                                "MERGE INTO " + META_TABLE + " (map_id, meta_type, data) KEY (map_id, meta_type) VALUES (?, ?, ?)"
+                        )) {
+                            merge.setString(1, mapId);
+                            merge.setString(2, metaType.name());
+                            merge.setBytes(3, data);
+                            merge.executeUpdate();
+                        }
+
+                        writeConnection.commit();
+                    } catch (SQLException ex) {
+                        rollback();
+                        throw new IOException("Failed to write meta-data " + metaType + " of map '" + mapId + "'!", ex);
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public Optional<InputStream> readMeta(String mapId, MetaType metaType) throws IOException {
+        byte[] data = select(
+                "SELECT data FROM " + META_TABLE + " WHERE map_id = ? AND meta_type = ?",
+                mapId, metaType.name()
+        );
+
+        if (data == null) return Optional.empty();
+        return Optional.of(new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public void purgeMap(String mapId) throws IOException {
+        synchronized (writeConnection) {
+            pendingTiles.keySet().removeIf(key -> key.mapId.equals(mapId));
+
+            try {
+                for (String table : new String[]{ TILE_TABLE, META_TABLE }) {
+                    try (PreparedStatement delete = writeConnection.prepareStatement(
+                            "DELETE FROM " + table + " WHERE map_id = ?"
+                    )) {
+                        delete.setString(1, mapId);
+                        delete.executeUpdate();
+                    }
+                }
+
+                writeConnection.commit();
+            } catch (SQLException ex) {
+                rollback();
+                throw new IOException("Failed to purge map '" + mapId + "'!", ex);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        commit();
+    }
+
+    /**
+     * Commits all pending map-tiles, stops the commit-thread and closes the database-connections.
+     */
+    @Override
+    public void close() throws IOException {
+        commitExecutor.shutdown();
+
+        try {
+            commit();
+        } finally {
+            closed = true;
+
+            SQLException exception = null;
+            synchronized (writeConnection) {
+                try {
+                    writeConnection.close();
+                } catch (SQLException ex) {
+                    exception = ex;
+                }
+            }
+
+            // connections that are in use right now are closed when they are released
+            for (Connection connection : readConnections) {
+                if (!idleReadConnections.remove(connection)) continue;
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    if (exception == null) exception = ex;
+                    else exception.addSuppressed(ex);
+                }
+            }
+
+            if (exception != null) throw new IOException("Failed to close the database '" + connectionUrl + "'!", exception);
+        }
+    }
+
+    private void enqueue(TileKey key, byte[] data) throws IOException {
+        pendingTiles.put(key, data);
+
+        // don't let the pending tiles pile up if they are written faster than the commit-thread commits them
+        if (pendingTiles.size() >= MAX_PENDING_TILES) {
+            commit();
+        } else if (pendingTiles.size() >= BATCH_SIZE && commitScheduled.compareAndSet(false, true)) {
+            try {
+                commitExecutor.execute(() -> {
+                    commitScheduled.set(false);
+                    try {
+                        commit();
+                    } catch (IOException ex) {
+                        Logger.global.logError("Failed to commit map-tiles to the database '" + connectionUrl + "'!", ex);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                commitScheduled.set(false);
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Writes all pending map-tiles to the database in a single transaction.<br>
+     * If this fails, the tiles stay pending so they are written with the next commit.
+     */
+    private void commit() throws IOException {
+        synchronized (writeConnection) {
+            if (pendingTiles.isEmpty()) return;
+
+            Map<TileKey, byte[]> batch = new HashMap<>(pendingTiles);
+            try {
+                try (
+                    PreparedStatement merge = writeConnection.prepareStatement(
+                            "MERGE INTO " + TILE_TABLE + " (map_id, tile_type, lod, x, z, data) KEY (map_id, tile_type, lod, x, z) VALUES (?, ?, ?, ?, ?, ?)"
+                    );
+                    PreparedStatement delete = writeConnection.prepareStatement(
+                            "DELETE FROM " + TILE_TABLE + " WHERE map_id = ? AND tile_type = ? AND lod = ? AND x = ? AND z = ?"
+                    )
+                ) {
+                    for (Map.Entry<TileKey, byte[]> entry : batch.entrySet()) {
+                        TileKey key = entry.getKey();
+                        if (entry.getValue() == DELETED) {
+                            setKey(delete, key);
+                            delete.addBatch();
+                        } else {
+                            setKey(merge, key);
+                            merge.setBytes(6, entry.getValue());
+                            merge.addBatch();
+                        }
+                    }
+
+                    merge.executeBatch();
+                    delete.executeBatch();
+                }
+
+                writeConnection.commit();
+            } catch (SQLException ex) {
+                rollback();
+                throw new IOException("Failed to commit " + batch.size() + " map-tiles!", ex);
+            }
+
+            // only remove tiles that have not been written again in the meantime
+            for (Map.Entry<TileKey, byte[]> entry : batch.entrySet()) {
+                pendingTiles.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private byte[] select(String sql, Object... parameters) throws IOException {
+        Connection connection = acquireReadConnection();
+        try {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.length; i++) {
+                    statement.setObject(i + 1, parameters[i]);
+                }
+
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next() ? result.getBytes(1) : null;
+                }
+            }
+        } catch (SQLException ex) {
+            throw new IOException("Failed to read from the database '" + connectionUrl + "'!", ex);
+        } finally {
+            releaseReadConnection(connection);
+        }
+    }
+
+    /**
+     * Takes an idle read-connection from the pool, opens a new one if there are less than {@link #MAX_READ_CONNECTIONS},
+     * or waits for one to become idle.<br>
+     * Read-connections are in auto-commit mode, so every read sees the latest commits.
+     */
+    private Connection acquireReadConnection() throws IOException {
+        Connection connection = idleReadConnections.poll();
+        if (connection != null) return connection;
+
+        if (readConnectionCount.incrementAndGet() <= MAX_READ_CONNECTIONS) {
+            try {
+                connection = connect(driver, connectionUrl, true);
+            } catch (SQLException ex) {
+                readConnectionCount.decrementAndGet();
+                throw new IOException("Failed to connect to the database '" + connectionUrl + "'!", ex);
+            }
+
+            readConnections.add(connection);
+            return connection;
+        }
+        readConnectionCount.decrementAndGet();
+
+        try {
+            while (connection == null) {
+                if (closed) throw new IOException("The database '" + connectionUrl + "' is closed!");
+                connection = idleReadConnections.poll(1, TimeUnit.SECONDS);
+            }
+            return connection;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to the database '" + connectionUrl + "'!");
+        }
+    }
+
+    private void releaseReadConnection(Connection connection) {
+        if (!closed) {
+            idleReadConnections.add(connection);
+            if (!closed || !idleReadConnections.remove(connection)) return;
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            Logger.global.logError("Failed to close a connection to the database '" + connectionUrl + "'!", ex);
+        }
+    }
+
+    private static void setKey(PreparedStatement statement, TileKey key) throws SQLException {
+        statement.setString(1, key.mapId);
+        statement.setString(2, key.tileType.getTypeId());
+        statement.setInt(3, key.lod);
+        statement.setInt(4, key.tile.getX());
+        statement.setInt(5, key.tile.getY());
+    }
+
+    private void rollback() {
+        try {
+            writeConnection.rollback();
+        } catch (SQLException ex) {
+            Logger.global.logError("Failed to rollback a transaction on the database '" + connectionUrl + "'!", ex);
+        }
+    }
+
+    @DebugDump
+    public String getConnectionUrl() {
+        return connectionUrl;
+    }
+
+    @DebugDump
+    public int getPendingTileCount() {
+        return pendingTiles.size();
+    }
+
+    /**
+     * Returns the H2 database-driver.<br>
+     * The driver is not bundled with BlueMap. If it is not on the classpath already, it is loaded from the given jar-file.
+     * @param driverJar the jar-file of the H2-driver (version {@link #H2_VERSION})
+     * @throws IOException if the driver can not be found or loaded
+     */
+    public static synchronized Driver loadH2Driver(File driverJar) throws IOException {
+        if (h2Driver != null) return h2Driver;
+
+        Class<?> driverClass;
+        try {
+            driverClass = Class.forName(H2_DRIVER_CLASS);
+        } catch (ClassNotFoundException notOnClasspath) {
+            if (!driverJar.exists()) throw new IOException(
+                    "The sql-storage needs the H2 database-driver, but it is not installed! " +
+                    "Download h2-" + H2_VERSION + ".jar and place it at: " + driverJar.getAbsolutePath()
+            );
+
+            try {
+                ClassLoader classLoader = new URLClassLoader(new URL[]{ driverJar.toURI().toURL() }, SQLStorage.class.getClassLoader());
+                driverClass = Class.forName(H2_DRIVER_CLASS, true, classLoader);
+            } catch (ClassNotFoundException | LinkageError ex) {
+                throw new IOException("Failed to load the H2 database-driver from: " + driverJar.getAbsolutePath(), ex);
+            }
+        }
+
+        try {
+            h2Driver = (Driver) driverClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            throw new IOException("Failed to create the H2 database-driver!", ex);
+        }
+
+        return h2Driver;
+    }
+
+}
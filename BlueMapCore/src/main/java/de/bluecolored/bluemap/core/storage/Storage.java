@@ -26,18 +26,51 @@
 
 import com.flowpowered.math.vector.Vector2i;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Optional;
 
-public abstract class Storage {
+public abstract class Storage implements Closeable {
 
-    public abstract OutputStream writeMapTile(String mapId, TileType tileType, Vector2i tile) throws IOException;
+    /**
+     * Writes a map-tile of the given type and level-of-detail.<br>
+     * The level-of-detail 0 is the most detailed level of each tile-type, every following (lowres-)level is covering a bigger area
+     * than the one before. Hires-tiles only have the level 0.
+     */
+    public abstract OutputStream writeMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException;
 
-    public abstract Optional<InputStream> readMapTile(String mapId, TileType tileType, Vector2i tile) throws IOException;
+    public abstract Optional<InputStream> readMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException;
 
-    public abstract void deleteMapTile(String mapId, TileType tileType, Vector2i tile) throws IOException;
+    /**
+     * Reads a map-tile of the given type and level-of-detail the way it is stored, without decompressing it.<br>
+     * The data is compressed with the {@link Compression} returned by {@link #getTileCompression()}.
+     */
+    public Optional<InputStream> readMapTileCompressed(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        return readMapTile(mapId, tileType, lod, tile);
+    }
+
+    /**
+     * The {@link Compression} of the data returned by {@link #readMapTileCompressed(String, TileType, int, Vector2i)}
+     */
+    public Compression getTileCompression() {
+        return Compression.NONE;
+    }
+
+    public abstract void deleteMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException;
+
+    public OutputStream writeMapTile(String mapId, TileType tileType, Vector2i tile) throws IOException {
+        return writeMapTile(mapId, tileType, 0, tile);
+    }
+
+    public Optional<InputStream> readMapTile(String mapId, TileType tileType, Vector2i tile) throws IOException {
+        return readMapTile(mapId, tileType, 0, tile);
+    }
+
+    public void deleteMapTile(String mapId, TileType tileType, Vector2i tile) throws IOException {
+        deleteMapTile(mapId, tileType, 0, tile);
+    }
 
     public abstract OutputStream writeMeta(String mapId, MetaType metaType) throws IOException;
 
@@ -45,30 +78,52 @@ public abstract class Storage {
 
     public abstract void purgeMap(String mapId) throws IOException;
 
+    /**
+     * Blocks until all map-tiles that have been written to this storage so far are actually persisted.<br>
+     * Storages that are persisting all data immediately don't need to do anything here.
+     */
+    public void flush() throws IOException {}
+
+    /**
+     * Persists all data and releases all resources (files, connections, threads) that are held by this storage.<br>
+     * The storage can not be used anymore afterwards.
+     */
+    @Override
+    public void close() throws IOException {}
+
     public TileStorage tileStorage(final String mapId, final TileType tileType) {
-        return new TileStorage(mapId, tileType);
+        return new TileStorage(mapId, tileType, 0);
+    }
+
+    public TileStorage tileStorage(final String mapId, final TileType tileType, final int lod) {
+        return new TileStorage(mapId, tileType, lod);
     }
 
     public class TileStorage {
 
         private final String mapId;
         private final TileType tileType;
+        private final int lod;
+
+        private TileStorage(String mapId, TileType tileType, int lod) {
+            if (lod < 0) throw new IllegalArgumentException("lod can not be negative!");
+            if (tileType == TileType.HIRES && lod != 0) throw new IllegalArgumentException("Hires-tiles only have the level-of-detail 0!");
 
-        private TileStorage(String mapId, TileType tileType) {
             this.mapId = mapId;
             this.tileType = tileType;
+            this.lod = lod;
         }
 
         public OutputStream write(Vector2i tile) throws IOException {
-            return Storage.this.writeMapTile(mapId, tileType, tile);
+            return Storage.this.writeMapTile(mapId, tileType, lod, tile);
         }
 
         public Optional<InputStream> read(Vector2i tile) throws IOException {
-            return Storage.this.readMapTile(mapId, tileType, tile);
+            return Storage.this.readMapTile(mapId, tileType, lod, tile);
         }
 
         public void delete(Vector2i tile) throws IOException {
-            deleteMapTile(mapId, tileType, tile);
+            deleteMapTile(mapId, tileType, lod, tile);
         }
 
     }
@@ -0,0 +1,362 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A single file that contains the data of up to {@link #SIZE} x {@link #SIZE} map-tiles.<br>
+ * <br>
+ * The file starts with an index that contains the offset and length of each tile's data. New data is always appended to the
+ * end of the file and the index-entry is updated afterwards, so a tile is never partially overwritten. An existing file is never
+ * truncated, if it can not be opened the write fails instead. Once more than half of
+ * the file is outdated data, the archive is compacted by rewriting it to a new file that replaces the old one.<br>
+ * <br>
+ * Any number of threads can read at the same time, writes are exclusive.
+ * An archive must not be written by more than one process at a time.<br>
+ * <br>
+ * <i>The implementation of this class is thread-save!</i>
+ */
+public class TileArchive implements Closeable {
+
+    public static final int SIZE = 32;
+
+    private static final int MAGIC = 0x424D5441; // "BMTA"
+    private static final int VERSION = 1;
+
+    private static final int TILE_COUNT = SIZE * SIZE;
+    private static final int INDEX_ENTRY_SIZE = 8 + 4;
+    private static final int HEADER_SIZE = 4 + 4 + TILE_COUNT * INDEX_ENTRY_SIZE;
+
+    private static final long COMPACT_MIN_GARBAGE = 1024L * 1024L;
+
+    private final Path file;
+    private final boolean sync;
+
+    private final ReadWriteLock lock;
+
+    private FileChannel channel;
+    private final long[] offsets;
+    private final int[] lengths;
+    private long fileSize, liveBytes;
+
+    /**
+     * Opens the archive, the file is only created once the first tile is written to it.
+     * @param sync whether written data should be forced to the storage-device before the write returns
+     */
+    public TileArchive(Path file, boolean sync) throws IOException {
+        this.file = file;
+        this.sync = sync;
+
+        this.lock = new ReentrantReadWriteLock();
+
+        this.offsets = new long[TILE_COUNT];
+        this.lengths = new int[TILE_COUNT];
+
+        open(false);
+    }
+
+    /**
+     * Returns the data of the tile at the given position (relative to this archive),
+     * or null if there is no data for this tile.
+     */
+    public byte[] read(int x, int z) throws IOException {
+        int index = index(x, z);
+
+        lock.readLock().lock();
+        try {
+            if (channel != null) return readTile(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // the file might have been created since, or got closed by a failed compaction
+        lock.writeLock().lock();
+        try {
+            if (!open(false)) return null;
+            return readTile(index);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the data of the tile at the given position (relative to this archive)
+     */
+    public void write(int x, int z, byte[] data, int offset, int length) throws IOException {
+        int index = index(x, z);
+
+        lock.writeLock().lock();
+        try {
+            open(true);
+
+            long dataOffset = fileSize;
+            writeFully(ByteBuffer.wrap(data, offset, length), dataOffset);
+            fileSize += length;
+
+            // the data has to be on the device before the index points to it
+            if (sync) channel.force(false);
+
+            setIndexEntry(index, dataOffset, length);
+            if (sync) channel.force(false);
+
+            if (needsCompaction()) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the tile at the given position (relative to this archive)
+     */
+    public void delete(int x, int z) throws IOException {
+        int index = index(x, z);
+
+        lock.writeLock().lock();
+        try {
+            if (!open(false) || lengths[index] <= 0) return;
+
+            setIndexEntry(index, 0, 0);
+            if (sync) channel.force(false);
+
+            if (needsCompaction()) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites this archive so it only contains the current data of each tile
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!open(false)) return;
+
+            Path compactFile = file.resolveSibling(file.getFileName() + ".compact");
+            long[] newOffsets = new long[TILE_COUNT];
+            long newFileSize = HEADER_SIZE;
+
+            try (FileChannel out = FileChannel.open(compactFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int i = 0; i < TILE_COUNT; i++) {
+                    if (lengths[i] <= 0) continue;
+
+                    newOffsets[i] = newFileSize;
+                    long transferred = 0;
+                    while (transferred < lengths[i]) {
+                        long count = channel.transferTo(offsets[i] + transferred, lengths[i] - transferred, out.position(newFileSize + transferred));
+                        if (count <= 0) throw new IOException("Unexpected end of tile-archive: " + file);
+                        transferred += count;
+                    }
+                    newFileSize += lengths[i];
+                }
+
+                ByteBuffer header = createHeader(newOffsets, lengths);
+                while (header.hasRemaining()) out.write(header, header.position());
+
+                if (sync) out.force(true);
+            }
+
+            channel.close();
+            channel = null;
+
+            try {
+                try {
+                    Files.move(compactFile, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException ex) {
+                    Files.move(compactFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                // whether the compacted file replaced the original one or not, the file in place has a valid index
+                Files.deleteIfExists(compactFile);
+                open(false);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of bytes in the archive-file that belong to the current data of the tiles
+     */
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the size of the archive-file
+     */
+    public long getFileSize() {
+        lock.readLock().lock();
+        try {
+            return channel == null ? 0 : fileSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) channel.close();
+            channel = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean needsCompaction() {
+        long garbage = fileSize - HEADER_SIZE - liveBytes;
+        return garbage > COMPACT_MIN_GARBAGE && garbage > liveBytes;
+    }
+
+    /**
+     * Opens the archive-file and reads its index if it is not already open.
+     * @param create whether a new (empty) archive-file should be created if it does not exist
+     * @return <code>true</code> if the archive is open
+     */
+    private boolean open(boolean create) throws IOException {
+        if (channel != null) return true;
+
+        if (Files.exists(file)) {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                readIndex();
+            } catch (IOException ex) {
+                channel.close();
+                channel = null;
+                throw ex;
+            }
+            return true;
+        }
+
+        if (!create) return false;
+
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+
+        Arrays.fill(offsets, 0);
+        Arrays.fill(lengths, 0);
+        writeFully(createHeader(offsets, lengths), 0);
+        fileSize = HEADER_SIZE;
+        liveBytes = 0;
+        return true;
+    }
+
+    private byte[] readTile(int index) throws IOException {
+        int length = lengths[index];
+        if (length <= 0) return null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, offsets[index]);
+        return buffer.array();
+    }
+
+    private void readIndex() throws IOException {
+        fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) throw new IOException("Invalid tile-archive (file too small): " + file);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+
+        if (header.getInt() != MAGIC) throw new IOException("Invalid tile-archive (wrong file-type): " + file);
+        int version = header.getInt();
+        if (version != VERSION) throw new IOException("Invalid tile-archive (unsupported version " + version + "): " + file);
+
+        liveBytes = 0;
+        for (int i = 0; i < TILE_COUNT; i++) {
+            long offset = header.getLong();
+            int length = header.getInt();
+
+            // ignore entries pointing to data that has not been written completely
+            if (length <= 0 || offset < HEADER_SIZE || offset + length > fileSize) {
+                offset = 0;
+                length = 0;
+            }
+
+            offsets[i] = offset;
+            lengths[i] = length;
+            liveBytes += length;
+        }
+    }
+
+    private void setIndexEntry(int index, long offset, int length) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        entry.putLong(offset);
+        entry.putInt(length);
+        entry.flip();
+        writeFully(entry, 8 + (long) index * INDEX_ENTRY_SIZE);
+
+        liveBytes += length - lengths[index];
+        offsets[index] = offset;
+        lengths[index] = length;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of tile-archive: " + file);
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer createHeader(long[] offsets, int[] lengths) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        for (int i = 0; i < TILE_COUNT; i++) {
+            header.putLong(offsets[i]);
+            header.putInt(lengths[i]);
+        }
+        header.flip();
+        return header;
+    }
+
+    private static int index(int x, int z) {
+        if (x < 0 || x >= SIZE || z < 0 || z >= SIZE) throw new IndexOutOfBoundsException("Tile " + x + "," + z + " is not inside the archive");
+        return z * SIZE + x;
+    }
+
+}
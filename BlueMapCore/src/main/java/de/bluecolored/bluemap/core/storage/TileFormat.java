@@ -0,0 +1,63 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import java.util.Locale;
+
+public enum TileFormat {
+
+    JSON ("json", ".json"),
+    BINARY ("binary", ".prbm");
+
+    private final String id;
+    private final String fileSuffix;
+
+    TileFormat(String id, String fileSuffix) {
+        this.id = id;
+        this.fileSuffix = fileSuffix;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileSuffix() {
+        return fileSuffix;
+    }
+
+    /**
+     * Returns the {@link TileFormat} with the given id (case-insensitive)
+     * @throws IllegalArgumentException if there is no format with that id
+     */
+    public static TileFormat forId(String id) throws IllegalArgumentException {
+        String lowerId = id.toLowerCase(Locale.ROOT);
+        for (TileFormat format : values()) {
+            if (format.id.equals(lowerId)) return format;
+        }
+
+        throw new IllegalArgumentException("There is no tile-format with id: '" + id + "'");
+    }
+
+}
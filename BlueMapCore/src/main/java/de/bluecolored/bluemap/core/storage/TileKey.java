@@ -0,0 +1,63 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+
+/**
+ * Identifies a single map-tile, used by storages that keep map-tiles in memory before they are written
+ */
+class TileKey {
+
+    final String mapId;
+    final TileType tileType;
+    final int lod;
+    final Vector2i tile;
+
+    TileKey(String mapId, TileType tileType, int lod, Vector2i tile) {
+        this.mapId = mapId;
+        this.tileType = tileType;
+        this.lod = lod;
+        this.tile = tile;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TileKey that = (TileKey) o;
+        return lod == that.lod && tileType == that.tileType && tile.equals(that.tile) && mapId.equals(that.mapId);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mapId.hashCode();
+        result = 31 * result + tileType.hashCode();
+        result = 31 * result + lod;
+        result = 31 * result + tile.hashCode();
+        return result;
+    }
+
+}
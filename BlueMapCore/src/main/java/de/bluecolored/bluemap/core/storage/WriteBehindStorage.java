@@ -0,0 +1,282 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
+
+import java.io.*;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Storage} that collects all written map-tiles in memory and passes them to the wrapped storage
+ * on its own write-threads, so the threads producing the tiles don't have to wait for any I/O.<br>
+ * If a tile gets written again while its previous data is still queued, only the latest data is written.
+ * If the queue is full, threads writing new tiles are blocked until there is space again.<br>
+ * Queued tiles are also returned when reading them, meta-data is passed to the wrapped storage directly.<br>
+ * <br>
+ * <i>The implementation of this class is thread-save!</i>
+ */
+@DebugDump
+public class WriteBehindStorage extends Storage {
+
+    private static final AtomicInteger nextWriterIndex = new AtomicInteger(0);
+    private static final int LOCK_STRIPES = 64;
+
+    private final Storage storage;
+    private final int writeThreadCount;
+    private final int queueSize;
+
+    private final ConcurrentHashMap<TileKey, byte[]> queuedTiles;
+    private final ConcurrentHashMap<TileKey, byte[]> writingTiles;
+    private final Semaphore queueSpace;
+    private final Object[] tileLocks;
+    private final ThreadPoolExecutor writeExecutor;
+
+    /**
+     * @param storage the storage that the tiles are finally written to
+     * @param writeThreadCount the maximum amount of threads writing tiles to the storage at the same time
+     * @param queueSize the maximum amount of tiles that are held in memory until writing more tiles blocks
+     */
+    public WriteBehindStorage(Storage storage, int writeThreadCount, int queueSize) {
+        if (writeThreadCount < 1) throw new IllegalArgumentException("writeThreadCount has to be 1 or more!");
+        if (queueSize < 1) throw new IllegalArgumentException("queueSize has to be 1 or more!");
+
+        this.storage = Objects.requireNonNull(storage);
+        this.writeThreadCount = writeThreadCount;
+        this.queueSize = queueSize;
+
+        this.queuedTiles = new ConcurrentHashMap<>();
+        this.writingTiles = new ConcurrentHashMap<>();
+        this.queueSpace = new Semaphore(queueSize, true);
+
+        this.tileLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < tileLocks.length; i++) tileLocks[i] = new Object();
+
+        int writerIndex = nextWriterIndex.getAndIncrement();
+        AtomicInteger nextThreadIndex = new AtomicInteger(0);
+        this.writeExecutor = new ThreadPoolExecutor(
+                writeThreadCount, writeThreadCount,
+                10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "BlueMap-TileWriter-" + writerIndex + "-" + nextThreadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        this.writeExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public OutputStream writeMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        final TileKey key = new TileKey(mapId, tileType, lod, tile);
+
+        return new ByteArrayOutputStream(64 * 1024) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+
+                enqueue(key, toByteArray());
+            }
+        };
+    }
+
+    @Override
+    public Optional<InputStream> readMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        TileKey key = new TileKey(mapId, tileType, lod, tile);
+
+        byte[] data = queuedTiles.get(key);
+        if (data == null) data = writingTiles.get(key);
+        if (data != null) return Optional.of(new ByteArrayInputStream(data));
+
+        return storage.readMapTile(mapId, tileType, lod, tile);
+    }
+
+    @Override
+    public Optional<InputStream> readMapTileCompressed(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        TileKey key = new TileKey(mapId, tileType, lod, tile);
+
+        byte[] data = queuedTiles.get(key);
+        if (data == null) data = writingTiles.get(key);
+        if (data != null) {
+            // queued tiles are not compressed yet
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length);
+            try (OutputStream out = getTileCompression().compress(compressed)) {
+                out.write(data);
+            }
+            return Optional.of(new ByteArrayInputStream(compressed.toByteArray()));
+        }
+
+        return storage.readMapTileCompressed(mapId, tileType, lod, tile);
+    }
+
+    @Override
+    public Compression getTileCompression() {
+        return storage.getTileCompression();
+    }
+
+    @Override
+    public void deleteMapTile(String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        TileKey key = new TileKey(mapId, tileType, lod, tile);
+
+        // holding the tile-lock makes sure that a write of this tile that is currently in progress finishes first
+        synchronized (getLock(key)) {
+            if (queuedTiles.remove(key) != null) queueSpace.release();
+            storage.deleteMapTile(mapId, tileType, lod, tile);
+        }
+    }
+
+    @Override
+    public OutputStream writeMeta(String mapId, MetaType metaType) throws IOException {
+        return storage.writeMeta(mapId, metaType);
+    }
+
+    @Override
+    public Optional<InputStream> readMeta(String mapId, MetaType metaType) throws IOException {
+        return storage.readMeta(mapId, metaType);
+    }
+
+    @Override
+    public void purgeMap(String mapId) throws IOException {
+        for (TileKey key : queuedTiles.keySet()) {
+            if (key.mapId.equals(mapId) && queuedTiles.remove(key) != null) queueSpace.release();
+        }
+
+        // wait for all writes that are currently in progress
+        for (Object lock : tileLocks) {
+            synchronized (lock) {}
+        }
+
+        storage.purgeMap(mapId);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            // all space is only available once all queued tiles are written
+            queueSpace.acquire(queueSize);
+            queueSpace.release(queueSize);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for queued tiles to be written!");
+        }
+
+        storage.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            writeExecutor.shutdown();
+            storage.close();
+        }
+    }
+
+    private void enqueue(TileKey key, byte[] data) throws IOException {
+        // if the tile is already queued, just replace its data
+        if (queuedTiles.replace(key, data) != null) return;
+
+        try {
+            queueSpace.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for space in the tile-write-queue!");
+        }
+
+        if (queuedTiles.put(key, data) != null) {
+            // the tile got queued by another thread in the meantime, its write is already scheduled
+            queueSpace.release();
+            return;
+        }
+
+        try {
+            writeExecutor.execute(() -> write(key));
+        } catch (RejectedExecutionException ex) {
+            if (queuedTiles.remove(key, data)) queueSpace.release();
+            throw new IOException("Failed to schedule the write of a map-tile!", ex);
+        }
+    }
+
+    private void write(TileKey key) {
+        synchronized (getLock(key)) {
+            byte[] data = queuedTiles.get(key);
+            if (data == null) return;
+
+            // mark the data as being written before removing it from the queue, so reads always find it
+            writingTiles.put(key, data);
+            while (!queuedTiles.remove(key, data)) {
+                data = queuedTiles.get(key);
+                if (data == null) {
+                    writingTiles.remove(key);
+                    return;
+                }
+                writingTiles.put(key, data);
+            }
+
+            try (OutputStream out = storage.writeMapTile(key.mapId, key.tileType, key.lod, key.tile)) {
+                out.write(data);
+            } catch (IOException ex) {
+                Logger.global.logError("Failed to write map-tile " + key.tile + " of map '" + key.mapId + "'!", ex);
+            } finally {
+                writingTiles.remove(key);
+                queueSpace.release();
+            }
+        }
+    }
+
+    private Object getLock(TileKey key) {
+        return tileLocks[Math.floorMod(key.hashCode(), tileLocks.length)];
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    @DebugDump
+    public int getWriteThreadCount() {
+        return writeThreadCount;
+    }
+
+    @DebugDump
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    @DebugDump
+    public int getQueuedTileCount() {
+        return queuedTiles.size();
+    }
+
+}
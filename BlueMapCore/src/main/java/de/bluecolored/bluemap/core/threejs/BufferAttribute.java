@@ -32,8 +32,7 @@
 import de.bluecolored.bluemap.core.util.Preconditions;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Represents a ThreeJS BufferAttribute
@@ -107,7 +106,8 @@ public float[] values() {
     }
 
     public static BufferAttribute readJson(JsonReader json) throws IOException {
-        List<Float> list = new ArrayList<>(1000);
+        float[] values = new float[1024];
+        int valueCount = 0;
         int itemSize = 1;
         boolean normalized = false;
 
@@ -118,7 +118,8 @@ public static BufferAttribute readJson(JsonReader json) throws IOException {
             if(name.equals("array")){
                 json.beginArray(); //array
                 while (json.hasNext()){
-                    list.add((float) json.nextDouble());
+                    if (valueCount == values.length) values = Arrays.copyOf(values, valueCount * 2);
+                    values[valueCount++] = (float) json.nextDouble();
                 }
                 json.endArray(); //array
             }
@@ -135,11 +136,7 @@ else if (name.equals("normalized")) {
         }
         json.endObject(); //root
 
-        //collect values in array
-        float[] values = new float[list.size()];
-        for (int i = 0; i < values.length; i++) {
-            values[i] = list.get(i);
-        }
+        if (valueCount != values.length) values = Arrays.copyOf(values, valueCount);
 
         return new BufferAttribute(values, itemSize, normalized);
     }
@@ -25,8 +25,10 @@
 package de.bluecolored.bluemap.core.threejs;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -78,59 +80,72 @@ public int getFaceCount() {
 
     public String toJson() {
         try {
-
             StringWriter sw = new StringWriter();
-            Gson gson = new GsonBuilder().create();
-            JsonWriter json = gson.newJsonWriter(sw);
+            writeJson(sw);
+            return sw.toString();
+        } catch (IOException e) {
+            // since we are using a StringWriter there should never be an IO exception
+            // thrown
+            throw new RuntimeException(e);
+        }
+    }
 
-            json.beginObject(); // main-object
+    /**
+     * Writes this geometry as json directly to the given writer, without creating the whole json-string in memory first.<br>
+     * The writer is flushed but not closed.
+     */
+    public void writeJson(Writer writer) throws IOException {
+        Gson gson = new GsonBuilder().create();
+        JsonWriter json = gson.newJsonWriter(writer);
 
-            // set special values
-            json.name("type").value("BufferGeometry");
-            json.name("uuid").value(UUID.randomUUID().toString().toUpperCase());
+        json.beginObject(); // main-object
 
-            json.name("data").beginObject(); // data
-            json.name("attributes").beginObject(); // attributes
+        // set special values
+        json.name("type").value("BufferGeometry");
+        json.name("uuid").value(UUID.randomUUID().toString().toUpperCase());
 
-            for (Entry<String, BufferAttribute> entry : attributes.entrySet()) {
-                json.name(entry.getKey());
-                entry.getValue().writeJson(json);
-            }
+        json.name("data").beginObject(); // data
+        json.name("attributes").beginObject(); // attributes
 
-            json.endObject(); // attributes
+        for (Entry<String, BufferAttribute> entry : attributes.entrySet()) {
+            json.name(entry.getKey());
+            entry.getValue().writeJson(json);
+        }
 
-            json.name("groups").beginArray(); // groups
+        json.endObject(); // attributes
 
-            // write groups into json
-            for (MaterialGroup g : groups) {
-                json.beginObject();
+        json.name("groups").beginArray(); // groups
 
-                json.name("materialIndex").value(g.getMaterialIndex());
-                json.name("start").value(g.getStart());
-                json.name("count").value(g.getCount());
+        // write groups into json
+        for (MaterialGroup g : groups) {
+            json.beginObject();
 
-                json.endObject();
-            }
+            json.name("materialIndex").value(g.getMaterialIndex());
+            json.name("start").value(g.getStart());
+            json.name("count").value(g.getCount());
 
-            json.endArray(); // groups
-            json.endObject(); // data
-            json.endObject(); // main-object
+            json.endObject();
+        }
 
-            // save and return
-            json.flush();
-            return sw.toString();
+        json.endArray(); // groups
+        json.endObject(); // data
+        json.endObject(); // main-object
 
-        } catch (IOException e) {
-            // since we are using a StringWriter there should never be an IO exception
-            // thrown
-            throw new RuntimeException(e);
-        }
+        json.flush();
     }
 
     public static BufferGeometry fromJson(String jsonString) throws IOException {
+        return readJson(new StringReader(jsonString));
+    }
+
+    /**
+     * Reads a geometry directly from the json that is provided by the given reader, without reading the whole json into a string first.<br>
+     * The reader is not closed.
+     */
+    public static BufferGeometry readJson(Reader reader) throws IOException {
 
         Gson gson = new GsonBuilder().create();
-        JsonReader json = gson.newJsonReader(new StringReader(jsonString));
+        JsonReader json = gson.newJsonReader(reader);
 
         List<MaterialGroup> groups = new ArrayList<>(10);
         Map<String, BufferAttribute> attributes = new HashMap<>();
@@ -28,7 +28,11 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 public class AtomicFileHelper {
 
@@ -36,28 +40,62 @@ public static OutputStream createFilepartOutputStream(final File file) throws IO
         return createFilepartOutputStream(file.toPath());
     }
 
+    /**
+     * Creates an OutputStream that writes to a temporary ".filepart"-file, which is moved to the given file once the stream is closed.
+     */
     public static OutputStream createFilepartOutputStream(final Path file) throws IOException {
         final Path partFile = getPartFile(file);
-        Files.createDirectories(partFile.getParent());
 
-        OutputStream os = Files.newOutputStream(partFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+        OutputStream os = openPartFile(partFile);
         return new WrappedOutputStream(os, () -> {
             if (!Files.exists(partFile)) return;
 
-            Files.deleteIfExists(file);
-            Files.createDirectories(file.getParent());
-
             try {
                 Files.move(partFile, file, StandardCopyOption.ATOMIC_MOVE);
             } catch (FileNotFoundException | NoSuchFileException ignore) {
             } catch (IOException ex) {
                 try {
-                    Files.move(partFile, file);
+                    Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING);
                 } catch (FileNotFoundException | NoSuchFileException ignore) {}
             }
         });
     }
 
+    /**
+     * Forces the data of all given files and afterwards the directories containing them to the storage-device.<br>
+     * Each directory is only synced once, no matter how many of the files it contains.
+     * Files that don't exist (anymore) are skipped.
+     */
+    public static void sync(Collection<Path> files) throws IOException {
+        Set<Path> directories = new HashSet<>();
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (FileNotFoundException | NoSuchFileException ignore) {
+                continue;
+            }
+
+            directories.add(file.toAbsolutePath().getParent());
+        }
+
+        // make the renames of the files persistent as well
+        for (Path directory : directories) {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException ignore) {} // not all platforms support syncing a directory
+        }
+    }
+
+    private static OutputStream openPartFile(Path partFile) throws IOException {
+        try {
+            return Files.newOutputStream(partFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+        } catch (NoSuchFileException ex) {
+            // the parent directories are only created if they are missing, most of the time they already exist
+            Files.createDirectories(partFile.getParent());
+            return Files.newOutputStream(partFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+        }
+    }
+
     private static Path getPartFile(Path file) {
         return file.normalize().getParent().resolve(file.getFileName() + ".filepart");
     }
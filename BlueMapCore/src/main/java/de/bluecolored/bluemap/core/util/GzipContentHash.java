@@ -0,0 +1,195 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.util;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes gzip-files that carry the {@link ContentHash} of their (uncompressed) content in an extra-field of their gzip-header,
+ * so the hash can be read together with the file and can never be older than the content.<br>
+ * The files are still valid gzip-files that can be decompressed and sent to a web-browser as they are.
+ */
+public class GzipContentHash {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FLAG_EXTRA = 0x04;
+
+    // the subfield-id of the content-hash in the extra-field: "BM"
+    private static final int SUBFIELD_ID_1 = 'B', SUBFIELD_ID_2 = 'M';
+
+    private GzipContentHash(){}
+
+    /**
+     * Creates a stream that gzip-compresses all written data into the given stream.<br>
+     * The header of the gzip-file can only be written when the content-hash is known, so the compressed data is held
+     * in memory until the returned stream is closed.
+     * @param out The stream to write the gzip-file to, it is closed when the returned stream is closed
+     * @param level The compression-level (0 - 9, or {@link Deflater#DEFAULT_COMPRESSION})
+     */
+    public static OutputStream createOutputStream(OutputStream out, int level) {
+        return new HashingGzipOutputStream(out, level);
+    }
+
+    /**
+     * Reads the content-hash from the header of a gzip-file that has been written by a stream created with
+     * {@link #createOutputStream(OutputStream, int)}.<br>
+     * Only the header is read from the stream.
+     * @return The content-hash as hex-string, or null if the stream does not start with a gzip-header containing a content-hash
+     */
+    public static String read(InputStream in) throws IOException {
+        DataInputStream dIn = new DataInputStream(in);
+
+        try {
+            if (readShortLE(dIn) != GZIP_MAGIC) return null;
+            if (dIn.readUnsignedByte() != Deflater.DEFLATED) return null;
+            int flags = dIn.readUnsignedByte();
+            if ((flags & FLAG_EXTRA) == 0) return null;
+            dIn.skipBytes(6); // mtime, xfl, os
+
+            int extraLength = readShortLE(dIn);
+            while (extraLength >= 4) {
+                int id1 = dIn.readUnsignedByte(), id2 = dIn.readUnsignedByte();
+                int length = readShortLE(dIn);
+                extraLength -= 4;
+                if (length > extraLength) return null;
+
+                if (id1 == SUBFIELD_ID_1 && id2 == SUBFIELD_ID_2) {
+                    byte[] hash = new byte[length];
+                    dIn.readFully(hash);
+                    return ContentHash.toHex(hash);
+                }
+
+                dIn.skipBytes(length);
+                extraLength -= length;
+            }
+        } catch (EOFException ex) {
+            return null;
+        }
+
+        return null;
+    }
+
+    /**
+     * See {@link #read(InputStream)}
+     */
+    public static String read(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64)) {
+            return read(in);
+        }
+    }
+
+    private static int readShortLE(DataInputStream in) throws IOException {
+        return in.readUnsignedByte() | (in.readUnsignedByte() << 8);
+    }
+
+    private static void writeShortLE(OutputStream out, int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    private static void writeIntLE(OutputStream out, long value) throws IOException {
+        writeShortLE(out, (int) (value & 0xFFFF));
+        writeShortLE(out, (int) ((value >> 16) & 0xFFFF));
+    }
+
+    private static class HashingGzipOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final ByteArrayOutputStream compressed;
+        private final Deflater deflater;
+        private final DeflaterOutputStream deflaterOut;
+        private final CRC32 crc;
+        private final MessageDigest digest;
+        private long size;
+        private boolean closed;
+
+        private HashingGzipOutputStream(OutputStream out, int level) {
+            this.out = out;
+            this.compressed = new ByteArrayOutputStream();
+            this.deflater = new Deflater(level, true);
+            this.deflaterOut = new DeflaterOutputStream(compressed, deflater, 4096);
+            this.crc = new CRC32();
+            this.digest = ContentHash.createDigest();
+            this.size = 0;
+            this.closed = false;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{ (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Stream closed");
+
+            deflaterOut.write(b, off, len);
+            crc.update(b, off, len);
+            digest.update(b, off, len);
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+
+            try {
+                deflaterOut.finish();
+                byte[] hash = digest.digest();
+
+                // header
+                writeShortLE(out, GZIP_MAGIC);
+                out.write(Deflater.DEFLATED);
+                out.write(FLAG_EXTRA);
+                writeIntLE(out, 0); // mtime
+                out.write(0); // xfl
+                out.write(255); // os: unknown
+
+                // extra-field with the content-hash
+                writeShortLE(out, hash.length + 4);
+                out.write(SUBFIELD_ID_1);
+                out.write(SUBFIELD_ID_2);
+                writeShortLE(out, hash.length);
+                out.write(hash);
+
+                compressed.writeTo(out);
+
+                // trailer
+                writeIntLE(out, crc.getValue());
+                writeIntLE(out, size);
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+    }
+
+}
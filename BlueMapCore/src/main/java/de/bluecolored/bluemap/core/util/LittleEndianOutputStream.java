@@ -0,0 +1,129 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A buffered {@link OutputStream} that writes primitive values in little-endian byte-order
+ * (the native byte-order of javascript typed-arrays on all common platforms)
+ */
+public class LittleEndianOutputStream extends FilterOutputStream {
+
+    private final byte[] buffer;
+    private int position;
+    private long count;
+
+    public LittleEndianOutputStream(OutputStream out) {
+        this(out, 8192);
+    }
+
+    public LittleEndianOutputStream(OutputStream out, int bufferSize) {
+        super(out);
+        if (bufferSize < 8) throw new IllegalArgumentException("bufferSize has to be at least 8");
+
+        this.buffer = new byte[bufferSize];
+        this.position = 0;
+        this.count = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buffer.length) {
+            flushBuffer();
+            out.write(b, off, len);
+        } else {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buffer, position, len);
+            position += len;
+        }
+        count += len;
+    }
+
+    public void writeByte(int v) throws IOException {
+        write(v);
+    }
+
+    public void writeShort(int v) throws IOException {
+        ensureCapacity(2);
+        buffer[position++] = (byte) v;
+        buffer[position++] = (byte) (v >>> 8);
+        count += 2;
+    }
+
+    public void writeInt(int v) throws IOException {
+        ensureCapacity(4);
+        buffer[position++] = (byte) v;
+        buffer[position++] = (byte) (v >>> 8);
+        buffer[position++] = (byte) (v >>> 16);
+        buffer[position++] = (byte) (v >>> 24);
+        count += 4;
+    }
+
+    public void writeFloat(float v) throws IOException {
+        writeInt(Float.floatToIntBits(v));
+    }
+
+    /**
+     * Writes zero-bytes until the amount of written bytes is a multiple of the given alignment
+     */
+    public void pad(int alignment) throws IOException {
+        while (count % alignment != 0) write(0);
+    }
+
+    /**
+     * The total amount of bytes that have been written to this stream
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * A thread-safe, size-bounded cache that maps primitive <code>long</code> keys to values without boxing them.<br>
+ * <br>
+ * The cache is split into segments that are each guarded by their own lock and store their entries in an open-addressing
+ * hash-table (linear probing). If a segment is full, entries are evicted with a CLOCK (second-chance) policy,
+ * which approximates LRU without having to maintain an access-ordered list.<br>
+ * Entries also expire after a fixed time since they were written.<br>
+ * <br>
+ * <i>Implementation note:<br>
+ * Loading happens outside of any lock, so two threads missing the same key at the same time might both load a value.
+ * In this case only the value that got inserted first is kept and returned to both threads,
+ * the other one is passed to the removal-listener.</i>
+ */
+public class LongKeyCache<V> {
+
+    private static final int MAX_SEGMENT_COUNT = 64;
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+    private final long expireAfterWriteMillis;
+    private final Consumer<V> removalListener;
+
+    /**
+     * @param maximumSize the maximum amount of entries this cache holds (approximately)
+     * @param expireAfterWriteMillis the time after which entries expire, or a value &lt;= 0 if entries should never expire
+     */
+    public LongKeyCache(int maximumSize, long expireAfterWriteMillis) {
+        this(maximumSize, expireAfterWriteMillis, null);
+    }
+
+    /**
+     * @param maximumSize the maximum amount of entries this cache holds (approximately)
+     * @param expireAfterWriteMillis the time after which entries expire, or a value &lt;= 0 if entries should never expire
+     * @param removalListener a listener that is called (outside of any lock) with every value that gets evicted, invalidated or replaced, or <code>null</code>
+     */
+    public LongKeyCache(int maximumSize, long expireAfterWriteMillis, Consumer<V> removalListener) {
+        if (maximumSize < 1) throw new IllegalArgumentException("maximumSize has to be at least 1");
+
+        // use less segments for small caches so each segment can still hold a reasonable amount of entries
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENT_COUNT && segmentCount * 16 <= maximumSize) segmentCount <<= 1;
+
+        this.segments = newSegmentArray(segmentCount);
+        this.segmentMask = segmentCount - 1;
+        int segmentSize = (maximumSize + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment<>(segmentSize);
+        }
+
+        this.expireAfterWriteMillis = expireAfterWriteMillis;
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * Returns the cached value for this key, or <code>null</code> if there is no (unexpired) value cached.
+     */
+    public V getIfPresent(long key) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash, now(), expireAfterWriteMillis);
+    }
+
+    /**
+     * Returns the cached value for this key, or loads and caches it using the loader if there is no (unexpired) value cached.
+     */
+    public V get(long key, LongFunction<? extends V> loader) {
+        int hash = hash(key);
+        Segment<V> segment = segmentFor(hash);
+
+        V value = segment.get(key, hash, now(), expireAfterWriteMillis);
+        if (value != null) return value;
+
+        V loaded = loader.apply(key);
+        if (loaded == null) throw new NullPointerException("The loader returned null for key: " + key);
+
+        List<V> removed = new ArrayList<>(2);
+        value = segment.putIfAbsent(key, hash, loaded, now(), expireAfterWriteMillis, removed);
+        if (value != loaded) removed.add(loaded); // another thread was faster, drop our value
+
+        notifyRemoved(removed);
+        return value;
+    }
+
+    /**
+     * Returns the time (in milliseconds, like {@link System#currentTimeMillis()}) at which the value that is currently cached for this key expires.<br>
+     * This is {@link Long#MAX_VALUE} if values never expire, and {@link Long#MIN_VALUE} if there is no value cached for this key.
+     */
+    public long getExpiration(long key) {
+        if (expireAfterWriteMillis <= 0) return Long.MAX_VALUE;
+
+        int hash = hash(key);
+        long writeTime = segmentFor(hash).getWriteTime(key, hash);
+        if (writeTime == Long.MIN_VALUE) return Long.MIN_VALUE;
+        return writeTime + expireAfterWriteMillis;
+    }
+
+    /**
+     * Caches the value for the given key, replacing any existing value.
+     */
+    public void put(long key, V value) {
+        if (value == null) throw new NullPointerException("value can not be null");
+
+        int hash = hash(key);
+        List<V> removed = new ArrayList<>(2);
+        segmentFor(hash).put(key, hash, value, now(), expireAfterWriteMillis, removed);
+        notifyRemoved(removed);
+    }
+
+    /**
+     * Removes the cached value for that key (if there is one).
+     */
+    public void invalidate(long key) {
+        int hash = hash(key);
+        V removed = segmentFor(hash).remove(key, hash);
+        if (removed != null && removalListener != null) removalListener.accept(removed);
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public void invalidateAll() {
+        List<V> removed = new ArrayList<>();
+        for (Segment<V> segment : segments) {
+            segment.clear(removed);
+        }
+        notifyRemoved(removed);
+    }
+
+    /**
+     * Removes all expired values from this cache to free up memory.
+     */
+    public void cleanUp() {
+        if (expireAfterWriteMillis <= 0) return;
+
+        List<V> removed = new ArrayList<>();
+        long now = now();
+        for (Segment<V> segment : segments) {
+            segment.removeExpired(now, expireAfterWriteMillis, removed);
+        }
+        notifyRemoved(removed);
+    }
+
+    /**
+     * The amount of entries currently in this cache (including entries that are expired but not yet removed).
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private void notifyRemoved(List<V> removed) {
+        if (removalListener == null) return;
+        for (V value : removed) {
+            removalListener.accept(value);
+        }
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[(hash >>> 16) & segmentMask];
+    }
+
+    private long now() {
+        return expireAfterWriteMillis > 0 ? System.currentTimeMillis() : 0;
+    }
+
+    private static int hash(long key) {
+        // murmur3 64-bit finalizer
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Segment<V>[] newSegmentArray(int length) {
+        return (Segment<V>[]) new Segment<?>[length];
+    }
+
+    /**
+     * Packs two ints (e.g. x and z coordinates) into one long key
+     */
+    public static long key(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    private static class Segment<V> {
+
+        private final int maxSize;
+        private final int mask;
+
+        private final long[] keys;
+        private final Object[] values;
+        private final long[] writeTimes;
+        private final boolean[] referenced;
+
+        private int size;
+        private int clockHand;
+
+        private Segment(int maxSize) {
+            this.maxSize = maxSize;
+
+            // keep the load-factor at or below 0.5 so probe-sequences stay short
+            int capacity = Integer.highestOneBit(Math.max(maxSize, 2) * 2 - 1) << 1;
+            this.mask = capacity - 1;
+
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.writeTimes = new long[capacity];
+            this.referenced = new boolean[capacity];
+
+            this.size = 0;
+            this.clockHand = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized V get(long key, int hash, long now, long expireAfterWrite) {
+            int i = indexOf(key, hash);
+            if (i < 0) return null;
+            if (isExpired(i, now, expireAfterWrite)) return null;
+
+            referenced[i] = true;
+            return (V) values[i];
+        }
+
+        private synchronized long getWriteTime(long key, int hash) {
+            int i = indexOf(key, hash);
+            if (i < 0) return Long.MIN_VALUE;
+            return writeTimes[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized V putIfAbsent(long key, int hash, V value, long now, long expireAfterWrite, List<V> removed) {
+            int i = indexOf(key, hash);
+            if (i >= 0) {
+                if (!isExpired(i, now, expireAfterWrite)) {
+                    referenced[i] = true;
+                    return (V) values[i];
+                }
+
+                removed.add((V) values[i]);
+                values[i] = value;
+                writeTimes[i] = now;
+                referenced[i] = true;
+                return value;
+            }
+
+            insert(key, hash, value, now, expireAfterWrite, removed);
+            return value;
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized void put(long key, int hash, V value, long now, long expireAfterWrite, List<V> removed) {
+            int i = indexOf(key, hash);
+            if (i >= 0) {
+                if (values[i] != value) removed.add((V) values[i]);
+                values[i] = value;
+                writeTimes[i] = now;
+                referenced[i] = true;
+                return;
+            }
+
+            insert(key, hash, value, now, expireAfterWrite, removed);
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized V remove(long key, int hash) {
+            int i = indexOf(key, hash);
+            if (i < 0) return null;
+
+            V value = (V) values[i];
+            removeAt(i);
+            return value;
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized void clear(List<V> removed) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    removed.add((V) values[i]);
+                    values[i] = null;
+                }
+            }
+            size = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized void removeExpired(long now, long expireAfterWrite, List<V> removed) {
+            int i = 0;
+            while (i < values.length) {
+                if (values[i] != null && isExpired(i, now, expireAfterWrite)) {
+                    removed.add((V) values[i]);
+                    removeAt(i);
+                    continue; // an entry might have been shifted into this slot, so check it again
+                }
+                i++;
+            }
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private void insert(long key, int hash, V value, long now, long expireAfterWrite, List<V> removed) {
+            if (size >= maxSize) evict(now, expireAfterWrite, removed);
+
+            int i = hash & mask;
+            while (values[i] != null) i = (i + 1) & mask;
+
+            keys[i] = key;
+            values[i] = value;
+            writeTimes[i] = now;
+            referenced[i] = false;
+            size++;
+        }
+
+        /**
+         * Evicts one entry using the CLOCK algorithm: entries that have been accessed since the hand last passed them
+         * get a second chance, expired entries are evicted immediately.
+         */
+        @SuppressWarnings("unchecked")
+        private void evict(long now, long expireAfterWrite, List<V> removed) {
+            while (true) {
+                int i = clockHand;
+                clockHand = (clockHand + 1) & mask;
+
+                if (values[i] == null) continue;
+
+                if (referenced[i] && !isExpired(i, now, expireAfterWrite)) {
+                    referenced[i] = false;
+                    continue;
+                }
+
+                removed.add((V) values[i]);
+                removeAt(i);
+                return;
+            }
+        }
+
+        private int indexOf(long key, int hash) {
+            int i = hash & mask;
+            while (values[i] != null) {
+                if (keys[i] == key) return i;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Removes the entry at the given slot and shifts following entries of the probe-sequence back,
+         * so no tombstones are needed.
+         */
+        private void removeAt(int i) {
+            values[i] = null;
+            size--;
+
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == null) return;
+
+                int home = LongKeyCache.hash(keys[j]) & mask;
+
+                // move the entry at j to the free slot i if i lies cyclically between its home-slot and j
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    writeTimes[i] = writeTimes[j];
+                    referenced[i] = referenced[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        private boolean isExpired(int i, long now, long expireAfterWrite) {
+            return expireAfterWrite > 0 && now - writeTimes[i] >= expireAfterWrite;
+        }
+
+    }
+
+}
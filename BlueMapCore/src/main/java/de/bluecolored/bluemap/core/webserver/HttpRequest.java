@@ -139,8 +139,62 @@ public InputStream getData(){
         return new ByteArrayInputStream(data);
     }
 
+    void setData(byte[] data) {
+        this.data = data;
+    }
+
     public static HttpRequest read(InputStream in) throws IOException, InvalidRequestException {
         BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        HttpRequest request = readHeader(reader);
+
+        if (request.getLowercaseHeader("Transfer-Encoding").contains("chunked")){
+            try {
+                ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+                while (dataStream.size() < 1000000){
+                    String hexSize = reader.readLine();
+                    int chunkSize = Integer.parseInt(hexSize, 16);
+                    if (chunkSize <= 0) break;
+                    byte[] data = new byte[chunkSize];
+                    in.read(data);
+                    dataStream.write(data);
+                }
+
+                if (dataStream.size() >= 1000000) {
+                    throw new InvalidRequestException();
+                }
+
+                request.data = dataStream.toByteArray();
+
+                return request;
+            } catch (NumberFormatException ex){
+                return request;
+            }
+        } else {
+            Set<String> clSet = request.getLowercaseHeader("Content-Length");
+            if (clSet.isEmpty()){
+                return request;
+            } else {
+                try {
+                    int cl = Integer.parseInt(clSet.iterator().next());
+                    byte[] data = new byte[cl];
+                    in.read(data);
+                    request.data = data;
+                    return request;
+                } catch (NumberFormatException ex){
+                    return request;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads only the request-line and the header of a request, the data of the returned request stays empty.
+     */
+    static HttpRequest readHeader(InputStream in) throws IOException, InvalidRequestException {
+        return readHeader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    }
+
+    private static HttpRequest readHeader(BufferedReader reader) throws IOException, InvalidRequestException {
         List<String> header = new ArrayList<>(20);
         while(header.size() < 1000){
             String headerLine = readLine(reader);
@@ -181,46 +235,7 @@ public static HttpRequest read(InputStream in) throws IOException, InvalidReques
             headerMap.put(kv[0].trim(), values);
         }
 
-        HttpRequest request = new HttpRequest(method, address, version, headerMap);
-
-        if (request.getLowercaseHeader("Transfer-Encoding").contains("chunked")){
-            try {
-                ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
-                while (dataStream.size() < 1000000){
-                    String hexSize = reader.readLine();
-                    int chunkSize = Integer.parseInt(hexSize, 16);
-                    if (chunkSize <= 0) break;
-                    byte[] data = new byte[chunkSize];
-                    in.read(data);
-                    dataStream.write(data);
-                }
-
-                if (dataStream.size() >= 1000000) {
-                    throw new InvalidRequestException();
-                }
-
-                request.data = dataStream.toByteArray();
-
-                return request;
-            } catch (NumberFormatException ex){
-                return request;
-            }
-        } else {
-            Set<String> clSet = request.getLowercaseHeader("Content-Length");
-            if (clSet.isEmpty()){
-                return request;
-            } else {
-                try {
-                    int cl = Integer.parseInt(clSet.iterator().next());
-                    byte[] data = new byte[cl];
-                    in.read(data);
-                    request.data = data;
-                    return request;
-                } catch (NumberFormatException ex){
-                    return request;
-                }
-            }
-        }
+        return new HttpRequest(method, address, version, headerMap);
     }
 
     private static String readLine(BufferedReader in) throws ConnectionClosedException, IOException {
@@ -24,9 +24,11 @@
  */
 package de.bluecolored.bluemap.core.webserver;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
@@ -37,6 +39,7 @@ public class HttpResponse implements Closeable {
     private HttpStatusCode statusCode;
     private Map<String, Set<String>> header;
     private InputStream data;
+    private long dataLength;
 
     public HttpResponse(HttpStatusCode statusCode) {
         this.version = "HTTP/1.1";
@@ -59,6 +62,15 @@ public void removeHeader(String key, String value){
 
     public void setData(InputStream dataStream){
         this.data = dataStream;
+        this.dataLength = -1;
+    }
+
+    /**
+     * Sets the data of this response, only the given amount of bytes will be read from the stream and sent.
+     */
+    public void setData(InputStream dataStream, long length){
+        this.data = dataStream;
+        this.dataLength = length;
     }
 
     public void setData(String data){
@@ -71,12 +83,31 @@ public void setData(String data){
      * This method closes the data-Stream of this response so it can't be used again!
      */
     public void write(OutputStream out) throws IOException {
+        long contentLength = getContentLength();
+        writeHead(out, contentLength);
+
+        if(data != null){
+            if (contentLength >= 0) {
+                IOUtils.copyLarge(data, out, 0, contentLength);
+            } else {
+                chunkedPipe(data, out);
+            }
+            out.flush();
+            data.close();
+        }
+    }
+
+    /**
+     * Writes the status-line and the header of this Response to an Output-Stream.<br>
+     * If the content-length is known (&gt;= 0) a Content-Length header is added, otherwise the body is expected to be sent chunked.
+     */
+    void writeHead(OutputStream out, long contentLength) throws IOException {
         OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
 
-        if (data != null){
-            addHeader("Transfer-Encoding", "chunked");
+        if (contentLength >= 0){
+            addHeader("Content-Length", Long.toString(contentLength));
         } else {
-            addHeader("Content-Length", "0");
+            addHeader("Transfer-Encoding", "chunked");
         }
 
         writeLine(writer, version + " " + statusCode.getCode() + " " + statusCode.getMessage());
@@ -87,17 +118,29 @@ public void write(OutputStream out) throws IOException {
 
         writeLine(writer, "");
         writer.flush();
+    }
 
-        if(data != null){
-            chunkedPipe(data, out);
-            out.flush();
-            data.close();
+    /**
+     * Returns the number of bytes the data of this response has left, or -1 if the length is not known in advance
+     */
+    long getContentLength() throws IOException {
+        if (data == null) return 0;
+        if (dataLength >= 0) return dataLength;
+        if (data instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) data).getChannel();
+            return channel.size() - channel.position();
         }
+        if (data instanceof ByteArrayInputStream) return data.available();
+        return -1;
+    }
+
+    InputStream getData() {
+        return data;
     }
 
     @Override
     public void close() throws IOException {
-        data.close();
+        if (data != null) data.close();
     }
 
     private void writeLine(OutputStreamWriter writer, String line) throws IOException {
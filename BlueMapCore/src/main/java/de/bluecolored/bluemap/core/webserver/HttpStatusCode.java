@@ -30,6 +30,8 @@ public enum HttpStatusCode {
     PROCESSING (102, "Processing"),
 
     OK (200, "OK"),
+    NO_CONTENT (204, "No Content"),
+    PARTIAL_CONTENT (206, "Partial Content"),
 
     MOVED_PERMANENTLY (301, "Moved Permanently"),
     FOUND (302, "Found"),
@@ -40,6 +42,8 @@ public enum HttpStatusCode {
     UNAUTHORIZED (401, "Unauthorized"),
     FORBIDDEN (403, "Forbidden"),
     NOT_FOUND (404, "Not Found"),
+    NOT_ACCEPTABLE (406, "Not Acceptable"),
+    RANGE_NOT_SATISFIABLE (416, "Range Not Satisfiable"),
 
     INTERNAL_SERVER_ERROR (500, "Internal Server Error"),
     NOT_IMPLEMENTED (501, "Not Implemented"),
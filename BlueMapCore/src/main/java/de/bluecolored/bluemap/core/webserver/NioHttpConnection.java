@@ -0,0 +1,468 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.webserver;
+
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.webserver.HttpConnection.InvalidRequestException;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A connection of the {@link NioWebServer}.<br>
+ * All methods except {@link #process(HttpRequest)} are only called on the selector-thread.
+ */
+class NioHttpConnection {
+
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_DATA_SIZE = 1000000;
+    private static final int BODY_BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNK_HEADER_SIZE = 10; // 8 hex-digits + CRLF
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private enum State {
+        READING,
+        PROCESSING,
+        WRITING,
+        CLOSED
+    }
+
+    private final NioWebServer server;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final HttpRequestHandler handler;
+    private final boolean verbose;
+
+    private State state;
+    private long lastActivity;
+
+    private ByteBuffer readBuffer;
+
+    private ByteBuffer[] writeBuffers;
+    private InputStream responseData;
+    private long responseDataRemaining;
+    private boolean responseChunked;
+    private FileChannel responseFile;
+    private long responseFilePosition, responseFileEnd;
+    private boolean closeAfterWrite;
+
+    NioHttpConnection(NioWebServer server, SocketChannel channel, SelectionKey key, HttpRequestHandler handler, boolean verbose) {
+        this.server = server;
+        this.channel = channel;
+        this.key = key;
+        this.handler = handler;
+        this.verbose = verbose;
+
+        this.state = State.READING;
+        this.lastActivity = System.currentTimeMillis();
+
+        this.readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    }
+
+    void handleRead() throws IOException {
+        if (state != State.READING) return;
+
+        if (!readBuffer.hasRemaining()) {
+            if (readBuffer.capacity() >= MAX_HEADER_SIZE + MAX_DATA_SIZE) {
+                sendError(HttpStatusCode.BAD_REQUEST);
+                return;
+            }
+            growReadBuffer(readBuffer.capacity() * 2);
+        }
+
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            close();
+            return;
+        }
+
+        lastActivity = System.currentTimeMillis();
+        acceptRequest();
+    }
+
+    void handleWrite() throws IOException {
+        if (state != State.WRITING) return;
+
+        do {
+            while (writeBuffers[0].hasRemaining() || writeBuffers[1].hasRemaining()) {
+                if (channel.write(writeBuffers) <= 0) return;
+                lastActivity = System.currentTimeMillis();
+            }
+        } while (readResponseData(writeBuffers[1]));
+
+        while (responseFile != null && responseFilePosition < responseFileEnd) {
+            long written = responseFile.transferTo(responseFilePosition, responseFileEnd - responseFilePosition, channel);
+            if (written <= 0) return;
+            responseFilePosition += written;
+            lastActivity = System.currentTimeMillis();
+        }
+
+        closeResponse();
+
+        if (closeAfterWrite) {
+            close();
+            return;
+        }
+
+        state = State.READING;
+        key.interestOps(SelectionKey.OP_READ);
+
+        //there might already be a pipelined request waiting
+        acceptRequest();
+    }
+
+    boolean isTimedOut(long now, long timeout) {
+        return state != State.PROCESSING && now - lastActivity > timeout;
+    }
+
+    void close() {
+        if (state == State.CLOSED) return;
+        boolean processing = state == State.PROCESSING;
+        state = State.CLOSED;
+
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Logger.global.logError("Error while closing HttpConnection!", e);
+        }
+
+        //a response that is currently prepared by a worker will be closed in startWrite()
+        if (!processing) closeResponse();
+        server.connectionClosed();
+    }
+
+    private void acceptRequest() throws IOException {
+        byte[] buffer = readBuffer.array();
+        int end = readBuffer.position();
+
+        int headerEnd = indexOf(buffer, 0, end, "\r\n\r\n");
+        if (headerEnd < 0) {
+            if (end >= MAX_HEADER_SIZE) sendError(HttpStatusCode.BAD_REQUEST);
+            return;
+        }
+        headerEnd += 4;
+
+        HttpRequest request;
+        byte[] data;
+        int requestEnd;
+        try {
+            request = HttpRequest.readHeader(new ByteArrayInputStream(buffer, 0, headerEnd));
+
+            if (request.getLowercaseHeader("Transfer-Encoding").contains("chunked")) {
+                ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+                requestEnd = readChunked(buffer, headerEnd, end, dataStream);
+                if (requestEnd < 0) return;
+                data = dataStream.toByteArray();
+            } else {
+                int contentLength = 0;
+                String contentLengthString = getFirst(request, "Content-Length");
+                if (contentLengthString != null) {
+                    try {
+                        contentLength = Integer.parseInt(contentLengthString);
+                    } catch (NumberFormatException ex) {
+                        throw new InvalidRequestException();
+                    }
+                }
+                if (contentLength < 0 || contentLength >= MAX_DATA_SIZE) throw new InvalidRequestException();
+
+                requestEnd = headerEnd + contentLength;
+                if (requestEnd > end) {
+                    if (requestEnd > readBuffer.capacity()) growReadBuffer(requestEnd);
+                    return;
+                }
+
+                data = new byte[contentLength];
+                System.arraycopy(buffer, headerEnd, data, 0, contentLength);
+            }
+        } catch (InvalidRequestException ex) {
+            sendError(HttpStatusCode.BAD_REQUEST);
+            return;
+        }
+
+        request.setData(data);
+
+        //remove the request from the buffer
+        readBuffer.flip();
+        readBuffer.position(requestEnd);
+        readBuffer.compact();
+
+        closeAfterWrite = !isKeepAlive(request);
+
+        state = State.PROCESSING;
+        key.interestOps(0);
+
+        try {
+            server.process(() -> process(request));
+        } catch (RejectedExecutionException ex) {
+            close();
+        }
+    }
+
+    /**
+     * Processes the request and prepares the response, this is called on a worker-thread
+     */
+    private void process(HttpRequest request) {
+        HttpResponse response;
+        try {
+            response = handler.handle(request);
+        } catch (RuntimeException ex) {
+            Logger.global.logError("Unexpected error while processing a HttpRequest!", ex);
+            response = new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
+        }
+
+        if (verbose) log(request, response);
+
+        prepareResponse(response);
+        server.runOnSelector(this::startWrite);
+    }
+
+    private void sendError(HttpStatusCode statusCode) {
+        closeAfterWrite = true;
+        prepareResponse(new HttpResponse(statusCode));
+        startWrite();
+    }
+
+    private void prepareResponse(HttpResponse response) {
+        if (closeAfterWrite) {
+            response.removeHeader("Connection", "keep-alive");
+            response.addHeader("Connection", "close");
+        }
+
+        ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+        ByteBuffer body = ByteBuffer.allocate(0);
+        try {
+            InputStream data = response.getData();
+            if (data instanceof FileInputStream) {
+                FileChannel file = ((FileInputStream) data).getChannel();
+                responseData = data;
+                responseFile = file;
+                responseFilePosition = file.position();
+                responseFileEnd = responseFilePosition + response.getContentLength();
+                response.writeHead(head, responseFileEnd - responseFilePosition);
+            } else if (data != null) {
+                responseData = data;
+                responseDataRemaining = response.getContentLength();
+                responseChunked = responseDataRemaining < 0;
+                response.writeHead(head, responseDataRemaining);
+
+                body = ByteBuffer.allocate(CHUNK_HEADER_SIZE + BODY_BUFFER_SIZE + CRLF.length + LAST_CHUNK.length);
+                body.limit(0);
+                readResponseData(body);
+            } else {
+                response.writeHead(head, 0);
+            }
+        } catch (IOException ex) {
+            Logger.global.logError("Unexpected error while processing a HttpRequest!", ex);
+            closeResponse();
+            closeAfterWrite = true;
+
+            head.reset();
+            body = ByteBuffer.allocate(0);
+            HttpResponse errorResponse = new HttpResponse(HttpStatusCode.INTERNAL_SERVER_ERROR);
+            errorResponse.removeHeader("Connection", "keep-alive");
+            errorResponse.addHeader("Connection", "close");
+            try {
+                errorResponse.writeHead(head, 0);
+            } catch (IOException ignore) {}
+        }
+
+        writeBuffers = new ByteBuffer[]{ ByteBuffer.wrap(head.toByteArray()), body };
+    }
+
+    /**
+     * Reads the next part of a streamed (non-file) response-body into the body-buffer.<br>
+     * The first part is read by the worker preparing the response, so most responses are sent without reading
+     * on the selector-thread. A body with an unknown length is sent chunked.
+     * @return true if data has been read, false if the body is complete
+     */
+    private boolean readResponseData(ByteBuffer body) throws IOException {
+        if (responseData == null || responseFile != null) return false;
+
+        int length = BODY_BUFFER_SIZE;
+        if (!responseChunked) length = (int) Math.min(responseDataRemaining, length);
+
+        byte[] buffer = body.array();
+        int dataStart = responseChunked ? CHUNK_HEADER_SIZE : 0;
+        int read = length > 0 ? IOUtils.read(responseData, buffer, dataStart, length) : 0;
+        boolean complete = read < length || (!responseChunked && responseDataRemaining == read);
+
+        if (!responseChunked) {
+            if (read < length) throw new EOFException("The response-data ended before its content-length was reached!");
+            responseDataRemaining -= read;
+            body.clear();
+            body.limit(read);
+        } else {
+            int start = dataStart, end = dataStart;
+            if (read > 0) {
+                byte[] chunkHeader = (Integer.toHexString(read) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                start -= chunkHeader.length;
+                System.arraycopy(chunkHeader, 0, buffer, start, chunkHeader.length);
+                end += read;
+                System.arraycopy(CRLF, 0, buffer, end, CRLF.length);
+                end += CRLF.length;
+            }
+            if (complete) {
+                System.arraycopy(LAST_CHUNK, 0, buffer, end, LAST_CHUNK.length);
+                end += LAST_CHUNK.length;
+            }
+            body.clear();
+            body.position(start);
+            body.limit(end);
+        }
+
+        if (complete) {
+            responseData.close();
+            responseData = null;
+        }
+
+        return body.hasRemaining();
+    }
+
+    private void startWrite() {
+        if (state == State.CLOSED) {
+            closeResponse();
+            return;
+        }
+
+        state = State.WRITING;
+        lastActivity = System.currentTimeMillis();
+
+        try {
+            key.interestOps(SelectionKey.OP_WRITE);
+            handleWrite();
+        } catch (IOException | RuntimeException ex) {
+            close();
+        }
+    }
+
+    private void closeResponse() {
+        if (responseData != null) {
+            try {
+                responseData.close();
+            } catch (IOException ignore) {}
+        }
+
+        responseData = null;
+        responseFile = null;
+        writeBuffers = null;
+    }
+
+    private void growReadBuffer(int capacity) {
+        ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+        readBuffer.flip();
+        newBuffer.put(readBuffer);
+        readBuffer = newBuffer;
+    }
+
+    private void log(HttpRequest request, HttpResponse response) {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
+        Date date = new Date();
+        Logger.global.logInfo(
+                channel.socket().getInetAddress().toString()
+                + " [ "
+                + dateFormat.format(date)
+                + " ] \""
+                + request.getMethod()
+                + " " + request.getPath()
+                + " " + request.getVersion()
+                + "\" "
+                + response.getStatusCode().toString());
+    }
+
+    private static boolean isKeepAlive(HttpRequest request) {
+        if (request.getLowercaseHeader("Connection").contains("close")) return false;
+        if (request.getVersion().equalsIgnoreCase("HTTP/1.0")) return request.getLowercaseHeader("Connection").contains("keep-alive");
+        return true;
+    }
+
+    private static String getFirst(HttpRequest request, String header) {
+        for (String value : request.getLowercaseHeader(header)) return value;
+        return null;
+    }
+
+    /**
+     * Decodes a chunked request-body.
+     * @return the index after the end of the request or -1 if the request is not complete yet
+     */
+    private static int readChunked(byte[] buffer, int start, int end, ByteArrayOutputStream out) throws InvalidRequestException {
+        int position = start;
+        while (true) {
+            int lineEnd = indexOf(buffer, position, end, "\r\n");
+            if (lineEnd < 0) return -1;
+
+            String sizeString = new String(buffer, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int extensionIndex = sizeString.indexOf(';');
+            if (extensionIndex >= 0) sizeString = sizeString.substring(0, extensionIndex);
+
+            int chunkSize;
+            try {
+                chunkSize = Integer.parseInt(sizeString.trim(), 16);
+            } catch (NumberFormatException ex) {
+                throw new InvalidRequestException();
+            }
+            if (chunkSize < 0 || out.size() + chunkSize >= MAX_DATA_SIZE) throw new InvalidRequestException();
+
+            position = lineEnd + 2;
+
+            if (chunkSize == 0) {
+                //skip the trailer
+                while (true) {
+                    lineEnd = indexOf(buffer, position, end, "\r\n");
+                    if (lineEnd < 0) return -1;
+                    if (lineEnd == position) return lineEnd + 2;
+                    position = lineEnd + 2;
+                }
+            }
+
+            if (position + chunkSize + 2 > end) return -1;
+            out.write(buffer, position, chunkSize);
+            position += chunkSize + 2;
+        }
+    }
+
+    private static int indexOf(byte[] buffer, int start, int end, String sequence) {
+        outer:
+        for (int i = start; i <= end - sequence.length(); i++) {
+            for (int j = 0; j < sequence.length(); j++) {
+                if (buffer[i + j] != sequence.charAt(j)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.webserver;
+
+import de.bluecolored.bluemap.core.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking {@link HttpServer} that handles all connections on a single selector-thread.<br>
+ * Idle keep-alive connections don't occupy a thread, only the processing of a request is done on a small pool of worker-threads.
+ * Responses with a file as data are sent using {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ */
+@DebugDump
+public class NioWebServer extends Thread implements HttpServer {
+
+    private static final long KEEP_ALIVE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final AtomicInteger nextServerIndex = new AtomicInteger(0);
+
+    private final int port;
+    private final int maxConnections;
+    private final InetAddress bindAddress;
+    private final boolean verbose;
+
+    private final HttpRequestHandler handler;
+    private final int workerCount;
+
+    private final Queue<Runnable> selectorTasks;
+
+    private ExecutorService workers;
+    private Selector selector;
+    private ServerSocketChannel server;
+
+    private int connectionCount;
+
+    public NioWebServer(InetAddress bindAddress, int port, int maxConnections, HttpRequestHandler handler) {
+        this(bindAddress, port, maxConnections, handler, false);
+    }
+
+    public NioWebServer(InetAddress bindAddress, int port, int maxConnections, HttpRequestHandler handler, boolean verbose) {
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.bindAddress = bindAddress;
+        this.verbose = verbose;
+
+        this.handler = handler;
+        this.workerCount = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        this.selectorTasks = new ConcurrentLinkedQueue<>();
+
+        this.setName("BlueMap-WebServer-" + nextServerIndex.getAndIncrement());
+    }
+
+    @Override
+    public synchronized void start() {
+        close();
+
+        String name = getName();
+        AtomicInteger nextThreadIndex = new AtomicInteger(0);
+        workers = new ThreadPoolExecutor(
+                workerCount, workerCount,
+                10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-Worker-" + nextThreadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        ((ThreadPoolExecutor) workers).allowCoreThreadTimeOut(true);
+
+        try {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(bindAddress, port), maxConnections);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e){
+            Logger.global.logError("Error while starting the WebServer!", e);
+            close();
+            return;
+        }
+
+        super.start();
+    }
+
+    @Override
+    public void run(){
+        if (server == null) return;
+
+        Logger.global.logInfo("WebServer started.");
+
+        long nextTimeoutCheck = System.currentTimeMillis() + 1000;
+        try {
+            while (server.isOpen()) {
+                selector.select(1000);
+
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) task.run();
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    NioHttpConnection connection = (NioHttpConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) connection.handleRead();
+                        if (key.isValid() && key.isWritable()) connection.handleWrite();
+                    } catch (IOException e) {
+                        connection.close();
+                    } catch (CancelledKeyException ignore) {}
+                }
+
+                long now = System.currentTimeMillis();
+                if (now >= nextTimeoutCheck) {
+                    nextTimeoutCheck = now + 1000;
+                    for (SelectionKey key : selector.keys()) {
+                        if (!(key.attachment() instanceof NioHttpConnection)) continue;
+                        NioHttpConnection connection = (NioHttpConnection) key.attachment();
+                        if (connection.isTimedOut(now, KEEP_ALIVE_TIMEOUT)) connection.close();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException ignore) {
+            // the server got closed
+        } catch (IOException e) {
+            Logger.global.logError("Unexpected error in the WebServer!", e);
+        } finally {
+            closeSelector();
+        }
+
+        Logger.global.logInfo("WebServer closed.");
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = server.accept();
+            if (channel == null) return;
+
+            if (connectionCount >= maxConnections) {
+                channel.close();
+                Logger.global.logWarning("Dropped an incoming HttpConnection! (Too many connections?)");
+                return;
+            }
+
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new NioHttpConnection(this, channel, key, handler, verbose));
+            connectionCount++;
+        } catch (IOException e) {
+            Logger.global.logError("Error while creating a new HttpConnection!", e);
+        }
+    }
+
+    /**
+     * Called (on the selector-thread) by a connection that has been closed
+     */
+    void connectionClosed() {
+        connectionCount--;
+    }
+
+    /**
+     * Processes a request on one of the worker-threads
+     */
+    void process(Runnable task) throws RejectedExecutionException {
+        workers.execute(task);
+    }
+
+    /**
+     * Runs the task on the selector-thread as soon as possible
+     */
+    void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+
+        Selector selector = this.selector;
+        if (selector != null) selector.wakeup();
+    }
+
+    private void closeSelector() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioHttpConnection) {
+                    ((NioHttpConnection) key.attachment()).close();
+                }
+            }
+            selector.close();
+        } catch (ClosedSelectorException ignore) {
+        } catch (IOException e) {
+            Logger.global.logError("Error while closing WebServer!", e);
+        }
+    }
+
+    @Override
+    public synchronized void close(){
+        if (workers != null) workers.shutdown();
+
+        try {
+            if (server != null && server.isOpen()){
+                server.close();
+            }
+        } catch (IOException e) {
+            Logger.global.logError("Error while closing WebServer!", e);
+        }
+
+        if (selector != null) {
+            if (isAlive()) {
+                selector.wakeup();
+            } else {
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    Logger.global.logError("Error while closing WebServer!", e);
+                }
+            }
+        }
+    }
+
+}
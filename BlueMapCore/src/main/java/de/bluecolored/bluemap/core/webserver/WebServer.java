@@ -35,7 +35,7 @@
 import java.util.concurrent.*;
 
 @DebugDump
-public class WebServer extends Thread {
+public class WebServer extends Thread implements HttpServer {
 
     private final int port;
     private final int maxConnections;
@@ -111,6 +111,7 @@ public void run(){
         Logger.global.logInfo("WebServer closed.");
     }
 
+    @Override
     public synchronized void close(){
         if (connectionThreads != null) connectionThreads.shutdown();
 
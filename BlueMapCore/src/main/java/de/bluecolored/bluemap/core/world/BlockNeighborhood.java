@@ -37,6 +37,8 @@
 
     private int thisIndex;
 
+    private OcclusionMap occlusionMap;
+
     public BlockNeighborhood(ExtendedBlock<?> center) {
         super(center.getResourcePack(), center.getRenderSettings(), null, 0, 0, 0);
         copy(center);
@@ -77,6 +79,42 @@ public ExtendedBlock<?> getNeighborBlock(int dx, int dy, int dz) {
         );
     }
 
+    /**
+     * Returns if the neighbor-block at this offset is culling, using the {@link OcclusionMap} if one is set and contains the block
+     */
+    public boolean isNeighborCulling(int dx, int dy, int dz) {
+        if (occlusionMap != null) {
+            int x = getX() + dx, y = getY() + dy, z = getZ() + dz;
+            if (occlusionMap.contains(x, y, z)) return occlusionMap.isCulling(x, y, z);
+        }
+
+        return getNeighborBlock(dx, dy, dz).getProperties().isCulling();
+    }
+
+    /**
+     * Returns if the neighbor-block at this offset is occluding, using the {@link OcclusionMap} if one is set and contains the block
+     */
+    public boolean isNeighborOccluding(int dx, int dy, int dz) {
+        if (occlusionMap != null) {
+            int x = getX() + dx, y = getY() + dy, z = getZ() + dz;
+            if (occlusionMap.contains(x, y, z)) return occlusionMap.isOccluding(x, y, z);
+        }
+
+        return getNeighborBlock(dx, dy, dz).getProperties().isOccluding();
+    }
+
+    public OcclusionMap getOcclusionMap() {
+        return occlusionMap;
+    }
+
+    /**
+     * Sets an {@link OcclusionMap} that has been built for the same world as this block,
+     * or <code>null</code> to always look up the neighbor-blocks
+     */
+    public void setOcclusionMap(OcclusionMap occlusionMap) {
+        this.occlusionMap = occlusionMap;
+    }
+
     private int thisIndex() {
         if (thisIndex == -1) thisIndex = neighborIndex(0, 0, 0);
         return thisIndex;
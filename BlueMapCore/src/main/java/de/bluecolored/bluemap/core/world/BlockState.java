@@ -42,11 +42,12 @@ public class BlockState {
 
     private static final Pattern BLOCKSTATE_SERIALIZATION_PATTERN = Pattern.compile("^(.+?)(?:\\[(.*)])?$");
 
-    public static final BlockState AIR = new BlockState("minecraft:air");
-    public static final BlockState MISSING = new BlockState("bluemap:missing");
+    public static final BlockState AIR = new BlockState("minecraft:air").intern();
+    public static final BlockState MISSING = new BlockState("bluemap:missing").intern();
 
     private boolean hashed;
     private int hash;
+    private int stateId;
 
     private final String namespace;
     private final String id;
@@ -62,6 +63,7 @@ public BlockState(String id) {
     public BlockState(String id, Map<String, String> properties) {
         this.hashed = false;
         this.hash = 0;
+        this.stateId = -1;
 
         //this.properties = Collections.unmodifiableMap(new HashMap<>(properties)); // <- not doing this to reduce object-creation
         this.properties = properties;
@@ -136,12 +138,33 @@ public boolean isWaterlogged() {
         return isWaterlogged;
     }
 
+    /**
+     * The id of this blockstate in the {@link BlockStateRegistry},
+     * or <code>-1</code> if this is not an interned instance.
+     */
+    public int getStateId() {
+        return stateId;
+    }
+
+    void setStateId(int stateId) {
+        this.stateId = stateId;
+    }
+
+    /**
+     * Returns the canonical instance of this blockstate.
+     * @see BlockStateRegistry#intern(BlockState)
+     */
+    public BlockState intern() {
+        return BlockStateRegistry.intern(this);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
 
         if (!(obj instanceof BlockState)) return false;
         BlockState b = (BlockState) obj;
+        if (stateId >= 0 && b.stateId >= 0) return false; // interned states are only equal to themselves
         if (!Objects.equals(getFullId(), b.getFullId())) return false;
         return Objects.equals(getProperties(), b.getProperties());
     }
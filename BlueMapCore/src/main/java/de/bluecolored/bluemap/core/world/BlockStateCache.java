@@ -0,0 +1,103 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A cache that computes a value once per {@link BlockState}.<br>
+ * Values for interned states (see {@link BlockStateRegistry}) are stored in an array indexed by their state-id,
+ * so a lookup is a single array-read instead of hashing and comparing the state.
+ * Values of not interned states are kept in a small fallback-map.<br>
+ * <br>
+ * <i>The implementation of this class is thread-save!</i><br>
+ */
+public class BlockStateCache<V> {
+
+    private static final int MAX_FALLBACK_SIZE = 10000;
+
+    private final Function<BlockState, V> loader;
+
+    private volatile AtomicReferenceArray<V> values;
+    private final Map<BlockState, V> fallback;
+
+    public BlockStateCache(Function<BlockState, V> loader) {
+        this.loader = loader;
+
+        this.values = new AtomicReferenceArray<>(Math.max(BlockStateRegistry.size(), 256));
+        this.fallback = new ConcurrentHashMap<>();
+    }
+
+    public V get(BlockState state) {
+        int id = state.getStateId();
+        if (id < 0) return getFallback(state);
+
+        AtomicReferenceArray<V> values = this.values;
+        if (id < values.length()) {
+            V value = values.get(id);
+            if (value != null) return value;
+        }
+
+        V value = loader.apply(state);
+        if (value == null) return null;
+
+        synchronized (this) {
+            values = this.values;
+            if (id >= values.length()) {
+                AtomicReferenceArray<V> grown = new AtomicReferenceArray<>(Math.max(values.length() * 2, id + 1));
+                for (int i = 0; i < values.length(); i++) grown.set(i, values.get(i));
+                this.values = values = grown;
+            }
+
+            if (!values.compareAndSet(id, null, value)) value = values.get(id);
+        }
+
+        return value;
+    }
+
+    /**
+     * Removes all cached values
+     */
+    public synchronized void clear() {
+        this.values = new AtomicReferenceArray<>(Math.max(BlockStateRegistry.size(), 256));
+        this.fallback.clear();
+    }
+
+    private V getFallback(BlockState state) {
+        V value = fallback.get(state);
+        if (value != null) return value;
+
+        value = loader.apply(state);
+        if (value == null) return null;
+
+        if (fallback.size() >= MAX_FALLBACK_SIZE) fallback.clear();
+        fallback.put(state, value);
+        return value;
+    }
+
+}
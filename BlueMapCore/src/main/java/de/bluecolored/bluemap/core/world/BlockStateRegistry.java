@@ -0,0 +1,99 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A global registry that maps each distinct {@link BlockState} to one canonical instance.<br>
+ * Each canonical instance gets a small integer id that stays the same for the lifetime of this process,
+ * so caches can use arrays indexed by {@link BlockState#getStateId()} instead of hash-maps.<br>
+ * <br>
+ * The registry is bounded to {@link #MAX_SIZE} states. Once it is full, {@link #intern(BlockState)} returns the
+ * given state unchanged (without an id), so a world with broken block-data can not exhaust the memory.<br>
+ * <br>
+ * <i>The implementation of this class is thread-save!</i><br>
+ */
+public final class BlockStateRegistry {
+
+    public static final int MAX_SIZE = 0x10000;
+
+    private static final Map<BlockState, BlockState> STATES = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+
+    private static volatile BlockState[] statesById = new BlockState[256];
+    private static volatile int size = 0;
+
+    private BlockStateRegistry() {}
+
+    /**
+     * Returns the canonical instance that is equal to the given {@link BlockState}.<br>
+     * If there is none yet, the given state becomes the canonical instance and gets a new id.
+     */
+    public static BlockState intern(BlockState state) {
+        if (state.getStateId() >= 0) return state;
+
+        BlockState interned = STATES.get(state);
+        if (interned != null) return interned;
+
+        synchronized (LOCK) {
+            interned = STATES.get(state);
+            if (interned != null) return interned;
+
+            int id = size;
+            if (id >= MAX_SIZE) return state;
+
+            BlockState[] byId = statesById;
+            if (id >= byId.length) byId = Arrays.copyOf(byId, Math.min(byId.length * 2, MAX_SIZE));
+            byId[id] = state;
+
+            state.setStateId(id);
+            statesById = byId;
+            size = id + 1;
+
+            STATES.put(state, state);
+            return state;
+        }
+    }
+
+    /**
+     * Returns the canonical {@link BlockState} with the given id, or <code>null</code> if there is no state with that id.
+     */
+    public static BlockState get(int id) {
+        BlockState[] byId = statesById;
+        if (id < 0 || id >= size || id >= byId.length) return null;
+        return byId[id];
+    }
+
+    /**
+     * The amount of interned {@link BlockState}s, all ids are lower than this value.
+     */
+    public static int size() {
+        return size;
+    }
+
+}
@@ -30,6 +30,14 @@ public interface Chunk {
 
     int getDataVersion();
 
+    /**
+     * Returns a digest of all data of this chunk that changes how it is rendered.<br>
+     * If the digest of a chunk did not change, the chunk will look the same. 0 means that the digest is unknown.
+     */
+    default long getContentDigest() {
+        return 0;
+    }
+
     BlockState getBlockState(int x, int y, int z);
 
     LightData getLightData(int x, int y, int z, LightData target);
@@ -0,0 +1,130 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
+
+import java.util.Arrays;
+
+/**
+ * A dense bit-set of the "culling" and "occluding" {@link BlockProperties} of all blocks in a box.<br>
+ * It is built once for the whole area of a tile (plus a one-block border), so that face-culling and ambient-occlusion
+ * checks do not need to look up the neighbor-blocks and their properties one by one.<br>
+ * <br>
+ * <i>This class is not thread-save!</i>
+ */
+public class OcclusionMap {
+
+    private static final long[] EMPTY = new long[0];
+
+    private int minX, minY, minZ;
+    private int sizeX, sizeY, sizeZ;
+
+    private long[] culling = EMPTY;
+    private long[] occluding = EMPTY;
+
+    /**
+     * (Re-)builds this map for all blocks from min (inclusive) to max (inclusive).<br>
+     * The flags are the same as {@link ExtendedBlock#getProperties()} would return for each block.
+     */
+    public OcclusionMap build(ResourcePack resourcePack, RenderSettings renderSettings, World world,
+                              int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = Math.max(maxX - minX + 1, 0);
+        this.sizeY = Math.max(maxY - minY + 1, 0);
+        this.sizeZ = Math.max(maxZ - minZ + 1, 0);
+
+        int longs = (int) (((long) sizeX * sizeY * sizeZ + 63) >> 6);
+        if (culling.length < longs) {
+            culling = new long[longs];
+            occluding = new long[longs];
+        } else {
+            Arrays.fill(culling, 0, longs, 0L);
+            Arrays.fill(occluding, 0, longs, 0L);
+        }
+
+        boolean renderEdges = renderSettings.isRenderEdges();
+        BlockState lastState = null;
+        BlockProperties lastProperties = null;
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                Chunk chunk = world.getChunkAtBlock(x, 0, z);
+                int index = index(x, minY, z);
+
+                for (int y = minY; y <= maxY; y++, index++) {
+                    BlockState state;
+                    if (renderEdges && !renderSettings.isInsideRenderBoundaries(x, y, z)) state = BlockState.AIR;
+                    else state = chunk.getBlockState(x, y, z);
+
+                    if (state != lastState) {
+                        lastState = state;
+                        lastProperties = resourcePack.getBlockProperties(state);
+                    }
+
+                    if (lastProperties.isCulling()) culling[index >> 6] |= 1L << index;
+                    if (lastProperties.isOccluding()) occluding[index >> 6] |= 1L << index;
+                }
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns <code>true</code> if the block at this position is part of this map
+     */
+    public boolean contains(int x, int y, int z) {
+        x -= minX; y -= minY; z -= minZ;
+        return
+                x >= 0 && x < sizeX &&
+                y >= 0 && y < sizeY &&
+                z >= 0 && z < sizeZ;
+    }
+
+    /**
+     * Returns if the block at this position is culling, the position must be {@link #contains(int, int, int) contained} in this map
+     */
+    public boolean isCulling(int x, int y, int z) {
+        int index = index(x, y, z);
+        return (culling[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns if the block at this position is occluding, the position must be {@link #contains(int, int, int) contained} in this map
+     */
+    public boolean isOccluding(int x, int y, int z) {
+        int index = index(x, y, z);
+        return (occluding[index >> 6] & (1L << index)) != 0;
+    }
+
+    private int index(int x, int y, int z) {
+        return ((x - minX) * sizeZ + (z - minZ)) * sizeY + (y - minY);
+    }
+
+}
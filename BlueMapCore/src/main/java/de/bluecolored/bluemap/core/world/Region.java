@@ -29,6 +29,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
 
 public interface Region {
 
@@ -44,7 +45,15 @@ default Collection<Vector2i> listChunks(){
      * Returns a collection of all chunks that have been modified at or after the specified timestamp.<br>
      * <i>(Be aware that the collection is not cached and recollected each time from the world-files!)</i>
      */
-    Collection<Vector2i> listChunks(long modifiedSince);
+    default Collection<Vector2i> listChunks(long modifiedSince) {
+        return getChunkModificationTimes(modifiedSince).keySet();
+    }
+
+    /**
+     * Returns the time (in milliseconds) when each chunk that has been modified at or after the specified timestamp has been modified the last time.<br>
+     * <i>(Be aware that the map is not cached and recollected each time from the world-files!)</i>
+     */
+    Map<Vector2i, Long> getChunkModificationTimes(long modifiedSince);
 
     default Chunk loadChunk(int chunkX, int chunkZ) throws IOException {
         return loadChunk(chunkX, chunkZ, false);
@@ -0,0 +1,60 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+public interface WorldCacheSettings {
+
+    WorldCacheSettings DEFAULT = new WorldCacheSettings() {};
+
+    /**
+     * The maximum amount of chunks that are kept in memory per world
+     */
+    default int getChunkCacheSize() {
+        return 500;
+    }
+
+    /**
+     * The maximum amount of region-files that are kept open per world
+     */
+    default int getRegionCacheSize() {
+        return 100;
+    }
+
+    /**
+     * The time in milliseconds after which a cached chunk or region is reloaded from disk
+     */
+    default long getCacheExpireMillis() {
+        return 60000;
+    }
+
+    /**
+     * If <code>true</code>, the block-data of each chunk-section is unpacked once when a chunk is loaded
+     * into a palette-index per block. This makes block-lookups faster, but cached chunks use more memory.
+     */
+    default boolean isFlattenChunkSections() {
+        return false;
+    }
+
+}
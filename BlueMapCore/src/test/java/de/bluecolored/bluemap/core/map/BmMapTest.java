@@ -0,0 +1,297 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.storage.FileStorage;
+import de.bluecolored.bluemap.core.storage.TileFormat;
+import de.bluecolored.bluemap.core.world.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BmMapTest {
+
+    // with a tile-size of 15 (and the tile-offset of 2) the blocks of tile (1, 1) are all in chunk (1, 1),
+    // but its render-border reaches into the chunks 0 to 2
+    private static final Vector2i TILE = new Vector2i(1, 1);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testTileContentDigest() throws IOException {
+        TestWorld world = new TestWorld();
+        for (int x = 0; x <= 2; x++) {
+            for (int z = 0; z <= 2; z++) {
+                world.chunkDigests.put(new Vector2i(x, z), 100L + x * 10 + z);
+            }
+        }
+
+        BmMap map = createMap(world, resourcePack("test"), new TestMapSettings(0.5f));
+        long digest = map.getTileContentDigest(TILE);
+        assertNotEquals(0, digest);
+        assertNotEquals(BmMap.TILE_NOT_GENERATED, digest);
+        assertEquals(digest, map.getTileContentDigest(TILE));
+
+        // chunks that are only read for the border of the tile
+        world.chunkDigests.put(new Vector2i(0, 1), 1L);
+        long borderChanged = map.getTileContentDigest(TILE);
+        assertNotEquals(digest, borderChanged);
+
+        world.chunkDigests.remove(new Vector2i(2, 2));
+        long borderNotGenerated = map.getTileContentDigest(TILE);
+        assertNotEquals(BmMap.TILE_NOT_GENERATED, borderNotGenerated);
+        assertNotEquals(borderChanged, borderNotGenerated);
+
+        world.chunkDigests.put(new Vector2i(2, 2), 0L);
+        assertEquals(0, map.getTileContentDigest(TILE));
+
+        // chunks outside of the tile and its border
+        world.chunkDigests.put(new Vector2i(2, 2), 122L);
+        world.chunkDigests.put(new Vector2i(0, 1), 101L);
+        world.chunkDigests.put(new Vector2i(3, 1), 0L);
+        world.chunkDigests.remove(new Vector2i(1, 3));
+        assertEquals(digest, map.getTileContentDigest(TILE));
+
+        world.chunkDigests.remove(new Vector2i(1, 1));
+        assertEquals(BmMap.TILE_NOT_GENERATED, map.getTileContentDigest(TILE));
+    }
+
+    @Test
+    public void testRenderFingerprint() throws IOException {
+        TestWorld world = new TestWorld();
+        for (int x = 0; x <= 2; x++) {
+            for (int z = 0; z <= 2; z++) {
+                world.chunkDigests.put(new Vector2i(x, z), 100L + x * 10 + z);
+            }
+        }
+
+        long digest = createMap(world, resourcePack("test"), new TestMapSettings(0.5f)).getTileContentDigest(TILE);
+        assertEquals(digest, createMap(world, resourcePack("test"), new TestMapSettings(0.5f)).getTileContentDigest(TILE));
+
+        assertNotEquals(digest, createMap(world, resourcePack("other"), new TestMapSettings(0.5f)).getTileContentDigest(TILE));
+        assertNotEquals(digest, createMap(world, resourcePack("test"), new TestMapSettings(1f)).getTileContentDigest(TILE));
+
+        // the tiles can not be skipped if the resources are unknown
+        assertEquals(0, createMap(world, new ResourcePack(), new TestMapSettings(0.5f)).getTileContentDigest(TILE));
+    }
+
+    private BmMap createMap(World world, ResourcePack resourcePack, MapSettings settings) throws IOException {
+        return new BmMap("map", "Map", world, new FileStorage(tempDir, Compression.GZIP), resourcePack, settings);
+    }
+
+    private static ResourcePack resourcePack(String sourcesHash) {
+        ResourcePack resourcePack = new ResourcePack();
+        resourcePack.setSourcesHash(sourcesHash);
+        return resourcePack;
+    }
+
+    private static class TestMapSettings implements MapSettings {
+
+        private final float ambientLight;
+
+        public TestMapSettings(float ambientLight) {
+            this.ambientLight = ambientLight;
+        }
+
+        @Override
+        public int getHiresTileSize() {
+            return 15;
+        }
+
+        @Override
+        public TileFormat getHiresTileFormat() {
+            return TileFormat.JSON;
+        }
+
+        @Override
+        public int getLowresPointsPerLowresTile() {
+            return 50;
+        }
+
+        @Override
+        public int getLowresPointsPerHiresTile() {
+            return 5;
+        }
+
+        @Override
+        public int getRemoveCavesBelowY() {
+            return 55;
+        }
+
+        @Override
+        public boolean isCaveDetectionUsesBlockLight() {
+            return false;
+        }
+
+        @Override
+        public float getAmbientLight() {
+            return ambientLight;
+        }
+
+        @Override
+        public int getWorldSkyLight() {
+            return 15;
+        }
+
+    }
+
+    /**
+     * A world of empty chunks with the given content-digests, chunks without a digest are not generated
+     */
+    private static class TestWorld implements World {
+
+        private final Map<Vector2i, Long> chunkDigests = new HashMap<>();
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public UUID getUUID() {
+            return new UUID(0, 0);
+        }
+
+        @Override
+        public Path getSaveFolder() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getSkyLight() {
+            return 15;
+        }
+
+        @Override
+        public Vector3i getSpawnPoint() {
+            return Vector3i.ZERO;
+        }
+
+        @Override
+        public int getMaxY(int x, int z) {
+            return 255;
+        }
+
+        @Override
+        public int getMinY(int x, int z) {
+            return 0;
+        }
+
+        @Override
+        public Grid getChunkGrid() {
+            return new Grid(16);
+        }
+
+        @Override
+        public Grid getRegionGrid() {
+            return new Grid(512);
+        }
+
+        @Override
+        public Chunk getChunkAtBlock(int x, int y, int z) {
+            return getChunk(Math.floorDiv(x, 16), Math.floorDiv(z, 16));
+        }
+
+        @Override
+        public Chunk getChunk(int x, int z) {
+            Long digest = chunkDigests.get(new Vector2i(x, z));
+
+            return new Chunk() {
+
+                @Override
+                public boolean isGenerated() {
+                    return digest != null;
+                }
+
+                @Override
+                public long getContentDigest() {
+                    return digest != null ? digest : 0;
+                }
+
+                @Override
+                public int getDataVersion() {
+                    return 0;
+                }
+
+                @Override
+                public BlockState getBlockState(int x, int y, int z) {
+                    return BlockState.AIR;
+                }
+
+                @Override
+                public LightData getLightData(int x, int y, int z, LightData target) {
+                    return target.set(15, 0);
+                }
+
+                @Override
+                public String getBiome(int x, int y, int z) {
+                    return "minecraft:plains";
+                }
+
+                @Override
+                public int getMaxY(int x, int z) {
+                    return 255;
+                }
+
+                @Override
+                public int getMinY(int x, int z) {
+                    return 0;
+                }
+
+            };
+        }
+
+        @Override
+        public Region getRegion(int x, int z) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<Vector2i> listRegions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void invalidateChunkCache() {}
+
+        @Override
+        public void invalidateChunkCache(int x, int z) {}
+
+        @Override
+        public void cleanUpChunkCache() {}
+
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapRenderStateTest {
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        MapRenderState state = new MapRenderState();
+        state.setRenderTime(new Vector2i(1, -2), 5000);
+        state.setTileRenderTime(new Vector2i(-1, -33), 1234567);
+        state.setTileRenderTime(new Vector2i(40, 0), 2000000);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        state.save(out);
+
+        MapRenderState loaded = new MapRenderState();
+        loaded.load(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(5000, loaded.getRenderTime(new Vector2i(1, -2)));
+        assertEquals(1234000, loaded.getTileRenderTime(new Vector2i(-1, -33)));
+        assertEquals(2000000, loaded.getTileRenderTime(new Vector2i(40, 0)));
+        assertEquals(-1, loaded.getTileRenderTime(new Vector2i(41, 0)));
+        assertEquals(-1, loaded.getTileRenderTime(new Vector2i(0, 0)));
+    }
+
+    @Test
+    public void testRenderTimesAfter2038() throws IOException {
+        long time2040 = 2208988800000L; // 2040-01-01T00:00:00Z
+        long time2100 = 4102444800000L; // 2100-01-01T00:00:00Z
+
+        MapRenderState state = new MapRenderState();
+        state.setTileRenderTime(new Vector2i(0, 0), time2040);
+        state.setTileRenderTime(new Vector2i(1, 0), time2100);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        state.save(out);
+
+        MapRenderState loaded = new MapRenderState();
+        loaded.load(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(time2040, loaded.getTileRenderTime(new Vector2i(0, 0)));
+        assertEquals(time2100, loaded.getTileRenderTime(new Vector2i(1, 0)));
+    }
+
+    @Test
+    public void testTileDigests() throws IOException {
+        MapRenderState state = new MapRenderState();
+        state.setTileDigest(new Vector2i(-1, -33), 0x123456789ABCDEFL);
+        state.setTileDigest(new Vector2i(40, 0), -42);
+        state.setTileDigest(new Vector2i(100, 100), 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        state.save(out);
+
+        MapRenderState loaded = new MapRenderState();
+        loaded.load(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(0x123456789ABCDEFL, loaded.getTileDigest(new Vector2i(-1, -33)));
+        assertEquals(-42, loaded.getTileDigest(new Vector2i(40, 0)));
+        assertEquals(0, loaded.getTileDigest(new Vector2i(41, 0)));
+        assertEquals(0, loaded.getTileDigest(new Vector2i(100, 100)));
+
+        loaded.reset();
+        assertEquals(0, loaded.getTileDigest(new Vector2i(40, 0)));
+    }
+
+    @Test
+    public void testTextureAtlas() throws IOException {
+        MapRenderState state = new MapRenderState();
+        assertFalse(state.isTextureAtlas());
+        state.setTextureAtlas(true);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        state.save(out);
+
+        MapRenderState loaded = new MapRenderState();
+        loaded.load(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(loaded.isTextureAtlas());
+    }
+
+    @Test
+    public void testLoadVersion2() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream dOut = new DataOutputStream(new GZIPOutputStream(out))) {
+            dOut.writeInt(0x424D5253);
+            dOut.writeInt(2);
+            dOut.writeInt(0);
+            dOut.writeInt(1);
+            dOut.writeInt(0);
+            dOut.writeInt(0);
+            for (int i = 0; i < MapRenderState.TILE_REGION_SIZE * MapRenderState.TILE_REGION_SIZE; i++) {
+                dOut.writeInt(i == 0 ? 5 : 0);
+            }
+        }
+
+        MapRenderState state = new MapRenderState();
+        state.load(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(5000, state.getTileRenderTime(new Vector2i(0, 0)));
+        assertEquals(0, state.getTileDigest(new Vector2i(0, 0)));
+        assertFalse(state.isTextureAtlas());
+    }
+
+    @Test
+    public void testLoadLegacy() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream dOut = new DataOutputStream(new GZIPOutputStream(out))) {
+            dOut.writeInt(1);
+            dOut.writeInt(3);
+            dOut.writeInt(4);
+            dOut.writeLong(1000);
+        }
+
+        MapRenderState state = new MapRenderState();
+        state.load(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(1000, state.getRenderTime(new Vector2i(3, 4)));
+        assertEquals(-1, state.getTileRenderTime(new Vector2i(3, 4)));
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HiresTileModelTest {
+
+    @Test
+    public void testAppend() throws IOException {
+        HiresTileModel a = new HiresTileModel(1), b = new HiresTileModel(1), combined = new HiresTileModel(1);
+
+        int face = a.add(1);
+        a.setPositions(face, 0, 0, 0, 1, 0, 0, 0, 0, 1);
+        a.setMaterialIndex(face, 3);
+        combined.add(1);
+        combined.setPositions(face, 0, 0, 0, 1, 0, 0, 0, 0, 1);
+        combined.setMaterialIndex(face, 3);
+
+        for (int i = 0; i < 5; i++) {
+            face = b.add(1);
+            b.setPositions(face, i, 2, 0, 1, 2, 0, 0, 2, 1);
+            b.setSunlight(face, i);
+            b.setMaterialIndex(face, i % 2);
+
+            face = combined.add(1);
+            combined.setPositions(face, i, 2, 0, 1, 2, 0, 0, 2, 1);
+            combined.setSunlight(face, i);
+            combined.setMaterialIndex(face, i % 2);
+        }
+
+        a.append(b);
+        assertEquals(6, a.size());
+
+        ByteArrayOutputStream appended = new ByteArrayOutputStream(), expected = new ByteArrayOutputStream();
+        a.writeBufferGeometryBinary(appended);
+        combined.writeBufferGeometryBinary(expected);
+        assertArrayEquals(expected.toByteArray(), appended.toByteArray());
+    }
+
+    @Test
+    public void testBinaryFormat() throws IOException {
+        HiresTileModel model = new HiresTileModel(4);
+
+        int face = model.add(3);
+        for (int i = 0; i < 3; i++) {
+            model.setPositions(face + i, 0, 0, 0, 1, 0, 0, 0, 0, 1);
+            model.setUvs(face + i, 0, 0, 1, 0, 0, 1);
+            model.setAOs(face + i, 1, 1, 1);
+            model.setColor(face + i, 1, 1, 1);
+            model.setSunlight(face + i, 15);
+            model.setBlocklight(face + i, 0);
+        }
+        model.setMaterialIndex(face, 5);
+        model.setMaterialIndex(face + 1, 2);
+        model.setMaterialIndex(face + 2, 5);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.writeBufferGeometryBinary(out);
+        ByteBuffer data = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals(1, data.get()); // version
+        int vertexCount = data.getInt();
+        assertEquals(9, vertexCount);
+        int attributeCount = data.get();
+        assertEquals(7, attributeCount);
+
+        for (int a = 0; a < attributeCount; a++) {
+            byte[] name = new byte[data.get()];
+            data.get(name);
+            int componentType = data.get();
+            int itemSize = data.get();
+            data.get(); // normalized
+            align(data);
+
+            // attribute-arrays need to be aligned for typed-arrays
+            assertEquals(0, data.position() % 4);
+
+            if (new String(name, StandardCharsets.US_ASCII).equals("position")) {
+                assertEquals(1f, data.getFloat(data.position() + 3 * 4));
+            }
+
+            int componentSize = componentType == 0 ? 4 : 1;
+            data.position(data.position() + vertexCount * itemSize * componentSize);
+            align(data);
+        }
+
+        // groups are sorted by material-index
+        assertEquals(2, data.getInt());
+        assertEquals(2, data.getInt());
+        assertEquals(0, data.getInt());
+        assertEquals(3, data.getInt());
+        assertEquals(5, data.getInt());
+        assertEquals(3, data.getInt());
+        assertEquals(6, data.getInt());
+
+        assertEquals(0, data.remaining());
+    }
+
+    private void align(ByteBuffer data) {
+        data.position((data.position() + 3) & ~3);
+    }
+
+}
@@ -0,0 +1,346 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires.blockmodel;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.flowpowered.math.vector.Vector3i;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.bluecolored.bluemap.core.map.hires.BlockModelView;
+import de.bluecolored.bluemap.core.map.hires.HiresTileModel;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.resourcepack.NoSuchResourceException;
+import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.resourcepack.blockmodel.TransformedBlockModelResource;
+import de.bluecolored.bluemap.core.util.Direction;
+import de.bluecolored.bluemap.core.util.math.Color;
+import de.bluecolored.bluemap.core.world.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResourceModelBuilderTest {
+
+    private static final int BLOCK_Y = 64;
+
+    @TempDir
+    Path tempDir;
+
+    private ResourcePack resourcePack;
+
+    @BeforeEach
+    public void loadPack() throws IOException, InterruptedException {
+        Path assets = tempDir.resolve("pack").resolve("assets").resolve("minecraft");
+
+        writeFile(assets.resolve("blockstates/chained.json"),
+                "{\"variants\": {\"\": {\"model\": \"block/chained\"}}}");
+        writeFile(assets.resolve("blockstates/broken.json"),
+                "{\"variants\": {\"\": {\"model\": \"block/broken\"}}}");
+
+        // every face of the base model is resolved through at least one texture-variable
+        writeFile(assets.resolve("models/block/base.json"),
+                "{\"textures\": {" +
+                "\"north\": \"#side\", \"south\": \"#side\", \"east\": \"#front\", \"west\": \"block/planks\", " +
+                "\"unused\": \"#nowhere\"}, " +
+                "\"elements\": [{\"from\": [0, 0, 0], \"to\": [16, 16, 16], \"faces\": {" +
+                "\"down\": {\"texture\": \"#down\"}," +
+                "\"up\": {\"texture\": \"#up\"}," +
+                "\"north\": {\"texture\": \"#north\"}," +
+                "\"south\": {\"texture\": \"#south\"}," +
+                "\"west\": {\"texture\": \"#west\"}," +
+                "\"east\": {\"texture\": \"#east\"}" +
+                "}}]}");
+        writeFile(assets.resolve("models/block/mid.json"),
+                "{\"parent\": \"block/base\", \"textures\": {" +
+                "\"side\": \"#all\", \"front\": \"#all\", \"down\": \"#bottom\", \"up\": \"block/stone\"}}");
+        writeFile(assets.resolve("models/block/chained.json"),
+                "{\"parent\": \"block/mid\", \"textures\": {" +
+                "\"all\": \"#bottom\", \"bottom\": \"block/furnace_front\", \"front\": \"block/stone\", " +
+                "\"up\": \"block/planks\", \"west\": \"#west\"}}");
+
+        // a face referencing a variable that is never defined
+        writeFile(assets.resolve("models/block/broken.json"),
+                "{\"parent\": \"block/mid\", \"elements\": [{\"from\": [0, 0, 0], \"to\": [16, 16, 16], \"faces\": {" +
+                "\"up\": {\"texture\": \"#missing\"}" +
+                "}}]}");
+
+        writeImage(assets.resolve("textures/block/stone.png"), 0xFF808080);
+        writeImage(assets.resolve("textures/block/furnace_front.png"), 0xFF404040);
+        writeImage(assets.resolve("textures/block/planks.png"), 0xFFA08050);
+
+        resourcePack = new ResourcePack();
+        resourcePack.load(tempDir.resolve("pack").toFile());
+    }
+
+    @Test
+    public void testTextureVariables() throws NoSuchResourceException, IOException {
+        Map<Direction, String> textures = renderFaceTextures(new BlockState("minecraft:chained"));
+
+        Map<Direction, String> expected = new EnumMap<>(Direction.class);
+        expected.put(Direction.DOWN, "block/furnace_front"); // #down -> #bottom (child)
+        expected.put(Direction.UP, "block/planks"); // child overrides the parent
+        expected.put(Direction.NORTH, "block/furnace_front"); // #north -> #side -> #all -> #bottom
+        expected.put(Direction.SOUTH, "block/furnace_front"); // #south -> #side -> #all -> #bottom
+        expected.put(Direction.WEST, "block/planks"); // the self-reference in the child is ignored
+        expected.put(Direction.EAST, "block/stone"); // #east -> #front, overridden by the child
+
+        assertEquals(expected, textures);
+    }
+
+    @Test
+    public void testMissingTextureVariable() throws NoSuchResourceException, IOException {
+        assertTrue(renderFaceTextures(new BlockState("minecraft:broken")).isEmpty());
+    }
+
+    private Map<Direction, String> renderFaceTextures(BlockState blockState) throws NoSuchResourceException, IOException {
+        TestWorld world = new TestWorld(blockState);
+        RenderSettings renderSettings = new TestRenderSettings();
+        ResourceModelBuilder modelBuilder = new ResourceModelBuilder(resourcePack, renderSettings);
+        BlockNeighborhood<?> block = new BlockNeighborhood<>(resourcePack, renderSettings, world, 0, BLOCK_Y, 0);
+
+        HiresTileModel tileModel = new HiresTileModel(16);
+        Collection<TransformedBlockModelResource> models = resourcePack.getBlockStateResource(blockState)
+                .getModels(blockState, 0, BLOCK_Y, 0, new ArrayList<>());
+        for (TransformedBlockModelResource model : models) {
+            modelBuilder.build(block, model, new BlockModelView(tileModel), new Color());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tileModel.writeBufferGeometryJson(out);
+        JsonObject data = new JsonParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8))
+                .getAsJsonObject().getAsJsonObject("data");
+        JsonArray normals = data.getAsJsonObject("attributes").getAsJsonObject("normal").getAsJsonArray("array");
+
+        // each group covers a range of vertices with the same material, each triangle has its own normal
+        Map<Direction, String> textures = new EnumMap<>(Direction.class);
+        for (JsonElement groupElement : data.getAsJsonArray("groups")) {
+            JsonObject group = groupElement.getAsJsonObject();
+            int start = group.get("start").getAsInt();
+            int count = group.get("count").getAsInt();
+            String texture = resourcePack.getTextures().get(group.get("materialIndex").getAsInt()).getPath();
+            texture = texture.substring("assets/minecraft/textures/".length(), texture.length() - ".png".length());
+
+            for (int vertex = start; vertex < start + count; vertex += 3) {
+                Direction direction = toDirection(
+                        normals.get(vertex * 3).getAsFloat(),
+                        normals.get(vertex * 3 + 1).getAsFloat(),
+                        normals.get(vertex * 3 + 2).getAsFloat()
+                );
+                String previous = textures.put(direction, texture);
+                if (previous != null) assertEquals(previous, texture, "Different textures on the " + direction + " face");
+            }
+        }
+
+        return textures;
+    }
+
+    private static Direction toDirection(float x, float y, float z) {
+        for (Direction direction : Direction.values()) {
+            Vector3i vector = direction.toVector();
+            if (vector.getX() * x + vector.getY() * y + vector.getZ() * z > 0.9f) return direction;
+        }
+        throw new AssertionError("Normal is not axis-aligned: " + x + ", " + y + ", " + z);
+    }
+
+    private static void writeFile(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeImage(Path file, int argb) throws IOException {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+
+        Files.createDirectories(file.getParent());
+        ImageIO.write(image, "png", file.toFile());
+    }
+
+    private static class TestRenderSettings implements RenderSettings {
+
+        @Override
+        public int getRemoveCavesBelowY() {
+            return Integer.MIN_VALUE;
+        }
+
+        @Override
+        public boolean isCaveDetectionUsesBlockLight() {
+            return false;
+        }
+
+        @Override
+        public float getAmbientLight() {
+            return 0f;
+        }
+
+        @Override
+        public int getWorldSkyLight() {
+            return 15;
+        }
+
+    }
+
+    /**
+     * A world containing only the given block at 0, {@link #BLOCK_Y}, 0, surrounded by air.
+     */
+    private static class TestWorld implements World {
+
+        private final Chunk chunk;
+
+        public TestWorld(BlockState blockState) {
+            this.chunk = new Chunk() {
+
+                @Override
+                public boolean isGenerated() {
+                    return true;
+                }
+
+                @Override
+                public int getDataVersion() {
+                    return 0;
+                }
+
+                @Override
+                public BlockState getBlockState(int x, int y, int z) {
+                    return x == 0 && y == BLOCK_Y && z == 0 ? blockState : BlockState.AIR;
+                }
+
+                @Override
+                public LightData getLightData(int x, int y, int z, LightData target) {
+                    return target.set(15, 0);
+                }
+
+                @Override
+                public String getBiome(int x, int y, int z) {
+                    return "minecraft:plains";
+                }
+
+                @Override
+                public int getMaxY(int x, int z) {
+                    return 255;
+                }
+
+                @Override
+                public int getMinY(int x, int z) {
+                    return 0;
+                }
+
+            };
+        }
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public UUID getUUID() {
+            return new UUID(0, 0);
+        }
+
+        @Override
+        public Path getSaveFolder() {
+            return new File("test").toPath();
+        }
+
+        @Override
+        public int getSkyLight() {
+            return 15;
+        }
+
+        @Override
+        public Vector3i getSpawnPoint() {
+            return Vector3i.ZERO;
+        }
+
+        @Override
+        public int getMaxY(int x, int z) {
+            return 255;
+        }
+
+        @Override
+        public int getMinY(int x, int z) {
+            return 0;
+        }
+
+        @Override
+        public Grid getChunkGrid() {
+            return new Grid(16);
+        }
+
+        @Override
+        public Grid getRegionGrid() {
+            return new Grid(512);
+        }
+
+        @Override
+        public Chunk getChunkAtBlock(int x, int y, int z) {
+            return chunk;
+        }
+
+        @Override
+        public Chunk getChunk(int x, int z) {
+            return chunk;
+        }
+
+        @Override
+        public Region getRegion(int x, int z) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<Vector2i> listRegions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void invalidateChunkCache() {}
+
+        @Override
+        public void invalidateChunkCache(int x, int z) {}
+
+        @Override
+        public void cleanUpChunkCache() {}
+
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.lowres;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.storage.FileStorage;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.TileType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static de.bluecolored.bluemap.core.map.lowres.LowresTestUtils.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LowresLayerTest {
+
+    private static final Vector2i SIZE = new Vector2i(10, 10);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testCenteredDownsampling() throws IOException {
+        testDownsampling(5);
+    }
+
+    @Test
+    public void testCenteredDownsamplingEvenFactor() throws IOException {
+        testDownsampling(2);
+    }
+
+    /**
+     * The average of a linear height-field over a centered window is the height at its center,
+     * so each parent-point has the height of the point of the child-layer at the same position.
+     */
+    private void testDownsampling(int factor) throws IOException {
+        FileStorage fileStorage = new FileStorage(tempDir, Compression.NONE);
+        Storage.TileStorage childStorage = fileStorage.tileStorage("map", TileType.LOWRES, 0);
+        Storage.TileStorage parentStorage = fileStorage.tileStorage("map", TileType.LOWRES, 1);
+
+        LowresLayer parent = new LowresLayer(parentStorage, SIZE, 100, null, 0);
+        LowresLayer child = new LowresLayer(childStorage, SIZE, 100, parent, factor);
+
+        // 3x3 tiles around the origin
+        for (int x = -10; x <= 20; x++) {
+            for (int z = -10; z <= 20; z++) {
+                child.update(x, z, x + 2 * z, 0.5f, 0.5f, 0.5f);
+            }
+        }
+
+        child.save();
+        parent.save();
+
+        int radius = factor / 2;
+        for (int x = Math.floorDiv(-10 + radius + factor - 1, factor); x * factor + radius <= 20; x++) {
+            for (int z = Math.floorDiv(-10 + radius + factor - 1, factor); z * factor + radius <= 20; z++) {
+                assertHeight(x * factor + 2 * z * factor, parentStorage, SIZE, x, z);
+            }
+        }
+    }
+
+    @Test
+    public void testMissingNeighbours() throws IOException {
+        FileStorage fileStorage = new FileStorage(tempDir, Compression.NONE);
+        Storage.TileStorage parentStorage = fileStorage.tileStorage("map", TileType.LOWRES, 1);
+
+        LowresLayer parent = new LowresLayer(parentStorage, SIZE, 100, null, 0);
+        LowresLayer child = new LowresLayer(fileStorage.tileStorage("map", TileType.LOWRES, 0), SIZE, 100, parent, 5);
+
+        for (int x = 1; x < 10; x++) {
+            for (int z = 1; z < 10; z++) {
+                child.update(x, z, 7, 0.5f, 0.5f, 0.5f);
+            }
+        }
+
+        child.save();
+        parent.save();
+
+        // the points of the missing neighbour-tiles are left out
+        assertHeight(7 * 4f / 9f, parentStorage, SIZE, 0, 0);
+        assertHeight(7, parentStorage, SIZE, 1, 1);
+
+        // when the neighbour is added, the shared parent-point is updated
+        child.update(-1, 1, 7, 0.5f, 0.5f, 0.5f);
+        child.update(-2, 1, 7, 0.5f, 0.5f, 0.5f);
+        child.update(-1, 2, 7, 0.5f, 0.5f, 0.5f);
+        child.update(-2, 2, 7, 0.5f, 0.5f, 0.5f);
+        child.save();
+        parent.save();
+
+        assertHeight(7 * 8f / 15f, parentStorage, SIZE, 0, 0);
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.lowres;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.storage.FileStorage;
+import de.bluecolored.bluemap.core.storage.TileType;
+import de.bluecolored.bluemap.core.util.math.Color;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static de.bluecolored.bluemap.core.map.lowres.LowresTestUtils.assertHeight;
+
+public class LowresModelManagerTest {
+
+    private static final Vector2i SIZE = new Vector2i(10, 10);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testLodPyramid() throws IOException {
+        FileStorage storage = new FileStorage(tempDir, Compression.NONE);
+        LowresModelManager manager = new LowresModelManager(storage, "map", SIZE, new Vector2i(2, 2), 3, 5, 100);
+
+        Color color = new Color().set(0.5f, 0.5f, 0.5f, 1f, false);
+        for (int x = -60; x <= 60; x++) {
+            for (int z = -60; z <= 60; z++) {
+                manager.update(x, z, x + 2 * z, color);
+            }
+        }
+
+        manager.save();
+
+        // every layer has the same origin, so a point of each layer has the height of the lowest layer at its position
+        for (int lod = 0; lod < 3; lod++) {
+            int pointSize = (int) Math.pow(5, lod);
+            for (int x = -1; x <= 1; x++) {
+                for (int z = -1; z <= 1; z++) {
+                    assertHeight(
+                            x * pointSize + 2 * z * pointSize,
+                            storage.tileStorage("map", TileType.LOWRES, lod), SIZE, x, z
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCacheEviction() throws IOException {
+        FileStorage storage = new FileStorage(tempDir, Compression.NONE);
+        LowresModelManager manager = new LowresModelManager(storage, "map", SIZE, new Vector2i(2, 2), 1, 5, 1);
+
+        Color color = new Color().set(0.5f, 0.5f, 0.5f, 1f, false);
+        for (int i = 0; i < 3; i++) {
+            for (int x = -15; x <= 15; x++) {
+                for (int z = -15; z <= 15; z++) {
+                    manager.update(x, z, x + 2 * z + i, color);
+                }
+            }
+        }
+
+        manager.save();
+
+        for (int x = -15; x <= 15; x++) {
+            for (int z = -15; z <= 15; z++) {
+                assertHeight(x + 2 * z + 2, storage.tileStorage("map", TileType.LOWRES), SIZE, x, z);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.lowres;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.storage.FileStorage;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.storage.TileType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static de.bluecolored.bluemap.core.map.lowres.LowresTestUtils.DELTA;
+import static de.bluecolored.bluemap.core.map.lowres.LowresTestUtils.readModel;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LowresModelTest {
+
+    private static final Vector2i SIZE = new Vector2i(10, 8);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        Storage.TileStorage storage = new FileStorage(tempDir, Compression.NONE).tileStorage("map", TileType.LOWRES);
+        Vector2i tile = new Vector2i(-1, 2);
+
+        LowresModel model = new LowresModel(SIZE);
+        for (int x = 0; x <= SIZE.getX(); x++) {
+            for (int z = 0; z <= SIZE.getY(); z++) {
+                model.update(x, z, x * 3 + z * 0.5f, x / 10f, z / 8f, 0.5f);
+            }
+        }
+
+        // points outside of the grid are ignored
+        model.update(-1, 0, 100, 1, 1, 1);
+        model.update(0, SIZE.getY() + 1, 100, 1, 1, 1);
+
+        assertTrue(model.save(storage, tile, false));
+        assertFalse(model.hasUnsavedChanges());
+        assertFalse(model.save(storage, tile, false));
+
+        LowresModel loaded = readModel(storage, tile, SIZE);
+        for (int x = 0; x <= SIZE.getX(); x++) {
+            for (int z = 0; z <= SIZE.getY(); z++) {
+                assertEquals(x * 3 + z * 0.5f, loaded.getHeight(x, z), DELTA);
+                assertEquals(x / 10f, loaded.getColor(x, z, 0), DELTA);
+                assertEquals(z / 8f, loaded.getColor(x, z, 1), DELTA);
+                assertEquals(0.5f, loaded.getColor(x, z, 2), DELTA);
+            }
+        }
+    }
+
+}
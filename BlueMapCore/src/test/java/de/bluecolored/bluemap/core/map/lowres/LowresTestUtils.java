@@ -0,0 +1,71 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.lowres;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.threejs.BufferGeometry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reads stored lowres-models and checks the points of lowres-grids
+ */
+public class LowresTestUtils {
+
+    public static final float DELTA = 0.001f;
+
+    private LowresTestUtils(){}
+
+    /**
+     * Reads the stored model of the tile, asserting that the tile exists
+     */
+    public static LowresModel readModel(Storage.TileStorage storage, Vector2i tile, Vector2i pointsPerTile) throws IOException {
+        Optional<InputStream> in = storage.read(tile);
+        assertTrue(in.isPresent(), "Missing lowres-tile " + tile);
+        try (Reader reader = new InputStreamReader(in.get(), StandardCharsets.UTF_8)) {
+            return new LowresModel(pointsPerTile, BufferGeometry.readJson(reader));
+        }
+    }
+
+    /**
+     * Asserts the height of a point on the global grid of a layer, reading the stored model that contains the point
+     */
+    public static void assertHeight(float expected, Storage.TileStorage storage, Vector2i pointsPerTile, int px, int pz) throws IOException {
+        Vector2i tile = new Vector2i(Math.floorDiv(px, pointsPerTile.getX()), Math.floorDiv(pz, pointsPerTile.getY()));
+        LowresModel model = readModel(storage, tile, pointsPerTile);
+        assertEquals(expected, model.getHeight(px - tile.getX() * pointsPerTile.getX(), pz - tile.getY() * pointsPerTile.getY()), DELTA,
+                "Height of point " + px + ", " + pz);
+    }
+
+}
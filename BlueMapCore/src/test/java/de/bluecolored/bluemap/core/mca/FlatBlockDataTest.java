@@ -0,0 +1,97 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlatBlockDataTest {
+
+    @Test
+    public void testUnpackMatchesPackedLookup() {
+        Random random = new Random(0);
+
+        for (int paletteSize : new int[]{ 2, 16, 17, 300 }) {
+            BlockState[] palette = createPalette(paletteSize);
+            int bitsPerBlock = Math.max(4, Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1));
+
+            // 1.16+ packing
+            int valuesPerLong = 64 / bitsPerBlock;
+            long[] blocks = new long[(4096 + valuesPerLong - 1) / valuesPerLong];
+            for (int i = 0; i < 4096; i++) {
+                long value = random.nextInt(paletteSize);
+                blocks[i / valuesPerLong] |= value << ((i % valuesPerLong) * bitsPerBlock);
+            }
+
+            FlatBlockData flat = FlatBlockData.unpack(blocks, blocks.length >> 6, false, palette);
+            for (int i = 0; i < 4096; i++) {
+                assertSame(palette[(int) MCAMath.getValueFromLongArray(blocks, i, blocks.length >> 6)], flat.get(i));
+            }
+
+            // 1.13 - 1.15 packing
+            blocks = new long[4096 * bitsPerBlock / 64];
+            for (int i = 0; i < 4096; i++) {
+                long value = random.nextInt(paletteSize);
+                int bitIndex = i * bitsPerBlock;
+                blocks[bitIndex >> 6] |= value << (bitIndex & 0x3F);
+                if ((bitIndex & 0x3F) + bitsPerBlock > 64) blocks[(bitIndex >> 6) + 1] |= value >>> (64 - (bitIndex & 0x3F));
+            }
+
+            flat = FlatBlockData.unpack(blocks, bitsPerBlock, true, palette);
+            for (int i = 0; i < 4096; i++) {
+                assertSame(palette[(int) MCAMath.getValueFromLongStream(blocks, i, bitsPerBlock)], flat.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSingleStateAndInvalidValues() {
+        BlockState[] palette = createPalette(3);
+
+        assertSame(palette[0], FlatBlockData.unpack(new long[0], 0, false, new BlockState[]{ palette[0] }).get(123));
+        assertSame(palette[2], FlatBlockData.unpack(filled(4, 2), 4, false, palette).get(4095));
+        assertSame(BlockState.MISSING, FlatBlockData.unpack(filled(4, 7), 4, false, palette).get(0));
+    }
+
+    private static long[] filled(int bitsPerBlock, long value) {
+        long[] blocks = new long[4096 * bitsPerBlock / 64];
+        for (int i = 0; i < 4096; i++) {
+            int bitIndex = i * bitsPerBlock;
+            blocks[bitIndex >> 6] |= value << (bitIndex & 0x3F);
+        }
+        return blocks;
+    }
+
+    private static BlockState[] createPalette(int size) {
+        BlockState[] palette = new BlockState[size];
+        for (int i = 0; i < size; i++) palette[i] = new BlockState("test:block_" + i);
+        return palette;
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.ListTag;
+import net.querz.nbt.LongArrayTag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MCAChunkTest {
+
+    @Test
+    public void testContentDigestIgnoresNonRenderData() {
+        long digest = MCAChunk.createContentDigest(createChunkTag());
+        assertNotEquals(0, digest);
+
+        // entities move around
+        CompoundTag chunkTag = createChunkTag();
+        CompoundTag pig = new CompoundTag();
+        pig.putString("id", "minecraft:pig");
+        chunkTag.getCompoundTag("Level").getListTag("Entities").asCompoundTagList().add(pig);
+        assertEquals(digest, MCAChunk.createContentDigest(chunkTag));
+
+        // the chunk has been ticked
+        chunkTag = createChunkTag();
+        chunkTag.getCompoundTag("Level").putLong("LastUpdate", 123456);
+        CompoundTag tick = new CompoundTag();
+        tick.putString("i", "minecraft:water");
+        tick.putInt("t", 5);
+        chunkTag.getCompoundTag("Level").getListTag("TileTicks").asCompoundTagList().add(tick);
+        assertEquals(digest, MCAChunk.createContentDigest(chunkTag));
+
+        // players have been in the chunk
+        chunkTag = createChunkTag();
+        chunkTag.getCompoundTag("Level").putLong("InhabitedTime", 7000);
+        assertEquals(digest, MCAChunk.createContentDigest(chunkTag));
+    }
+
+    @Test
+    public void testContentDigestChangesWithBlocks() {
+        long digest = MCAChunk.createContentDigest(createChunkTag());
+
+        // a block has been placed
+        CompoundTag chunkTag = createChunkTag();
+        getSection(chunkTag).getLongArray("BlockStates")[3] = 0x1111;
+        assertNotEquals(digest, MCAChunk.createContentDigest(chunkTag));
+
+        // the palette changed
+        chunkTag = createChunkTag();
+        getSection(chunkTag).getListTag("Palette").asCompoundTagList().get(1).putString("Name", "minecraft:dirt");
+        assertNotEquals(digest, MCAChunk.createContentDigest(chunkTag));
+
+        // the light changed
+        chunkTag = createChunkTag();
+        getSection(chunkTag).getByteArray("BlockLight")[10] = 0x0F;
+        assertNotEquals(digest, MCAChunk.createContentDigest(chunkTag));
+
+        // a biome changed
+        chunkTag = createChunkTag();
+        chunkTag.getCompoundTag("Level").getIntArray("Biomes")[0] = 2;
+        assertNotEquals(digest, MCAChunk.createContentDigest(chunkTag));
+    }
+
+    private static CompoundTag getSection(CompoundTag chunkTag) {
+        return chunkTag.getCompoundTag("Level").getListTag("Sections").asCompoundTagList().get(0);
+    }
+
+    private static CompoundTag createChunkTag() {
+        CompoundTag chunkTag = new CompoundTag();
+        chunkTag.putInt("DataVersion", 2586);
+
+        CompoundTag level = new CompoundTag();
+        level.putString("Status", "full");
+        level.putLong("LastUpdate", 1000);
+        level.putLong("InhabitedTime", 50);
+        level.putIntArray("Biomes", new int[1024]);
+        level.put("Entities", new ListTag<>(CompoundTag.class));
+        level.put("TileTicks", new ListTag<>(CompoundTag.class));
+
+        ListTag<CompoundTag> palette = new ListTag<>(CompoundTag.class);
+        for (String block : new String[]{ "minecraft:air", "minecraft:stone" }) {
+            CompoundTag entry = new CompoundTag();
+            entry.putString("Name", block);
+            palette.add(entry);
+        }
+
+        long[] blockStates = new long[256];
+        for (int i = 0; i < 128; i++) blockStates[i] = 0x1111111111111111L;
+
+        CompoundTag section = new CompoundTag();
+        section.putByte("Y", (byte) 0);
+        section.put("Palette", palette);
+        section.put("BlockStates", new LongArrayTag(blockStates));
+        section.putByteArray("BlockLight", new byte[2048]);
+        section.putByteArray("SkyLight", new byte[2048]);
+
+        ListTag<CompoundTag> sections = new ListTag<>(CompoundTag.class);
+        sections.add(section);
+        level.put("Sections", sections);
+
+        chunkTag.put("Level", level);
+        return chunkTag;
+    }
+
+}
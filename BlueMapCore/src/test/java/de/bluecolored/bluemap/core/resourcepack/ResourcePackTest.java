@@ -0,0 +1,270 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resourcepack;
+
+import de.bluecolored.bluemap.core.resourcepack.blockmodel.BlockModelResource;
+import de.bluecolored.bluemap.core.resourcepack.blockmodel.TransformedBlockModelResource;
+import de.bluecolored.bluemap.core.resourcepack.texture.Texture;
+import de.bluecolored.bluemap.core.resourcepack.texture.TextureGallery;
+import de.bluecolored.bluemap.core.util.Direction;
+import de.bluecolored.bluemap.core.util.math.Color;
+import de.bluecolored.bluemap.core.world.BlockState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResourcePackTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File packFolder;
+
+    @BeforeEach
+    public void createPack() throws IOException {
+        Path assets = tempDir.resolve("pack").resolve("assets").resolve("minecraft");
+        packFolder = tempDir.resolve("pack").toFile();
+
+        writeFile(assets.resolve("blockstates/stone.json"),
+                "{\"variants\": {\"\": {\"model\": \"block/stone\"}}}");
+        writeFile(assets.resolve("blockstates/furnace.json"),
+                "{\"variants\": {" +
+                "\"facing=north\": {\"model\": \"block/furnace\"}," +
+                "\"facing=east\": {\"model\": \"block/furnace\", \"y\": 90}," +
+                "\"facing=south\": [{\"model\": \"block/furnace\", \"y\": 180}, {\"model\": \"block/stone\", \"weight\": 2}]" +
+                "}}");
+        writeFile(assets.resolve("blockstates/fence.json"),
+                "{\"multipart\": [" +
+                "{\"apply\": {\"model\": \"block/fence_post\"}}," +
+                "{\"when\": {\"north\": \"true\"}, \"apply\": {\"model\": \"block/fence_side\", \"uvlock\": true}}," +
+                "{\"when\": {\"east\": \"true\"}, \"apply\": {\"model\": \"block/fence_side\", \"y\": 90, \"uvlock\": true}}" +
+                "]}");
+
+        writeFile(assets.resolve("models/block/cube.json"),
+                "{\"elements\": [{\"from\": [0, 0, 0], \"to\": [16, 16, 16], \"faces\": {" +
+                "\"down\": {\"texture\": \"#down\", \"cullface\": \"down\"}," +
+                "\"up\": {\"texture\": \"#up\", \"cullface\": \"up\", \"tintindex\": 0}," +
+                "\"north\": {\"texture\": \"#north\", \"cullface\": \"north\"}," +
+                "\"south\": {\"texture\": \"#south\", \"cullface\": \"south\"}," +
+                "\"west\": {\"texture\": \"#west\", \"cullface\": \"west\", \"rotation\": 90}," +
+                "\"east\": {\"texture\": \"#east\", \"cullface\": \"east\", \"uv\": [0, 0, 8, 8]}" +
+                "}}]}");
+        writeFile(assets.resolve("models/block/cube_all.json"),
+                "{\"parent\": \"block/cube\", \"textures\": {" +
+                "\"down\": \"#all\", \"up\": \"#all\", \"north\": \"#all\", \"south\": \"#all\", \"west\": \"#all\", \"east\": \"#all\"}}");
+        writeFile(assets.resolve("models/block/stone.json"),
+                "{\"parent\": \"block/cube_all\", \"textures\": {\"all\": \"block/stone\"}}");
+        writeFile(assets.resolve("models/block/furnace.json"),
+                "{\"parent\": \"block/cube\", \"textures\": {" +
+                "\"down\": \"block/stone\", \"up\": \"block/stone\", \"north\": \"block/furnace_front\", " +
+                "\"south\": \"block/stone\", \"west\": \"block/stone\", \"east\": \"block/stone\"}}");
+        writeFile(assets.resolve("models/block/fence_post.json"),
+                "{\"textures\": {\"texture\": \"block/planks\"}, \"elements\": [{\"from\": [6, 0, 6], \"to\": [10, 16, 10], " +
+                "\"faces\": {\"up\": {\"texture\": \"#texture\"}, \"north\": {\"texture\": \"#texture\"}}}]}");
+        writeFile(assets.resolve("models/block/fence_side.json"),
+                "{\"ambientocclusion\": false, \"textures\": {\"texture\": \"block/planks\"}, \"elements\": [{\"from\": [7, 12, 0], \"to\": [9, 15, 9], " +
+                "\"rotation\": {\"origin\": [8, 8, 8], \"axis\": \"y\", \"angle\": 22.5, \"rescale\": true}, \"shade\": false, " +
+                "\"faces\": {\"up\": {\"texture\": \"#texture\"}, \"west\": {\"texture\": \"#texture\", \"uv\": [0, 1, 9, 4]}}}]}");
+
+        writeImage(assets.resolve("textures/block/stone.png"), 16, 16, 0xFF808080);
+        writeImage(assets.resolve("textures/block/furnace_front.png"), 16, 16, 0xFF404040);
+        writeImage(assets.resolve("textures/block/planks.png"), 16, 32, 0x80A08050);
+    }
+
+    @Test
+    public void testSaveLoadCache() throws IOException, InterruptedException, NoSuchResourceException {
+        ResourcePack resourcePack = new ResourcePack();
+        resourcePack.load(packFolder);
+
+        String sourcesHash = ResourcePack.hashSources(Collections.singletonList(packFolder));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resourcePack.saveCache(out, sourcesHash);
+
+        ResourcePack cached = new ResourcePack();
+        assertTrue(cached.loadCache(new ByteArrayInputStream(out.toByteArray()), sourcesHash));
+
+        assertTexturesEquals(resourcePack.getTextures(), cached.getTextures());
+        assertEquals(16, cached.getTextures().get("assets/minecraft/textures/block/planks.png").getHeight());
+        assertEquals(3, cached.getTextures().size());
+
+        assertEquals(resourcePack.getBlockModelResources().keySet(), cached.getBlockModelResources().keySet());
+        for (String model : resourcePack.getBlockModelResources().keySet()) {
+            assertModelEquals(resourcePack.getBlockModelResources().get(model), cached.getBlockModelResources().get(model));
+        }
+
+        assertEquals(resourcePack.getBlockStateResources().keySet(), cached.getBlockStateResources().keySet());
+        assertEquals(3, cached.getBlockStateResources().size());
+
+        List<BlockState> blockStates = Arrays.asList(
+                new BlockState("minecraft:stone"),
+                new BlockState("minecraft:furnace", properties("facing", "north")),
+                new BlockState("minecraft:furnace", properties("facing", "east")),
+                new BlockState("minecraft:furnace", properties("facing", "south")),
+                new BlockState("minecraft:fence", properties("north", "false", "east", "false")),
+                new BlockState("minecraft:fence", properties("north", "true", "east", "false")),
+                new BlockState("minecraft:fence", properties("north", "true", "east", "true"))
+        );
+        for (BlockState blockState : blockStates) {
+            assertEquals(
+                    resourcePack.getBlockStateResource(blockState).hasRandomModels(blockState),
+                    cached.getBlockStateResource(blockState).hasRandomModels(blockState)
+            );
+
+            for (int x = 0; x < 4; x++) {
+                List<TransformedBlockModelResource> expected = new ArrayList<>(resourcePack.getBlockStateResource(blockState)
+                        .getModels(blockState, x, 0, 0, new ArrayList<>()));
+                List<TransformedBlockModelResource> actual = new ArrayList<>(cached.getBlockStateResource(blockState)
+                        .getModels(blockState, x, 0, 0, new ArrayList<>()));
+
+                assertFalse(expected.isEmpty(), blockState.toString());
+                assertEquals(expected.size(), actual.size(), blockState.toString());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getRotation(), actual.get(i).getRotation());
+                    assertEquals(expected.get(i).isUVLock(), actual.get(i).isUVLock());
+                    assertModelEquals(expected.get(i).getModel(), actual.get(i).getModel());
+                }
+            }
+        }
+
+    }
+
+    @Test
+    public void testCacheInvalidation() throws IOException, InterruptedException {
+        ResourcePack resourcePack = new ResourcePack();
+        resourcePack.load(packFolder);
+
+        String sourcesHash = ResourcePack.hashSources(Collections.singletonList(packFolder));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resourcePack.saveCache(out, sourcesHash);
+
+        assertFalse(new ResourcePack().loadCache(new ByteArrayInputStream(out.toByteArray()), "other"));
+        assertFalse(new ResourcePack(true).loadCache(new ByteArrayInputStream(out.toByteArray()), sourcesHash));
+
+        // changing a resource changes the hash
+        writeFile(packFolder.toPath().resolve("assets/minecraft/models/block/stone.json"),
+                "{\"parent\": \"block/cube_all\", \"textures\": {\"all\": \"block/furnace_front\"}}");
+        assertNotEquals(sourcesHash, ResourcePack.hashSources(Collections.singletonList(packFolder)));
+    }
+
+    private void assertTexturesEquals(TextureGallery expected, TextureGallery actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Texture expectedTexture = expected.get(i);
+            Texture actualTexture = actual.get(i);
+
+            assertEquals(expectedTexture.getId(), actualTexture.getId());
+            assertEquals(expectedTexture.getPath(), actualTexture.getPath());
+            assertEquals(expectedTexture.isHalfTransparent(), actualTexture.isHalfTransparent());
+            assertEquals(expectedTexture.getWidth(), actualTexture.getWidth());
+            assertEquals(expectedTexture.getHeight(), actualTexture.getHeight());
+            assertColorEquals(expectedTexture.getColorStraight(), actualTexture.getColorStraight());
+            assertSame(actualTexture, actual.get(expectedTexture.getPath()));
+        }
+    }
+
+    private void assertModelEquals(BlockModelResource expected, BlockModelResource actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.isAmbientOcclusion(), actual.isAmbientOcclusion());
+        assertEquals(expected.isCulling(), actual.isCulling());
+        assertEquals(expected.isOccluding(), actual.isOccluding());
+
+        List<BlockModelResource.Element> expectedElements = new ArrayList<>(expected.getElements());
+        List<BlockModelResource.Element> actualElements = new ArrayList<>(actual.getElements());
+        assertEquals(expectedElements.size(), actualElements.size());
+
+        for (int i = 0; i < expectedElements.size(); i++) {
+            BlockModelResource.Element expectedElement = expectedElements.get(i);
+            BlockModelResource.Element actualElement = actualElements.get(i);
+
+            assertEquals(expectedElement.getFrom(), actualElement.getFrom());
+            assertEquals(expectedElement.getTo(), actualElement.getTo());
+            assertEquals(expectedElement.isShade(), actualElement.isShade());
+            assertEquals(expectedElement.isFullCube(), actualElement.isFullCube());
+            assertEquals(expectedElement.getRotation().getOrigin(), actualElement.getRotation().getOrigin());
+            assertEquals(expectedElement.getRotation().getAxis(), actualElement.getRotation().getAxis());
+            assertEquals(expectedElement.getRotation().getAngle(), actualElement.getRotation().getAngle());
+            assertEquals(expectedElement.getRotation().isRescale(), actualElement.getRotation().isRescale());
+
+            assertEquals(expectedElement.getFaces().keySet(), actualElement.getFaces().keySet());
+            for (Direction direction : expectedElement.getFaces().keySet()) {
+                BlockModelResource.Element.Face expectedFace = expectedElement.getFaces().get(direction);
+                BlockModelResource.Element.Face actualFace = actualElement.getFaces().get(direction);
+
+                assertEquals(expectedFace.getUv(), actualFace.getUv());
+                assertEquals(expectedFace.getTexture().getId(), actualFace.getTexture().getId());
+                assertEquals(expectedFace.getTexture().getPath(), actualFace.getTexture().getPath());
+                assertEquals(expectedFace.getCullface(), actualFace.getCullface());
+                assertEquals(expectedFace.getRotation(), actualFace.getRotation());
+                assertEquals(expectedFace.isTinted(), actualFace.isTinted());
+            }
+        }
+    }
+
+    private void assertColorEquals(Color expected, Color actual) {
+        assertEquals(expected.r, actual.r);
+        assertEquals(expected.g, actual.g);
+        assertEquals(expected.b, actual.b);
+        assertEquals(expected.a, actual.a);
+    }
+
+    private static Map<String, String> properties(String... keyValues) {
+        Map<String, String> properties = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            properties.put(keyValues[i], keyValues[i + 1]);
+        }
+        return properties;
+    }
+
+    private static void writeFile(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeImage(Path file, int width, int height, int argb) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, y < height / 2 ? argb : argb | 0xFF000000);
+            }
+        }
+
+        Files.createDirectories(file.getParent());
+        ImageIO.write(image, "png", file.toFile());
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resourcepack.texture;
+
+import de.bluecolored.bluemap.core.resourcepack.ParseResourceException;
+import de.bluecolored.bluemap.core.resourcepack.fileaccess.FileAccess;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TextureGalleryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testBase64TexturesSurviveResaving() throws IOException, ParseResourceException {
+        File pack = tempDir.resolve("pack").toFile();
+        writeImage(new File(pack, "assets/minecraft/textures/block/stone.png"), 0xFF808080);
+        writeImage(new File(pack, "assets/minecraft/textures/block/dirt.png"), 0xFF805030);
+        FileAccess fileAccess = FileAccess.of(pack);
+
+        File textureFile = tempDir.resolve("textures.json").toFile();
+        TextureGallery gallery = new TextureGallery();
+        gallery.loadTexture(fileAccess, "assets/minecraft/textures/block/stone.png");
+        gallery.loadTexture(fileAccess, "assets/minecraft/textures/block/dirt.png");
+        gallery.saveTextureFile(textureFile);
+
+        String saved = read(textureFile);
+        assertTrue(saved.contains("data:image/png;base64,"));
+
+        // the images and base64-strings are released after saving, saving again takes them from the file
+        gallery.saveTextureFile(textureFile);
+        assertEquals(saved, read(textureFile));
+
+        // a reloaded texture replaces only its own image
+        TextureGallery loaded = new TextureGallery();
+        loaded.loadTextureFile(textureFile);
+        writeImage(new File(pack, "assets/minecraft/textures/block/dirt.png"), 0xFF000000);
+        loaded.loadTexture(fileAccess, "assets/minecraft/textures/block/dirt.png");
+        loaded.saveTextureFile(textureFile);
+
+        String resaved = read(textureFile);
+        assertNotEquals(saved, resaved);
+        assertEquals(base64Of(saved, 0), base64Of(resaved, 0));
+        assertNotEquals(base64Of(saved, 1), base64Of(resaved, 1));
+    }
+
+    private static String base64Of(String textureFile, int index) {
+        String[] parts = textureFile.split("data:image/png;base64,");
+        assertEquals(3, parts.length);
+        return parts[index + 1].substring(0, parts[index + 1].indexOf('"'));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void writeImage(File file, int argb) throws IOException {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+
+        file.getParentFile().mkdirs();
+        ImageIO.write(image, "png", file);
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static de.bluecolored.bluemap.core.storage.StorageTestUtils.readTile;
+import static de.bluecolored.bluemap.core.storage.StorageTestUtils.writeTile;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchiveStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testWriteReadDelete() throws IOException {
+        ArchiveStorage storage = new ArchiveStorage(tempDir, Compression.GZIP);
+
+        writeTile(storage, "map", TileType.HIRES, 0, new Vector2i(0, 0), "a");
+        writeTile(storage, "map", TileType.HIRES, 0, new Vector2i(-1, 31), "b");
+        writeTile(storage, "map", TileType.LOWRES, 1, new Vector2i(33, -33), "c");
+        writeTile(storage, "map", TileType.HIRES, 0, new Vector2i(0, 0), "d");
+
+        assertEquals("d", readTile(storage, "map", TileType.HIRES, 0, new Vector2i(0, 0)));
+        assertEquals("b", readTile(storage, "map", TileType.HIRES, 0, new Vector2i(-1, 31)));
+        assertEquals("c", readTile(storage, "map", TileType.LOWRES, 1, new Vector2i(33, -33)));
+        assertFalse(storage.readMapTile("map", TileType.LOWRES, new Vector2i(33, -33)).isPresent());
+
+        storage.deleteMapTile("map", TileType.HIRES, new Vector2i(0, 0));
+        assertFalse(storage.readMapTile("map", TileType.HIRES, new Vector2i(0, 0)).isPresent());
+
+        storage.close();
+
+        // the data survives reopening the archives
+        try (ArchiveStorage reopened = new ArchiveStorage(tempDir, Compression.GZIP)) {
+            assertEquals("b", readTile(reopened, "map", TileType.HIRES, 0, new Vector2i(-1, 31)));
+            assertEquals("c", readTile(reopened, "map", TileType.LOWRES, 1, new Vector2i(33, -33)));
+
+            reopened.purgeMap("map");
+            assertFalse(reopened.readMapTile("map", TileType.HIRES, new Vector2i(-1, 31)).isPresent());
+        }
+    }
+
+    @Test
+    public void testManyArchives() throws IOException {
+        try (ArchiveStorage storage = new ArchiveStorage(tempDir, Compression.GZIP)) {
+            // more archives than are kept open at once
+            for (int i = 0; i < 100; i++) {
+                writeTile(storage, "map", TileType.HIRES, 0, new Vector2i(i * TileArchive.SIZE, 0), "tile" + i);
+            }
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals("tile" + i, readTile(storage, "map", TileType.HIRES, 0, new Vector2i(i * TileArchive.SIZE, 0)));
+            }
+        }
+    }
+
+    @Test
+    public void testNoTruncation() throws IOException {
+        Path file = tempDir.resolve("test" + ArchiveStorage.ARCHIVE_FILE_SUFFIX);
+        byte[] data = new byte[]{1, 2, 3};
+
+        try (
+                TileArchive archive = new TileArchive(file, false);
+                TileArchive other = new TileArchive(file, false)
+        ) {
+            // the file did not exist yet when the archives have been opened
+            other.write(0, 0, data, 0, data.length);
+            archive.write(1, 0, data, 0, data.length);
+
+            // the archive opened the existing file instead of creating a new one
+            assertArrayEquals(data, archive.read(0, 0));
+            assertArrayEquals(data, archive.read(1, 0));
+        }
+    }
+
+    @Test
+    public void testConcurrentPurge() throws Exception {
+        ArchiveStorage storage = new ArchiveStorage(tempDir, Compression.GZIP);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int worker = t;
+                workers.add(executor.submit(() -> {
+                    for (int i = 0; running.get(); i++) {
+                        Vector2i tile = new Vector2i(worker, i % 64);
+                        String data = worker + "-" + i;
+                        writeTile(storage, "a", tile, data);
+
+                        // the tile is either still there or purged, but never corrupted
+                        Optional<InputStream> in = storage.readMapTile("a", TileType.HIRES, tile);
+                        if (in.isPresent()) {
+                            try (InputStream is = in.get()) {
+                                assertEquals(data, new String(IOUtils.toByteArray(is), StandardCharsets.UTF_8));
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (int i = 0; i < 20; i++) {
+                Thread.sleep(5);
+                storage.purgeMap("a");
+            }
+
+            running.set(false);
+            for (Future<?> future : workers) future.get(30, TimeUnit.SECONDS);
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+
+        storage.purgeMap("a");
+        assertFalse(Files.exists(storage.getFilePath("a")));
+
+        writeTile(storage, "a", new Vector2i(0, 0), "after");
+        assertEquals("after", readTile(storage, "a", new Vector2i(0, 0)));
+
+        storage.close();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        try (TileArchive archive = new TileArchive(tempDir.resolve("test" + ArchiveStorage.ARCHIVE_FILE_SUFFIX), false)) {
+            byte[] data = new byte[64 * 1024];
+            for (int i = 0; i < 100; i++) {
+                data[0] = (byte) i;
+                archive.write(i % 4, 0, data, 0, data.length);
+            }
+
+            // overwritten tiles are removed from the file once there is enough garbage
+            assertEquals(4L * data.length, archive.getLiveBytes());
+            assertTrue(archive.getFileSize() < 100L * data.length);
+            assertEquals(99, archive.read(3, 0)[0]);
+            assertNull(archive.read(4, 0));
+        }
+    }
+
+}
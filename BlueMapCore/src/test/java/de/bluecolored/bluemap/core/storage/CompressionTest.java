@@ -0,0 +1,69 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i % 7 + i / 1000);
+
+        for (Compression compression : new Compression[]{
+                Compression.NONE, Compression.GZIP, Compression.DEFLATE,
+                Compression.gzip(1), Compression.gzip(9), Compression.deflate(1), Compression.deflate(9)
+        }) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = compression.compress(compressed)) {
+                out.write(data);
+            }
+
+            try (InputStream in = compression.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+                assertArrayEquals(data, IOUtils.toByteArray(in), compression.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testForId() {
+        assertSame(Compression.GZIP, Compression.forId("GZIP", Compression.DEFAULT_LEVEL));
+        assertEquals(Compression.deflate(3), Compression.forId("deflate", 3));
+        assertEquals(".zlib", Compression.forId("deflate", 3).getFileSuffix());
+        assertThrows(IllegalArgumentException.class, () -> Compression.forId("gzip", 10));
+        assertThrows(IllegalArgumentException.class, () -> Compression.forId("zip", 1));
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.util.ContentHash;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testContentHash() throws IOException {
+        FileStorage storage = new FileStorage(tempDir, Compression.GZIP);
+        Vector2i tile = new Vector2i(-3, 12);
+        Path file = storage.getFilePath("map", TileType.HIRES, tile);
+
+        byte[] data = "some tile-data".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = storage.writeMapTile("map", TileType.HIRES, tile)) {
+            out.write(data);
+        }
+
+        // the file is still a valid gzip-file
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+        }
+        assertEquals(ContentHash.hash(data), FileStorage.readContentHash(file));
+
+        byte[] newData = "other tile-data".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = storage.writeMapTile("map", TileType.HIRES, tile)) {
+            out.write(newData);
+        }
+        assertEquals(ContentHash.hash(newData), FileStorage.readContentHash(file));
+
+        // no other files are written next to the tile
+        try (Stream<Path> files = Files.list(file.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testNoContentHash() throws IOException {
+        FileStorage storage = new FileStorage(tempDir, Compression.DEFLATE);
+        Vector2i tile = new Vector2i(0, 0);
+
+        try (OutputStream out = storage.writeMapTile("map", TileType.LOWRES, tile)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+
+        assertNull(FileStorage.readContentHash(storage.getFilePath("map", TileType.LOWRES, tile)));
+        assertNull(FileStorage.readContentHash(tempDir.resolve("missing")));
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static de.bluecolored.bluemap.core.storage.StorageTestUtils.readTile;
+import static de.bluecolored.bluemap.core.storage.StorageTestUtils.writeTile;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SQLStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testWriteReadPurge() throws IOException {
+        String url = "jdbc:h2:file:" + tempDir.resolve("maps").toAbsolutePath();
+
+        try (SQLStorage storage = new SQLStorage(new org.h2.Driver(), url, Compression.GZIP)) {
+            for (int i = 0; i < SQLStorage.BATCH_SIZE * 5; i++) {
+                writeTile(storage, "map", new Vector2i(i, -i), "tile-" + i);
+            }
+            writeTile(storage, "other", new Vector2i(0, 0), "other");
+
+            // pending tiles can be read before they are committed
+            assertEquals("tile-3", readTile(storage, "map", new Vector2i(3, -3)));
+
+            storage.deleteMapTile("map", TileType.HIRES, new Vector2i(1, -1));
+            assertFalse(storage.readMapTile("map", TileType.HIRES, new Vector2i(1, -1)).isPresent());
+
+            try (OutputStream out = storage.writeMeta("map", MetaType.RENDER_STATE)) {
+                out.write(1);
+            }
+
+            storage.flush();
+            assertEquals(0, storage.getPendingTileCount());
+        }
+
+        try (SQLStorage storage = new SQLStorage(new org.h2.Driver(), url, Compression.GZIP)) {
+            assertEquals("tile-1000", readTile(storage, "map", new Vector2i(1000, -1000)));
+            assertFalse(storage.readMapTile("map", TileType.HIRES, new Vector2i(1, -1)).isPresent());
+            assertTrue(storage.readMeta("map", MetaType.RENDER_STATE).isPresent());
+
+            storage.purgeMap("map");
+            assertFalse(storage.readMapTile("map", TileType.HIRES, new Vector2i(3, -3)).isPresent());
+            assertFalse(storage.readMeta("map", MetaType.RENDER_STATE).isPresent());
+            assertEquals("other", readTile(storage, "other", new Vector2i(0, 0)));
+        }
+    }
+
+    @Test
+    public void testFailedCommitKeepsTiles() throws Exception {
+        String url = "jdbc:h2:file:" + tempDir.resolve("maps").toAbsolutePath();
+        Driver driver = new org.h2.Driver();
+
+        try (
+                SQLStorage storage = new SQLStorage(driver, url, Compression.GZIP);
+                Connection connection = driver.connect(url, new Properties())
+        ) {
+            writeTile(storage, "map", new Vector2i(1, 2), "tile");
+
+            // let the commit fail
+            execute(connection, "ALTER TABLE bluemap_map_tile RENAME TO bluemap_map_tile_moved");
+            assertThrows(IOException.class, storage::flush);
+            assertEquals(1, storage.getPendingTileCount());
+            assertEquals("tile", readTile(storage, "map", new Vector2i(1, 2)));
+
+            // the next commit writes the tile
+            execute(connection, "ALTER TABLE bluemap_map_tile_moved RENAME TO bluemap_map_tile");
+            storage.flush();
+            assertEquals(0, storage.getPendingTileCount());
+        }
+
+        try (SQLStorage storage = new SQLStorage(driver, url, Compression.GZIP)) {
+            assertEquals("tile", readTile(storage, "map", new Vector2i(1, 2)));
+        }
+    }
+
+    @Test
+    public void testParallelReads() throws Exception {
+        String url = "jdbc:h2:file:" + tempDir.resolve("maps").toAbsolutePath();
+
+        try (SQLStorage storage = new SQLStorage(SQLStorage.loadH2Driver(tempDir.resolve("missing.jar").toFile()), url, Compression.GZIP)) {
+            for (int i = 0; i < 100; i++) {
+                writeTile(storage, "map", new Vector2i(i, 0), "tile-" + i);
+            }
+            storage.flush();
+
+            ExecutorService executor = Executors.newFixedThreadPool(SQLStorage.MAX_READ_CONNECTIONS * 2);
+            try {
+                List<Future<String>> reads = new ArrayList<>();
+                for (int n = 0; n < 10; n++) {
+                    for (int i = 0; i < 100; i++) {
+                        Vector2i tile = new Vector2i(i, 0);
+                        reads.add(executor.submit(() -> readTile(storage, "map", tile)));
+                    }
+                }
+
+                for (int i = 0; i < reads.size(); i++) {
+                    assertEquals("tile-" + (i % 100), reads.get(i).get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+}
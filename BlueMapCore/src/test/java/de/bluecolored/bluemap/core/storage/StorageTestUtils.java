@@ -0,0 +1,73 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes and reads map-tiles with string-content to and from a {@link Storage}
+ */
+public class StorageTestUtils {
+
+    private StorageTestUtils(){}
+
+    public static void writeTile(Storage storage, String mapId, Vector2i tile, String data) throws IOException {
+        writeTile(storage, mapId, TileType.HIRES, 0, tile, data);
+    }
+
+    public static void writeTile(Storage storage, String mapId, TileType tileType, int lod, Vector2i tile, String data) throws IOException {
+        try (OutputStream out = storage.writeMapTile(mapId, tileType, lod, tile)) {
+            out.write(data.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Reads the content of the tile, asserting that the tile exists
+     */
+    public static String readTile(Storage storage, String mapId, Vector2i tile) throws IOException {
+        return readTile(storage, mapId, TileType.HIRES, 0, tile);
+    }
+
+    /**
+     * Reads the content of the tile, asserting that the tile exists
+     */
+    public static String readTile(Storage storage, String mapId, TileType tileType, int lod, Vector2i tile) throws IOException {
+        Optional<InputStream> in = storage.readMapTile(mapId, tileType, lod, tile);
+        assertTrue(in.isPresent(), "Missing tile " + tile + " of map " + mapId);
+        try (InputStream is = in.get()) {
+            return new String(IOUtils.toByteArray(is), StandardCharsets.UTF_8);
+        }
+    }
+
+}
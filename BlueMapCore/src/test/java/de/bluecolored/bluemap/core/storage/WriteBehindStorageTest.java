@@ -0,0 +1,88 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static de.bluecolored.bluemap.core.storage.StorageTestUtils.readTile;
+import static de.bluecolored.bluemap.core.storage.StorageTestUtils.writeTile;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testWriteReadFlush() throws IOException {
+        FileStorage fileStorage = new FileStorage(tempDir, Compression.NONE);
+        WriteBehindStorage storage = new WriteBehindStorage(fileStorage, 2, 4);
+
+        for (int i = 0; i < 20; i++) {
+            writeTile(storage, "map", new Vector2i(i % 5, 0), "tile-" + i);
+        }
+
+        // the latest data is readable before and after it is written
+        assertEquals("tile-19", readTile(storage, "map", new Vector2i(4, 0)));
+
+        storage.flush();
+        assertEquals(0, storage.getQueuedTileCount());
+
+        for (int x = 0; x < 5; x++) {
+            assertEquals("tile-" + (15 + x), readTile(fileStorage, "map", new Vector2i(x, 0)));
+        }
+
+        storage.deleteMapTile("map", TileType.HIRES, new Vector2i(0, 0));
+        assertFalse(Files.exists(fileStorage.getFilePath("map", TileType.HIRES, new Vector2i(0, 0))));
+    }
+
+    @Test
+    public void testSyncedWrites() throws IOException {
+        FileStorage fileStorage = new FileStorage(tempDir, Compression.NONE, TileFormat.JSON, true);
+        WriteBehindStorage storage = new WriteBehindStorage(fileStorage, 2, 4);
+
+        for (int i = 0; i < 10; i++) {
+            writeTile(storage, "map", new Vector2i(i, i), "tile-" + i);
+        }
+
+        // a deleted tile is skipped when the written tiles are synced
+        storage.deleteMapTile("map", TileType.HIRES, new Vector2i(3, 3));
+        storage.flush();
+
+        assertFalse(Files.exists(fileStorage.getFilePath("map", TileType.HIRES, new Vector2i(3, 3))));
+        for (int i = 4; i < 10; i++) {
+            assertEquals("tile-" + i, readTile(fileStorage, "map", new Vector2i(i, i)));
+        }
+
+        storage.close();
+    }
+
+}
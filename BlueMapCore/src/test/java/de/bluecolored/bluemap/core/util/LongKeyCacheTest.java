@@ -0,0 +1,118 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongKeyCacheTest {
+
+    @Test
+    public void testGetAndInvalidate() {
+        LongKeyCache<String> cache = new LongKeyCache<>(100, 0);
+
+        assertNull(cache.getIfPresent(LongKeyCache.key(1, 2)));
+        assertEquals("a", cache.get(LongKeyCache.key(1, 2), k -> "a"));
+        assertEquals("a", cache.get(LongKeyCache.key(1, 2), k -> "b"));
+        assertNull(cache.getIfPresent(LongKeyCache.key(2, 1)));
+
+        cache.invalidate(LongKeyCache.key(1, 2));
+        assertNull(cache.getIfPresent(LongKeyCache.key(1, 2)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testKeyPacking() {
+        assertNotEquals(LongKeyCache.key(-1, 0), LongKeyCache.key(0, -1));
+        assertNotEquals(LongKeyCache.key(1, -1), LongKeyCache.key(0, -1));
+        assertEquals(LongKeyCache.key(-5, 7), LongKeyCache.key(-5, 7));
+    }
+
+    @Test
+    public void testSizeBoundAndConsistency() {
+        List<Long> evicted = new ArrayList<>();
+        LongKeyCache<Long> cache = new LongKeyCache<>(200, 0, evicted::add);
+        Map<Long, Long> reference = new HashMap<>();
+
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            long key = LongKeyCache.key(random.nextInt(40) - 20, random.nextInt(40) - 20);
+
+            if (random.nextInt(10) == 0) {
+                cache.invalidate(key);
+                reference.remove(key);
+                continue;
+            }
+
+            Long value = cache.get(key, k -> k);
+            assertEquals(key, (long) value);
+            reference.put(key, value);
+
+            assertTrue(cache.size() <= 200 + 15); // segments are rounded up
+        }
+
+        // every value that is still cached has to be the correct one
+        for (Map.Entry<Long, Long> entry : reference.entrySet()) {
+            Long cached = cache.getIfPresent(entry.getKey());
+            if (cached != null) assertEquals(entry.getValue(), cached);
+        }
+
+        assertFalse(evicted.isEmpty());
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        LongKeyCache<String> cache = new LongKeyCache<>(10, 1);
+        cache.put(5, "a");
+        Thread.sleep(5);
+
+        assertNull(cache.getIfPresent(5));
+        cache.cleanUp();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiration() {
+        assertEquals(Long.MAX_VALUE, new LongKeyCache<String>(10, 0).getExpiration(5));
+
+        LongKeyCache<String> cache = new LongKeyCache<>(10, 60000);
+        assertEquals(Long.MIN_VALUE, cache.getExpiration(5));
+
+        long before = System.currentTimeMillis();
+        cache.put(5, "a");
+        long after = System.currentTimeMillis();
+
+        long expiration = cache.getExpiration(5);
+        assertTrue(expiration >= before + 60000 && expiration <= after + 60000);
+    }
+
+}
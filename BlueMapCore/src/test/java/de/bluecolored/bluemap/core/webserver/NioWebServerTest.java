@@ -0,0 +1,337 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.webserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NioWebServerTest {
+
+    private static final int LARGE_SIZE = 8 * 1024 * 1024 + 123;
+    private static final int TIMEOUT = 10000;
+
+    @TempDir
+    Path tempDir;
+
+    private File largeFile;
+    private byte[] largeData;
+
+    private NioWebServer server;
+    private int port;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        largeData = new byte[LARGE_SIZE];
+        new Random(0).nextBytes(largeData);
+        largeFile = tempDir.resolve("large.bin").toFile();
+        Files.write(largeFile.toPath(), largeData);
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        server = new NioWebServer(InetAddress.getLoopbackAddress(), port, 10, this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() throws InterruptedException {
+        server.close();
+        server.join(TIMEOUT);
+    }
+
+    private HttpResponse handle(HttpRequest request) {
+        HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+        try {
+            switch (request.getPath()) {
+                case "/file":
+                    response.setData(new FileInputStream(largeFile));
+                    break;
+                case "/bytes":
+                    response.setData(new ByteArrayInputStream(largeData));
+                    break;
+                case "/stream":
+                    // a stream with an unknown length
+                    response.setData(new BufferedInputStream(new ByteArrayInputStream(largeData)));
+                    break;
+                case "/echo":
+                    response.setData(new String(read(request.getData()), StandardCharsets.UTF_8));
+                    break;
+                default:
+                    response.setData(request.getMethod() + " " + request.getPath());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return response;
+    }
+
+    @Test
+    public void testKeepAlive() throws IOException {
+        try (Socket socket = connect()) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            for (int i = 0; i < 5; i++) {
+                send(socket, "GET /" + i + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                assertEquals("GET /" + i, readResponse(in).bodyString());
+            }
+        }
+    }
+
+    @Test
+    public void testConnectionClose() throws IOException {
+        try (Socket socket = connect()) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            send(socket, "GET /a HTTP/1.1\r\nConnection: close\r\n\r\n");
+
+            Response response = readResponse(in);
+            assertEquals("GET /a", response.bodyString());
+            assertTrue(response.header.get("connection").contains("close"));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testPipelinedRequests() throws IOException {
+        try (Socket socket = connect()) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            send(socket,
+                    "GET /a HTTP/1.1\r\n\r\n" +
+                    "POST /echo HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello" +
+                    "GET /file HTTP/1.1\r\n\r\n" +
+                    "POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n2\r\nde\r\n0\r\n\r\n" +
+                    "GET /b HTTP/1.1\r\n\r\n"
+            );
+
+            assertEquals("GET /a", readResponse(in).bodyString());
+            assertEquals("hello", readResponse(in).bodyString());
+            assertArrayEquals(largeData, readResponse(in).body);
+            assertEquals("abcde", readResponse(in).bodyString());
+            assertEquals("GET /b", readResponse(in).bodyString());
+        }
+    }
+
+    @Test
+    public void testPartialReads() throws IOException, InterruptedException {
+        String request = "POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 11\r\n\r\nhello world";
+
+        try (Socket socket = connect()) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+
+            // every part should arrive with its own selector-wakeup
+            for (int i = 0; i < request.length(); i += 7) {
+                send(socket, request.substring(i, Math.min(i + 7, request.length())));
+                Thread.sleep(20);
+            }
+
+            assertEquals("hello world", readResponse(in).bodyString());
+        }
+    }
+
+    @Test
+    public void testLargeBodies() throws IOException {
+        try (Socket socket = connect()) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+
+            // sent with transferTo
+            send(socket, "GET /file HTTP/1.1\r\n\r\n");
+            Response response = readResponse(in);
+            assertEquals(Collections.singleton(Integer.toString(LARGE_SIZE)), response.header.get("content-length"));
+            assertArrayEquals(largeData, response.body);
+
+            // again on the same connection, after a transferTo
+            send(socket, "GET /file HTTP/1.1\r\n\r\n");
+            assertArrayEquals(largeData, readResponse(in).body);
+
+            // streamed with a known length
+            send(socket, "GET /bytes HTTP/1.1\r\n\r\n");
+            response = readResponse(in);
+            assertEquals(Collections.singleton(Integer.toString(LARGE_SIZE)), response.header.get("content-length"));
+            assertArrayEquals(largeData, response.body);
+
+            // streamed chunked
+            send(socket, "GET /stream HTTP/1.1\r\n\r\n");
+            response = readResponse(in);
+            assertTrue(response.header.get("transfer-encoding").contains("chunked"));
+            assertArrayEquals(largeData, response.body);
+        }
+    }
+
+    @Test
+    public void testMalformedRequests() throws IOException {
+        for (String request : Arrays.asList(
+                "GARBAGE\r\n\r\n",
+                "\r\n\r\n",
+                "POST /echo HTTP/1.1\r\nContent-Length: abc\r\n\r\n",
+                "POST /echo HTTP/1.1\r\nContent-Length: -1\r\n\r\n",
+                "POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\n"
+        )) {
+            try (Socket socket = connect()) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                send(socket, request);
+
+                assertEquals(400, readResponse(in).statusCode, request);
+                assertEquals(-1, in.read(), request);
+            }
+        }
+
+        // the server is still working
+        assertOk();
+    }
+
+    @Test
+    public void testClientDisconnects() throws IOException {
+        // during the request
+        try (Socket socket = connect()) {
+            send(socket, "GET /a HTTP/1.1\r\nHost: loc");
+        }
+
+        // during a large response
+        for (String path : Arrays.asList("/file", "/bytes", "/stream")) {
+            try (Socket socket = connect()) {
+                send(socket, "GET " + path + " HTTP/1.1\r\n\r\n");
+                InputStream in = socket.getInputStream();
+                assertTrue(in.read(new byte[1024]) > 0);
+            }
+        }
+
+        // more connections in a row than the server allows at the same time
+        for (int i = 0; i < 20; i++) {
+            try (Socket socket = connect()) {
+                send(socket, "GET /a HTTP/1.1\r\n\r\n");
+                assertEquals("GET /a", readResponse(new BufferedInputStream(socket.getInputStream())).bodyString());
+            }
+        }
+
+        assertOk();
+    }
+
+    private void assertOk() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, "GET /ok HTTP/1.1\r\n\r\n");
+            assertEquals("GET /ok", readResponse(new BufferedInputStream(socket.getInputStream())).bodyString());
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setSoTimeout(TIMEOUT);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    private static void send(Socket socket, String data) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(data.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    private static Response readResponse(InputStream in) throws IOException {
+        Response response = new Response();
+
+        String statusLine = readLine(in);
+        String[] status = statusLine.split(" ", 3);
+        assertEquals("HTTP/1.1", status[0]);
+        response.statusCode = Integer.parseInt(status[1]);
+
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            String[] kv = line.split(":", 2);
+            Set<String> values = response.header.computeIfAbsent(kv[0].trim().toLowerCase(), k -> new HashSet<>());
+            for (String value : kv[1].split(",")) values.add(value.trim().toLowerCase());
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (response.header.getOrDefault("transfer-encoding", Collections.emptySet()).contains("chunked")) {
+            int chunkSize;
+            while ((chunkSize = Integer.parseInt(readLine(in), 16)) > 0) {
+                readFully(in, body, chunkSize);
+                assertEquals("", readLine(in));
+            }
+            assertEquals("", readLine(in));
+        } else {
+            Set<String> contentLength = response.header.get("content-length");
+            assertNotNull(contentLength);
+            readFully(in, body, Integer.parseInt(contentLength.iterator().next()));
+        }
+        response.body = body.toByteArray();
+
+        return response;
+    }
+
+    private static void readFully(InputStream in, OutputStream out, int length) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (length > 0) {
+            int read = in.read(buffer, 0, Math.min(length, buffer.length));
+            if (read < 0) throw new EOFException();
+            out.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) throw new EOFException();
+            line.append((char) b);
+        }
+        if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') line.setLength(line.length() - 1);
+        return line.toString();
+    }
+
+    private static class Response {
+
+        private int statusCode;
+        private final Map<String, Set<String>> header = new HashMap<>();
+        private byte[] body;
+
+        private String bodyString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+
+    }
+
+}
@@ -30,8 +30,7 @@
 import java.util.HashMap;
 import java.util.Map;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class BlockStateTest {
 
@@ -87,6 +86,21 @@ public void testFromString() {
         assertEquals("testVal2", blockState.getProperties().get("testProp2"));
     }
 
+    @Test
+    public void testIntern() {
+        BlockState a = new BlockState("somemod:someblock", mapOf("testProp", "testVal")).intern();
+        BlockState b = BlockState.fromString("somemod:someblock[testProp=testVal]").intern();
+        BlockState c = new BlockState("somemod:someblock", mapOf("testProp", "otherVal")).intern();
+
+        assertSame(a, b);
+        assertNotSame(a, c);
+        assertNotEquals(a, c);
+        assertTrue(a.getStateId() >= 0);
+        assertNotEquals(a.getStateId(), c.getStateId());
+        assertSame(a, BlockStateRegistry.get(a.getStateId()));
+        assertSame(BlockState.AIR, new BlockState("minecraft:air").intern());
+    }
+
     private <L, V> Map<L, V> mapOf(L key, V value) {
         Map<L, V> map = new HashMap<>();
         map.put(key, value);
@@ -31,6 +31,7 @@
 import de.bluecolored.bluemap.common.rendermanager.RenderManager;
 import de.bluecolored.bluemap.common.rendermanager.RenderTask;
 import de.bluecolored.bluemap.common.web.FileRequestHandler;
+import de.bluecolored.bluemap.common.web.MapStorageRequestHandler;
 import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.MinecraftVersion;
 import de.bluecolored.bluemap.core.config.WebServerConfig;
@@ -40,6 +41,8 @@
 import de.bluecolored.bluemap.core.metrics.Metrics;
 import de.bluecolored.bluemap.core.util.FileUtils;
 import de.bluecolored.bluemap.core.webserver.HttpRequestHandler;
+import de.bluecolored.bluemap.core.webserver.HttpServer;
+import de.bluecolored.bluemap.core.webserver.NioWebServer;
 import de.bluecolored.bluemap.core.webserver.WebServer;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.time.DurationFormatUtils;
@@ -171,14 +174,26 @@ public void startWebserver(BlueMapService blueMap, boolean verbose) throws IOExc
         WebServerConfig config = blueMap.getWebServerConfig();
         FileUtils.mkDirs(config.getWebRoot());
         HttpRequestHandler requestHandler = new FileRequestHandler(config.getWebRoot().toPath(), "BlueMap v" + BlueMap.VERSION);
-
-        WebServer webServer = new WebServer(
-                config.getWebserverBindAddress(),
-                config.getWebserverPort(),
-                config.getWebserverMaxConnections(),
-                requestHandler,
-                verbose
-        );
+        requestHandler = new MapStorageRequestHandler(blueMap::getMapStorage, requestHandler);
+
+        HttpServer webServer;
+        if (config.isWebserverNonBlocking()) {
+            webServer = new NioWebServer(
+                    config.getWebserverBindAddress(),
+                    config.getWebserverPort(),
+                    config.getWebserverMaxConnections(),
+                    requestHandler,
+                    verbose
+            );
+        } else {
+            webServer = new WebServer(
+                    config.getWebserverBindAddress(),
+                    config.getWebserverPort(),
+                    config.getWebserverMaxConnections(),
+                    requestHandler,
+                    verbose
+            );
+        }
         webServer.start();
     }
 